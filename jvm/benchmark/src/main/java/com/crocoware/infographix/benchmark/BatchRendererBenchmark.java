@@ -0,0 +1,83 @@
+package com.crocoware.infographix.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.crocoware.infographix.BatchRenderer;
+import com.crocoware.infographix.java2d.Java2DRenderer;
+
+/**
+ * Building and rasterising a batch of 100 small diagrams with Java2D, on 1
+ * or more threads
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchRendererBenchmark {
+
+	private static final int JOBS = 100;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private byte[][] specs;
+	private ExecutorService executor;
+
+	@Setup
+	public void setup() throws IOException {
+		specs = new byte[JOBS][];
+		for (int i = 0; i < JOBS; i++) {
+			StringBuilder spec = new StringBuilder("input 0 0 0 30\n");
+			for (int j = 0; j < 10; j++) {
+				spec.append("forward ").append(10 + (i + j) % 20).append('\n');
+				spec.append((j & 1) == 0 ? "turnRight 30 20\n"
+						: "turnLeft 30 20\n");
+			}
+			specs[i] = spec.toString().getBytes("UTF-8");
+		}
+		executor = BatchRenderer.createExecutor(threads);
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public void renderBatch(final Blackhole blackhole)
+			throws InterruptedException {
+		BatchRenderer<BufferedImage> renderer = new BatchRenderer<BufferedImage>(
+				executor, threads, 64 << 20,
+				Java2DRenderer.createRasterizer(1, 0xffffffff),
+				new BatchRenderer.Sink<BufferedImage>() {
+					public void onResult(BatchRenderer.Result<BufferedImage> result) {
+						blackhole.consume(result.getOutput());
+					}
+				});
+		for (int i = 0; i < JOBS; i++)
+			renderer.submit("job" + i, specs[i], 1 << 20);
+		renderer.awaitCompletion();
+	}
+}
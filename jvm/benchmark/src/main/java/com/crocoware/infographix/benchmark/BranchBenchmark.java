@@ -0,0 +1,76 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crocoware.infographix.IBorderedDrawable;
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * A split into N outputs, each one followed by a branch of 40 shapes, built
+ * one after another or in parallel
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BranchBenchmark {
+
+	@Param({ "10", "200" })
+	public int branches;
+
+	private ExecutorService executor;
+
+	private static final Pipeline.Branch BRANCH = new Pipeline.Branch() {
+		public void build(Pipeline pipe, int n) {
+			for (int i = 0; i < 20; i++)
+				pipe.forward(10).turn(((i + n) & 1) == 0 ? 30 : -30, 20);
+		}
+	};
+
+	@Setup
+	public void setup() {
+		executor = Executors.newFixedThreadPool(Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	private Pipeline split() {
+		return new Pipeline(new Segment(0, 0, 0, 20 * branches)).split(100,
+				branches);
+	}
+
+	@Benchmark
+	public IBorderedDrawable sequential() {
+		return split().branch(BRANCH).getDrawable();
+	}
+
+	@Benchmark
+	public IBorderedDrawable parallel() {
+		return split().branch(executor, BRANCH).getDrawable();
+	}
+}
@@ -0,0 +1,166 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import android.graphics.Canvas;
+
+import com.crocoware.infographix.ComposedBordered;
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.RenderSnapshot;
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * Bounds, translation, resizing and drawing of a diagram made of N parts
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ComposedBorderedBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int parts;
+
+	private ComposedBordered composed;
+	private ComposedBordered batched;
+	private ComposedBordered simplified;
+	private RenderSnapshot snapshot;
+	private PipeShape moved;
+	private Canvas canvas;
+	// Only shows a small area of the diagram
+	private Canvas zoomed;
+	// Shows the whole diagram in a small area
+	private Canvas thumbnail;
+
+	@Setup
+	public void setup() {
+		composed = createDiagram();
+		moved = new PipeShape(new Segment(0, 0, 0, 30), 10);
+		composed.push(moved);
+		batched = createDiagram();
+		batched.setBatched(true);
+		canvas = new Canvas();
+		zoomed = new Canvas();
+		zoomed.clipRect(0, -100, 200, 100);
+		simplified = createDiagram();
+		simplified.setSimplifiedScale(0.5f);
+		thumbnail = new Canvas();
+		thumbnail.scale(0.05f, 0.05f);
+		snapshot = RenderSnapshot.of(batched);
+	}
+
+	private ComposedBordered createDiagram() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		for (int i = 0; i < parts / 3; i++)
+			// The width is given back after each split, so that the pipe
+			// does not vanish
+			pipe.forward(10).split(20, 0.5f).select(1).setWidth(30)
+					.turn((i & 1) == 0 ? 30 : -30, 20);
+		return (ComposedBordered) pipe.getDrawable();
+	}
+
+	@Benchmark
+	public void bounds(Blackhole bh) {
+		bh.consume(composed.getLeft());
+		bh.consume(composed.getTop());
+		bh.consume(composed.getWidth());
+		bh.consume(composed.getHeight());
+		bh.consume(composed.getBounds());
+	}
+
+	/**
+	 * Moves one part, then asks for the bounds of the whole diagram
+	 */
+	@Benchmark
+	public void boundsAfterPartMove(Blackhole bh) {
+		moved.translate(0, 0);
+		bh.consume(composed.getBounds());
+	}
+
+	@Benchmark
+	public void translate(Blackhole bh) {
+		composed.translate(1, -1);
+		bh.consume(composed.getLeft());
+	}
+
+	@Benchmark
+	public void resize(Blackhole bh) {
+		composed.resize(10, 10, 400, 300);
+		bh.consume(composed.getLeft());
+	}
+
+	/**
+	 * Aggregates the geometry of every part again
+	 */
+	@Benchmark
+	public void rebuildBodyPath(Blackhole bh) {
+		composed.translate(0, 0);
+		bh.consume(composed.getBodyPath());
+	}
+
+	@Benchmark
+	public void draw() {
+		composed.draw(canvas);
+	}
+
+	@Benchmark
+	public void drawZoomed() {
+		composed.draw(zoomed);
+	}
+
+	/**
+	 * Finds the part under a point of the first shape
+	 */
+	@Benchmark
+	public void hitTest(Blackhole bh) {
+		bh.consume(composed.findPartsAt(5, 15));
+	}
+
+	@Benchmark
+	public void drawThumbnail() {
+		batched.draw(thumbnail);
+	}
+
+	@Benchmark
+	public void drawThumbnailSimplified() {
+		simplified.draw(thumbnail);
+	}
+
+	/**
+	 * Copies the paths and paints of the diagram, as done before publishing
+	 * it to the UI thread
+	 */
+	@Benchmark
+	public void takeSnapshot(Blackhole bh) {
+		bh.consume(RenderSnapshot.of(batched));
+	}
+
+	@Benchmark
+	public void drawSnapshot() {
+		snapshot.draw(canvas);
+	}
+
+	@Benchmark
+	public void drawBatched() {
+		batched.draw(canvas);
+	}
+}
@@ -0,0 +1,70 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.layout.FlowGraph;
+import com.crocoware.infographix.layout.FlowLayout;
+
+/**
+ * Laying out a graph of about N flows : 2 inputs per node, one of them coming
+ * from further back once in 10 times
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlowLayoutBenchmark {
+
+	@Param({ "100", "10000" })
+	public int flows;
+
+	private FlowGraph graph;
+	private FlowLayout layout;
+
+	@Setup
+	public void setup() {
+		// As many columns as nodes in each column, roughly
+		int perLayer = (int) Math.max(2, Math.sqrt(flows / 2));
+		int layers = flows / 2 / perLayer + 1;
+		Random random = new Random(1);
+		graph = new FlowGraph();
+		FlowGraph.Node[][] nodes = new FlowGraph.Node[layers][perLayer];
+		for (int l = 0; l < layers; l++)
+			for (int n = 0; n < perLayer; n++)
+				nodes[l][n] = graph.addNode(l + ":" + n);
+		for (int l = 1; l < layers; l++) {
+			for (int n = 0; n < perLayer; n++) {
+				graph.addFlow(nodes[l - 1][random.nextInt(perLayer)],
+						nodes[l][n], 1 + random.nextInt(5));
+				int back = random.nextInt(10) == 0 ? 2 + random.nextInt(2) : 1;
+				graph.addFlow(nodes[Math.max(0, l - back)][random
+						.nextInt(perLayer)], nodes[l][n], 1 + random.nextInt(5));
+			}
+		}
+		layout = new FlowLayout(20, 60, 4);
+	}
+
+	@Benchmark
+	public Pipeline layout() {
+		return layout.layout(graph, 0, 0);
+	}
+}
@@ -0,0 +1,121 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.crocoware.infographix.Arrow;
+import com.crocoware.infographix.shapes.ArcShape;
+import com.crocoware.infographix.shapes.JoinShape;
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.shapes.SplitShape;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * Construction and geometry building of N shapes of each kind
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeometryBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int parts;
+
+	private Segment[] inputs;
+	private PipeShape[] straightPipes;
+	private PipeShape[] curvedPipes;
+	private ArcShape[] arcs;
+
+	@Setup
+	public void setup() {
+		inputs = new Segment[parts];
+		straightPipes = new PipeShape[parts];
+		curvedPipes = new PipeShape[parts];
+		arcs = new ArcShape[parts];
+		for (int i = 0; i < parts; i++) {
+			inputs[i] = new Segment(i, 0, i + 10, 30);
+			straightPipes[i] = new PipeShape(inputs[i], 50);
+			curvedPipes[i] = new PipeShape(inputs[i], 50, 20);
+			curvedPipes[i].setOutputArrow(Arrow.STANDARD);
+			arcs[i] = new ArcShape(inputs[i], 90, 40);
+		}
+	}
+
+	@Benchmark
+	public void createPipes(Blackhole bh) {
+		for (int i = 0; i < parts; i++)
+			bh.consume(new PipeShape(inputs[i], 50, 20));
+	}
+
+	@Benchmark
+	public void createArcs(Blackhole bh) {
+		for (int i = 0; i < parts; i++)
+			bh.consume(new ArcShape(inputs[i], 90, 40));
+	}
+
+	@Benchmark
+	public void createSplits(Blackhole bh) {
+		for (int i = 0; i < parts; i++)
+			bh.consume(new SplitShape(inputs[i], 40, new float[] { 0.2f,
+					0.3f, 0.5f }, 10));
+	}
+
+	@Benchmark
+	public void createJoins(Blackhole bh) {
+		for (int i = 0; i < parts; i++) {
+			Segment entry1 = inputs[i];
+			Segment entry2 = new Segment(entry1.x2, entry1.y2,
+					entry1.x2 + 10, entry1.y2 + 30);
+			bh.consume(new JoinShape(entry1, entry2, 40));
+		}
+	}
+
+	/**
+	 * Rebuilds the body and edges of straight pipes (translate() drops the
+	 * cached geometry)
+	 */
+	@Benchmark
+	public void buildStraightPipes(Blackhole bh) {
+		for (PipeShape pipe : straightPipes) {
+			pipe.translate(0, 0);
+			bh.consume(pipe.getBodyBuffer());
+			bh.consume(pipe.getEdgeBuffer());
+		}
+	}
+
+	@Benchmark
+	public void buildCurvedPipesWithArrow(Blackhole bh) {
+		for (PipeShape pipe : curvedPipes) {
+			pipe.translate(0, 0);
+			bh.consume(pipe.getBodyBuffer());
+			bh.consume(pipe.getEdgeBuffer());
+		}
+	}
+
+	@Benchmark
+	public void buildArcs(Blackhole bh) {
+		for (ArcShape arc : arcs) {
+			arc.translate(0, 0);
+			bh.consume(arc.getBodyBuffer());
+			bh.consume(arc.getEdgeBuffer());
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Canvas;
+
+import com.crocoware.infographix.ComposedBordered;
+import com.crocoware.infographix.Instrumentation;
+import com.crocoware.infographix.Parameter;
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * The cost of the instrumentation, without listener and with counters : drawing
+ * a diagram of N parts, batched or not, and moving its shapes
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstrumentationBenchmark {
+
+	@Param({ "100", "10000" })
+	public int parts;
+
+	@Param({ "none", "counters" })
+	public String listener;
+
+	private ComposedBordered composed;
+	private ComposedBordered batched;
+	private Parameter length;
+	private Canvas canvas;
+
+	@Setup
+	public void setup() {
+		if (listener.equals("counters"))
+			Instrumentation.setListener(new Instrumentation.Counters());
+		composed = (ComposedBordered) createDiagram().getDrawable();
+		batched = (ComposedBordered) createDiagram().getDrawable();
+		batched.setBatched(true);
+		length = new Parameter(10);
+		// Only the first shape depends on the parameter : all the others are
+		// moved
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		pipe.forward(length);
+		for (int i = 0; i < parts; i++)
+			pipe.forward(10);
+		canvas = new Canvas();
+	}
+
+	@TearDown
+	public void tearDown() {
+		Instrumentation.setListener(null);
+	}
+
+	private Pipeline createDiagram() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		for (int i = 0; i < parts / 3; i++)
+			pipe.forward(10).split(20, 0.5f).select(1).setWidth(30)
+					.turn((i & 1) == 0 ? 30 : -30, 20);
+		return pipe;
+	}
+
+	@Benchmark
+	public void draw() {
+		composed.draw(canvas);
+	}
+
+	@Benchmark
+	public void drawBatched() {
+		batched.draw(canvas);
+	}
+
+	@Benchmark
+	public float update() {
+		length.set(length.get() == 10 ? 20 : 10);
+		return length.get();
+	}
+}
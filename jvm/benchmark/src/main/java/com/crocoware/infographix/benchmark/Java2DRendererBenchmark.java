@@ -0,0 +1,77 @@
+package com.crocoware.infographix.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.RectF;
+
+import com.crocoware.infographix.ComposedBordered;
+import com.crocoware.infographix.IBorderedDrawable;
+import com.crocoware.infographix.java2d.Java2DRenderer;
+import com.crocoware.infographix.spec.SpecCache;
+
+/**
+ * Drawing a diagram of about N parts with Java2D, into a 1024x1024 image
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Java2DRendererBenchmark {
+
+	@Param({ "100", "10000" })
+	public int parts;
+
+	private IBorderedDrawable diagram;
+	private BufferedImage image;
+	private float scale;
+	private float left, top;
+
+	@Setup
+	public void setup() throws IOException {
+		StringBuilder text = new StringBuilder("input 0 0 0 30\n");
+		for (int i = 0; i < parts / 4; i++) {
+			text.append("forward 10\ngradient #ff0000 #0000ff\nsplit 20 0.5\n");
+			text.append("select 1\nwidth 30\n");
+			text.append((i & 1) == 0 ? "turnRight 30 20\n" : "turnLeft 30 20\n");
+		}
+		diagram = SpecCache.build(text.toString().getBytes("UTF-8"))
+				.getDrawable();
+		image = new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_ARGB);
+		RectF bounds = new RectF();
+		((ComposedBordered) diagram).getDrawBounds(bounds);
+		scale = 1024 / Math.max(bounds.width(), bounds.height());
+		left = bounds.left;
+		top = bounds.top;
+	}
+
+	@Benchmark
+	public BufferedImage draw() {
+		Graphics2D graphics = image.createGraphics();
+		graphics.setClip(0, 0, 1024, 1024);
+		graphics.scale(scale, scale);
+		graphics.translate(-left, -top);
+		diagram.draw(new Java2DRenderer(graphics));
+		graphics.dispose();
+		return image;
+	}
+}
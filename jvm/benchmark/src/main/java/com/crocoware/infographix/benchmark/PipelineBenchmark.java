@@ -0,0 +1,90 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Color;
+
+import com.crocoware.infographix.IBorderedDrawable;
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * Construction of pipelines made of N parts, with the different directives
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int parts;
+
+	@Benchmark
+	public IBorderedDrawable forward() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		for (int i = 0; i < parts; i++)
+			pipe.forward(10);
+		return pipe.getDrawable();
+	}
+
+	@Benchmark
+	public IBorderedDrawable forwardAndTurn() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		for (int i = 0; i < parts / 2; i++)
+			pipe.forward(10).turn((i & 1) == 0 ? 90 : -90, 20);
+		return pipe.getDrawable();
+	}
+
+	@Benchmark
+	public IBorderedDrawable coloredForward() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		for (int i = 0; i < parts; i++)
+			pipe.forward(10).setBodyColor((i & 1) == 0 ? Color.RED
+					: Color.BLUE);
+		return pipe.getDrawable();
+	}
+
+	/**
+	 * Each step splits the pipe in two, follows one output, and comes back
+	 * to the other one through tag()/back()
+	 */
+	@Benchmark
+	public IBorderedDrawable splitTagBack() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		for (int i = 0; i < parts / 4; i++) {
+			pipe.split(20, 0.5f).tag("split").select(0).forward(10);
+			pipe.back("split").select(1).forward(10);
+		}
+		return pipe.getDrawable();
+	}
+
+	/**
+	 * Each step splits the pipe in two and joins both outputs again
+	 */
+	@Benchmark
+	public IBorderedDrawable splitJoin() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		for (int i = 0; i < parts / 5; i++) {
+			pipe.split(20, 0.5f).tag("split").select(0).forward(10).tag("up");
+			pipe.back("split").select(1).forward(10).joinAfter("up", 20);
+		}
+		return pipe.getDrawable();
+	}
+}
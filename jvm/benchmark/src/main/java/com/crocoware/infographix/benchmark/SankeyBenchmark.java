@@ -0,0 +1,101 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.SankeyBuilder;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * Updating the values of a Sankey diagram of about N flows : one leaf at a
+ * time, 100 leaves at once, and building the whole diagram again
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SankeyBenchmark {
+
+	@Param({ "100", "10000" })
+	public int flows;
+
+	private SankeyBuilder sankey;
+	private ArrayList<SankeyBuilder.Flow> leaves;
+	private int next;
+
+	@Setup
+	public void setup() {
+		sankey = create(flows);
+		sankey.build(new Segment(0, 0, 0, 10));
+		leaves = new ArrayList<SankeyBuilder.Flow>();
+		collectLeaves(sankey.getRoot(), leaves);
+	}
+
+	private static SankeyBuilder create(int flows) {
+		SankeyBuilder sankey = new SankeyBuilder("root", 1, 10, 20);
+		ArrayList<SankeyBuilder.Flow> queue = new ArrayList<SankeyBuilder.Flow>();
+		queue.add(sankey.getRoot());
+		int count = 1;
+		// Breadth first, 3 children per flow
+		for (int i = 0; count < flows; i++) {
+			SankeyBuilder.Flow parent = queue.get(i);
+			for (int c = 0; c < 3 && count < flows; c++, count++)
+				queue.add(parent.addFlow("f" + count, 1 + count % 7));
+		}
+		return sankey;
+	}
+
+	private static void collectLeaves(SankeyBuilder.Flow flow,
+			ArrayList<SankeyBuilder.Flow> leaves) {
+		if (flow.getChildren().isEmpty())
+			leaves.add(flow);
+		for (SankeyBuilder.Flow child : flow.getChildren())
+			collectLeaves(child, leaves);
+	}
+
+	private SankeyBuilder.Flow nextLeaf() {
+		next = (next + 7919) % leaves.size();
+		return leaves.get(next);
+	}
+
+	@Benchmark
+	public float updateOne() {
+		SankeyBuilder.Flow leaf = nextLeaf();
+		leaf.setValue(leaf.getValue() == 1 ? 2 : 1);
+		return sankey.getRoot().getValue();
+	}
+
+	@Benchmark
+	public float updateHundred() {
+		sankey.beginChanges();
+		for (int i = 0; i < 100; i++) {
+			SankeyBuilder.Flow leaf = nextLeaf();
+			leaf.setValue(leaf.getValue() == 1 ? 2 : 1);
+		}
+		sankey.endChanges();
+		return sankey.getRoot().getValue();
+	}
+
+	@Benchmark
+	public Pipeline rebuild() {
+		return create(flows).build(new Segment(0, 0, 0, 10));
+	}
+}
@@ -0,0 +1,66 @@
+package com.crocoware.infographix.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crocoware.infographix.RenderSnapshot;
+import com.crocoware.infographix.SnapshotFormat;
+import com.crocoware.infographix.spec.SpecCache;
+
+/**
+ * Getting a diagram of about N parts ready to be drawn : built from its spec,
+ * or loaded from a saved snapshot
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotFormatBenchmark {
+
+	@Param({ "100", "10000" })
+	public int parts;
+
+	private byte[] spec;
+	private ByteBuffer saved;
+
+	@Setup
+	public void setup() throws IOException {
+		StringBuilder text = new StringBuilder("input 0 0 0 30\n");
+		for (int i = 0; i < parts / 4; i++) {
+			text.append("forward 10\ngradient #ff0000 #0000ff\nsplit 20 0.5\n");
+			text.append("select 1\nwidth 30\n");
+			text.append((i & 1) == 0 ? "turnRight 30 20\n" : "turnLeft 30 20\n");
+		}
+		spec = text.toString().getBytes("UTF-8");
+		saved = ByteBuffer.wrap(SnapshotFormat.toBytes(SpecCache.build(spec)
+				.getDrawable()));
+	}
+
+	@Benchmark
+	public RenderSnapshot buildAndSnapshot() {
+		return RenderSnapshot.of(SpecCache.build(spec).getDrawable());
+	}
+
+	@Benchmark
+	public RenderSnapshot load() throws IOException {
+		return SnapshotFormat.read(saved);
+	}
+}
@@ -0,0 +1,78 @@
+package com.crocoware.infographix.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.RenderSnapshot;
+import com.crocoware.infographix.spec.BinarySpecWriter;
+import com.crocoware.infographix.spec.SpecCache;
+import com.crocoware.infographix.spec.TextSpecParser;
+
+/**
+ * Building a diagram of about N parts from its text spec, from its binary
+ * spec, and through the cache of compiled specs
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpecBenchmark {
+
+	@Param({ "100", "10000" })
+	public int parts;
+
+	private byte[] text;
+	private byte[] binary;
+	private SpecCache cache;
+
+	@Setup
+	public void setup() throws IOException {
+		StringBuilder spec = new StringBuilder("input 0 0 0 30\n");
+		for (int i = 0; i < parts / 4; i++) {
+			spec.append("forward 10\nsplit 20 0.5\nselect 1\nwidth 30\n");
+			spec.append((i & 1) == 0 ? "turnRight 30 20\n" : "turnLeft 30 20\n");
+		}
+		text = spec.toString().getBytes("UTF-8");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TextSpecParser.parse(new StringReader(spec.toString()),
+				new BinarySpecWriter(out));
+		binary = out.toByteArray();
+		cache = new SpecCache(4);
+		cache.compile(binary);
+	}
+
+	@Benchmark
+	public Pipeline buildFromText() {
+		return SpecCache.build(text);
+	}
+
+	@Benchmark
+	public Pipeline buildFromBinary() {
+		return SpecCache.build(binary);
+	}
+
+	@Benchmark
+	public RenderSnapshot compileCached() {
+		return cache.compile(binary);
+	}
+}
@@ -0,0 +1,82 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import com.crocoware.infographix.ComposedBordered;
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.Style;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * Restyling a diagram of N parts sharing the same style : through the setters
+ * of the diagram, or by replacing the style, then drawing it batched (the
+ * batches being built again)
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StyleBenchmark {
+
+	@Param({ "100", "10000" })
+	public int parts;
+
+	private ComposedBordered composed;
+	private Style red;
+	private Style blue;
+	private boolean isRed;
+	private Canvas canvas;
+
+	@Setup
+	public void setup() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		for (int i = 0; i < parts; i++)
+			pipe.forward(10);
+		composed = (ComposedBordered) pipe.getDrawable();
+		composed.setBatched(true);
+		red = Style.DEFAULT.withBodyColor(Color.RED);
+		blue = Style.DEFAULT.withBodyColor(Color.BLUE);
+		composed.setStyle(red);
+		isRed = true;
+		canvas = new Canvas();
+	}
+
+	@Benchmark
+	public void setBodyColor() {
+		isRed = !isRed;
+		composed.setBodyColor(isRed ? Color.RED : Color.BLUE);
+	}
+
+	@Benchmark
+	public int replaceStyle() {
+		isRed = !isRed;
+		return isRed ? composed.replaceStyle(blue, red) : composed
+				.replaceStyle(red, blue);
+	}
+
+	@Benchmark
+	public void replaceStyleAndDraw() {
+		replaceStyle();
+		composed.draw(canvas);
+	}
+}
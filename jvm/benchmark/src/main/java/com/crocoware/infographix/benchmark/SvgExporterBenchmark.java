@@ -0,0 +1,69 @@
+package com.crocoware.infographix.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crocoware.infographix.IBorderedDrawable;
+import com.crocoware.infographix.SvgExporter;
+import com.crocoware.infographix.spec.SpecCache;
+
+/**
+ * Exporting a diagram of about N parts as SVG, to a stream which drops the
+ * bytes
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SvgExporterBenchmark {
+
+	@Param({ "100", "10000" })
+	public int parts;
+
+	private IBorderedDrawable diagram;
+	private OutputStream out;
+
+	@Setup
+	public void setup() throws IOException {
+		StringBuilder text = new StringBuilder("input 0 0 0 30\n");
+		for (int i = 0; i < parts / 4; i++) {
+			text.append("forward 10\ngradient #ff0000 #0000ff\nsplit 20 0.5\n");
+			text.append("select 1\nwidth 30\n");
+			text.append((i & 1) == 0 ? "turnRight 30 20\n" : "turnLeft 30 20\n");
+		}
+		diagram = SpecCache.build(text.toString().getBytes("UTF-8"))
+				.getDrawable();
+		out = new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		};
+	}
+
+	@Benchmark
+	public void export() throws IOException {
+		SvgExporter.export(diagram, out);
+	}
+}
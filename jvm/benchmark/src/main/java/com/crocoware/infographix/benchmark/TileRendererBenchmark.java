@@ -0,0 +1,99 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import com.crocoware.infographix.ComposedBordered;
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.TileRenderer;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * Scrolling over a diagram of N parts, drawn directly or through cached tiles
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TileRendererBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int parts;
+
+	private ComposedBordered diagram;
+	private TileRenderer renderer;
+	private final RectF viewport = new RectF();
+	private int step;
+
+	// Scrolls back and forth over this width
+	private static final int SCROLL_WIDTH = 2000;
+	private static final int SCROLL_STEP = 40;
+
+	@Setup
+	public void setup() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		for (int i = 0; i < parts / 3; i++)
+			pipe.forward(10).split(20, 0.5f).select(1).setWidth(30)
+					.turn((i & 1) == 0 ? 30 : -30, 20);
+		diagram = (ComposedBordered) pipe.getDrawable();
+		// The tiles are drawn by the calling thread, so that all of them are
+		// ready once scrolled over
+		renderer = new TileRenderer(diagram, 256, 64L << 20, new Executor() {
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		for (int x = 0; x <= SCROLL_WIDTH; x += SCROLL_STEP) {
+			scroll();
+			renderer.draw(new Canvas(), viewport, 1);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		renderer.release();
+	}
+
+	private void scroll() {
+		int x = step++ % (2 * SCROLL_WIDTH / SCROLL_STEP) * SCROLL_STEP;
+		if (x > SCROLL_WIDTH)
+			x = 2 * SCROLL_WIDTH - x;
+		viewport.set(x, -400, x + 1080, 400);
+	}
+
+	@Benchmark
+	public void scrollDirect() {
+		scroll();
+		Canvas canvas = new Canvas();
+		canvas.translate(-viewport.left, -viewport.top);
+		canvas.clipRect(viewport);
+		diagram.draw(canvas);
+	}
+
+	@Benchmark
+	public void scrollTiled() {
+		scroll();
+		renderer.draw(new Canvas(), viewport, 1);
+	}
+}
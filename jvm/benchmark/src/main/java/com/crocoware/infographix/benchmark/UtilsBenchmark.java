@@ -0,0 +1,60 @@
+package com.crocoware.infographix.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.PointF;
+
+import com.crocoware.infographix.utils.Segment;
+import com.crocoware.infographix.utils.Vector;
+
+/**
+ * Elementary geometry of the utils package
+ * 
+ * @author Benoit
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UtilsBenchmark {
+
+	private Segment segment = new Segment(10, 20, 40, 60);
+	private PointF center = new PointF(100, 100);
+	private Vector vector = new Vector(3, 4);
+	private float angle = 37;
+
+	@Benchmark
+	public Segment segmentRotation() {
+		return segment.getRotation(center, angle);
+	}
+
+	@Benchmark
+	public Vector segmentNormal() {
+		return segment.getNormal();
+	}
+
+	@Benchmark
+	public Vector vectorNormalize() {
+		vector.dx = 3;
+		vector.dy = 4;
+		return vector.normalize();
+	}
+
+	@Benchmark
+	public Vector vectorScaled() {
+		return vector.getScaled(2.5f);
+	}
+}
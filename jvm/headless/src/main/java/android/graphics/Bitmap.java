@@ -0,0 +1,49 @@
+package android.graphics;
+
+public final class Bitmap {
+	public enum Config {
+		ALPHA_8, RGB_565, ARGB_4444, ARGB_8888
+	}
+
+	private final int width;
+	private final int height;
+	private final Config config;
+	private boolean recycled;
+
+	private Bitmap(int width, int height, Config config) {
+		this.width = width;
+		this.height = height;
+		this.config = config;
+	}
+
+	public static Bitmap createBitmap(int width, int height, Config config) {
+		return new Bitmap(width, height, config);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public Config getConfig() {
+		return config;
+	}
+
+	public int getByteCount() {
+		return width * height * (config == Config.ARGB_8888 ? 4 : 2);
+	}
+
+	public void eraseColor(int c) {
+	}
+
+	public void recycle() {
+		recycled = true;
+	}
+
+	public boolean isRecycled() {
+		return recycled;
+	}
+}
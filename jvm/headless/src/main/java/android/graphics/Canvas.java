@@ -0,0 +1,140 @@
+package android.graphics;
+
+/**
+ * Stand-in for the Android canvas: keeps track of the current matrix and clip
+ * so that culling and level-of-detail code behave as on a device, but does
+ * not rasterize anything.
+ */
+public class Canvas {
+	public enum EdgeType {
+		BW, AA
+	}
+
+	private Bitmap bitmap;
+	private Matrix matrix = new Matrix();
+	private RectF clip = new RectF(-1e9f, -1e9f, 1e9f, 1e9f);
+	private final java.util.ArrayList<Object[]> stack = new java.util.ArrayList<Object[]>();
+	private int drawCalls;
+
+	public Canvas() {
+	}
+
+	public Canvas(Bitmap bitmap) {
+		setBitmap(bitmap);
+	}
+
+	public void setBitmap(Bitmap bitmap) {
+		this.bitmap = bitmap;
+		if (bitmap != null)
+			clip = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+	}
+
+	public int getWidth() {
+		return bitmap == null ? 0 : bitmap.getWidth();
+	}
+
+	public int getHeight() {
+		return bitmap == null ? 0 : bitmap.getHeight();
+	}
+
+	public int save() {
+		stack.add(new Object[] { new Matrix(matrix), new RectF(clip) });
+		return stack.size();
+	}
+
+	public void restore() {
+		Object[] state = stack.remove(stack.size() - 1);
+		matrix = (Matrix) state[0];
+		clip = (RectF) state[1];
+	}
+
+	public void restoreToCount(int saveCount) {
+		while (stack.size() >= saveCount)
+			restore();
+	}
+
+	public void translate(float dx, float dy) {
+		matrix.preTranslate(dx, dy);
+	}
+
+	public void scale(float sx, float sy) {
+		matrix.preScale(sx, sy);
+	}
+
+	public void concat(Matrix m) {
+		if (m != null)
+			matrix.preConcat(m);
+	}
+
+	public void setMatrix(Matrix m) {
+		matrix.set(m);
+	}
+
+	public void getMatrix(Matrix ctm) {
+		ctm.set(matrix);
+	}
+
+	public Matrix getMatrix() {
+		return new Matrix(matrix);
+	}
+
+	public boolean clipRect(float left, float top, float right, float bottom) {
+		RectF r = new RectF(left, top, right, bottom);
+		matrix.mapRect(r);
+		clip.set(Math.max(clip.left, r.left), Math.max(clip.top, r.top),
+				Math.min(clip.right, r.right), Math.min(clip.bottom, r.bottom));
+		return !clip.isEmpty();
+	}
+
+	public boolean clipRect(RectF rect) {
+		return clipRect(rect.left, rect.top, rect.right, rect.bottom);
+	}
+
+	public boolean getClipBounds(Rect bounds) {
+		RectF r = new RectF(clip);
+		Matrix inverse = new Matrix();
+		if (matrix.invert(inverse))
+			inverse.mapRect(r);
+		bounds.set((int) Math.floor(r.left), (int) Math.floor(r.top),
+				(int) Math.ceil(r.right), (int) Math.ceil(r.bottom));
+		return !bounds.isEmpty();
+	}
+
+	public boolean quickReject(RectF rect, EdgeType type) {
+		RectF r = new RectF(rect);
+		matrix.mapRect(r);
+		return !RectF.intersects(r, clip);
+	}
+
+	public boolean quickReject(float left, float top, float right,
+			float bottom, EdgeType type) {
+		return quickReject(new RectF(left, top, right, bottom), type);
+	}
+
+	public void drawPath(Path path, Paint paint) {
+		drawCalls++;
+	}
+
+	public void drawText(String text, float x, float y, Paint paint) {
+		drawCalls++;
+	}
+
+	public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+		drawCalls++;
+	}
+
+	public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+		drawCalls++;
+	}
+
+	public void drawColor(int color) {
+		drawCalls++;
+	}
+
+	/**
+	 * Not part of the Android API : number of draw calls received so far.
+	 */
+	public int getDrawCallCount() {
+		return drawCalls;
+	}
+}
@@ -0,0 +1,8 @@
+package android.graphics;
+
+public class DashPathEffect extends PathEffect {
+	public DashPathEffect(float intervals[], float phase) {
+		if (intervals.length < 2)
+			throw new ArrayIndexOutOfBoundsException();
+	}
+}
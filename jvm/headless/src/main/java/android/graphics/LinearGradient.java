@@ -0,0 +1,11 @@
+package android.graphics;
+
+public class LinearGradient extends Shader {
+	public LinearGradient(float x0, float y0, float x1, float y1,
+			int colors[], float positions[], TileMode tile) {
+	}
+
+	public LinearGradient(float x0, float y0, float x1, float y1, int color0,
+			int color1, TileMode tile) {
+	}
+}
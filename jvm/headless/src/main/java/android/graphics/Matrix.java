@@ -0,0 +1,225 @@
+package android.graphics;
+
+/**
+ * Affine subset of the Android matrix (the perspective row is always 0 0 1).
+ */
+public class Matrix {
+	// | a c e |
+	// | b d f |
+	private float a = 1, b, c, d = 1, e, f;
+
+	public Matrix() {
+	}
+
+	public Matrix(Matrix src) {
+		set(src);
+	}
+
+	public boolean isIdentity() {
+		return a == 1 && b == 0 && c == 0 && d == 1 && e == 0 && f == 0;
+	}
+
+	public void set(Matrix src) {
+		if (src == null) {
+			reset();
+			return;
+		}
+		a = src.a;
+		b = src.b;
+		c = src.c;
+		d = src.d;
+		e = src.e;
+		f = src.f;
+	}
+
+	public void reset() {
+		a = d = 1;
+		b = c = e = f = 0;
+	}
+
+	public void setTranslate(float dx, float dy) {
+		reset();
+		e = dx;
+		f = dy;
+	}
+
+	public void setScale(float sx, float sy) {
+		reset();
+		a = sx;
+		d = sy;
+	}
+
+	public void setRotate(float degrees) {
+		reset();
+		postRotate(degrees);
+	}
+
+	private void postConcat(float a2, float b2, float c2, float d2, float e2,
+			float f2) {
+		float na = a2 * a + c2 * b;
+		float nb = b2 * a + d2 * b;
+		float nc = a2 * c + c2 * d;
+		float nd = b2 * c + d2 * d;
+		float ne = a2 * e + c2 * f + e2;
+		float nf = b2 * e + d2 * f + f2;
+		a = na;
+		b = nb;
+		c = nc;
+		d = nd;
+		e = ne;
+		f = nf;
+	}
+
+	private void preConcat(float a2, float b2, float c2, float d2, float e2,
+			float f2) {
+		float na = a * a2 + c * b2;
+		float nb = b * a2 + d * b2;
+		float nc = a * c2 + c * d2;
+		float nd = b * c2 + d * d2;
+		float ne = a * e2 + c * f2 + e;
+		float nf = b * e2 + d * f2 + f;
+		a = na;
+		b = nb;
+		c = nc;
+		d = nd;
+		e = ne;
+		f = nf;
+	}
+
+	public boolean postTranslate(float dx, float dy) {
+		e += dx;
+		f += dy;
+		return true;
+	}
+
+	public boolean preTranslate(float dx, float dy) {
+		preConcat(1, 0, 0, 1, dx, dy);
+		return true;
+	}
+
+	public boolean postScale(float sx, float sy) {
+		postConcat(sx, 0, 0, sy, 0, 0);
+		return true;
+	}
+
+	public boolean postScale(float sx, float sy, float px, float py) {
+		postTranslate(-px, -py);
+		postScale(sx, sy);
+		postTranslate(px, py);
+		return true;
+	}
+
+	public boolean preScale(float sx, float sy) {
+		preConcat(sx, 0, 0, sy, 0, 0);
+		return true;
+	}
+
+	public boolean postRotate(float degrees) {
+		double rad = Math.toRadians(degrees);
+		float cos = (float) Math.cos(rad);
+		float sin = (float) Math.sin(rad);
+		postConcat(cos, sin, -sin, cos, 0, 0);
+		return true;
+	}
+
+	public boolean postRotate(float degrees, float px, float py) {
+		postTranslate(-px, -py);
+		postRotate(degrees);
+		postTranslate(px, py);
+		return true;
+	}
+
+	public boolean preRotate(float degrees) {
+		double rad = Math.toRadians(degrees);
+		float cos = (float) Math.cos(rad);
+		float sin = (float) Math.sin(rad);
+		preConcat(cos, sin, -sin, cos, 0, 0);
+		return true;
+	}
+
+	public boolean postConcat(Matrix other) {
+		postConcat(other.a, other.b, other.c, other.d, other.e, other.f);
+		return true;
+	}
+
+	public boolean preConcat(Matrix other) {
+		preConcat(other.a, other.b, other.c, other.d, other.e, other.f);
+		return true;
+	}
+
+	public boolean invert(Matrix inverse) {
+		float det = a * d - b * c;
+		if (det == 0)
+			return false;
+		float ia = d / det, ib = -b / det, ic = -c / det, id = a / det;
+		float ie = -(ia * e + ic * f);
+		float iff = -(ib * e + id * f);
+		inverse.a = ia;
+		inverse.b = ib;
+		inverse.c = ic;
+		inverse.d = id;
+		inverse.e = ie;
+		inverse.f = iff;
+		return true;
+	}
+
+	public void mapPoints(float[] pts) {
+		for (int i = 0; i + 1 < pts.length; i += 2) {
+			float x = pts[i], y = pts[i + 1];
+			pts[i] = a * x + c * y + e;
+			pts[i + 1] = b * x + d * y + f;
+		}
+	}
+
+	public float mapRadius(float radius) {
+		float sx = (float) Math.hypot(a, b);
+		float sy = (float) Math.hypot(c, d);
+		return radius * (float) Math.sqrt(sx * sy);
+	}
+
+	public boolean mapRect(RectF rect) {
+		float[] pts = { rect.left, rect.top, rect.right, rect.top, rect.right,
+				rect.bottom, rect.left, rect.bottom };
+		mapPoints(pts);
+		float l = pts[0], t = pts[1], r = pts[0], bo = pts[1];
+		for (int i = 2; i < 8; i += 2) {
+			l = Math.min(l, pts[i]);
+			r = Math.max(r, pts[i]);
+			t = Math.min(t, pts[i + 1]);
+			bo = Math.max(bo, pts[i + 1]);
+		}
+		rect.set(l, t, r, bo);
+		return b == 0 && c == 0;
+	}
+
+	public static final int MSCALE_X = 0;
+	public static final int MSKEW_X = 1;
+	public static final int MTRANS_X = 2;
+	public static final int MSKEW_Y = 3;
+	public static final int MSCALE_Y = 4;
+	public static final int MTRANS_Y = 5;
+	public static final int MPERSP_0 = 6;
+	public static final int MPERSP_1 = 7;
+	public static final int MPERSP_2 = 8;
+
+	public void getValues(float[] values) {
+		values[MSCALE_X] = a;
+		values[MSKEW_X] = c;
+		values[MTRANS_X] = e;
+		values[MSKEW_Y] = b;
+		values[MSCALE_Y] = d;
+		values[MTRANS_Y] = f;
+		values[MPERSP_0] = 0;
+		values[MPERSP_1] = 0;
+		values[MPERSP_2] = 1;
+	}
+
+	public void setValues(float[] values) {
+		a = values[MSCALE_X];
+		c = values[MSKEW_X];
+		e = values[MTRANS_X];
+		b = values[MSKEW_Y];
+		d = values[MSCALE_Y];
+		f = values[MTRANS_Y];
+	}
+}
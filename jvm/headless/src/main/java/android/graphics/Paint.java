@@ -0,0 +1,134 @@
+package android.graphics;
+
+public class Paint {
+	public enum Style {
+		FILL, STROKE, FILL_AND_STROKE
+	}
+
+	public enum Align {
+		LEFT, CENTER, RIGHT
+	}
+
+	public static final int ANTI_ALIAS_FLAG = 1;
+
+	private int color = Color.BLACK;
+	private boolean antiAlias;
+	private Style style = Style.FILL;
+	private Align align = Align.LEFT;
+	private float strokeWidth;
+	private float textSize = 12;
+	private Shader shader;
+	private PathEffect pathEffect;
+
+	public Paint() {
+	}
+
+	public Paint(int flags) {
+		antiAlias = (flags & ANTI_ALIAS_FLAG) != 0;
+	}
+
+	public Paint(Paint paint) {
+		set(paint);
+	}
+
+	public void set(Paint src) {
+		color = src.color;
+		antiAlias = src.antiAlias;
+		style = src.style;
+		align = src.align;
+		strokeWidth = src.strokeWidth;
+		textSize = src.textSize;
+		shader = src.shader;
+		pathEffect = src.pathEffect;
+	}
+
+	public int getColor() {
+		return color;
+	}
+
+	public void setColor(int color) {
+		this.color = color;
+	}
+
+	public int getAlpha() {
+		return color >>> 24;
+	}
+
+	public void setAlpha(int a) {
+		color = (color & 0x00FFFFFF) | ((a & 0xFF) << 24);
+	}
+
+	public void setARGB(int a, int r, int g, int b) {
+		color = Color.argb(a, r, g, b);
+	}
+
+	public boolean isAntiAlias() {
+		return antiAlias;
+	}
+
+	public void setAntiAlias(boolean aa) {
+		antiAlias = aa;
+	}
+
+	public Style getStyle() {
+		return style;
+	}
+
+	public void setStyle(Style style) {
+		this.style = style;
+	}
+
+	public Align getTextAlign() {
+		return align;
+	}
+
+	public void setTextAlign(Align align) {
+		this.align = align;
+	}
+
+	public float getStrokeWidth() {
+		return strokeWidth;
+	}
+
+	public void setStrokeWidth(float width) {
+		strokeWidth = width;
+	}
+
+	public float getTextSize() {
+		return textSize;
+	}
+
+	public void setTextSize(float textSize) {
+		this.textSize = textSize;
+	}
+
+	public Shader getShader() {
+		return shader;
+	}
+
+	public Shader setShader(Shader shader) {
+		this.shader = shader;
+		return shader;
+	}
+
+	public PathEffect getPathEffect() {
+		return pathEffect;
+	}
+
+	public PathEffect setPathEffect(PathEffect effect) {
+		pathEffect = effect;
+		return effect;
+	}
+
+	public float ascent() {
+		return -0.93f * textSize;
+	}
+
+	public float descent() {
+		return 0.24f * textSize;
+	}
+
+	public float measureText(String text) {
+		return text.length() * textSize * 0.55f;
+	}
+}
@@ -0,0 +1,120 @@
+package android.graphics;
+
+/**
+ * Stand-in for the Android path. Only keeps a count of the verbs and the
+ * bounds of the points it was given, which is enough to exercise the library
+ * on a plain JVM.
+ */
+public class Path {
+	public enum Direction {
+		CW, CCW
+	}
+
+	private int verbs;
+	private final RectF bounds = new RectF();
+	private boolean isEmpty = true;
+
+	public Path() {
+	}
+
+	public Path(Path src) {
+		set(src);
+	}
+
+	public void set(Path src) {
+		verbs = src.verbs;
+		bounds.set(src.bounds);
+		isEmpty = src.isEmpty;
+	}
+
+	public void reset() {
+		verbs = 0;
+		isEmpty = true;
+		bounds.setEmpty();
+	}
+
+	public void rewind() {
+		reset();
+	}
+
+	public boolean isEmpty() {
+		return isEmpty;
+	}
+
+	private void add(float x, float y) {
+		if (isEmpty) {
+			bounds.set(x, y, x, y);
+			isEmpty = false;
+		} else {
+			bounds.left = Math.min(bounds.left, x);
+			bounds.top = Math.min(bounds.top, y);
+			bounds.right = Math.max(bounds.right, x);
+			bounds.bottom = Math.max(bounds.bottom, y);
+		}
+	}
+
+	public void moveTo(float x, float y) {
+		verbs++;
+		add(x, y);
+	}
+
+	public void lineTo(float x, float y) {
+		verbs++;
+		add(x, y);
+	}
+
+	public void quadTo(float x1, float y1, float x2, float y2) {
+		verbs++;
+		add(x1, y1);
+		add(x2, y2);
+	}
+
+	public void cubicTo(float x1, float y1, float x2, float y2, float x3,
+			float y3) {
+		verbs++;
+		add(x1, y1);
+		add(x2, y2);
+		add(x3, y3);
+	}
+
+	public void arcTo(RectF oval, float startAngle, float sweepAngle) {
+		verbs++;
+		add(oval.left, oval.top);
+		add(oval.right, oval.bottom);
+	}
+
+	public void close() {
+		verbs++;
+	}
+
+	public void addRect(RectF rect, Direction dir) {
+		verbs += 5;
+		add(rect.left, rect.top);
+		add(rect.right, rect.bottom);
+	}
+
+	public void addPath(Path src) {
+		verbs += src.verbs;
+		if (!src.isEmpty) {
+			add(src.bounds.left, src.bounds.top);
+			add(src.bounds.right, src.bounds.bottom);
+		}
+	}
+
+	public void offset(float dx, float dy) {
+		bounds.offset(dx, dy);
+	}
+
+	public void transform(Matrix matrix) {
+		matrix.mapRect(bounds);
+	}
+
+	public void transform(Matrix matrix, Path dst) {
+		dst.set(this);
+		dst.transform(matrix);
+	}
+
+	public void computeBounds(RectF out, boolean exact) {
+		out.set(bounds);
+	}
+}
@@ -0,0 +1,32 @@
+package android.graphics;
+
+public class PointF {
+	public float x;
+	public float y;
+
+	public PointF() {
+	}
+
+	public PointF(float x, float y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	public final void set(float x, float y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	public final void offset(float dx, float dy) {
+		x += dx;
+		y += dy;
+	}
+
+	public final float length() {
+		return length(x, y);
+	}
+
+	public static float length(float x, float y) {
+		return (float) Math.sqrt(x * x + y * y);
+	}
+}
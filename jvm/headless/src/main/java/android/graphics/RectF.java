@@ -0,0 +1,97 @@
+package android.graphics;
+
+public class RectF {
+	public float left;
+	public float top;
+	public float right;
+	public float bottom;
+
+	public RectF() {
+	}
+
+	public RectF(float left, float top, float right, float bottom) {
+		set(left, top, right, bottom);
+	}
+
+	public RectF(RectF r) {
+		set(r);
+	}
+
+	public final void set(float left, float top, float right, float bottom) {
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+	}
+
+	public final void set(RectF r) {
+		set(r.left, r.top, r.right, r.bottom);
+	}
+
+	public final void set(Rect r) {
+		set(r.left, r.top, r.right, r.bottom);
+	}
+
+	public final float width() {
+		return right - left;
+	}
+
+	public final float height() {
+		return bottom - top;
+	}
+
+	public final boolean isEmpty() {
+		return left >= right || top >= bottom;
+	}
+
+	public void setEmpty() {
+		left = top = right = bottom = 0;
+	}
+
+	public void offset(float dx, float dy) {
+		left += dx;
+		right += dx;
+		top += dy;
+		bottom += dy;
+	}
+
+	public boolean contains(float x, float y) {
+		return left < right && top < bottom && x >= left && x < right
+				&& y >= top && y < bottom;
+	}
+
+	public boolean intersects(float l, float t, float r, float b) {
+		return left < r && l < right && top < b && t < bottom;
+	}
+
+	public static boolean intersects(RectF a, RectF b) {
+		return a.left < b.right && b.left < a.right && a.top < b.bottom
+				&& b.top < a.bottom;
+	}
+
+	public void union(float l, float t, float r, float b) {
+		if (l < r && t < b) {
+			if (left < right && top < bottom) {
+				if (left > l)
+					left = l;
+				if (top > t)
+					top = t;
+				if (right < r)
+					right = r;
+				if (bottom < b)
+					bottom = b;
+			} else {
+				set(l, t, r, b);
+			}
+		}
+	}
+
+	public void union(RectF r) {
+		union(r.left, r.top, r.right, r.bottom);
+	}
+
+	public String toString() {
+		return "RectF(" + left + ", " + top + ", " + right + ", " + bottom
+				+ ")";
+	}
+}
@@ -0,0 +1,25 @@
+package android.graphics;
+
+public class Shader {
+	public enum TileMode {
+		CLAMP, REPEAT, MIRROR
+	}
+
+	private Matrix localMatrix;
+
+	public boolean getLocalMatrix(Matrix localM) {
+		if (localMatrix != null) {
+			localM.set(localMatrix);
+			return !localMatrix.isIdentity();
+		}
+		localM.reset();
+		return false;
+	}
+
+	public void setLocalMatrix(Matrix localM) {
+		if (localM == null || localM.isIdentity())
+			localMatrix = null;
+		else
+			localMatrix = new Matrix(localM);
+	}
+}
@@ -0,0 +1,9 @@
+package android.graphics;
+
+public class SweepGradient extends Shader {
+	public SweepGradient(float cx, float cy, int colors[], float positions[]) {
+	}
+
+	public SweepGradient(float cx, float cy, int color0, int color1) {
+	}
+}
@@ -0,0 +1,310 @@
+package com.crocoware.infographix.java2d;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint.ColorSpaceType;
+import java.awt.MultipleGradientPaint.CycleMethod;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+import android.graphics.Paint.Style;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import com.crocoware.infographix.AbstractBorderedDrawable;
+import com.crocoware.infographix.BatchRenderer;
+import com.crocoware.infographix.ComposedBordered;
+import com.crocoware.infographix.IBorderedDrawable;
+import com.crocoware.infographix.IRenderer;
+import com.crocoware.infographix.utils.Dash;
+import com.crocoware.infographix.utils.PathBuffer;
+import com.crocoware.infographix.utils.ShaderCache;
+
+/**
+ * Draws the shapes with Java2D, for instance into a BufferedImage.
+ * 
+ * The paints are rendered as on Android : fill and stroke styles, butt caps
+ * and miter joins (limit 4), anti-aliasing, alpha, text size and alignment.
+ * The gradients created by a ShaderCache and the dashes created by Dash are
+ * rendered too; the other shaders and path effects cannot be inspected, and
+ * are rendered as plain colors and lines.
+ * 
+ * @author Benoit
+ * 
+ */
+public class Java2DRenderer implements IRenderer {
+
+	// Android default
+	private static final float MITER_LIMIT = 4;
+	// Bounds given when the graphics is not clipped
+	private static final int UNCLIPPED = Integer.MAX_VALUE / 2;
+
+	private final Graphics2D graphics;
+	// Saved transforms and clips
+	private final ArrayList<AffineTransform> savedTransforms = new ArrayList<AffineTransform>();
+	private final ArrayList<Shape> savedClips = new ArrayList<Shape>();
+	private final float[] values = new float[9];
+
+	/**
+	 * @param graphics
+	 *            its current transform and clip are those of the shapes (the
+	 *            clip should be set : nothing is culled without it)
+	 */
+	public Java2DRenderer(Graphics2D graphics) {
+		this.graphics = graphics;
+		graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+				RenderingHints.VALUE_STROKE_PURE);
+	}
+
+	/**
+	 * Draws the drawable into a new image, just big enough for it
+	 * 
+	 * @param scale
+	 *            the size of a unit of the drawable, in pixels
+	 * @param background
+	 *            the color of the image before drawing (0 : transparent)
+	 */
+	public static BufferedImage render(IBorderedDrawable drawable,
+			float scale, int background) {
+		RectF bounds = new RectF();
+		if (drawable instanceof ComposedBordered)
+			((ComposedBordered) drawable).getDrawBounds(bounds);
+		else if (drawable instanceof AbstractBorderedDrawable)
+			((AbstractBorderedDrawable) drawable).getDrawBounds(bounds);
+		else
+			bounds.set(drawable.getLeft(), drawable.getTop(),
+					drawable.getRight(), drawable.getBottom());
+		int width = Math.max(1, (int) Math.ceil(bounds.width() * scale));
+		int height = Math.max(1, (int) Math.ceil(bounds.height() * scale));
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			if (background != 0) {
+				graphics.setColor(new Color(background, true));
+				graphics.fillRect(0, 0, width, height);
+			}
+			graphics.setClip(0, 0, width, height);
+			graphics.scale(scale, scale);
+			graphics.translate(-bounds.left, -bounds.top);
+			drawable.draw(new Java2DRenderer(graphics));
+		} finally {
+			graphics.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Rasterises the diagrams of a batch into images (see render())
+	 */
+	public static BatchRenderer.Rasterizer<BufferedImage> createRasterizer(
+			final float scale, final int background) {
+		return new BatchRenderer.Rasterizer<BufferedImage>() {
+			public BufferedImage rasterize(IBorderedDrawable diagram) {
+				return render(diagram, scale, background);
+			}
+		};
+	}
+
+	public boolean usesPaths() {
+		return false;
+	}
+
+	public void drawPath(PathBuffer buffer, Path path, Paint paint) {
+		if (buffer.isEmpty())
+			return;
+		Path2D.Float shape = toShape(buffer);
+		Composite composite = setPaint(paint);
+		Style style = paint.getStyle();
+		if (style != Style.STROKE)
+			graphics.fill(shape);
+		if (style != Style.FILL) {
+			graphics.setStroke(toStroke(paint));
+			graphics.draw(shape);
+		}
+		graphics.setComposite(composite);
+	}
+
+	public void drawText(String text, float x, float y, Paint paint) {
+		Composite composite = setPaint(paint);
+		graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				paint.isAntiAlias() ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON
+						: RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+		graphics.setFont(graphics.getFont().deriveFont(paint.getTextSize()));
+		Align align = paint.getTextAlign();
+		if (align != Align.LEFT) {
+			float width = (float) graphics.getFont()
+					.getStringBounds(text, graphics.getFontRenderContext())
+					.getWidth();
+			x -= align == Align.CENTER ? width / 2 : width;
+		}
+		graphics.drawString(text, x, y);
+		graphics.setComposite(composite);
+	}
+
+	public void save() {
+		savedTransforms.add(graphics.getTransform());
+		savedClips.add(graphics.getClip());
+	}
+
+	public void restore() {
+		int last = savedTransforms.size() - 1;
+		if (last < 0)
+			throw new IllegalStateException("Nothing saved");
+		graphics.setTransform(savedTransforms.remove(last));
+		graphics.setClip(savedClips.remove(last));
+	}
+
+	public void concat(Matrix matrix) {
+		graphics.transform(toTransform(matrix));
+	}
+
+	public void getMatrix(Matrix out) {
+		AffineTransform transform = graphics.getTransform();
+		values[Matrix.MSCALE_X] = (float) transform.getScaleX();
+		values[Matrix.MSKEW_X] = (float) transform.getShearX();
+		values[Matrix.MTRANS_X] = (float) transform.getTranslateX();
+		values[Matrix.MSKEW_Y] = (float) transform.getShearY();
+		values[Matrix.MSCALE_Y] = (float) transform.getScaleY();
+		values[Matrix.MTRANS_Y] = (float) transform.getTranslateY();
+		values[Matrix.MPERSP_0] = 0;
+		values[Matrix.MPERSP_1] = 0;
+		values[Matrix.MPERSP_2] = 1;
+		out.setValues(values);
+	}
+
+	public boolean getClipBounds(Rect out) {
+		java.awt.Rectangle clip = graphics.getClipBounds();
+		if (clip == null) {
+			// Not clipped : everything may be drawn
+			out.set(-UNCLIPPED, -UNCLIPPED, UNCLIPPED, UNCLIPPED);
+			return true;
+		}
+		if (clip.isEmpty())
+			return false;
+		out.set(clip.x, clip.y, clip.x + clip.width, clip.y + clip.height);
+		return true;
+	}
+
+	public boolean quickReject(RectF rect) {
+		Shape clip = graphics.getClip();
+		// A pixel around for the anti-aliasing
+		return clip != null
+				&& !clip.intersects(rect.left - 1, rect.top - 1,
+						rect.width() + 2, rect.height() + 2);
+	}
+
+	/**
+	 * Sets the color or gradient and the anti-aliasing of the paint
+	 * 
+	 * @return the composite to restore after drawing
+	 */
+	private Composite setPaint(Paint paint) {
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, paint
+				.isAntiAlias() ? RenderingHints.VALUE_ANTIALIAS_ON
+				: RenderingHints.VALUE_ANTIALIAS_OFF);
+		Composite composite = graphics.getComposite();
+		int color = paint.getColor();
+		Shader shader = paint.getShader();
+		ShaderCache.Gradient gradient = shader == null ? null : ShaderCache
+				.find(shader);
+		if (gradient == null) {
+			graphics.setPaint(new Color(color, true));
+			return composite;
+		}
+		Matrix local = new Matrix();
+		shader.getLocalMatrix(local);
+		if (gradient.isSweep()) {
+			graphics.setPaint(new SweepPaint(gradient, toTransform(local)));
+		} else {
+			int[] colors = gradient.getColors();
+			Color[] awtColors = new Color[colors.length];
+			float[] fractions = new float[colors.length];
+			for (int i = 0; i < colors.length; i++) {
+				awtColors[i] = new Color(colors[i], true);
+				fractions[i] = (float) i / (colors.length - 1);
+			}
+			// The shader goes from (0,0) to (1,0), placed by its local matrix
+			graphics.setPaint(new LinearGradientPaint(new Point2D.Float(0, 0),
+					new Point2D.Float(1, 0), fractions, awtColors,
+					CycleMethod.NO_CYCLE, ColorSpaceType.SRGB,
+					toTransform(local)));
+		}
+		// The alpha of the paint applies to its shader
+		int alpha = color >>> 24;
+		if (alpha != 0xff)
+			graphics.setComposite(AlphaComposite.getInstance(
+					AlphaComposite.SRC_OVER, alpha / 255f));
+		return composite;
+	}
+
+	private static BasicStroke toStroke(Paint paint) {
+		Dash dash = paint.getPathEffect() == null ? null : Dash.find(paint
+				.getPathEffect());
+		if (dash == null)
+			return new BasicStroke(paint.getStrokeWidth(),
+					BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, MITER_LIMIT);
+		return new BasicStroke(paint.getStrokeWidth(), BasicStroke.CAP_BUTT,
+				BasicStroke.JOIN_MITER, MITER_LIMIT, dash.getIntervals(),
+				dash.getPhase());
+	}
+
+	private AffineTransform toTransform(Matrix matrix) {
+		matrix.getValues(values);
+		return new AffineTransform(values[Matrix.MSCALE_X],
+				values[Matrix.MSKEW_Y], values[Matrix.MSKEW_X],
+				values[Matrix.MSCALE_Y], values[Matrix.MTRANS_X],
+				values[Matrix.MTRANS_Y]);
+	}
+
+	/**
+	 * @return the commands of the buffer, as a Java2D shape
+	 */
+	static Path2D.Float toShape(PathBuffer buffer) {
+		Path2D.Float shape = new Path2D.Float(Path2D.WIND_NON_ZERO,
+				buffer.getOpCount());
+		float[] c = buffer.getCoords();
+		int n = 0;
+		int count = buffer.getOpCount();
+		for (int i = 0; i < count; i++) {
+			byte op = buffer.getOp(i);
+			switch (op) {
+			case PathBuffer.MOVE_TO:
+				shape.moveTo(c[n], c[n + 1]);
+				break;
+			case PathBuffer.LINE_TO:
+				shape.lineTo(c[n], c[n + 1]);
+				break;
+			case PathBuffer.CUBIC_TO:
+				shape.curveTo(c[n], c[n + 1], c[n + 2], c[n + 3], c[n + 4],
+						c[n + 5]);
+				break;
+			case PathBuffer.ARC_TO:
+				// Java2D angles go counterclockwise on the screen
+				Arc2D.Float arc = new Arc2D.Float(c[n], c[n + 1], c[n + 2]
+						- c[n], c[n + 3] - c[n + 1], -c[n + 4], -c[n + 5],
+						Arc2D.OPEN);
+				// A line from the current point, as Path.arcTo()
+				shape.append(arc, i > 0);
+				break;
+			}
+			n += PathBuffer.getCoordCount(op);
+		}
+		return shape;
+	}
+}
@@ -0,0 +1,97 @@
+package com.crocoware.infographix.java2d;
+
+import java.awt.Paint;
+import java.awt.PaintContext;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import com.crocoware.infographix.utils.ShaderCache;
+
+/**
+ * A sweep gradient, which Java2D does not have : the color depends on the
+ * angle around the center, as android.graphics.SweepGradient
+ * 
+ * @author Benoit
+ * 
+ */
+class SweepPaint implements Paint {
+
+	// Number of colors computed along the turn
+	private static final int STEPS = 1024;
+
+	// Colors along the turn, starting at angle 0
+	private final int[] colors = new int[STEPS];
+	// From the space of the gradient to the space of the shapes
+	private final AffineTransform local;
+
+	/**
+	 * @param local
+	 *            the local matrix of the gradient
+	 */
+	SweepPaint(ShaderCache.Gradient gradient, AffineTransform local) {
+		this.local = local;
+		for (int i = 0; i < STEPS; i++)
+			colors[i] = gradient.getColorAt((float) i / (STEPS - 1));
+	}
+
+	public int getTransparency() {
+		return Transparency.TRANSLUCENT;
+	}
+
+	public PaintContext createContext(ColorModel cm, Rectangle deviceBounds,
+			Rectangle2D userBounds, AffineTransform xform, RenderingHints hints) {
+		AffineTransform toGradient = new AffineTransform(xform);
+		toGradient.concatenate(local);
+		try {
+			toGradient.invert();
+		} catch (NoninvertibleTransformException e) {
+			toGradient.setToScale(0, 0);
+		}
+		return new Context(toGradient);
+	}
+
+	private final class Context implements PaintContext {
+		// From the pixels to the space of the gradient
+		private final AffineTransform toGradient;
+		private final ColorModel model = ColorModel.getRGBdefault();
+		private final double[] point = new double[2];
+
+		Context(AffineTransform toGradient) {
+			this.toGradient = toGradient;
+		}
+
+		public void dispose() {
+		}
+
+		public ColorModel getColorModel() {
+			return model;
+		}
+
+		public Raster getRaster(int x, int y, int w, int h) {
+			WritableRaster raster = model.createCompatibleWritableRaster(w, h);
+			int[] data = new int[w * h];
+			for (int j = 0; j < h; j++) {
+				for (int i = 0; i < w; i++) {
+					// Center of the pixel
+					point[0] = x + i + 0.5;
+					point[1] = y + j + 0.5;
+					toGradient.transform(point, 0, point, 0, 1);
+					double angle = Math.atan2(point[1], point[0]);
+					if (angle < 0)
+						angle += 2 * Math.PI;
+					int step = (int) (angle / (2 * Math.PI) * (STEPS - 1));
+					data[j * w + i] = colors[Math.min(step, STEPS - 1)];
+				}
+			}
+			raster.setDataElements(0, 0, w, h, data);
+			return raster;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.graphics.Bitmap;
+
+import com.crocoware.infographix.BatchRenderer.Result;
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class BatchRendererTest {
+
+	private static final byte[] SPEC = "input 0 0 0 30\nforward 100\n"
+			.getBytes(Charset.forName("UTF-8"));
+
+	/**
+	 * Keeps the results, by id
+	 */
+	private static final class Results implements BatchRenderer.Sink<Bitmap> {
+		final Map<String, Result<Bitmap>> results = Collections
+				.synchronizedMap(new HashMap<String, Result<Bitmap>>());
+
+		public void onResult(Result<Bitmap> result) {
+			results.put(result.getId(), result);
+		}
+	}
+
+	/**
+	 * Counts the jobs running at once, each one waiting for the gate
+	 */
+	private static final class GatedBuilder implements
+			SnapshotRenderer.Builder {
+		final CountDownLatch gate;
+		final AtomicInteger running, maxRunning;
+
+		GatedBuilder(CountDownLatch gate, AtomicInteger running,
+				AtomicInteger maxRunning) {
+			this.gate = gate;
+			this.running = running;
+			this.maxRunning = maxRunning;
+		}
+
+		public IBorderedDrawable build() {
+			int now = running.incrementAndGet();
+			while (true) {
+				int max = maxRunning.get();
+				if (now <= max || maxRunning.compareAndSet(max, now))
+					break;
+			}
+			try {
+				gate.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+			return new PipeShape(new Segment(0, 0, 0, 10), 10);
+		}
+	}
+
+	private ExecutorService executor;
+	private Results sink;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(8);
+		sink = new Results();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private BatchRenderer<Bitmap> renderer(int maxJobs, long memoryBudget) {
+		return new BatchRenderer<Bitmap>(executor, maxJobs, memoryBudget,
+				BatchRenderer.createBitmapRasterizer(2), sink);
+	}
+
+	@Test
+	public void givesAResultForEachJob() throws InterruptedException {
+		BatchRenderer<Bitmap> renderer = renderer(3, 1 << 20);
+		for (int i = 0; i < 20; i++)
+			renderer.submit("job " + i, SPEC, 1024);
+		renderer.awaitCompletion();
+		assertEquals(20, sink.results.size());
+		for (int i = 0; i < 20; i++) {
+			Result<Bitmap> result = sink.results.get("job " + i);
+			assertNull(result.getError());
+			// The pipe and its edges, twice as large
+			assertTrue(result.getOutput().getWidth() >= 200);
+			assertTrue(result.getOutput().getHeight() >= 60);
+		}
+	}
+
+	@Test
+	public void waitsWhileTheJobsAreInProgress() throws InterruptedException {
+		final BatchRenderer<Bitmap> renderer = renderer(2, 1 << 20);
+		CountDownLatch gate = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger(), max = new AtomicInteger();
+		final GatedBuilder builder = new GatedBuilder(gate, running, max);
+		renderer.submit("1", builder, 1);
+		renderer.submit("2", builder, 1);
+		final CountDownLatch submitted = new CountDownLatch(1);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					renderer.submit("3", builder, 1);
+					submitted.countDown();
+				} catch (InterruptedException e) {
+					// Ends the test
+				}
+			}
+		};
+		producer.start();
+		assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+		gate.countDown();
+		assertTrue(submitted.await(10, TimeUnit.SECONDS));
+		renderer.awaitCompletion();
+		assertEquals(3, sink.results.size());
+		assertEquals(2, max.get());
+	}
+
+	@Test
+	public void keepsTheJobsWithinTheMemoryBudget()
+			throws InterruptedException {
+		final BatchRenderer<Bitmap> renderer = renderer(8, 10 * 1024);
+		CountDownLatch gate = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger(), max = new AtomicInteger();
+		final GatedBuilder builder = new GatedBuilder(gate, running, max);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					// 3 at most fit the budget
+					for (int i = 0; i < 6; i++)
+						renderer.submit("small " + i, builder, 3 * 1024);
+					// Far over the budget : alone
+					renderer.submit("large", builder, 1L << 40);
+				} catch (InterruptedException e) {
+					// Ends the test
+				}
+			}
+		};
+		producer.start();
+		Thread.sleep(200);
+		assertEquals(3, running.get());
+		gate.countDown();
+		producer.join(10000);
+		renderer.awaitCompletion();
+		assertEquals(7, sink.results.size());
+		assertEquals(3, max.get());
+	}
+
+	@Test
+	public void givesTheErrorsAsResults() throws InterruptedException {
+		final RuntimeException failure = new IllegalStateException("Broken");
+		final List<String> drawn = Collections
+				.synchronizedList(new ArrayList<String>());
+		BatchRenderer<Bitmap> renderer = new BatchRenderer<Bitmap>(executor,
+				2, 1 << 20, new BatchRenderer.Rasterizer<Bitmap>() {
+					public Bitmap rasterize(IBorderedDrawable diagram) {
+						if (diagram.getWidth() > 50)
+							throw failure;
+						drawn.add("small");
+						return Bitmap.createBitmap(1, 1,
+								Bitmap.Config.ARGB_8888);
+					}
+				}, sink);
+		renderer.submit("wrong spec", "input 0 0 0 30\nfoo 1"
+				.getBytes(Charset.forName("UTF-8")), 1);
+		renderer.submit("wrong rasterizer", SPEC, 1);
+		renderer.submit("small", new SnapshotRenderer.Builder() {
+			public IBorderedDrawable build() {
+				return new PipeShape(new Segment(0, 0, 0, 10), 10);
+			}
+		}, 1);
+		renderer.awaitCompletion();
+
+		Result<Bitmap> result = sink.results.get("wrong spec");
+		assertNull(result.getOutput());
+		assertTrue(result.getError() instanceof IllegalArgumentException);
+		assertEquals(0, result.getRasterizeNanos());
+		result = sink.results.get("wrong rasterizer");
+		assertNull(result.getOutput());
+		assertEquals(failure, result.getError());
+		result = sink.results.get("small");
+		assertNull(result.getError());
+		assertEquals(1, result.getOutput().getWidth());
+		assertEquals(1, drawn.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void needsAJob() {
+		renderer(0, 1 << 20);
+	}
+}
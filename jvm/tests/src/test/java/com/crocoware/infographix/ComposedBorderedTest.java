@@ -0,0 +1,194 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import com.crocoware.infographix.java2d.Java2DRenderer;
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class ComposedBorderedTest {
+
+	private static final int BODY = 0xffff0000;
+
+	/**
+	 * Overlapping parts, each one with an arrow
+	 */
+	private static ComposedBordered arrows() {
+		Pipeline pipe = new Pipeline(new Segment(20, 20, 20, 60));
+		for (int i = 0; i < 30; i++) {
+			pipe.forward(15).setArrow(Arrow.STANDARD);
+			if (i % 7 == 3)
+				pipe.turn(40, 30);
+		}
+		ComposedBordered composed = (ComposedBordered) pipe.getDrawable();
+		composed.setEdgeWidth(3);
+		composed.setBodyColor(BODY);
+		return composed;
+	}
+
+	/**
+	 * The pixels, as transparent, body, edge or other (the anti-aliasing may
+	 * differ)
+	 */
+	private static int[] render(ComposedBordered composed) {
+		BufferedImage image = Java2DRenderer.render(composed, 1, 0);
+		int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(),
+				null, 0, image.getWidth());
+		for (int i = 0; i < pixels.length; i++) {
+			int color = pixels[i];
+			int red = (color >> 16) & 0xff, green = (color >> 8) & 0xff;
+			if (color >>> 24 < 200)
+				pixels[i] = 0;
+			else if (red > 200 && green < 60)
+				pixels[i] = 1;
+			else if (red < 60 && green < 60)
+				pixels[i] = 2;
+			else
+				pixels[i] = 3;
+		}
+		return pixels;
+	}
+
+	@Test
+	public void drawsTheSameWhenBatched() {
+		int[] expected = render(arrows());
+		ComposedBordered batched = arrows();
+		batched.setBatched(true);
+		int[] pixels = render(batched);
+		assertEquals(expected.length, pixels.length);
+		int differences = 0;
+		for (int i = 0; i < pixels.length; i++)
+			if (pixels[i] != expected[i])
+				differences++;
+		assertEquals(0, differences);
+	}
+
+	/**
+	 * A row of pipes, 10 wide and 30 high, each one overlapping the next
+	 */
+	private static PipeShape[] row(int count) {
+		PipeShape[] pipes = new PipeShape[count];
+		for (int i = 0; i < count; i++)
+			pipes[i] = new PipeShape(new Segment(8 * i, 0, 8 * i, 30), 10);
+		return pipes;
+	}
+
+	private static ComposedBordered compose(PipeShape[] pipes) {
+		ComposedBordered composed = new ComposedBordered();
+		for (PipeShape pipe : pipes)
+			composed.push(pipe);
+		return composed;
+	}
+
+	private static void assertFinds(ComposedBordered composed,
+			PipeShape[] pipes) {
+		// Part 0 is drawn on top
+		assertEquals(Arrays.asList(pipes[0], pipes[1]),
+				composed.findPartsAt(9, 15));
+		assertEquals(Arrays.asList(pipes[3]), composed.findPartsAt(27, 1));
+		assertEquals(Arrays.asList(), composed.findPartsAt(9, 31));
+		assertEquals(Arrays.asList(pipes[0], pipes[1], pipes[2], pipes[3]),
+				composed.findPartsIn(new RectF(1, 1, 25, 2)));
+		assertEquals(Arrays.asList(), composed.findPartsIn(new RectF(-20,
+				-20, -10, -10)));
+	}
+
+	@Test
+	public void findsThePartsAtAPoint() {
+		// The large composition is indexed, not the small one
+		for (int count : new int[] { 8, 100 }) {
+			PipeShape[] pipes = row(count);
+			assertFinds(compose(pipes), pipes);
+		}
+	}
+
+	@Test
+	public void findsThePartsOfAMovedShape() {
+		for (int count : new int[] { 8, 100 }) {
+			PipeShape[] pipes = row(count);
+			ComposedBordered composed = compose(pipes);
+			composed.findPartsAt(0, 0);
+			composed.translate(100, 0);
+			assertEquals(Arrays.asList(pipes[0], pipes[1]),
+					composed.findPartsAt(109, 15));
+			assertEquals(Arrays.asList(), composed.findPartsAt(9, 15));
+
+			// Twice as large
+			float width = composed.getWidth(), height = composed.getHeight();
+			composed.resize(0, 0, 2 * width, 2 * height);
+			assertEquals(Arrays.asList(pipes[0], pipes[1]),
+					composed.findPartsAt(18, 30));
+			assertEquals(Arrays.asList(pipes[1], pipes[2], pipes[3]),
+					composed.findPartsIn(new RectF(33, 2, 50, 4)));
+		}
+	}
+
+	@Test
+	public void findsAMovedPart() {
+		for (int count : new int[] { 8, 100 }) {
+			PipeShape[] pipes = row(count);
+			ComposedBordered composed = compose(pipes);
+			assertFinds(composed, pipes);
+			pipes[1].translate(0, 100);
+			assertEquals(Arrays.asList(pipes[0]), composed.findPartsAt(9, 15));
+			assertEquals(Arrays.asList(pipes[1]),
+					composed.findPartsAt(9, 115));
+			List<IBorderedDrawable> found = composed.findPartsIn(new RectF(1,
+					1, 25, 2));
+			assertEquals(Arrays.asList(pipes[0], pipes[2], pipes[3]), found);
+		}
+	}
+
+	private static int drawCalls(ComposedBordered composed, float scale) {
+		Canvas canvas = new Canvas();
+		canvas.scale(scale, scale);
+		composed.draw(canvas);
+		return canvas.getDrawCallCount();
+	}
+
+	@Test
+	public void drawsTheBodiesOnlyWhenSimplified() {
+		PipeShape[] pipes = row(100);
+		for (int i = 0; i < pipes.length; i += 10)
+			pipes[i].setText("pipe " + i);
+		ComposedBordered composed = compose(pipes);
+		// Above the simplified scale : the bodies, the edges and the texts
+		composed.setSimplifiedScale(0.5f);
+		int full = drawCalls(composed, 1);
+		assertEquals(2 * 100 + 10, full);
+
+		// Below : the bodies, merged as they share the same style
+		assertEquals(1, drawCalls(composed, 0.25f));
+		// Smaller than a pixel : nothing
+		assertEquals(0, drawCalls(composed, 0.001f));
+		// Back in full
+		assertEquals(full, drawCalls(composed, 1));
+	}
+
+	@Test
+	public void skipsThePartsSmallerThanHalfAPixel() {
+		PipeShape[] pipes = row(100);
+		pipes[50].setBodyColor(0xff00ff00);
+		pipes[50].reshape(new Segment(400, 0, 400, 1), 1);
+		ComposedBordered composed = compose(pipes);
+		composed.setSimplifiedScale(4);
+		// Without the different part in the middle, both runs are merged
+		assertEquals(1, drawCalls(composed, 0.25f));
+		// Large enough to be drawn
+		assertEquals(3, drawCalls(composed, 2));
+	}
+}
@@ -0,0 +1,135 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.utils.Segment;
+import com.crocoware.infographix.utils.ShaderCache;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class InstrumentationTest {
+
+	private Instrumentation.Counters counters;
+
+	@Before
+	public void setUp() {
+		counters = new Instrumentation.Counters();
+		Instrumentation.setListener(counters);
+	}
+
+	@After
+	public void tearDown() {
+		Instrumentation.setListener(null);
+	}
+
+	/**
+	 * A row of 40 pipes, half of them out of a canvas of 100x100
+	 */
+	private static PipeShape[] row() {
+		PipeShape[] pipes = new PipeShape[40];
+		for (int i = 0; i < pipes.length; i++)
+			pipes[i] = new PipeShape(new Segment(5 * i, 0, 5 * i, 30), 5);
+		return pipes;
+	}
+
+	private static int draw(IBorderedDrawable drawable) {
+		Canvas canvas = new Canvas(Bitmap.createBitmap(100, 100,
+				Bitmap.Config.ARGB_8888));
+		drawable.draw(canvas);
+		return canvas.getDrawCallCount();
+	}
+
+	@Test
+	public void countsTheDrawsAndTheBuilds() {
+		PipeShape[] pipes = row();
+		ComposedBordered composed = new ComposedBordered();
+		for (PipeShape pipe : pipes)
+			composed.push(pipe);
+		int drawCalls = draw(composed);
+		assertEquals(drawCalls, counters.getDrawCallCount());
+		assertEquals(40, counters.getPartsVisited()
+				+ counters.getPartsCulled());
+		assertTrue(counters.getPartsCulled() > 10);
+		assertEquals(2 * counters.getPartsVisited(), drawCalls);
+		// The bodies and the edges of the parts drawn, at least
+		assertTrue(counters.getBuildCount() >= drawCalls);
+		assertEquals(0, counters.getRebuildCount());
+
+		// Only the moved part is built again
+		long builds = counters.getBuildCount();
+		pipes[0].reshape(new Segment(0, 0, 0, 20), 5);
+		draw(composed);
+		assertEquals(builds, counters.getBuildCount());
+		assertEquals(2, counters.getRebuildCount());
+	}
+
+	@Test
+	public void countsTheShadersReused() {
+		ShaderCache cache = new ShaderCache();
+		cache.getLinearGradient(0, 0, 10, 0, 0xff0000ff, 0xffff0000);
+		cache.getLinearGradient(0, 0, 20, 0, 0xff0000ff, 0xffff0000);
+		cache.getLinearGradient(0, 0, 20, 0, 0xff0000ff, 0xff00ff00);
+		assertEquals(2, counters.getShadersCreated());
+		assertEquals(1, counters.getShadersReused());
+		assertEquals(1 / 3f, counters.getShaderHitRate(), 1e-6f);
+	}
+
+	@Test
+	public void countsThePipelineUpdates() {
+		Parameter length = new Parameter(20);
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		pipe.forward(10).forward(length).forward(10).turn(45, 10);
+		length.set(30);
+		assertEquals(1, counters.getUpdateCount());
+		// The pipe, and the shapes after it
+		assertEquals(3, counters.getStepsUpdated());
+
+		pipe.beginChanges();
+		length.set(40);
+		length.set(50);
+		pipe.endChanges();
+		assertEquals(2, counters.getUpdateCount());
+		assertEquals(6, counters.getStepsUpdated());
+	}
+
+	@Test
+	public void countsNothingWithoutListener() {
+		Instrumentation.setListener(null);
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		pipe.setBodyGradient(0xff0000ff, 0xffff0000);
+		draw(pipe);
+		assertEquals(0, counters.getBuildCount());
+		assertEquals(0, counters.getDrawCallCount());
+		assertEquals(0, counters.getShadersCreated());
+	}
+
+	@Test
+	public void givesTheTotalsPerFrame() {
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		draw(pipe);
+		counters.endFrame();
+		draw(pipe);
+		counters.endFrame();
+		assertEquals(2, counters.getFrameCount());
+		String dump = counters.dump();
+		assertTrue(dump, dump.startsWith("frames 2\n"));
+		assertTrue(dump, dump.contains("drawCalls 4 (2/frame)\n"));
+		assertTrue(dump, dump.contains("shaderHitRate 100%\n"));
+
+		counters.reset();
+		assertEquals(0, counters.getFrameCount());
+		assertEquals(0, counters.getDrawCallCount());
+		assertEquals(0, counters.getBuildCount());
+	}
+}
@@ -0,0 +1,162 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * The shapes moved after a parameter changed must be those a new pipeline
+ * would build with the new value
+ * 
+ * @author Benoit
+ * 
+ */
+public class PipelineTest {
+
+	static String svg(IBorderedDrawable drawable) throws IOException {
+		StringWriter out = new StringWriter();
+		SvgExporter.export(drawable, out);
+		return out.toString();
+	}
+
+	/**
+	 * A pipeline using every kind of shape, whose sizes depend on the
+	 * expressions
+	 */
+	private static Pipeline build(Expression length, Expression angle,
+			Expression ratio, Expression width) {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		pipe.forward(length).setBodyGradient(0xff0000ff, 0xffff0000);
+		pipe.turn(angle, length).setBodyColor(0xff00ff00);
+		pipe.split(Expression.constant(20), ratio).tag("split");
+		pipe.select(0).forward(length).setWidth(width).tag("up");
+		pipe.back("split").select(1).forward(length.times(2));
+		pipe.turnLeft(angle).setBodyGradient(0xffffff00);
+		pipe.joinAfter("up", 20).forward(30).setArrow(Arrow.STANDARD);
+		return pipe;
+	}
+
+	private static Pipeline build(float length, float angle, float ratio,
+			float width) {
+		return build(Expression.constant(length), Expression.constant(angle),
+				Expression.constant(ratio), Expression.constant(width));
+	}
+
+	@Test
+	public void updatesMatchARebuild() throws IOException {
+		Parameter length = new Parameter(40);
+		Parameter angle = new Parameter(30);
+		Parameter ratio = new Parameter(0.3f);
+		Parameter width = new Parameter(25);
+		Pipeline pipe = build(length, angle, ratio, width);
+		String before = svg(pipe.getDrawable());
+		assertEquals(svg(build(40, 30, 0.3f, 25).getDrawable()), before);
+
+		length.set(55);
+		assertEquals(svg(build(55, 30, 0.3f, 25).getDrawable()),
+				svg(pipe.getDrawable()));
+		angle.set(-45);
+		ratio.set(0.6f);
+		assertEquals(svg(build(55, -45, 0.6f, 25).getDrawable()),
+				svg(pipe.getDrawable()));
+		width.set(12);
+		assertEquals(svg(build(55, -45, 0.6f, 12).getDrawable()),
+				svg(pipe.getDrawable()));
+
+		// Back to the start
+		length.set(40);
+		angle.set(30);
+		ratio.set(0.3f);
+		width.set(25);
+		assertEquals(before, svg(pipe.getDrawable()));
+	}
+
+	@Test
+	public void changesAreDelayedUntilTheEnd() throws IOException {
+		Parameter length = new Parameter(40);
+		Parameter angle = new Parameter(30);
+		Parameter ratio = new Parameter(0.3f);
+		Parameter width = new Parameter(25);
+		Pipeline pipe = build(length, angle, ratio, width);
+		String before = svg(pipe.getDrawable());
+		pipe.beginChanges();
+		length.set(20);
+		angle.set(60);
+		assertEquals(before, svg(pipe.getDrawable()));
+		pipe.endChanges();
+		assertEquals(svg(build(20, 60, 0.3f, 25).getDrawable()),
+				svg(pipe.getDrawable()));
+	}
+
+	@Test
+	public void unboundPipelinesIgnoreTheParameters() throws IOException {
+		Parameter length = new Parameter(40);
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		pipe.forward(length).turn(45).forward(length);
+		String before = svg(pipe.getDrawable());
+		pipe.unbind();
+		length.set(80);
+		assertEquals(before, svg(pipe.getDrawable()));
+	}
+
+	private static final int OUTPUTS = 12;
+
+	private static Pipeline split() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 240));
+		pipe.forward(50).setBodyColor(0xff2060c0);
+		pipe.split(20, OUTPUTS).tag("split");
+		return pipe;
+	}
+
+	/**
+	 * Changes the part of the split it starts from, then goes on
+	 */
+	private static void buildOutput(Pipeline pipe, int n) {
+		pipe.setBodyGradient(0xff000000 | n * 0x151515, 0xffff0000);
+		if (n % 3 == 0)
+			pipe.setArrow(Arrow.STANDARD);
+		if (n % 3 == 1)
+			pipe.setWidth(10);
+		if (n % 3 == 2)
+			pipe.setWidth(Expression.constant(8));
+		pipe.forward(20 + n).setBodyColor(0xff00ff00 + n);
+		pipe.turn(5 * n - 32, 10).setArrow(Arrow.STANDARD);
+	}
+
+	private static final Pipeline.Branch BRANCH = new Pipeline.Branch() {
+		public void build(Pipeline pipe, int n) {
+			buildOutput(pipe, n);
+		}
+	};
+
+	@Test
+	public void branchesLikeTheSelectedOutputs() throws IOException {
+		Pipeline selected = split();
+		for (int n = 0; n < OUTPUTS; n++) {
+			selected.back("split").select(n);
+			buildOutput(selected, n);
+		}
+		assertEquals(svg(selected.getDrawable()),
+				svg(split().branch(BRANCH).getDrawable()));
+	}
+
+	@Test
+	public void branchesInParallelLikeSerially() throws IOException {
+		String serial = svg(split().branch(BRANCH).getDrawable());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int i = 0; i < 20; i++)
+				assertEquals(serial, svg(split().branch(executor, BRANCH)
+						.getDrawable()));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
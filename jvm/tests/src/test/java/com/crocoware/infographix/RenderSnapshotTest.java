@@ -0,0 +1,72 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.crocoware.infographix.SnapshotFormatTest.RecordingCanvas;
+
+/**
+ * A snapshot must keep drawing what the diagram drew when it was taken
+ * 
+ * @author Benoit
+ * 
+ */
+public class RenderSnapshotTest {
+
+	private static List<String> draw(RenderSnapshot snapshot) {
+		RecordingCanvas canvas = new RecordingCanvas();
+		snapshot.draw(canvas);
+		return canvas.calls;
+	}
+
+	/**
+	 * Moves the parts and their gradients, and changes their styles
+	 */
+	private static void change(ComposedBordered diagram, int step) {
+		for (IBorderedDrawable part : diagram.parts) {
+			part.translate(step % 2 == 0 ? 3 : -2, 1);
+			part.setEdgeWidth(1 + step % 5);
+		}
+	}
+
+	@Test
+	public void drawsTheDiagramAsItWasTaken() {
+		ComposedBordered diagram = SnapshotFormatTest.diagram();
+		RenderSnapshot snapshot = RenderSnapshot.of(diagram);
+		List<String> calls = draw(snapshot);
+		change(diagram, 0);
+		assertEquals(calls, draw(snapshot));
+		// The diagram draws its changes
+		List<String> changed = draw(RenderSnapshot.of(diagram));
+		assertEquals(calls.size(), changed.size());
+		assertEquals(false, calls.equals(changed));
+	}
+
+	@Test
+	public void isDrawnWhileTheDiagramChanges() throws InterruptedException {
+		final ComposedBordered diagram = SnapshotFormatTest.diagram();
+		final RenderSnapshot snapshot = RenderSnapshot.of(diagram);
+		final List<String> calls = draw(snapshot);
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		Thread drawer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 2000 && failure.get() == null; i++) {
+					List<String> drawn = draw(snapshot);
+					if (!drawn.equals(calls))
+						failure.set(drawn.toString());
+				}
+			}
+		};
+		drawer.start();
+		for (int i = 0; i < 2000; i++)
+			change(diagram, i);
+		drawer.join();
+		assertNull(failure.get());
+	}
+}
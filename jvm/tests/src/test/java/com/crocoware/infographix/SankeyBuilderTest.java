@@ -0,0 +1,63 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * The pipelines moved after a value changed must be those a new builder
+ * would build with the new values
+ * 
+ * @author Benoit
+ * 
+ */
+public class SankeyBuilderTest {
+
+	private static String svg(Pipeline pipe) throws IOException {
+		return PipelineTest.svg(pipe.getDrawable());
+	}
+
+	@Test
+	public void updatesMatchARebuild() throws IOException {
+		Segment input = new Segment(0, 0, 0, 10);
+		SankeyBuilder sankey = sankey(new float[] { 5, 3, 4, 6, 2 });
+		Pipeline pipe = sankey.build(input);
+		String before = svg(pipe);
+		sankey.getFlow("a2").setValue(10);
+		assertFalse(before.equals(svg(pipe)));
+		assertEquals(svg(sankey(new float[] { 5, 3, 4, 10, 2 }).build(input)),
+				svg(pipe));
+		assertEquals(24, sankey.getRoot().getValue(), 0);
+
+		sankey.beginChanges();
+		sankey.getFlow("b").setValue(1);
+		sankey.getFlow("c").setValue(7);
+		sankey.getFlow("a1").setValue(0);
+		sankey.endChanges();
+		assertEquals(svg(sankey(new float[] { 1, 7, 0, 10, 2 }).build(input)),
+				svg(pipe));
+	}
+
+	private static SankeyBuilder sankey(float[] values) {
+		SankeyBuilder sankey = new SankeyBuilder("root", 2, 20, 30);
+		SankeyBuilder.Flow a = sankey.getRoot().addFlow("a", 0);
+		sankey.getRoot().addFlow("b", values[0]);
+		sankey.getRoot().addFlow("c", values[1]);
+		a.addFlow("a1", values[2]);
+		a.addFlow("a2", values[3]);
+		a.addFlow("a3", values[4]);
+		a.setColor(0xffff0000);
+		return sankey;
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void valuesAreGivenToLeavesOnly() {
+		SankeyBuilder sankey = sankey(new float[] { 1, 1, 1, 1, 1 });
+		sankey.getFlow("a").setValue(3);
+	}
+}
@@ -0,0 +1,189 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import com.crocoware.infographix.shapes.ArcShape;
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.utils.Segment;
+import com.crocoware.infographix.utils.ShaderCache;
+
+/**
+ * A snapshot read back must draw exactly what the snapshot of the diagram
+ * draws
+ * 
+ * @author Benoit
+ * 
+ */
+public class SnapshotFormatTest {
+
+	private static final String TEXT = "Snapshot text";
+
+	/**
+	 * Describes each call it receives, with the geometry and the paint
+	 */
+	static class RecordingCanvas extends Canvas {
+		final List<String> calls = new ArrayList<String>();
+		private final RectF bounds = new RectF();
+
+		@Override
+		public void concat(Matrix m) {
+			super.concat(m);
+			float[] values = new float[9];
+			m.getValues(values);
+			calls.add("concat " + Arrays.toString(values));
+		}
+
+		@Override
+		public void restore() {
+			super.restore();
+			calls.add("restore");
+		}
+
+		@Override
+		public void drawPath(Path path, Paint paint) {
+			super.drawPath(path, paint);
+			path.computeBounds(bounds, true);
+			calls.add("path " + bounds + " " + paint(paint));
+		}
+
+		@Override
+		public void drawText(String text, float x, float y, Paint paint) {
+			super.drawText(text, x, y, paint);
+			calls.add("text " + text + " " + x + " " + y + " " + paint(paint)
+					+ " " + paint.getTextSize() + " " + paint.getTextAlign());
+		}
+
+		private static String paint(Paint paint) {
+			String description = paint.getStyle() + " "
+					+ Integer.toHexString(paint.getColor()) + " "
+					+ paint.getStrokeWidth();
+			Shader shader = paint.getShader();
+			if (shader == null)
+				return description;
+			ShaderCache.Gradient gradient = ShaderCache.find(shader);
+			Matrix matrix = new Matrix();
+			shader.getLocalMatrix(matrix);
+			float[] values = new float[9];
+			matrix.getValues(values);
+			return description + " " + gradient.isSweep() + " "
+					+ Arrays.toString(gradient.getColors()) + " "
+					+ Arrays.toString(gradient.getPositions()) + " "
+					+ Arrays.toString(values);
+		}
+	}
+
+	static ComposedBordered diagram() {
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		pipe.setBodyGradient(0xff0000ff, 0x80ff0000);
+		pipe.setInputClosed(true);
+		ArcShape arc = new ArcShape(pipe.getOutput(), 90);
+		arc.setBodyGradient(0xff00ff00, 0xffffff00);
+		PipeShape end = new PipeShape(arc.getOutput(), 10);
+		end.setBodyColor(0xff00ff00);
+		end.setOutputArrow(Arrow.STANDARD);
+		end.setText(TEXT);
+		ComposedBordered diagram = new ComposedBordered(pipe, arc, end);
+		diagram.translate(5, 7);
+		return diagram;
+	}
+
+	private static List<String> draw(RenderSnapshot snapshot) {
+		RecordingCanvas canvas = new RecordingCanvas();
+		snapshot.draw(canvas);
+		return canvas.calls;
+	}
+
+	@Test
+	public void drawsTheSameAfterARoundTrip() throws IOException {
+		ComposedBordered diagram = diagram();
+		RenderSnapshot snapshot = RenderSnapshot.of(diagram);
+		RenderSnapshot copy = SnapshotFormat.read(ByteBuffer
+				.wrap(SnapshotFormat.toBytes(diagram)));
+		assertEquals(3, copy.getPartCount());
+		assertEquals(snapshot.getPartCount(), copy.getPartCount());
+		List<String> calls = draw(snapshot);
+		assertTrue(calls.contains("restore"));
+		assertEquals(calls, draw(copy));
+	}
+
+	@Test
+	public void writesTheSameBytesForTheSameDiagram() {
+		assertArrayEquals(SnapshotFormat.toBytes(diagram()),
+				SnapshotFormat.toBytes(diagram()));
+	}
+
+	@Test
+	public void rejectsTruncatedSnapshots() {
+		byte[] bytes = SnapshotFormat.toBytes(diagram());
+		for (int length = 0; length < bytes.length; length++)
+			assertRejected(Arrays.copyOf(bytes, length));
+	}
+
+	@Test
+	public void rejectsOtherDocuments() {
+		byte[] bytes = SnapshotFormat.toBytes(diagram());
+		bytes[0] = 'X';
+		assertRejected(bytes);
+		bytes = SnapshotFormat.toBytes(diagram());
+		bytes[5]++;
+		assertRejected(bytes);
+	}
+
+	@Test
+	public void rejectsHugeSizesBeforeAllocating() {
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		pipe.setText(TEXT);
+		// Magic, version and kind of entry : then the size of the first path
+		byte[] bytes = SnapshotFormat.toBytes(pipe);
+		ByteBuffer.wrap(bytes).putInt(7, Integer.MAX_VALUE);
+		assertRejected(bytes);
+
+		bytes = SnapshotFormat.toBytes(pipe);
+		ByteBuffer.wrap(bytes).putInt(11, Integer.MAX_VALUE);
+		assertRejected(bytes);
+
+		// The size of the text is written just before it
+		bytes = SnapshotFormat.toBytes(pipe);
+		int text = indexOf(bytes, TEXT.getBytes(Charset.forName("UTF-8")));
+		ByteBuffer.wrap(bytes).putInt(text - 4, Integer.MAX_VALUE);
+		assertRejected(bytes);
+	}
+
+	private static int indexOf(byte[] bytes, byte[] part) {
+		search: for (int i = 0; i <= bytes.length - part.length; i++) {
+			for (int j = 0; j < part.length; j++)
+				if (bytes[i + j] != part[j])
+					continue search;
+			return i;
+		}
+		throw new IllegalArgumentException("Not found");
+	}
+
+	private static void assertRejected(byte[] bytes) {
+		try {
+			SnapshotFormat.read(ByteBuffer.wrap(bytes));
+			fail("Read " + bytes.length + " bytes");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+}
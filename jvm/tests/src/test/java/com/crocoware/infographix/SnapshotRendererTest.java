@@ -0,0 +1,150 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import android.graphics.Canvas;
+
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class SnapshotRendererTest {
+
+	/**
+	 * Runs the tasks when asked
+	 */
+	private static final class QueueExecutor implements Executor {
+		final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		void runAll() {
+			for (Runnable task : tasks)
+				task.run();
+			tasks.clear();
+		}
+	}
+
+	/**
+	 * Builds a row of pipes, and counts the builds
+	 */
+	private static final class RowBuilder implements SnapshotRenderer.Builder {
+		final int count;
+		final AtomicInteger builds = new AtomicInteger();
+
+		RowBuilder(int count) {
+			this.count = count;
+		}
+
+		public IBorderedDrawable build() {
+			builds.incrementAndGet();
+			return row(count);
+		}
+	}
+
+	private static ComposedBordered row(int count) {
+		ComposedBordered row = new ComposedBordered();
+		for (int i = 0; i < count; i++)
+			row.push(new PipeShape(new Segment(20 * i, 0, 20 * i, 10), 10));
+		return row;
+	}
+
+	@Test
+	public void drawsNothingBeforeTheFirstSnapshot() {
+		SnapshotRenderer renderer = new SnapshotRenderer(new QueueExecutor());
+		assertNull(renderer.getSnapshot());
+		Canvas canvas = new Canvas();
+		renderer.draw(canvas);
+		assertEquals(0, canvas.getDrawCallCount());
+	}
+
+	@Test
+	public void publishesTheLatestRequestOnly() {
+		QueueExecutor executor = new QueueExecutor();
+		SnapshotRenderer renderer = new SnapshotRenderer(executor);
+		final AtomicInteger published = new AtomicInteger();
+		renderer.setListener(new SnapshotRenderer.Listener() {
+			public void onSnapshotPublished(SnapshotRenderer renderer) {
+				published.incrementAndGet();
+			}
+		});
+		RowBuilder first = new RowBuilder(2), second = new RowBuilder(3);
+		renderer.rebuild(first);
+		renderer.rebuild(second);
+		executor.runAll();
+		assertEquals(0, first.builds.get());
+		assertEquals(1, second.builds.get());
+		assertEquals(1, published.get());
+		assertEquals(3, renderer.getSnapshot().getPartCount());
+
+		// Published directly, after the request : the request is dropped
+		renderer.rebuild(first);
+		renderer.publish(row(5));
+		executor.runAll();
+		assertEquals(0, first.builds.get());
+		assertEquals(5, renderer.getSnapshot().getPartCount());
+		assertEquals(2, published.get());
+	}
+
+	@Test
+	public void keepsTheSnapshotUntilTheNextOneIsReady() {
+		QueueExecutor executor = new QueueExecutor();
+		SnapshotRenderer renderer = new SnapshotRenderer(executor);
+		renderer.publish(row(2));
+		RenderSnapshot snapshot = renderer.getSnapshot();
+		renderer.rebuild(new RowBuilder(4));
+		assertSame(snapshot, renderer.getSnapshot());
+		Canvas canvas = new Canvas();
+		renderer.draw(canvas);
+		// The bodies and the edges of 2 parts
+		assertEquals(4, canvas.getDrawCallCount());
+		executor.runAll();
+		assertEquals(4, renderer.getSnapshot().getPartCount());
+	}
+
+	@Test
+	public void buildsOnTheExecutorThread() throws InterruptedException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			SnapshotRenderer renderer = new SnapshotRenderer(executor);
+			final CountDownLatch latch = new CountDownLatch(1);
+			final Thread caller = Thread.currentThread();
+			final AtomicInteger wrongThreads = new AtomicInteger();
+			renderer.setListener(new SnapshotRenderer.Listener() {
+				public void onSnapshotPublished(SnapshotRenderer renderer) {
+					if (Thread.currentThread() == caller)
+						wrongThreads.incrementAndGet();
+					latch.countDown();
+				}
+			});
+			renderer.rebuild(new RowBuilder(100));
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			assertEquals(0, wrongThreads.get());
+			assertNotNull(renderer.getSnapshot());
+			Canvas canvas = new Canvas();
+			renderer.draw(canvas);
+			assertEquals(200, canvas.getDrawCallCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class StyleTest {
+
+	@Test
+	public void internsTheEqualStyles() {
+		Style red = Style.DEFAULT.withBodyColor(0xffff0000);
+		assertSame(red, Style.DEFAULT.withBodyColor(0xffff0000));
+		assertSame(Style.DEFAULT, red.withBodyColor(Style.DEFAULT
+				.getBodyColor()));
+		// The original style is not modified
+		Style wide = red.withEdgeWidth(10);
+		assertEquals(0xffff0000, red.getBodyColor());
+		assertEquals(10, wide.getEdgeWidth(), 0);
+		assertEquals(0xffff0000, wide.getBodyColor());
+	}
+
+	@Test
+	public void sharesTheStylesOfTheParts() {
+		PipeShape pipe1 = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		PipeShape pipe2 = new PipeShape(pipe1.getOutput(), 50);
+		pipe1.setBodyColor(0xffff0000);
+		pipe2.setBodyColor(0xffff0000);
+		assertSame(pipe1.getStyle(), pipe2.getStyle());
+		pipe2.setEdgeWidth(1);
+		assertNotSame(pipe1.getStyle(), pipe2.getStyle());
+		pipe1.setEdgeWidth(1);
+		assertSame(pipe1.getStyle(), pipe2.getStyle());
+	}
+}
@@ -0,0 +1,130 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.crocoware.infographix.shapes.ArcShape;
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class SvgExporterTest {
+
+	private static String export(IBorderedDrawable drawable) throws IOException {
+		StringWriter out = new StringWriter();
+		SvgExporter.export(drawable, out);
+		return out.toString();
+	}
+
+	private static int count(String text, String part) {
+		int count = 0;
+		for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1))
+			count++;
+		return count;
+	}
+
+	@Test
+	public void writesTheBodyAndTheEdgesOfEachPart() throws IOException {
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		pipe.setBodyColor(0xff2060c0);
+		String svg = export(pipe);
+		assertTrue(svg.startsWith("<?xml"));
+		assertTrue(svg.endsWith("</svg>\n"));
+		// The bounds leave room for the edges and the arrows
+		assertTrue(svg.contains("viewBox=\"-8 -8 66 46\""));
+		assertTrue(svg.contains("<path d=\"M0 0L50 0L50 30L0 30L0 0\" fill=\"#2060c0\""));
+		assertTrue(svg.contains("<path d=\"M0 0L50 0M50 30L0 30\" fill=\"none\" stroke=\"#000000\" stroke-width=\"4\"/>"));
+	}
+
+	@Test
+	public void writesTheGradients() throws IOException {
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		pipe.setBodyGradient(0xff0000ff, 0x80ff0000);
+		ArcShape arc = new ArcShape(pipe.getOutput(), 90);
+		arc.setBodyGradient(0xff00ff00, 0xffffff00);
+		String svg = export(new ComposedBordered(pipe, arc));
+
+		assertEquals(1, count(svg, "<linearGradient "));
+		assertTrue(svg.contains("<stop offset=\"0\" stop-color=\"#0000ff\"/>"));
+		assertTrue(svg.contains("<stop offset=\"1\" stop-color=\"#ff0000\" stop-opacity=\"0.5019608\"/>"));
+		assertTrue(svg.contains("fill=\"url(#"));
+
+		// SVG has no sweep gradient : the body clips wedges of colors
+		assertEquals(1, count(svg, "<clipPath "));
+		assertTrue(count(svg, "<path d=\"M0 0L") > 10);
+		assertTrue(svg.contains("fill=\"#00ff00\""));
+		assertTrue(svg.contains("fill=\"#feff00\""));
+	}
+
+	@Test
+	public void escapesTheTexts() throws IOException {
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		pipe.setText("a<b & c");
+		String svg = export(pipe);
+		assertTrue(svg.contains(">a&lt;b &amp; c</text>"));
+		// Centered on the shape, even if it has never been drawn
+		assertTrue(svg.contains("<text x=\"25\" "));
+	}
+
+	@Test
+	public void appliesTheTransformOfTheGroups() throws IOException {
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		ComposedBordered composed = new ComposedBordered(pipe);
+		composed.translate(10, 20);
+		String svg = export(composed);
+		assertTrue(svg.contains("<g transform=\"matrix(1 0 0 1 10 20)\">"));
+		assertTrue(svg.contains("viewBox=\"2 12 66 46\""));
+	}
+
+	@Test
+	public void writesUtf8ToStreams() throws IOException {
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		pipe.setText("\u00e9t\u00e9");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SvgExporter.export(pipe, out);
+		assertEquals(export(pipe), new String(out.toByteArray(), "UTF-8"));
+	}
+
+	private static void assertRejected(IBorderedDrawable drawable)
+			throws IOException {
+		try {
+			export(drawable);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(
+					"Not a finite number"));
+		}
+	}
+
+	@Test
+	public void rejectsTheNumbersSvgCannotWrite() throws IOException {
+		ComposedBordered composed = new ComposedBordered(new PipeShape(
+				new Segment(0, 0, 0, 30), 50));
+		composed.translate(Float.NEGATIVE_INFINITY, 0);
+		assertRejected(composed);
+	}
+
+	@Test
+	public void skipsThePathsWhichAreNotFinite() throws IOException {
+		PipeShape pipe = new PipeShape(new Segment(0, 0, 0, 30), 50);
+		// No width : no direction to go forward
+		PipeShape empty = new PipeShape(new Segment(0, 30, 0, 30), 10);
+		String svg = export(new ComposedBordered(pipe, empty));
+		assertEquals(-1, svg.indexOf("NaN"));
+		assertEquals(2, count(svg, "<path "));
+		assertTrue(svg.contains("viewBox=\"-8 -8 66 46\""));
+		svg = export(new PipeShape(new Segment(0, 0, 0, 30), Float.NaN));
+		assertEquals(-1, svg.indexOf("NaN"));
+		assertEquals(0, count(svg, "<path "));
+	}
+}
@@ -0,0 +1,167 @@
+package com.crocoware.infographix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class TileRendererTest {
+
+	private static final int TILE_SIZE = 100;
+	private static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+
+	/**
+	 * Runs the tasks when asked, so that the tiles are ready at known times
+	 */
+	private static final class QueueExecutor implements Executor {
+		final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		int runAll() {
+			int count = tasks.size();
+			for (Runnable task : new ArrayList<Runnable>(tasks))
+				task.run();
+			tasks.clear();
+			return count;
+		}
+	}
+
+	private QueueExecutor executor;
+	private final AtomicInteger ready = new AtomicInteger();
+
+	@Before
+	public void setUp() {
+		executor = new QueueExecutor();
+		ready.set(0);
+	}
+
+	private TileRenderer renderer(long memoryBudget) {
+		PipeShape scene = new PipeShape(new Segment(0, 0, 0, 2000), 2000);
+		TileRenderer renderer = new TileRenderer(scene, TILE_SIZE,
+				memoryBudget, executor);
+		renderer.setListener(new TileRenderer.Listener() {
+			public void onTileReady(TileRenderer renderer) {
+				ready.incrementAndGet();
+			}
+		});
+		return renderer;
+	}
+
+	private static int draw(TileRenderer renderer, float left, float top,
+			float size, float zoom) {
+		Canvas canvas = new Canvas();
+		renderer.draw(canvas, new RectF(left, top, left + size, top + size),
+				zoom);
+		return canvas.getDrawCallCount();
+	}
+
+	@Test
+	public void neverScalesTheBitmapsUp() {
+		assertEquals(0, TileRenderer.getLevel(1));
+		assertEquals(1, TileRenderer.getLevel(1.5f));
+		assertEquals(1, TileRenderer.getLevel(2));
+		assertEquals(-1, TileRenderer.getLevel(0.5f));
+		assertEquals(-1, TileRenderer.getLevel(0.3f));
+	}
+
+	@Test
+	public void drawsTheVisibleTilesOnceReady() {
+		TileRenderer renderer = renderer(100 * TILE_BYTES);
+		// Nothing ready yet
+		assertEquals(0, draw(renderer, 0, 0, 200, 1));
+		assertEquals(4, executor.runAll());
+		assertEquals(4, ready.get());
+		assertEquals(4 * TILE_BYTES, renderer.getUsedMemory());
+		// Drawn from the cache, without drawing the tiles again
+		assertEquals(4, draw(renderer, 0, 0, 200, 1));
+		assertEquals(0, executor.runAll());
+		// Half a tile further : 2 more tiles
+		assertEquals(4, draw(renderer, 50, 0, 200, 1));
+		assertEquals(2, executor.runAll());
+	}
+
+	@Test
+	public void drawsTheLowerLevelWhileATileIsNotReady() {
+		TileRenderer renderer = renderer(100 * TILE_BYTES);
+		draw(renderer, 0, 0, 100, 1);
+		executor.runAll();
+		// Each tile of level 1 is drawn from a quarter of the tile of level 0
+		assertEquals(4, draw(renderer, 0, 0, 100, 2));
+		assertEquals(4, executor.runAll());
+		assertEquals(4, draw(renderer, 0, 0, 100, 2));
+	}
+
+	@Test
+	public void drawsAgainTheInvalidatedTiles() {
+		TileRenderer renderer = renderer(100 * TILE_BYTES);
+		draw(renderer, 0, 0, 200, 1);
+		executor.runAll();
+		renderer.invalidate(new RectF(120, 120, 130, 130));
+		// The old content is shown until the tile is ready again
+		assertEquals(4, draw(renderer, 0, 0, 200, 1));
+		assertEquals(1, executor.runAll());
+		renderer.invalidateAll();
+		assertEquals(4, draw(renderer, 0, 0, 200, 1));
+		assertEquals(4, executor.runAll());
+		// The replaced bitmaps are reused : a single one is spare
+		assertEquals(5 * TILE_BYTES, renderer.getUsedMemory());
+	}
+
+	@Test
+	public void keepsTheBitmapsWithinTheBudget() {
+		TileRenderer renderer = renderer(6 * TILE_BYTES);
+		draw(renderer, 0, 0, 200, 1);
+		executor.runAll();
+		draw(renderer, 1000, 1000, 200, 1);
+		executor.runAll();
+		assertTrue(renderer.getUsedMemory() <= 6 * TILE_BYTES);
+		// The tiles drawn last are kept
+		assertEquals(4, draw(renderer, 1000, 1000, 200, 1));
+		// The least recently drawn ones have been dropped
+		assertTrue(draw(renderer, 0, 0, 200, 1) < 4);
+	}
+
+	@Test
+	public void keepsTheVisibleTilesOverTheBudget() {
+		TileRenderer renderer = renderer(2 * TILE_BYTES);
+		draw(renderer, 0, 0, 200, 1);
+		executor.runAll();
+		assertEquals(4, draw(renderer, 0, 0, 200, 1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void cannotDrawOnceReleased() {
+		TileRenderer renderer = renderer(100 * TILE_BYTES);
+		draw(renderer, 0, 0, 200, 1);
+		// The pending tiles are not drawn
+		renderer.release();
+		executor.runAll();
+		assertEquals(0, ready.get());
+		assertEquals(0, renderer.getUsedMemory());
+		draw(renderer, 0, 0, 200, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void needsABudgetOfOneTile() {
+		new TileRenderer(new PipeShape(new Segment(0, 0, 0, 10), 10),
+				TILE_SIZE, TILE_BYTES - 1, executor);
+	}
+}
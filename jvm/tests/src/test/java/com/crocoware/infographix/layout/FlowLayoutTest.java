@@ -0,0 +1,108 @@
+package com.crocoware.infographix.layout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.crocoware.infographix.Pipeline;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class FlowLayoutTest {
+
+	private static final float GAP = 4;
+
+	private static FlowGraph graph() {
+		FlowGraph graph = new FlowGraph();
+		graph.addFlow("a", "c", 10);
+		graph.addFlow("b", "c", 10);
+		graph.addFlow("c", "d", 20);
+		// Crosses the column of c
+		graph.addFlow("a", "d", 5);
+		graph.addNode("alone");
+		return graph;
+	}
+
+	@Test
+	public void placesEachNodeAfterItsInputs() {
+		FlowGraph graph = graph();
+		Pipeline pipe = new FlowLayout(20, 60, GAP).layout(graph, 0, 0);
+		assertEquals(0, graph.getNode("a").getLayer());
+		assertEquals(0, graph.getNode("b").getLayer());
+		assertEquals(1, graph.getNode("c").getLayer());
+		assertEquals(2, graph.getNode("d").getLayer());
+		// Left out
+		assertEquals(-1, graph.getNode("alone").getLayer());
+		// As high as their flows
+		assertEquals(15, graph.getNode("a").getHeight(), 0);
+		assertEquals(20, graph.getNode("c").getHeight(), 0);
+		assertEquals(25, graph.getNode("d").getHeight(), 0);
+		// The bodies are tagged with the names of the nodes
+		for (String name : new String[] { "a", "b", "c", "d" })
+			pipe.back(name);
+	}
+
+	@Test
+	public void keepsTheNodesOfAColumnApart() {
+		FlowGraph graph = new FlowGraph();
+		for (int i = 0; i < 6; i++)
+			for (int j = 0; j < 6; j++)
+				graph.addFlow("in" + i, "out" + j, 1 + (i * j) % 4);
+		new FlowLayout(20, 60, GAP).layout(graph, 0, 10);
+		List<FlowGraph.Node> column = new ArrayList<FlowGraph.Node>();
+		for (int j = 0; j < 6; j++)
+			column.add(graph.getNode("out" + j));
+		for (FlowGraph.Node node : column) {
+			assertTrue(node.getTop() >= 10);
+			for (FlowGraph.Node other : column) {
+				if (node != other && node.getTop() <= other.getTop())
+					assertTrue(node.getTop() + node.getHeight() + GAP <= other
+							.getTop() + 1e-3f);
+			}
+		}
+	}
+
+	@Test
+	public void uncrossesTheFlows() {
+		FlowGraph graph = new FlowGraph();
+		graph.addNode("a");
+		graph.addNode("b");
+		graph.addNode("x");
+		graph.addNode("y");
+		graph.addFlow("a", "y", 10);
+		graph.addFlow("b", "x", 10);
+		new FlowLayout(20, 60, GAP).layout(graph, 0, 0);
+		assertTrue(graph.getNode("a").getTop() < graph.getNode("b").getTop());
+		assertTrue(graph.getNode("y").getTop() < graph.getNode("x").getTop());
+		// The flows go straight
+		assertEquals(graph.getNode("a").getTop(), graph.getNode("y").getTop(),
+				1e-3f);
+	}
+
+	@Test
+	public void rejectsTheCycles() {
+		FlowGraph graph = graph();
+		graph.addFlow("d", "a", 1);
+		try {
+			new FlowLayout(20, 60, GAP).layout(graph, 0, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(
+					"Cycle through"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void needsAFlow() {
+		FlowGraph graph = new FlowGraph();
+		graph.addNode("a");
+		new FlowLayout(20, 60, GAP).layout(graph, 0, 0);
+	}
+}
@@ -0,0 +1,60 @@
+package com.crocoware.infographix.shapes;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class JoinShapeTest {
+
+	private static final float DELTA = 1e-4f;
+
+	private static void assertSegment(float x1, float y1, float x2, float y2,
+			Segment segment) {
+		assertEquals(x1, segment.x1, DELTA);
+		assertEquals(y1, segment.y1, DELTA);
+		assertEquals(x2, segment.x2, DELTA);
+		assertEquals(y2, segment.y2, DELTA);
+	}
+
+	@Test
+	public void centersTheOutputHalfwayByDefault() {
+		// Adjacent entries, 10 and 30 wide, going right
+		JoinShape join = new JoinShape(new Segment(0, 0, 0, 10), new Segment(
+				0, 10, 0, 40), 5);
+		assertSegment(5, -5, 5, 35, join.getOutput());
+		// Same as a join of equal entries
+		join = new JoinShape(new Segment(0, 0, 0, 20),
+				new Segment(0, 30, 0, 50), 5);
+		assertSegment(5, 5, 5, 45, join.getOutput());
+	}
+
+	@Test
+	public void centersTheOutputOnTheWeightedCenter() {
+		// The output goes straight on from the entries
+		JoinShape join = new JoinShape(new Segment(0, 0, 0, 10), new Segment(
+				0, 10, 0, 40), 5, true);
+		assertSegment(5, 0, 5, 40, join.getOutput());
+		// The same for entries of equal widths
+		join = new JoinShape(new Segment(0, 0, 0, 20),
+				new Segment(0, 30, 0, 50), 5, true);
+		assertSegment(5, 5, 5, 45, join.getOutput());
+	}
+
+	@Test
+	public void keepsItsPlacementWhenReshaped() {
+		JoinShape join = new JoinShape(new Segment(0, 0, 0, 10), new Segment(
+				0, 10, 0, 40), 5, true);
+		join.reshape(new Segment(0, 0, 0, 30), new Segment(0, 30, 0, 40), 5);
+		assertSegment(5, 0, 5, 40, join.getOutput());
+		join = new JoinShape(new Segment(0, 0, 0, 10), new Segment(0, 10, 0,
+				40), 5);
+		join.reshape(new Segment(0, 0, 0, 30), new Segment(0, 30, 0, 40), 5);
+		assertSegment(5, 5, 5, 45, join.getOutput());
+	}
+}
@@ -0,0 +1,150 @@
+package com.crocoware.infographix.spec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.crocoware.infographix.Arrow;
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.SvgExporter;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * The text and binary forms of a spec must build the pipeline written with
+ * the same directives
+ * 
+ * @author Benoit
+ * 
+ */
+public class TextSpecParserTest {
+
+	private static final String SPEC = "// A split, joined again\n"
+			+ "input 0 0 0 30\n" + "color #2060C0\n"
+			+ "forward 100 // the trunk\n" + "\n"
+			+ "gradient #80FF0000\n" + "turnLeft 45 60\n"
+			+ "split 20 0.3\n" + "tag split\n" + "select 0\n"
+			+ "  forward\t50\n" + "tag up\n" + "back split\n"
+			+ "select 1\n" + "forward 50 40\n" + "width 10\n"
+			+ "turn -45\n" + "joinAfter up 20\n" + "arrow STANDARD\n";
+
+	private static Pipeline direct() {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		pipe.setBodyColor(0xff2060c0);
+		pipe.forward(100);
+		pipe.setBodyGradient(0x80ff0000);
+		pipe.turn(-45, 60);
+		pipe.split(20, 0.3f).tag("split");
+		pipe.select(0).forward(50).tag("up");
+		pipe.back("split").select(1).forward(50, 40).setWidth(10);
+		pipe.turn(-45);
+		pipe.joinAfter("up", 20).setArrow(Arrow.STANDARD);
+		return pipe;
+	}
+
+	private static String svg(Pipeline pipe) throws IOException {
+		StringWriter out = new StringWriter();
+		SvgExporter.export(pipe.getDrawable(), out);
+		return out.toString();
+	}
+
+	private static Pipeline parse(String spec) throws IOException {
+		PipelineBuilder builder = new PipelineBuilder();
+		TextSpecParser.parse(new StringReader(spec), builder);
+		return builder.getPipeline();
+	}
+
+	@Test
+	public void buildsThePipelineOfTheDirectives() throws IOException {
+		assertEquals(svg(direct()), svg(parse(SPEC)));
+	}
+
+	@Test
+	public void buildsTheSamePipelineFromTheBinaryForm() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TextSpecParser.parse(new StringReader(SPEC), new BinarySpecWriter(
+				bytes));
+		PipelineBuilder builder = new PipelineBuilder();
+		BinarySpec.parse(new ByteArrayInputStream(bytes.toByteArray()),
+				builder);
+		assertEquals(svg(direct()), svg(builder.getPipeline()));
+	}
+
+	@Test
+	public void givesTheLineOfTheErrors() throws IOException {
+		assertRejected("input 0 0 0 30\n\nfoo 12", "line 3 : unknown directive 'foo'");
+		assertRejected("input 0 0 0\n", "line 1 : wrong number of values for 'input'");
+		assertRejected("input 0 0 0 30\nclose 1", "line 2 : wrong number of values for 'close'");
+		assertRejected("input 0 0 0 30\nforward 10\narrow CURVED",
+				"line 3 : Unknown arrow 'CURVED'");
+		// Given by the pipeline
+		assertRejected("forward 10", "line 1 : The spec must start with input");
+	}
+
+	@Test
+	public void rejectsMalformedValues() throws IOException {
+		String[] colors = { "2060C0", "#", "#2060C", "#2060C0F", "#2060CG",
+				"#+060C0", "#-2060C0F", "#2060C\uff10",
+				"#2060C0FF0" };
+		for (String color : colors)
+			assertRejected("input 0 0 0 30\ncolor " + color, "line 2 : "
+					+ "wrong color '" + color + "'");
+		assertRejected("input 0 0 0 30\ngradient #FF0000 red",
+				"line 2 : wrong color 'red'");
+		assertRejected("input 0 0 0 30\nforward 1O", "line 2 : wrong number '1O'");
+		assertRejected("input 0 0 0 30\nsplit 20 0.3\nselect 0.5",
+				"line 3 : wrong integer '0.5'");
+	}
+
+	@Test
+	public void readsTheColors() throws IOException {
+		Pipeline pipe = new Pipeline(new Segment(0, 0, 0, 30));
+		pipe.setBodyColor(0x80abcdef);
+		pipe.forward(10);
+		assertEquals(svg(pipe), svg(parse("input 0 0 0 30\ncolor #80aBcDeF\nforward 10")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void needsTheWholeSpec() {
+		new PipelineBuilder().getPipeline();
+	}
+
+	@Test
+	public void rejectsTruncatedBinarySpecs() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TextSpecParser.parse(new StringReader(SPEC), new BinarySpecWriter(
+				bytes));
+		byte[] spec = bytes.toByteArray();
+		ByteArrayInputStream in = new ByteArrayInputStream(spec, 0,
+				spec.length - 1);
+		try {
+			BinarySpec.parse(in, new PipelineBuilder());
+			fail();
+		} catch (IOException e) {
+			// Expected : the END opcode is missing
+		}
+		try {
+			BinarySpec.parse(new ByteArrayInputStream(new byte[] { 1, 2, 3,
+					4, 0 }), new PipelineBuilder());
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Not a binary spec", e.getMessage());
+		}
+	}
+
+	static void assertRejected(String spec, String message) throws IOException {
+		try {
+			parse(spec);
+			fail("Parsed " + spec);
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package com.crocoware.infographix.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class GridIndexTest {
+
+	private static final float INFINITY = Float.POSITIVE_INFINITY;
+
+	private GridIndex<float[]> index;
+
+	@Before
+	public void setUp() {
+		index = new GridIndex<float[]>(10,
+				new GridIndex.BoundsProvider<float[]>() {
+					public void getBounds(float[] item, float[] out) {
+						System.arraycopy(item, 0, out, 0, 4);
+					}
+				});
+	}
+
+	private List<float[]> query(float left, float top, float right,
+			float bottom) {
+		List<float[]> out = new ArrayList<float[]>();
+		index.query(left, top, right, bottom, out);
+		return out;
+	}
+
+	@Test
+	public void findsTheItemsInAnAreaOrderedByKey() {
+		float[] a = { 0, 0, 5, 5 };
+		float[] b = { 50, 50, 60, 60 };
+		float[] c = { 4, 4, 55, 6 };
+		index.add(b, 0);
+		index.add(c, 1);
+		index.add(a, 2);
+		assertEquals(Arrays.asList(c, a), query(1, 1, 5, 5));
+		assertEquals(Arrays.asList(b, c, a), query(0, 0, 100, 100));
+		assertEquals(Arrays.asList(b), query(58, 58, 70, 70));
+		List<float[]> out = new ArrayList<float[]>();
+		index.query(30, 5, out);
+		assertEquals(Arrays.asList(c), out);
+	}
+
+	@Test
+	public void followsTheMovedItems() {
+		float[] item = { 0, 0, 5, 5 };
+		index.add(item, 0);
+		item[0] = item[1] = 200;
+		item[2] = item[3] = 205;
+		// Not told yet
+		assertEquals(1, query(0, 0, 5, 5).size());
+		index.invalidate(item);
+		assertEquals(0, query(0, 0, 5, 5).size());
+		assertEquals(1, query(201, 201, 202, 202).size());
+		index.remove(item);
+		assertEquals(0, index.size());
+		assertEquals(0, query(201, 201, 202, 202).size());
+	}
+
+	@Test
+	public void findsTheItemsCoveringManyCells() {
+		float[] large = { -1000, -1000, 1000, 1000 };
+		float[] small = { 0, 0, 1, 1 };
+		index.add(large, 0);
+		index.add(small, 1);
+		assertEquals(Arrays.asList(large), query(500, 500, 501, 501));
+		assertEquals(Arrays.asList(large, small), query(0, 0, 1, 1));
+	}
+
+	@Test(timeout = 5000)
+	public void acceptsInfiniteAndHugeBounds() {
+		float[] everywhere = { -INFINITY, -INFINITY, INFINITY, INFINITY };
+		float[] far = { 3e10f, 3e10f, 3e10f, 3e10f };
+		float[] wide = { 0, 0, Float.MAX_VALUE, 1 };
+		float[] undefined = { Float.NaN, 0, 1, 1 };
+		float[] small = { 0, 0, 1, 1 };
+		index.add(everywhere, 0);
+		index.add(far, 1);
+		index.add(wide, 2);
+		index.add(undefined, 3);
+		index.add(small, 4);
+		assertEquals(Arrays.asList(everywhere, far, wide, small),
+				query(-INFINITY, -INFINITY, INFINITY, INFINITY));
+		assertEquals(Arrays.asList(everywhere, far),
+				query(3e10f, 3e10f, 3e10f, 3e10f));
+		assertEquals(Arrays.asList(everywhere, wide),
+				query(Float.MAX_VALUE, 0, Float.MAX_VALUE, 0));
+		assertEquals(Arrays.asList(everywhere, wide, small),
+				query(0.5f, 0.5f, 0.5f, 0.5f));
+		index.invalidate(everywhere);
+		index.remove(far);
+		assertEquals(Arrays.asList(everywhere, wide, small),
+				query(0, 0, 100, 100));
+	}
+
+	@Test
+	public void findsWhatAFullScanFinds() {
+		Random random = new Random(42);
+		List<float[]> items = new ArrayList<float[]>();
+		for (int step = 0; step < 5000; step++) {
+			int action = random.nextInt(4);
+			if (action == 0 && !items.isEmpty()) {
+				index.remove(items.remove(random.nextInt(items.size())));
+			} else if (action == 1 && !items.isEmpty()) {
+				float[] item = items.get(random.nextInt(items.size()));
+				place(item, random);
+				index.invalidate(item);
+			} else {
+				float[] item = new float[5];
+				place(item, random);
+				// The key, in the order of creation
+				item[4] = step;
+				items.add(item);
+				index.add(item, step);
+			}
+			float x = random.nextFloat() * 500, y = random.nextFloat() * 500;
+			float size = random.nextFloat() * 100;
+			List<float[]> expected = new ArrayList<float[]>();
+			for (float[] item : items)
+				if (item[0] <= x + size && x <= item[2] && item[1] <= y + size
+						&& y <= item[3])
+					expected.add(item);
+			assertEquals(expected.size(), query(x, y, x + size, y + size)
+					.size());
+			assertEquals(expected, query(x, y, x + size, y + size));
+		}
+	}
+
+	private static void place(float[] item, Random random) {
+		item[0] = random.nextFloat() * 500;
+		item[1] = random.nextFloat() * 500;
+		item[2] = item[0] + random.nextFloat() * 30;
+		item[3] = item[1] + random.nextFloat() * 30;
+	}
+
+	@Test
+	public void queriesDoNotAllocate() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory
+				.getThreadMXBean();
+		// HotSpot only
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+		assumeTrue(bean.isThreadAllocatedMemorySupported()
+				&& bean.isThreadAllocatedMemoryEnabled());
+		for (int i = 0; i < 100; i++)
+			index.add(new float[] { i * 7, i * 3, i * 7 + 5, i * 3 + 5 }, i);
+		List<float[]> out = new ArrayList<float[]>(200);
+		long thread = Thread.currentThread().getId();
+		for (int run = 0; run < 2; run++) {
+			// The first run warms up the code
+			long before = bean.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < 1000; i++) {
+				out.clear();
+				// Some cells, then the whole area
+				index.query(i % 300, 50, i % 300 + 40, 90, out);
+				out.clear();
+				index.query(-1000, -1000, 1000, 1000, out);
+			}
+			long allocated = bean.getThreadAllocatedBytes(thread) - before;
+			if (run == 1)
+				assertTrue(allocated + " bytes", allocated < 10000);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsANullCellSize() {
+		new GridIndex<float[]>(0, null);
+	}
+}
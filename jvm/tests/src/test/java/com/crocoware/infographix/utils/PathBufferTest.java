@@ -0,0 +1,138 @@
+package com.crocoware.infographix.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class PathBufferTest {
+
+	private static final float EPSILON = 1e-4f;
+
+	private static PathBuffer square(float left, float top, float size,
+			boolean isClockwise) {
+		PathBuffer path = new PathBuffer();
+		path.moveTo(left, top);
+		if (isClockwise) {
+			path.lineTo(left + size, top);
+			path.lineTo(left + size, top + size);
+			path.lineTo(left, top + size);
+		} else {
+			path.lineTo(left, top + size);
+			path.lineTo(left + size, top + size);
+			path.lineTo(left + size, top);
+		}
+		return path;
+	}
+
+	private static float[] bounds(PathBuffer path) {
+		float[] bounds = { Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+				Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+		path.computeBounds(bounds);
+		return bounds;
+	}
+
+	@Test
+	public void growsWhileRecording() {
+		PathBuffer path = new PathBuffer(1);
+		path.moveTo(0, 0);
+		for (int i = 1; i <= 100; i++)
+			path.cubicTo(i, 0, i, 1, i, 2);
+		assertEquals(101, path.getOpCount());
+		assertEquals(2 + 100 * 6, path.getCoordCount());
+		assertEquals(PathBuffer.MOVE_TO, path.getOp(0));
+		assertEquals(PathBuffer.CUBIC_TO, path.getOp(100));
+		path.reset();
+		assertTrue(path.isEmpty());
+	}
+
+	@Test
+	public void appendsAnotherBuffer() {
+		PathBuffer path = square(0, 0, 10, true);
+		path.append(square(20, 0, 10, true));
+		assertEquals(8, path.getOpCount());
+		assertArrayEquals(new float[] { 0, 0, 30, 10 }, bounds(path), EPSILON);
+	}
+
+	@Test
+	public void boundsIncludeTheOvalsOfTheArcs() {
+		PathBuffer path = new PathBuffer();
+		path.moveTo(5, 5);
+		path.arcTo(-10, -20, 10, 20, 0, 90);
+		assertArrayEquals(new float[] { -10, -20, 10, 20 }, bounds(path),
+				EPSILON);
+	}
+
+	@Test
+	public void offsetMovesThePointsButNotTheAngles() {
+		PathBuffer path = new PathBuffer();
+		path.moveTo(0, 0);
+		path.arcTo(0, 0, 10, 10, 45, 90);
+		path.offset(3, 4);
+		float[] c = path.getCoords();
+		assertArrayEquals(new float[] { 3, 4, 3, 4, 13, 14, 45, 90 },
+				java.util.Arrays.copyOf(c, path.getCoordCount()), EPSILON);
+	}
+
+	@Test
+	public void mirroredArcsKeepTheirOvalOrdered() {
+		PathBuffer path = new PathBuffer();
+		path.moveTo(0, 0);
+		path.arcTo(0, 0, 10, 20, 30, 60);
+		path.transform(-1, 1, 0, 0);
+		float[] c = path.getCoords();
+		// left < right, and the angles are mirrored around the vertical
+		assertEquals(-10, c[2], EPSILON);
+		assertEquals(0, c[4], EPSILON);
+		assertEquals(150, c[6], EPSILON);
+		assertEquals(-60, c[7], EPSILON);
+	}
+
+	@Test
+	public void containsFollowsTheNonZeroWindingRule() {
+		// Two overlapping squares turning the same way : the overlap is
+		// filled
+		PathBuffer same = square(0, 0, 10, true);
+		same.append(square(5, 5, 10, true));
+		assertTrue(same.contains(7, 7));
+		assertTrue(same.contains(2, 2));
+		assertTrue(same.contains(12, 12));
+		assertFalse(same.contains(12, 2));
+
+		// A square inside another one, turning the other way : a hole
+		PathBuffer hole = square(0, 0, 30, true);
+		hole.append(square(10, 10, 10, false));
+		assertTrue(hole.contains(5, 5));
+		assertFalse(hole.contains(15, 15));
+	}
+
+	@Test
+	public void containsFollowsTheCurves() {
+		PathBuffer disc = new PathBuffer();
+		disc.moveTo(20, 10);
+		disc.arcTo(0, 0, 20, 20, 0, 360);
+		assertTrue(disc.contains(10, 10));
+		assertTrue(disc.contains(19, 10));
+		// Inside the bounds, outside the circle
+		assertFalse(disc.contains(1, 1));
+	}
+
+	@Test
+	public void intersectsTheFilledAreaOnly() {
+		PathBuffer hole = square(0, 0, 30, true);
+		hole.append(square(10, 10, 10, false));
+		// Inside the hole
+		assertFalse(hole.intersects(12, 12, 18, 18));
+		// Crossing an edge of the hole
+		assertTrue(hole.intersects(5, 12, 12, 18));
+		// Containing the whole path
+		assertTrue(hole.intersects(-10, -10, 40, 40));
+		assertFalse(hole.intersects(31, 0, 40, 10));
+	}
+}
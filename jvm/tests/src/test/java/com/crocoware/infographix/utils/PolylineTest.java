@@ -0,0 +1,110 @@
+package com.crocoware.infographix.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class PolylineTest {
+
+	private static final float EPSILON = 1e-3f;
+
+	@Test
+	public void keepsTheLengthAlongTheContours() {
+		PathBuffer path = new PathBuffer();
+		path.moveTo(0, 0);
+		path.lineTo(3, 4);
+		path.lineTo(3, 14);
+		// The move between contours is not counted
+		path.moveTo(100, 100);
+		path.lineTo(100, 105);
+		Polyline outline = new Polyline();
+		outline.flatten(path, Polyline.DEFAULT_TOLERANCE);
+		assertEquals(2, outline.getContourCount());
+		assertEquals(5, outline.getPointCount());
+		assertEquals(5, outline.getLength(1), EPSILON);
+		assertEquals(15, outline.getLength(2), EPSILON);
+		assertEquals(20, outline.getLength(), EPSILON);
+		assertEquals(3, outline.getContourStart(1));
+	}
+
+	@Test
+	public void givesThePositionAndTangentAtADistance() {
+		PathBuffer path = new PathBuffer();
+		path.moveTo(0, 0);
+		path.lineTo(10, 0);
+		path.lineTo(10, 10);
+		Polyline outline = new Polyline();
+		outline.flatten(path, Polyline.DEFAULT_TOLERANCE);
+		float[] out = new float[4];
+		assertTrue(outline.getPosition(15, out));
+		assertEquals(10, out[0], EPSILON);
+		assertEquals(5, out[1], EPSILON);
+		assertEquals(0, out[2], EPSILON);
+		assertEquals(1, out[3], EPSILON);
+		// Clamped to the length
+		assertTrue(outline.getPosition(1000, out));
+		assertEquals(10, out[1], EPSILON);
+		assertFalse(new Polyline().getPosition(0, out));
+	}
+
+	@Test
+	public void curvesStayWithinTheTolerance() {
+		float tolerance = 0.1f;
+		PathBuffer path = new PathBuffer();
+		path.moveTo(50, 0);
+		path.arcTo(-50, -50, 50, 50, 0, 180);
+		Polyline outline = new Polyline();
+		outline.flatten(path, tolerance);
+		assertTrue(outline.getPointCount() > 2);
+		// The lines are chords : their middles are the farthest from the
+		// circle
+		for (int i = 1; i < outline.getPointCount(); i++) {
+			float mx = (outline.getX(i - 1) + outline.getX(i)) / 2;
+			float my = (outline.getY(i - 1) + outline.getY(i)) / 2;
+			float distance = 50 - (float) Math.hypot(mx, my);
+			assertTrue(distance <= tolerance + EPSILON);
+		}
+		// Half a circle
+		assertEquals(Math.PI * 50, outline.getLength(), 0.5);
+	}
+
+	@Test
+	public void cubicsEndOnTheirLastPoint() {
+		PathBuffer path = new PathBuffer();
+		path.moveTo(0, 0);
+		path.cubicTo(0, 100, 100, 100, 100, 0);
+		Polyline outline = new Polyline();
+		outline.flatten(path, Polyline.DEFAULT_TOLERANCE);
+		int last = outline.getPointCount() - 1;
+		assertEquals(100, outline.getX(last), EPSILON);
+		assertEquals(0, outline.getY(last), EPSILON);
+		assertTrue(outline.getPointCount() > 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsANullTolerance() {
+		new Polyline().flatten(new PathBuffer(), 0);
+	}
+
+	@Test
+	public void offsetMovesAllThePoints() {
+		PathBuffer path = new PathBuffer();
+		path.moveTo(0, 0);
+		path.lineTo(10, 10);
+		Polyline outline = new Polyline();
+		outline.flatten(path, Polyline.DEFAULT_TOLERANCE);
+		outline.offset(5, -5);
+		assertEquals(5, outline.getX(0), EPSILON);
+		assertEquals(-5, outline.getY(0), EPSILON);
+		assertEquals(15, outline.getX(1), EPSILON);
+		assertEquals(5, outline.getY(1), EPSILON);
+		// The lengths do not change
+		assertEquals(Math.hypot(10, 10), outline.getLength(), EPSILON);
+	}
+}
@@ -0,0 +1,92 @@
+package com.crocoware.infographix.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import android.graphics.Matrix;
+import android.graphics.Shader;
+
+/**
+ * @author Benoit
+ * 
+ */
+public class ShaderCacheTest {
+
+	@Test
+	public void keepsTheShaderWhileTheColorsAreTheSame() {
+		ShaderCache cache = new ShaderCache();
+		Shader shader = cache.getLinearGradient(0, 0, 10, 0, 1, 2);
+		assertSame(shader, cache.getLinearGradient(5, 5, 50, 5, 1, 2));
+		assertNotSame(shader, cache.getLinearGradient(5, 5, 50, 5, 1, 3));
+	}
+
+	@Test
+	public void placesTheNormalisedShader() {
+		ShaderCache cache = new ShaderCache();
+		Shader shader = cache.getLinearGradient(10, 10, 10, 60, 1, 2);
+		Matrix matrix = new Matrix();
+		shader.getLocalMatrix(matrix);
+		float[] points = { 0, 0, 1, 0 };
+		matrix.mapPoints(points);
+		assertArrayEquals(new float[] { 10, 10, 10, 60 }, points, 1e-4f);
+	}
+
+	@Test
+	public void findsTheColorStopsOfAShader() {
+		int[] colors = { 0xff000000, 0xffffffff, 0xff000000 };
+		float[] positions = { 0, 0.25f, 1 };
+		Shader shader = new ShaderCache().getSweepGradient(0, 0, 0, colors,
+				positions);
+		ShaderCache.Gradient gradient = ShaderCache.find(shader);
+		assertNotNull(gradient);
+		assertTrue(gradient.isSweep());
+		assertArrayEquals(colors, gradient.getColors());
+		assertEquals(0xffffffff, gradient.getColorAt(0.25f));
+		// Halfway between black and white
+		assertEquals(0xff808080, gradient.getColorAt(0.125f));
+		assertNull(ShaderCache.find(new Shader()));
+	}
+
+	@Test
+	public void createsTheSameShaderAgain() {
+		ShaderCache cache = new ShaderCache();
+		Shader shader = cache.getLinearGradient(3, 4, 30, 40, 5, 6);
+		ShaderCache.Gradient gradient = ShaderCache.find(shader);
+		Matrix matrix = new Matrix();
+		shader.getLocalMatrix(matrix);
+		Shader copy = ShaderCache.create(gradient.isSweep(),
+				gradient.getColors(), gradient.getPositions(), matrix);
+		assertFalse(ShaderCache.find(copy).isSweep());
+		assertArrayEquals(new int[] { 5, 6 }, ShaderCache.find(copy)
+				.getColors());
+		Matrix copyMatrix = new Matrix();
+		copy.getLocalMatrix(copyMatrix);
+		float[] values = new float[9];
+		float[] copyValues = new float[9];
+		matrix.getValues(values);
+		copyMatrix.getValues(copyValues);
+		assertArrayEquals(values, copyValues, 0);
+	}
+
+	@Test
+	public void forgetsTheShadersNoLongerUsed() throws InterruptedException {
+		int before = ShaderCache.getShaderCount();
+		for (int i = 0; i < 10000; i++)
+			new ShaderCache().getLinearGradient(0, 0, 1, 1, i, ~i);
+		Shader kept = new ShaderCache().getLinearGradient(0, 0, 1, 1, 1, 2);
+		for (int i = 0; i < 20 && ShaderCache.getShaderCount() > before + 1; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertTrue(ShaderCache.getShaderCount() <= before + 1);
+		assertNotNull(ShaderCache.find(kept));
+	}
+}
@@ -3,22 +3,38 @@ package com.crocoware.infographix;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Paint.Align;
 import android.graphics.Path;
 import android.graphics.PathEffect;
 import android.graphics.RectF;
 import android.graphics.Shader;
 
+import com.crocoware.infographix.utils.PathBuffer;
+import com.crocoware.infographix.utils.PathBufferAdapter;
+import com.crocoware.infographix.utils.Polyline;
 import com.crocoware.infographix.utils.Segment;
 
 public abstract class AbstractBorderedDrawable implements IBorderedDrawable {
-	private Paint bodyPaint;
-	private Paint edgePaint;
-	private Paint textPaint;
+	// Shared with the shapes drawn the same way
+	private Style style = Style.DEFAULT;
 	private String text;
 	private float textPositionX;
 	private float textPositionY;
-
+	private boolean isTextPlaced;
+
+	// Geometry of the shape. The buffers are kept between rebuilds
+	private PathBuffer edgesBuffer;
+	private PathBuffer bodyBuffer;
+	private boolean isEdgesBuilt, isBodyBuilt;
+	// Outline of the body, curves flattened (built on demand)
+	private Polyline outline;
+	private boolean isOutlineBuilt;
+	private float flatteningTolerance = Polyline.DEFAULT_TOLERANCE;
+	// Body without arrow, and with straight segments only, for the tolerance
+	// it has been built with (built on demand)
+	private Polyline simplifiedOutline;
+	private PathBuffer simplifiedBuffer;
+	private boolean isSimplifiedBuilt, isBuildingSimplified;
+	// Android paths replayed from the buffers
 	private Path edges;
 	private Path body;
 
@@ -27,18 +43,57 @@ public abstract class AbstractBorderedDrawable implements IBorderedDrawable {
 
 	private Arrow outputArrow;
 
+	// The composed shape this one belongs to (notified when the geometry
+	// changes)
+	private ComposedBordered parent;
+
 	public AbstractBorderedDrawable() {
 	}
 
 	public void draw(Canvas canvas) {
-		Path bodyPath = getBodyPath();
-		if (bodyPath != null)
-			canvas.drawPath(bodyPath, getBodyPaint());
-		canvas.drawPath(getEdgePath(), getEdgePaint());
+		draw(new CanvasRenderer(canvas));
+	}
+
+	public void draw(IRenderer renderer) {
+		boolean usesPaths = renderer.usesPaths();
+		renderer.drawPath(getBodyBuffer(), usesPaths ? getBodyPath() : null,
+				getBodyPaint());
+		renderer.drawPath(getEdgeBuffer(), usesPaths ? getEdgePath() : null,
+				getEdgePaint());
+		drawText(renderer);
+		Instrumentation.Listener listener = Instrumentation.getListener();
+		if (listener != null)
+			listener.onDrawCalls(text != null ? 3 : 2);
+	}
+
+	/**
+	 * Draws the text of the shape, if any
+	 */
+	protected void drawText(IRenderer renderer) {
 		if (text != null)
-			canvas.drawText(text, textPositionX,
-					adaptTextPositionY(textPositionY, getTextPaint()),
-					getTextPaint());
+			renderer.drawText(text, getTextX(), getTextY(), getTextPaint());
+	}
+
+	String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the center of the text (placed on the first call)
+	 */
+	float getTextX() {
+		if (!isTextPlaced)
+			computeTextPosition();
+		return textPositionX;
+	}
+
+	/**
+	 * @return the baseline of the text, once centered
+	 */
+	float getTextY() {
+		// Places the text first
+		Paint paint = getTextPaint();
+		return adaptTextPositionY(textPositionY, paint);
 	}
 
 	/**
@@ -62,27 +117,221 @@ public abstract class AbstractBorderedDrawable implements IBorderedDrawable {
 		return getBottom() - getTop();
 	}
 
-	protected abstract void build(Path path, boolean isBody);
+	/**
+	 * Writes the geometry of the shape
+	 * 
+	 * @param path
+	 *            the buffer to write to (empty)
+	 * @param isBody
+	 *            true for the body of the shape, false for its edges
+	 */
+	protected abstract void build(PathBuffer path, boolean isBody);
 
 	protected final void rebuild() {
+		isBodyBuilt = false;
+		isEdgesBuilt = false;
+		isOutlineBuilt = false;
+		isSimplifiedBuilt = false;
 		body = null;
 		edges = null;
 		computeTextPosition();
+		invalidate();
+	}
+
+	/**
+	 * Called each time the geometry of this shape changes. The default
+	 * implementation notifies the composed shape containing this one, so that
+	 * it may drop its own cached geometry.
+	 */
+	protected void invalidate() {
+		if (parent != null) {
+			parent.onPartChanged(this);
+			parent.invalidate();
+		}
+	}
+
+	/**
+	 * Must be called by subclasses each time the bounds of the shape change
+	 * (translate, resize...), so that the composed shape containing this one
+	 * may update its own bounds.
+	 */
+	protected void invalidateBounds() {
+		if (parent != null) {
+			parent.onPartChanged(this);
+			parent.invalidateBounds();
+		}
+	}
+
+	/**
+	 * Called each time the body or edge paint of this shape changes. The
+	 * default implementation notifies the composed shape containing this one.
+	 */
+	protected void invalidateStyle() {
+		if (parent != null) {
+			parent.onPartChanged(this);
+			parent.invalidateStyle();
+		}
+	}
+
+	ComposedBordered getParent() {
+		return parent;
+	}
+
+	void setParent(ComposedBordered parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Moves the geometry which has already been built, instead of building it
+	 * again. Subclasses may call this from translate(), once their own
+	 * coordinates have been moved.
+	 */
+	protected final void offsetGeometry(float dx, float dy) {
+		if (isBodyBuilt)
+			bodyBuffer.offset(dx, dy);
+		if (isEdgesBuilt)
+			edgesBuffer.offset(dx, dy);
+		if (isOutlineBuilt)
+			outline.offset(dx, dy);
+		if (isSimplifiedBuilt) {
+			simplifiedOutline.offset(dx, dy);
+			simplifiedBuffer.offset(dx, dy);
+		}
+		if (body != null)
+			body.offset(dx, dy);
+		if (edges != null)
+			edges.offset(dx, dy);
+		textPositionX += dx;
+		textPositionY += dy;
+		invalidate();
 	}
 
 	private void computeTextPosition() {
 		textPositionX = getLeft() + getWidth() / 2;
 		textPositionY = getTop() + getHeight() / 2;
+		isTextPlaced = true;
+	}
+
+	/**
+	 * @return the geometry of the edges of the shape
+	 */
+	public PathBuffer getEdgeBuffer() {
+		if (!isEdgesBuilt) {
+			boolean isRebuild = edgesBuffer != null;
+			if (isRebuild)
+				edgesBuffer.reset();
+			else
+				edgesBuffer = new PathBuffer();
+			build(edgesBuffer, false, isRebuild);
+			isEdgesBuilt = true;
+		}
+		return edgesBuffer;
+	}
+
+	/**
+	 * @return the geometry of the body of the shape
+	 */
+	public PathBuffer getBodyBuffer() {
+		if (!isBodyBuilt) {
+			boolean isRebuild = bodyBuffer != null;
+			if (isRebuild)
+				bodyBuffer.reset();
+			else
+				bodyBuffer = new PathBuffer();
+			build(bodyBuffer, true, isRebuild);
+			isBodyBuilt = true;
+		}
+		return bodyBuffer;
+	}
+
+	/**
+	 * Builds the geometry, timing it when instrumented
+	 */
+	private void build(PathBuffer path, boolean isBody, boolean isRebuild) {
+		Instrumentation.Listener listener = Instrumentation.getListener();
+		if (listener == null) {
+			build(path, isBody);
+			return;
+		}
+		long start = System.nanoTime();
+		build(path, isBody);
+		listener.onPathBuilt(this, isBody, isRebuild, System.nanoTime()
+				- start);
+	}
+
+	/**
+	 * @return the outline of the body of the shape, its curves being replaced
+	 *         by lines (see setFlatteningTolerance())
+	 */
+	public Polyline getOutline() {
+		if (!isOutlineBuilt) {
+			if (outline == null)
+				outline = new Polyline();
+			outline.flatten(getBodyBuffer(), flatteningTolerance);
+			isOutlineBuilt = true;
+		}
+		return outline;
+	}
+
+	public float getFlatteningTolerance() {
+		return flatteningTolerance;
+	}
+
+	/**
+	 * Sets how far from the curves of the body its outline may go (see
+	 * getOutline()). The outline is used to find the bounds of the shape and
+	 * the points inside it.
+	 * 
+	 * @param tolerance
+	 *            in the units of the shape (0.25 by default)
+	 */
+	public void setFlatteningTolerance(float tolerance) {
+		if (tolerance <= 0)
+			throw new IllegalArgumentException("tolerance<=0");
+		if (tolerance != flatteningTolerance) {
+			flatteningTolerance = tolerance;
+			isOutlineBuilt = false;
+			invalidate();
+		}
+	}
+
+	/**
+	 * @param tolerance
+	 *            how far from the curves the lines may go. The buffer is kept
+	 *            while the same tolerance is asked
+	 * @return the body of the shape without its arrow, and with its curves
+	 *         replaced by straight segments (used to draw small diagrams)
+	 */
+	public PathBuffer getSimplifiedBodyBuffer(float tolerance) {
+		if (!isSimplifiedBuilt
+				|| simplifiedOutline.getTolerance() != tolerance) {
+			PathBuffer body = new PathBuffer();
+			isBuildingSimplified = true;
+			try {
+				build(body, true);
+			} finally {
+				isBuildingSimplified = false;
+			}
+			if (simplifiedOutline == null)
+				simplifiedOutline = new Polyline();
+			simplifiedOutline.flatten(body, tolerance);
+			if (simplifiedBuffer == null)
+				simplifiedBuffer = new PathBuffer(
+						simplifiedOutline.getPointCount());
+			else
+				simplifiedBuffer.reset();
+			simplifiedOutline.appendTo(simplifiedBuffer);
+			isSimplifiedBuilt = true;
+		}
+		return simplifiedBuffer;
 	}
 
 	/**
 	 * @return the path of the edges of the shape
 	 */
 	public Path getEdgePath() {
-		if (edges == null) {
-			edges = new Path();
-			build(edges, false);
-		}
+		if (edges == null)
+			edges = PathBufferAdapter.replay(getEdgeBuffer(), new Path());
 		return edges;
 	}
 
@@ -91,99 +340,150 @@ public abstract class AbstractBorderedDrawable implements IBorderedDrawable {
 	 *         segment only
 	 */
 	public Path getBodyPath() {
-		if (body == null) {
-			body = new Path();
-			build(body, true);
-		}
+		if (body == null)
+			body = PathBufferAdapter.replay(getBodyBuffer(), new Path());
 		return body;
 	}
 
-	protected Paint getBodyPaint() {
-		if (bodyPaint == null) {
-			bodyPaint = new Paint();
+	// The paints belong to the style, shared with other shapes : they are
+	// read-only. The shapes are restyled through setStyle() and the setters
+	// below, and their attributes are read through getStyle().
 
-			bodyPaint.setColor(Color.WHITE);
-			bodyPaint.setAntiAlias(false);
-			bodyPaint.setStyle(Paint.Style.FILL);
-		}
-		return bodyPaint;
+	protected Paint getBodyPaint() {
+		return style.getBodyPaint();
 	}
 
 	protected Paint getEdgePaint() {
-		if (edgePaint == null) {
-			edgePaint = new Paint();
-
-			edgePaint.setColor(Color.BLACK);
-			edgePaint.setAntiAlias(true);
-			edgePaint.setStrokeWidth(4);
-			edgePaint.setStyle(Paint.Style.STROKE);
-		}
-		return edgePaint;
+		return style.getEdgePaint();
 	}
 
 	protected Paint getTextPaint() {
-		if (textPaint == null) {
-			textPaint = new Paint();
-
-			textPaint.setColor(Color.BLACK);
-			textPaint.setAntiAlias(true);
-			textPaint.setTextAlign(Align.CENTER);
+		if (!isTextPlaced)
 			computeTextPosition();
-		}
-		return textPaint;
+		return style.getTextPaint();
 	}
 
-	// Delegates some Paint methods. Useful with Composed shapes
+	public Style getStyle() {
+		return style;
+	}
+
+	/**
+	 * Sets all the paints of the shape at once
+	 */
+	public void setStyle(Style style) {
+		if (style == this.style)
+			return;
+		this.style = style;
+		invalidateStyle();
+	}
+
+	/**
+	 * Sets the style without telling the parent, which is then in charge of
+	 * dropping what depends on it (see ComposedBordered.replaceStyle())
+	 */
+	void replaceStyle(Style style) {
+		this.style = style;
+	}
+
+	// Delegates some Paint methods. Useful with Composed shapes. Each one
+	// gives the shape another style (see Style)
 
 	@Override
 	public void setBodyARGB(int a, int r, int g, int b) {
-		getBodyPaint().setARGB(a, r, g, b);
+		setStyle(style.withBodyColor(Color.argb(a, r, g, b)));
 	}
 
 	@Override
 	public void setBodyAlpha(int arg0) {
-		getBodyPaint().setAlpha(arg0);
+		setStyle(style.withBodyAlpha(arg0));
 	}
 
 	@Override
 	public void setBodyColor(int arg0) {
-		getBodyPaint().setColor(arg0);
+		setStyle(style.withBodyColor(arg0));
 	}
 
 	@Override
 	public void setBodyShader(Shader shader) {
-		getBodyPaint().setShader(shader);
+		setStyle(style.withBodyShader(shader));
 	}
 
 	@Override
 	public void setEdgeARGB(int a, int r, int g, int b) {
-		getEdgePaint().setARGB(a, r, g, b);
+		setStyle(style.withEdgeColor(Color.argb(a, r, g, b)));
 	}
 
 	@Override
 	public void setEdgeAlpha(int a) {
-		getEdgePaint().setAlpha(a);
+		setStyle(style.withEdgeAlpha(a));
 	}
 
 	@Override
 	public void setEdgeColor(int color) {
-		getEdgePaint().setColor(color);
+		setStyle(style.withEdgeColor(color));
 	}
 
 	@Override
 	public void setEdgePathEffect(PathEffect effect) {
-		getEdgePaint().setPathEffect(effect);
+		setStyle(style.withEdgePathEffect(effect));
 	}
 
 	@Override
 	public void setEdgeWidth(float width) {
-		getEdgePaint().setStrokeWidth(width);
+		setStyle(style.withEdgeWidth(width));
+	}
+
+	public void setTextColor(int color) {
+		setStyle(style.withTextColor(color));
+	}
+
+	public void setTextSize(float size) {
+		setStyle(style.withTextSize(size));
 	}
 
 	public RectF getBounds() {
 		return new RectF(getLeft(), getTop(), getRight(), getBottom());
 	}
 
+	/**
+	 * @return true if the point is inside the body of the shape (arrow
+	 *         included)
+	 */
+	public boolean contains(float x, float y) {
+		return getOutline().contains(x, y);
+	}
+
+	/**
+	 * @return true if the body of the shape intersects the rectangle
+	 */
+	public boolean intersects(RectF rect) {
+		return getOutline().intersects(rect.left, rect.top, rect.right,
+				rect.bottom);
+	}
+
+	/**
+	 * Gives the area covered when drawing the shape. Unlike getBounds(), it
+	 * includes the arrow and the width of the edges (but not the text).
+	 * 
+	 * @param out
+	 *            receives the bounds
+	 */
+	public void getDrawBounds(RectF out) {
+		float[] bounds = { Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+				Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+		// The edges follow the outline of the body
+		getOutline().computeBounds(bounds);
+		if (bounds[0] > bounds[2]) {
+			out.set(getLeft(), getTop(), getRight(), getBottom());
+			return;
+		}
+		// Sharp corners of the edges may go up to twice their width away
+		// (default miter limit)
+		float margin = style.getEdgeWidth() * 2;
+		out.set(bounds[0] - margin, bounds[1] - margin, bounds[2] + margin,
+				bounds[3] + margin);
+	}
+
 	/**
 	 * This must be called by subclasses while building the path, when it's time
 	 * to draw the input. It's assumed that the graph cursor is at one edge of
@@ -195,7 +495,7 @@ public abstract class AbstractBorderedDrawable implements IBorderedDrawable {
 	 * @param input
 	 * @param isBody
 	 */
-	protected void drawInput(Path path, Segment input, boolean isBody) {
+	protected void drawInput(PathBuffer path, Segment input, boolean isBody) {
 		if (isBody || isInputClosed())
 			path.lineTo(input.x1, input.y1);
 	}
@@ -212,8 +512,8 @@ public abstract class AbstractBorderedDrawable implements IBorderedDrawable {
 	 *            x2,y2
 	 * @param isBody
 	 */
-	protected void drawOutput(Path path, Segment output, boolean isBody) {
-		if (getOutputArrow() != null)
+	protected void drawOutput(PathBuffer path, Segment output, boolean isBody) {
+		if (getOutputArrow() != null && !isBuildingSimplified)
 			getOutputArrow().draw(output, path);
 		else if (isBody || isOutputClosed())
 			path.lineTo(output.x2, output.y2);
@@ -249,6 +549,7 @@ public abstract class AbstractBorderedDrawable implements IBorderedDrawable {
 
 	public void setOutputArrow(Arrow outputArrow) {
 		this.outputArrow = outputArrow;
+		rebuild();
 	}
 
 }
@@ -1,13 +1,14 @@
 package com.crocoware.infographix;
 
+import com.crocoware.infographix.utils.PathBuffer;
 import com.crocoware.infographix.utils.Segment;
-import com.crocoware.infographix.utils.Vector;
-
-import android.graphics.Path;
 
 /**
  * Defines the size of an arrow, relative to the width of the pipe
  * 
+ * An arrow is immutable : the constants may be shared by diagrams built on
+ * several threads at once.
+ * 
  * @author Benoit
  * 
  */
@@ -17,8 +18,8 @@ public class Arrow {
 	public final static Arrow NARROW = new Arrow(2.2f, 0.5f);
 	public final static Arrow INNER = new Arrow(0.4f, -0.3f);
 	public final static Arrow SIMPLE = new Arrow(0.6f, 0.0f);
-	private float ahead;
-	private float edges;
+	private final float ahead;
+	private final float edges;
 
 	public Arrow(float ahead, float edges) {
 		this.ahead = ahead;
@@ -34,20 +35,23 @@ public class Arrow {
 	 *            the object to write to. The path is supposed to be at the
 	 *            first point of output
 	 */
-	protected void draw(Segment output, Path path) {
+	protected void draw(Segment output, PathBuffer path) {
 		float len = output.length();
-		Vector right = output.getNormal();
-		Vector down = output.getVector().normalize();
 		float x = output.x1;
 		float y = output.y1;
 		float x2 = output.x2;
 		float y2 = output.y2;
+		// Unit vectors along the output (down) and its normal (right)
+		float downX = (x2 - x) / len;
+		float downY = (y2 - y) / len;
+		float rightX = downY;
+		float rightY = -downX;
 		float lenEdges = len * edges;
 		float lenArrow = len * ahead;
-		path.lineTo(x - down.getX() * lenEdges, y - down.getY() * lenEdges);
-		path.lineTo((x + x2) / 2 + right.getX() * lenArrow, (y + y2) / 2
-				+ right.getY() * lenArrow);
-		path.lineTo(x2 + down.getX() * lenEdges, y2 + down.getY() * lenEdges);
+		path.lineTo(x - downX * lenEdges, y - downY * lenEdges);
+		path.lineTo((x + x2) / 2 + rightX * lenArrow, (y + y2) / 2 + rightY
+				* lenArrow);
+		path.lineTo(x2 + downX * lenEdges, y2 + downY * lenEdges);
 		path.lineTo(x2, y2);
 	}
 }
@@ -0,0 +1,274 @@
+package com.crocoware.infographix;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import com.crocoware.infographix.spec.SpecCache;
+
+/**
+ * Builds and rasterises many diagrams concurrently, for instance one per
+ * customer of a nightly batch.
+ * 
+ * Each job builds its own diagram (from a spec, or with a builder), then
+ * turns it into a result (see Rasterizer). The results are given to the sink
+ * as soon as each one is ready, from the thread which has made it, in no
+ * particular order.
+ * 
+ * The number of jobs in progress is bounded : submit() waits while it is
+ * reached, so that a producer reading the jobs from a stream is slowed down
+ * to the pace of the rendering. The memory used by the jobs in progress is
+ * bounded too, from the cost given to each job.
+ * 
+ * A job which fails (an exception thrown by its builder or by the rasterizer)
+ * gives a result holding the error.
+ * 
+ * @author Benoit
+ * 
+ * @param <R>
+ *            the kind of result, usually an image
+ */
+public class BatchRenderer<R> {
+
+	/**
+	 * Turns a built diagram into a result. It is called from several threads
+	 * at once, each with its own diagram.
+	 */
+	public interface Rasterizer<R> {
+		R rasterize(IBorderedDrawable diagram) throws Exception;
+	}
+
+	/**
+	 * Receives the results. It is called from several threads at once.
+	 */
+	public interface Sink<R> {
+		void onResult(Result<R> result);
+	}
+
+	/**
+	 * The result of a job, and how long it took
+	 */
+	public static final class Result<R> {
+		private final String id;
+		private final R output;
+		private final Throwable error;
+		private final long waitNanos, buildNanos, rasterizeNanos;
+
+		Result(String id, R output, Throwable error, long waitNanos,
+				long buildNanos, long rasterizeNanos) {
+			this.id = id;
+			this.output = output;
+			this.error = error;
+			this.waitNanos = waitNanos;
+			this.buildNanos = buildNanos;
+			this.rasterizeNanos = rasterizeNanos;
+		}
+
+		/**
+		 * @return the id given to submit()
+		 */
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * @return the result, or null if the job has failed
+		 */
+		public R getOutput() {
+			return output;
+		}
+
+		/**
+		 * @return why the job has failed, or null if it has succeeded
+		 */
+		public Throwable getError() {
+			return error;
+		}
+
+		/**
+		 * @return the time between the submission and the start of the job
+		 */
+		public long getWaitNanos() {
+			return waitNanos;
+		}
+
+		public long getBuildNanos() {
+			return buildNanos;
+		}
+
+		public long getRasterizeNanos() {
+			return rasterizeNanos;
+		}
+	}
+
+	private final ExecutorService executor;
+	private final Rasterizer<R> rasterizer;
+	private final Sink<R> sink;
+	// One permit for each job which may be in progress
+	private final Semaphore jobs;
+	private final int maxJobs;
+	// One permit for each KB of the memory budget
+	private final Semaphore memory;
+	private final int memoryKB;
+
+	/**
+	 * @param executor
+	 *            runs the jobs (see createExecutor()). It is not shut down by
+	 *            the renderer.
+	 * @param maxJobs
+	 *            the number of jobs which may be in progress at once
+	 * @param memoryBudget
+	 *            the total cost (see submit()) of the jobs in progress, in
+	 *            bytes
+	 */
+	public BatchRenderer(ExecutorService executor, int maxJobs,
+			long memoryBudget, Rasterizer<R> rasterizer, Sink<R> sink) {
+		if (maxJobs <= 0)
+			throw new IllegalArgumentException("maxJobs<=0");
+		if (memoryBudget < 1024)
+			throw new IllegalArgumentException("memoryBudget<1024");
+		this.executor = executor;
+		this.rasterizer = rasterizer;
+		this.sink = sink;
+		this.maxJobs = maxJobs;
+		jobs = new Semaphore(maxJobs);
+		memoryKB = (int) Math.min(memoryBudget / 1024, Integer.MAX_VALUE);
+		// Fair, so that a costly job is not overtaken forever
+		memory = new Semaphore(memoryKB, true);
+	}
+
+	/**
+	 * Creates an executor fit for the jobs : one virtual thread per job when
+	 * the platform has them (Java 21 and later), a pool of the given number
+	 * of threads otherwise. The number of jobs in progress is bounded by the
+	 * renderer anyway.
+	 */
+	public static ExecutorService createExecutor(int threads) {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return Executors.newFixedThreadPool(threads);
+		}
+	}
+
+	/**
+	 * Rasterises the diagrams into bitmaps of their size (see
+	 * ComposedBordered.getDrawBounds())
+	 * 
+	 * @param scale
+	 *            the size of a unit of the diagram, in pixels
+	 */
+	public static Rasterizer<Bitmap> createBitmapRasterizer(final float scale) {
+		return new Rasterizer<Bitmap>() {
+			public Bitmap rasterize(IBorderedDrawable diagram) {
+				RectF bounds = new RectF();
+				if (diagram instanceof AbstractBorderedDrawable)
+					((AbstractBorderedDrawable) diagram).getDrawBounds(bounds);
+				else
+					bounds.set(diagram.getLeft(), diagram.getTop(),
+							diagram.getRight(), diagram.getBottom());
+				Bitmap bitmap = Bitmap.createBitmap(
+						Math.max(1, (int) Math.ceil(bounds.width() * scale)),
+						Math.max(1, (int) Math.ceil(bounds.height() * scale)),
+						Bitmap.Config.ARGB_8888);
+				Canvas canvas = new Canvas(bitmap);
+				canvas.scale(scale, scale);
+				canvas.translate(-bounds.left, -bounds.top);
+				diagram.draw(canvas);
+				return bitmap;
+			}
+		};
+	}
+
+	/**
+	 * Adds a job building its diagram from a text or binary spec (see
+	 * SpecCache.build())
+	 * 
+	 * @see #submit(String, SnapshotRenderer.Builder, long)
+	 */
+	public void submit(String id, final byte[] spec, long cost)
+			throws InterruptedException {
+		submit(id, new SnapshotRenderer.Builder() {
+			public IBorderedDrawable build() {
+				return SpecCache.build(spec).getDrawable();
+			}
+		}, cost);
+	}
+
+	/**
+	 * Adds a job, waiting first while the number of jobs in progress or the
+	 * memory budget is reached
+	 * 
+	 * @param id
+	 *            given back with the result
+	 * @param builder
+	 *            creates the diagram (called from a worker thread)
+	 * @param cost
+	 *            the memory the job needs, in bytes : usually the size of the
+	 *            result. A job costing more than the budget runs alone.
+	 */
+	public void submit(final String id, final SnapshotRenderer.Builder builder,
+			long cost) throws InterruptedException {
+		final int costKB = (int) Math.max(1,
+				Math.min((cost + 1023) / 1024, memoryKB));
+		final long submitted = System.nanoTime();
+		jobs.acquire();
+		try {
+			memory.acquire(costKB);
+		} catch (InterruptedException e) {
+			jobs.release();
+			throw e;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						sink.onResult(runJob(id, builder, submitted));
+					} finally {
+						memory.release(costKB);
+						jobs.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			memory.release(costKB);
+			jobs.release();
+			throw e;
+		}
+	}
+
+	private Result<R> runJob(String id, SnapshotRenderer.Builder builder,
+			long submitted) {
+		long start = System.nanoTime();
+		IBorderedDrawable diagram = null;
+		long built = 0;
+		try {
+			diagram = builder.build();
+			built = System.nanoTime();
+			R output = rasterizer.rasterize(diagram);
+			return new Result<R>(id, output, null, start - submitted, built
+					- start, System.nanoTime() - built);
+		} catch (Exception e) {
+			long now = System.nanoTime();
+			if (diagram == null)
+				return new Result<R>(id, null, e, start - submitted, now
+						- start, 0);
+			return new Result<R>(id, null, e, start - submitted, built - start,
+					now - built);
+		}
+	}
+
+	/**
+	 * Waits until all the jobs submitted have been given to the sink
+	 */
+	public void awaitCompletion() throws InterruptedException {
+		jobs.acquire(maxJobs);
+		jobs.release(maxJobs);
+	}
+}
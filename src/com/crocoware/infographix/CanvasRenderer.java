@@ -0,0 +1,76 @@
+package com.crocoware.infographix;
+
+import android.graphics.Canvas;
+import android.graphics.Canvas.EdgeType;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.crocoware.infographix.utils.PathBuffer;
+import com.crocoware.infographix.utils.PathBufferAdapter;
+
+/**
+ * Draws the shapes on an Android canvas
+ * 
+ * @author Benoit
+ * 
+ */
+public class CanvasRenderer implements IRenderer {
+
+	private final Canvas canvas;
+	// Used for the paths given as buffers only
+	private Path path;
+
+	public CanvasRenderer(Canvas canvas) {
+		this.canvas = canvas;
+	}
+
+	public Canvas getCanvas() {
+		return canvas;
+	}
+
+	public boolean usesPaths() {
+		return true;
+	}
+
+	public void drawPath(PathBuffer buffer, Path path, Paint paint) {
+		if (path == null) {
+			if (this.path == null)
+				this.path = new Path();
+			else
+				this.path.reset();
+			path = PathBufferAdapter.replay(buffer, this.path);
+		}
+		canvas.drawPath(path, paint);
+	}
+
+	public void drawText(String text, float x, float y, Paint paint) {
+		canvas.drawText(text, x, y, paint);
+	}
+
+	public void save() {
+		canvas.save();
+	}
+
+	public void restore() {
+		canvas.restore();
+	}
+
+	public void concat(Matrix matrix) {
+		canvas.concat(matrix);
+	}
+
+	public void getMatrix(Matrix out) {
+		canvas.getMatrix(out);
+	}
+
+	public boolean getClipBounds(Rect out) {
+		return canvas.getClipBounds(out);
+	}
+
+	public boolean quickReject(RectF rect) {
+		return canvas.quickReject(rect, EdgeType.AA);
+	}
+}
@@ -2,17 +2,38 @@ package com.crocoware.infographix;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Path;
 import android.graphics.PathEffect;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Shader;
 
 import com.crocoware.infographix.shapes.IPipelinePart;
+import com.crocoware.infographix.utils.GridIndex;
+import com.crocoware.infographix.utils.PathBuffer;
+import com.crocoware.infographix.utils.PathBufferAdapter;
 
 /**
  * Builds a bordered shape from many others
  * 
+ * Moving or resizing a composed shape does not change its parts : it only
+ * changes a transform, applied when drawing. The cached paths and the shaders
+ * of the parts remain valid.
+ * 
+ * When drawing, the parts which are out of the clip of the canvas are skipped.
+ * They are found with a spatial index over the area covered by each part, so
+ * that the cost of drawing grows with the number of visible parts. The same
+ * index finds the parts under a point (see findPartsAt()).
+ * 
+ * A composed shape drawn small may be simplified (see setSimplifiedScale()).
+ * 
+ * Drawing builds caches : a shape must not be drawn, nor changed, by several
+ * threads at once (see RenderSnapshot to draw from other threads).
+ * 
  * @author Benoit
  * 
  */
@@ -20,6 +41,54 @@ public class ComposedBordered extends AbstractBorderedDrawable {
 
 	protected ArrayList<IBorderedDrawable> parts;
 
+	// Aggregated geometry of all the parts. It is built on demand and dropped
+	// each time a part changes (see invalidate())
+	private PathBuffer edgesBufferCache;
+	private PathBuffer bodyBufferCache;
+	private Path edgesCache;
+	private Path bodyCache;
+
+	// Union of the bounds of all the parts, maintained while pushing parts
+	// (the transform is not applied)
+	private boolean hasBounds;
+	private float left, top, right, bottom;
+
+	// Transform given by translate() and resize(), applied at draw time : a
+	// scale followed by a translation. The matrix is null until first used
+	private float scaleX = 1, scaleY = 1, translateX = 0, translateY = 0;
+	private Matrix matrix;
+
+	// When set, consecutive parts sharing the same paints are drawn at once
+	private boolean isBatched = false;
+	// Merged paths used in batched mode (built on demand)
+	private ArrayList<Batch> batches;
+
+	// When set, the parts out of the clip are not drawn
+	private boolean isCulled = true;
+	// Index of the parts on the area they cover when drawn (built on demand,
+	// for composed shapes having enough parts). It is kept up to date by the
+	// parts themselves (see onPartChanged())
+	private GridIndex<IBorderedDrawable> index;
+	private int indexedSize;
+	private static final int INDEX_MIN_PARTS = 16;
+	// Union of the draw bounds of the parts (the transform is not applied)
+	private boolean hasDrawBounds;
+	private final RectF drawBounds = new RectF();
+	// Buffer of the draw bounds of a part
+	private final RectF partBounds = new RectF();
+	// Buffers used while drawing
+	private Rect clipBounds;
+	private ArrayList<IBorderedDrawable> visibleParts;
+
+	// Below this on-screen scale, the shape is drawn simplified (0 : never)
+	private float simplifiedScale = 0;
+	// Simplified batches, built for a range of scales
+	private ArrayList<Batch> simplifiedBatches;
+	private int simplifiedLevel;
+	// Buffers used to read the scale of the canvas
+	private Matrix screenMatrix;
+	private float[] matrixValues;
+
 	public ComposedBordered(IPipelinePart... parts) {
 		setParts(parts);
 	}
@@ -30,81 +99,464 @@ public class ComposedBordered extends AbstractBorderedDrawable {
 	 * @param parts
 	 */
 	public void setParts(IPipelinePart... parts) {
+		index = null;
 		this.parts = new ArrayList<IBorderedDrawable>(parts.length);
 		this.parts.addAll(Arrays.asList(parts));
+		for (IPipelinePart part : parts)
+			adopt(part);
+		invalidate();
+		invalidateBounds();
 	}
 
 	public void push(IPipelinePart part) {
 		parts.add(part);
+		adopt(part);
+		if (index != null)
+			index.add(part, parts.size() - 1);
+		invalidate();
+		// The union of the bounds only has to be extended
+		if (hasBounds) {
+			include(part);
+			super.invalidateBounds();
+		}
+	}
+
+	/**
+	 * Moves all the parts of another composed shape to the end of this one,
+	 * in the same order. The other shape is left empty.
+	 */
+	void pushAll(ComposedBordered other) {
+		if (other.hasTransform())
+			throw new IllegalArgumentException("The shape has been moved");
+		for (IBorderedDrawable part : other.parts) {
+			parts.add(part);
+			adopt(part);
+			if (index != null)
+				index.add(part, parts.size() - 1);
+			if (hasBounds)
+				include(part);
+		}
+		other.setParts();
+		invalidate();
+		if (hasBounds)
+			super.invalidateBounds();
 	}
 
+	private void adopt(IBorderedDrawable part) {
+		if (part instanceof AbstractBorderedDrawable)
+			((AbstractBorderedDrawable) part).setParent(this);
+	}
+
+	/**
+	 * Drops the aggregated paths. This is called by the parts themselves each
+	 * time their geometry changes, and is propagated to the enclosing composed
+	 * shapes.
+	 */
 	@Override
-	public Path getEdgePath() {
-		Path path = new Path();
-		for (IBorderedDrawable part : parts) {
-			path.addPath(part.getEdgePath());
+	protected void invalidate() {
+		hasDrawBounds = false;
+		edgesBufferCache = null;
+		bodyBufferCache = null;
+		edgesCache = null;
+		bodyCache = null;
+		batches = null;
+		simplifiedBatches = null;
+		super.invalidate();
+	}
+
+	/**
+	 * Drops the batches, which depend on the paints of the parts
+	 */
+	@Override
+	protected void invalidateStyle() {
+		dropBatches();
+		super.invalidateStyle();
+	}
+
+	@Override
+	public PathBuffer getEdgeBuffer() {
+		if (edgesBufferCache == null) {
+			PathBuffer buffer = new PathBuffer();
+			for (IBorderedDrawable part : parts) {
+				buffer.append(part.getEdgeBuffer());
+			}
+			if (hasTransform())
+				buffer.transform(scaleX, scaleY, translateX, translateY);
+			edgesBufferCache = buffer;
 		}
-		return path;
+		return edgesBufferCache;
 	}
 
 	@Override
-	public Path getBodyPath() {
-		Path path = new Path();
-		for (IBorderedDrawable part : parts) {
-			path.addPath(part.getBodyPath());
+	public PathBuffer getBodyBuffer() {
+		if (bodyBufferCache == null) {
+			PathBuffer buffer = new PathBuffer();
+			for (IBorderedDrawable part : parts) {
+				buffer.append(part.getBodyBuffer());
+			}
+			if (hasTransform())
+				buffer.transform(scaleX, scaleY, translateX, translateY);
+			bodyBufferCache = buffer;
 		}
-		return path;
+		return bodyBufferCache;
+	}
+
+	@Override
+	public Path getEdgePath() {
+		if (edgesCache == null)
+			edgesCache = PathBufferAdapter.replay(getEdgeBuffer(), new Path());
+		return edgesCache;
+	}
+
+	@Override
+	public Path getBodyPath() {
+		if (bodyCache == null)
+			bodyCache = PathBufferAdapter.replay(getBodyBuffer(), new Path());
+		return bodyCache;
 	}
 
 	@Override
 	public float getLeft() {
-		float left = Float.POSITIVE_INFINITY;
-		for (IBorderedDrawable part : parts) {
-			if (left > part.getLeft())
-				left = part.getLeft();
-		}
-		return left;
+		ensureBounds();
+		return Math.min(left * scaleX, right * scaleX) + translateX;
 	}
 
 	@Override
 	public float getRight() {
-		float right = Float.NEGATIVE_INFINITY;
-		for (IBorderedDrawable part : parts) {
-			if (right < part.getRight())
-				right = part.getRight();
-		}
-		return right;
+		ensureBounds();
+		return Math.max(left * scaleX, right * scaleX) + translateX;
 	}
 
 	@Override
 	public float getTop() {
-		float top = Float.POSITIVE_INFINITY;
+		ensureBounds();
+		return Math.min(top * scaleY, bottom * scaleY) + translateY;
+	}
+
+	@Override
+	public float getBottom() {
+		ensureBounds();
+		return Math.max(top * scaleY, bottom * scaleY) + translateY;
+	}
+
+	/**
+	 * Drops the bounds, which will be computed again on next access. This is
+	 * called by the parts themselves each time they are moved or resized.
+	 */
+	@Override
+	protected void invalidateBounds() {
+		hasDrawBounds = false;
+		// If the bounds are not known here, then the parents don't know
+		// theirs either
+		if (!hasBounds)
+			return;
+		hasBounds = false;
+		super.invalidateBounds();
+	}
+
+	/**
+	 * Called by a part each time its geometry, bounds or paints change, before
+	 * the matching invalidate method.
+	 */
+	void onPartChanged(IBorderedDrawable part) {
+		if (index != null)
+			index.invalidate(part);
+	}
+
+	/**
+	 * The union of the draw bounds of the parts, with the transform applied
+	 */
+	@Override
+	public void getDrawBounds(RectF out) {
+		ensureDrawBounds();
+		out.set(Math.min(drawBounds.left * scaleX, drawBounds.right * scaleX)
+				+ translateX,
+				Math.min(drawBounds.top * scaleY, drawBounds.bottom * scaleY)
+						+ translateY,
+				Math.max(drawBounds.left * scaleX, drawBounds.right * scaleX)
+						+ translateX,
+				Math.max(drawBounds.top * scaleY, drawBounds.bottom * scaleY)
+						+ translateY);
+	}
+
+	private void ensureDrawBounds() {
+		if (hasDrawBounds)
+			return;
+		// The parents are only told about the changes of the bounds when
+		// these are known (see invalidateBounds())
+		ensureBounds();
+		float left = Float.POSITIVE_INFINITY, top = Float.POSITIVE_INFINITY;
+		float right = Float.NEGATIVE_INFINITY, bottom = Float.NEGATIVE_INFINITY;
 		for (IBorderedDrawable part : parts) {
-			if (top > part.getTop())
-				top = part.getTop();
+			getDrawBounds(part, partBounds);
+			left = Math.min(left, partBounds.left);
+			top = Math.min(top, partBounds.top);
+			right = Math.max(right, partBounds.right);
+			bottom = Math.max(bottom, partBounds.bottom);
+		}
+		drawBounds.set(left, top, right, bottom);
+		hasDrawBounds = true;
+	}
+
+	private static void getDrawBounds(IBorderedDrawable part, RectF out) {
+		if (part instanceof AbstractBorderedDrawable)
+			((AbstractBorderedDrawable) part).getDrawBounds(out);
+		else
+			out.set(part.getLeft(), part.getTop(), part.getRight(),
+					part.getBottom());
+	}
+
+	/**
+	 * Finds the parts whose body contains the given point
+	 * 
+	 * @return the parts, the one drawn on top first
+	 */
+	public List<IBorderedDrawable> findPartsAt(float x, float y) {
+		// Point in the coordinates of the parts
+		float partX = (x - translateX) / scaleX;
+		float partY = (y - translateY) / scaleY;
+		ArrayList<IBorderedDrawable> found = new ArrayList<IBorderedDrawable>();
+		findCandidates(partX, partY, partX, partY, found);
+		for (int i = found.size() - 1; i >= 0; i--) {
+			if (!contains(found.get(i), partX, partY))
+				found.remove(i);
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the parts whose body intersects the given rectangle
+	 * 
+	 * @return the parts, the one drawn on top first
+	 */
+	public List<IBorderedDrawable> findPartsIn(RectF rect) {
+		RectF partRect = toPartCoordinates(rect);
+		ArrayList<IBorderedDrawable> found = new ArrayList<IBorderedDrawable>();
+		findCandidates(partRect.left, partRect.top, partRect.right,
+				partRect.bottom, found);
+		for (int i = found.size() - 1; i >= 0; i--) {
+			if (!intersects(found.get(i), partRect))
+				found.remove(i);
 		}
-		return top;
+		return found;
 	}
 
 	@Override
-	public float getBottom() {
-		float bottom = Float.NEGATIVE_INFINITY;
+	public boolean contains(float x, float y) {
+		float partX = (x - translateX) / scaleX;
+		float partY = (y - translateY) / scaleY;
+		ArrayList<IBorderedDrawable> candidates = new ArrayList<IBorderedDrawable>();
+		findCandidates(partX, partY, partX, partY, candidates);
+		for (IBorderedDrawable part : candidates) {
+			if (contains(part, partX, partY))
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean intersects(RectF rect) {
+		RectF partRect = toPartCoordinates(rect);
+		ArrayList<IBorderedDrawable> candidates = new ArrayList<IBorderedDrawable>();
+		findCandidates(partRect.left, partRect.top, partRect.right,
+				partRect.bottom, candidates);
+		for (IBorderedDrawable part : candidates) {
+			if (intersects(part, partRect))
+				return true;
+		}
+		return false;
+	}
+
+	private RectF toPartCoordinates(RectF rect) {
+		float x1 = (rect.left - translateX) / scaleX;
+		float x2 = (rect.right - translateX) / scaleX;
+		float y1 = (rect.top - translateY) / scaleY;
+		float y2 = (rect.bottom - translateY) / scaleY;
+		return new RectF(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2),
+				Math.max(y1, y2));
+	}
+
+	/**
+	 * Gives the parts whose draw bounds intersect the area, in the order of
+	 * the parts
+	 */
+	private void findCandidates(float left, float top, float right,
+			float bottom, List<IBorderedDrawable> out) {
+		if (parts.size() >= INDEX_MIN_PARTS) {
+			ensureIndex();
+			index.query(left, top, right, bottom, out);
+			return;
+		}
+		for (IBorderedDrawable part : parts) {
+			getDrawBounds(part, partBounds);
+			if (partBounds.left <= right && left <= partBounds.right
+					&& partBounds.top <= bottom && top <= partBounds.bottom)
+				out.add(part);
+		}
+	}
+
+	private static boolean contains(IBorderedDrawable part, float x, float y) {
+		if (part instanceof AbstractBorderedDrawable)
+			return ((AbstractBorderedDrawable) part).contains(x, y);
+		return part.getLeft() <= x && x <= part.getRight()
+				&& part.getTop() <= y && y <= part.getBottom();
+	}
+
+	private static boolean intersects(IBorderedDrawable part, RectF rect) {
+		if (part instanceof AbstractBorderedDrawable)
+			return ((AbstractBorderedDrawable) part).intersects(rect);
+		return part.getLeft() <= rect.right && rect.left <= part.getRight()
+				&& part.getTop() <= rect.bottom && rect.top <= part.getBottom();
+	}
+
+	/**
+	 * Builds the index of the parts, if missing or too old
+	 */
+	private void ensureIndex() {
+		if (index != null && parts.size() <= 4 * indexedSize)
+			return;
+		// Cells about twice as large as the parts
+		float size = 0;
+		int count = 0;
 		for (IBorderedDrawable part : parts) {
-			if (bottom < part.getBottom())
-				bottom = part.getBottom();
+			getDrawBounds(part, partBounds);
+			float partSize = Math.max(partBounds.width(), partBounds.height());
+			// Degenerated parts are ignored
+			if (partSize > 0 && !Float.isInfinite(partSize)) {
+				size += partSize;
+				count++;
+			}
+		}
+		float cellSize = count > 0 ? 2 * size / count : 1;
+		index = new GridIndex<IBorderedDrawable>(cellSize,
+				new DrawBoundsProvider());
+		for (int i = 0; i < parts.size(); i++) {
+			index.add(parts.get(i), i);
+		}
+		indexedSize = parts.size();
+	}
+
+	private static final class DrawBoundsProvider implements
+			GridIndex.BoundsProvider<IBorderedDrawable> {
+		private final RectF bounds = new RectF();
+
+		public void getBounds(IBorderedDrawable part, float[] out) {
+			getDrawBounds(part, bounds);
+			out[0] = bounds.left;
+			out[1] = bounds.top;
+			out[2] = bounds.right;
+			out[3] = bounds.bottom;
 		}
-		return bottom;
 	}
 
+	private void ensureBounds() {
+		if (hasBounds)
+			return;
+		left = top = Float.POSITIVE_INFINITY;
+		right = bottom = Float.NEGATIVE_INFINITY;
+		for (IBorderedDrawable part : parts) {
+			include(part);
+		}
+		hasBounds = true;
+	}
+
+	/**
+	 * Extends the bounds so that they contain the given part
+	 */
+	private void include(IBorderedDrawable part) {
+		float partLeft = part.getLeft();
+		float partTop = part.getTop();
+		float partRight = part.getRight();
+		float partBottom = part.getBottom();
+		if (left > partLeft)
+			left = partLeft;
+		if (top > partTop)
+			top = partTop;
+		if (right < partRight)
+			right = partRight;
+		if (bottom < partBottom)
+			bottom = partBottom;
+	}
+
+	/**
+	 * Moves the shape. Only the transform is changed : the parts keep their
+	 * coordinates.
+	 */
 	@Override
 	public void translate(float dx, float dy) {
+		translateX += dx;
+		translateY += dy;
+		transformChanged();
+	}
+
+	/**
+	 * Scales the shape to fit the given box. Only the transform is changed :
+	 * the parts keep their coordinates.
+	 */
+	@Override
+	public void resize(float left, float top, float width, float height) {
+		float ratioX = width / getWidth();
+		float ratioY = height / getHeight();
+		// The box is mapped to the new one after the current transform
+		translateX = (translateX - getLeft()) * ratioX + left;
+		translateY = (translateY - getTop()) * ratioY + top;
+		scaleX *= ratioX;
+		scaleY *= ratioY;
+		transformChanged();
+	}
+
+	/**
+	 * @return the draw-time transform, or null if the shape has not been moved
+	 *         nor resized
+	 */
+	Matrix getTransform() {
+		return hasTransform() ? matrix : null;
+	}
+
+	private boolean hasTransform() {
+		return scaleX != 1 || scaleY != 1 || translateX != 0
+				|| translateY != 0;
+	}
+
+	private void transformChanged() {
+		if (matrix == null)
+			matrix = new Matrix();
+		matrix.setScale(scaleX, scaleY);
+		matrix.postTranslate(translateX, translateY);
+		// The aggregated geometry is given with the transform applied, but
+		// the batches are not
+		edgesBufferCache = null;
+		bodyBufferCache = null;
+		edgesCache = null;
+		bodyCache = null;
+		super.invalidate();
+		super.invalidateBounds();
+	}
+
+	/**
+	 * Moves each part of the shape. This is needed by the shapes whose parts
+	 * give the outputs to the next shapes.
+	 */
+	protected void translateParts(float dx, float dy) {
+		boolean hadBounds = hasBounds;
 		for (IBorderedDrawable part : parts) {
 			part.translate(dx, dy);
 		}
+		// The parts have dropped our bounds, but they are easily moved
+		if (hadBounds) {
+			left += dx;
+			right += dx;
+			top += dy;
+			bottom += dy;
+			hasBounds = true;
+		}
 	}
 
-	@Override
-	public void resize(float left, float top, float width, float height) {
+	/**
+	 * Resizes each part of the shape (see translateParts())
+	 */
+	protected void resizeParts(float left, float top, float width,
+			float height) {
 		// Initial positions
 		float left1 = getLeft();
 		float top1 = getTop();
@@ -119,10 +571,17 @@ public class ComposedBordered extends AbstractBorderedDrawable {
 			float newH = part.getHeight() * ratioY;
 			part.resize(newX, newY, newW, newH);
 		}
+		// Each part has been mapped linearly into the new box, so that the
+		// union of their bounds is the box itself
+		this.left = left;
+		this.top = top;
+		this.right = left + width;
+		this.bottom = top + height;
+		hasBounds = true;
 	}
 
 	@Override
-	protected void build(Path path, boolean isBody) {
+	protected void build(PathBuffer path, boolean isBody) {
 		throw new IllegalAccessError(
 				"build() should not be called on ComposedBordered class");
 	}
@@ -190,6 +649,91 @@ public class ComposedBordered extends AbstractBorderedDrawable {
 		}
 	}
 
+	@Override
+	public void setTextColor(int color) {
+		for (IBorderedDrawable part : parts) {
+			if (part instanceof AbstractBorderedDrawable)
+				((AbstractBorderedDrawable) part).setTextColor(color);
+		}
+	}
+
+	@Override
+	public void setTextSize(float size) {
+		for (IBorderedDrawable part : parts) {
+			if (part instanceof AbstractBorderedDrawable)
+				((AbstractBorderedDrawable) part).setTextSize(size);
+		}
+	}
+
+	/**
+	 * Gives the style to all the parts (the parts which are not
+	 * AbstractBorderedDrawable are left unchanged)
+	 */
+	@Override
+	public void setStyle(Style style) {
+		for (IBorderedDrawable part : parts) {
+			if (part instanceof AbstractBorderedDrawable)
+				((AbstractBorderedDrawable) part).setStyle(style);
+		}
+	}
+
+	/**
+	 * Gives another style to the parts having the given one, nested composed
+	 * shapes included. This is much cheaper than calling the setters on each
+	 * part, as no style is created, and the batches are dropped only once.
+	 * 
+	 * @return the number of parts restyled
+	 */
+	public int replaceStyle(Style from, Style to) {
+		if (from == to)
+			return 0;
+		int count = replaceStyleOfParts(from, to);
+		if (count > 0)
+			invalidateStyle();
+		return count;
+	}
+
+	private int replaceStyleOfParts(Style from, Style to) {
+		// The draw bounds include the edges
+		boolean isResized = from.getEdgeWidth() != to.getEdgeWidth();
+		int count = 0;
+		for (IBorderedDrawable part : parts) {
+			int replaced = 0;
+			if (part instanceof ComposedBordered) {
+				ComposedBordered composed = (ComposedBordered) part;
+				replaced = composed.replaceStyleOfParts(from, to);
+				if (replaced > 0)
+					composed.dropBatches();
+			} else if (part instanceof AbstractBorderedDrawable) {
+				AbstractBorderedDrawable shape = (AbstractBorderedDrawable) part;
+				if (shape.getStyle() == from) {
+					shape.replaceStyle(to);
+					replaced = 1;
+				}
+			}
+			if (replaced > 0 && isResized)
+				onPartChanged(part);
+			count += replaced;
+		}
+		return count;
+	}
+
+	private void dropBatches() {
+		hasDrawBounds = false;
+		batches = null;
+		simplifiedBatches = null;
+	}
+
+	@Override
+	public void setFlatteningTolerance(float tolerance) {
+		super.setFlatteningTolerance(tolerance);
+		for (IBorderedDrawable part : parts) {
+			if (part instanceof AbstractBorderedDrawable)
+				((AbstractBorderedDrawable) part)
+						.setFlatteningTolerance(tolerance);
+		}
+	}
+
 	@Override
 	public void setInputClosed(boolean isInputClosed) {
 		super.setInputClosed(isInputClosed);
@@ -208,10 +752,345 @@ public class ComposedBordered extends AbstractBorderedDrawable {
 
 	@Override
 	public void draw(Canvas canvas) {
-		int size = parts.size();
+		draw(new CanvasRenderer(canvas));
+	}
+
+	@Override
+	public void draw(IRenderer renderer) {
+		boolean isTransformed = hasTransform();
+		if (isTransformed) {
+			renderer.save();
+			renderer.concat(matrix);
+		}
+		float scale = simplifiedScale > 0 ? getScreenScale(renderer) : 1;
+		if (scale < simplifiedScale)
+			drawSimplified(renderer, scale);
+		else if (isBatched)
+			drawBatches(renderer);
+		else
+			drawParts(renderer);
+		if (isTransformed)
+			renderer.restore();
+	}
+
+	private void drawParts(IRenderer renderer) {
+		List<IBorderedDrawable> toDraw = parts;
+		if (isCulled && parts.size() >= INDEX_MIN_PARTS) {
+			if (clipBounds == null) {
+				clipBounds = new Rect();
+				visibleParts = new ArrayList<IBorderedDrawable>();
+			}
+			// The clip is given in the coordinates of the parts
+			if (!renderer.getClipBounds(clipBounds)) {
+				reportPartsDrawn(0, parts.size());
+				return;
+			}
+			ensureDrawBounds();
+			if (!drawBounds.intersects(clipBounds.left, clipBounds.top,
+					clipBounds.right, clipBounds.bottom)) {
+				reportPartsDrawn(0, parts.size());
+				return;
+			}
+			if (!isInside(drawBounds, clipBounds)) {
+				ensureIndex();
+				visibleParts.clear();
+				index.query(clipBounds.left, clipBounds.top, clipBounds.right,
+						clipBounds.bottom, visibleParts);
+				toDraw = visibleParts;
+			}
+		}
+		int size = toDraw.size();
 		// Draw parts in reverse order (arrows need this)
 		for (int i = 0; i < size; i++) {
-			parts.get(size - i - 1).draw(canvas);
+			toDraw.get(size - i - 1).draw(renderer);
+		}
+		reportPartsDrawn(size, parts.size() - size);
+	}
+
+	private void reportPartsDrawn(int visited, int culled) {
+		Instrumentation.Listener listener = Instrumentation.getListener();
+		if (listener != null)
+			listener.onPartsDrawn(this, visited, culled);
+	}
+
+	private static boolean isInside(RectF bounds, Rect clip) {
+		return clip.left <= bounds.left && bounds.right <= clip.right
+				&& clip.top <= bounds.top && bounds.bottom <= clip.bottom;
+	}
+
+	public boolean isCulled() {
+		return isCulled;
+	}
+
+	/**
+	 * When culled (default), the parts which are entirely out of the clip of
+	 * the canvas are not drawn. The area of a part includes its edges and its
+	 * arrow, but not its text.
+	 * 
+	 * @param isCulled
+	 */
+	public void setCulled(boolean isCulled) {
+		this.isCulled = isCulled;
+	}
+
+	public boolean isBatched() {
+		return isBatched;
+	}
+
+	/**
+	 * In batched mode, consecutive parts (in drawing order, nested composed
+	 * shapes included) which share the same body and edge paints are merged
+	 * into one path for the body and one path for the edges, drawn with a
+	 * single call each. Inside a batch, the edges are drawn over all the
+	 * bodies, so a part with an output arrow starts a new batch : its arrow
+	 * is drawn over the parts after it, as when not batched. The composed
+	 * shapes which have been moved or resized are drawn on their own.
+	 * 
+	 * @param isBatched
+	 */
+	public void setBatched(boolean isBatched) {
+		this.isBatched = isBatched;
+		batches = null;
+	}
+
+	public float getSimplifiedScale() {
+		return simplifiedScale;
+	}
+
+	/**
+	 * When the shape is drawn at an on-screen scale (given by the matrix of
+	 * the canvas and the transform of the shape) below the given one, it is
+	 * drawn simplified : only the bodies are drawn, without their arrows and
+	 * with their curves replaced by straight segments, the parts smaller than
+	 * a pixel are skipped, and consecutive parts sharing the same body paint
+	 * are merged into a single path. The edges and the texts are not drawn.
+	 * 
+	 * @param simplifiedScale
+	 *            0 (default) to always draw the shape in full
+	 */
+	public void setSimplifiedScale(float simplifiedScale) {
+		if (simplifiedScale < 0)
+			throw new IllegalArgumentException("simplifiedScale<0");
+		this.simplifiedScale = simplifiedScale;
+		simplifiedBatches = null;
+	}
+
+	/**
+	 * @return the size of a unit of the shape on the screen
+	 */
+	private float getScreenScale(IRenderer renderer) {
+		if (screenMatrix == null) {
+			screenMatrix = new Matrix();
+			matrixValues = new float[9];
+		}
+		renderer.getMatrix(screenMatrix);
+		screenMatrix.getValues(matrixValues);
+		float det = matrixValues[Matrix.MSCALE_X] * matrixValues[Matrix.MSCALE_Y]
+				- matrixValues[Matrix.MSKEW_X] * matrixValues[Matrix.MSKEW_Y];
+		return (float) Math.sqrt(Math.abs(det));
+	}
+
+	private void drawSimplified(IRenderer renderer, float scale) {
+		ensureDrawBounds();
+		if (Math.max(drawBounds.width(), drawBounds.height()) * scale < 1) {
+			// The whole shape is smaller than a pixel
+			reportPartsDrawn(0, parts.size());
+			return;
+		}
+		// The batches are kept while the scale stays in the same power of 2
+		int level = (int) Math.floor(Math.log(scale) / Math.log(2));
+		if (simplifiedBatches == null || level != simplifiedLevel) {
+			simplifiedLevel = level;
+			// Size of a pixel at the lowest scale of the level
+			float pixel = 1 / (float) Math.pow(2, level);
+			simplifiedBatches = buildBatches(true, pixel / 2, pixel / 2);
+		}
+		drawBatches(renderer, simplifiedBatches);
+	}
+
+	private void drawBatches(IRenderer renderer) {
+		if (batches == null)
+			batches = buildBatches(false, 0, 0);
+		drawBatches(renderer, batches);
+	}
+
+	private void drawBatches(IRenderer renderer, ArrayList<Batch> batches) {
+		Instrumentation.Listener listener = Instrumentation.getListener();
+		int visited = 0, culled = 0;
+		for (Batch batch : batches) {
+			if (!isCulled || batch.single != null
+					|| !renderer.quickReject(batch.bounds)) {
+				batch.draw(renderer, listener);
+				visited += batch.getPartCount();
+			} else {
+				culled += batch.getPartCount();
+			}
+		}
+		if (listener != null)
+			listener.onPartsDrawn(this, visited, culled);
+	}
+
+	/**
+	 * @param isSimplified
+	 *            true to merge the simplified bodies only
+	 * @param minSize
+	 *            the parts whose width and height are below this size are
+	 *            skipped
+	 * @param tolerance
+	 *            how far from the curves their simplified lines may go
+	 */
+	private ArrayList<Batch> buildBatches(boolean isSimplified,
+			float minSize, float tolerance) {
+		ArrayList<IBorderedDrawable> leaves = new ArrayList<IBorderedDrawable>();
+		collectLeaves(leaves);
+		ArrayList<Batch> batches = new ArrayList<Batch>();
+		Batch batch = null;
+		for (IBorderedDrawable leaf : leaves) {
+			if (!(leaf instanceof AbstractBorderedDrawable)
+					|| leaf instanceof ComposedBordered) {
+				// Unknown or transformed drawable : draw it on its own
+				batches.add(new Batch(leaf));
+				batch = null;
+				continue;
+			}
+			AbstractBorderedDrawable part = (AbstractBorderedDrawable) leaf;
+			if (minSize > 0
+					&& Math.max(part.getWidth(), part.getHeight()) < minSize)
+				continue;
+			// The arrow of a part covers the parts after it, drawn before it
+			// : their edges must be drawn before its body
+			boolean hasArrow = !isSimplified && part.getOutputArrow() != null;
+			if (batch == null || hasArrow || !batch.accepts(part)) {
+				batch = new Batch(part.getStyle(), isSimplified, tolerance);
+				batches.add(batch);
+			}
+			batch.add(part);
+		}
+		return batches;
+	}
+
+	/**
+	 * Appends the elementary parts of this shape, in drawing order
+	 */
+	private void collectLeaves(ArrayList<IBorderedDrawable> leaves) {
+		int size = parts.size();
+		for (int i = 0; i < size; i++) {
+			IBorderedDrawable part = parts.get(size - i - 1);
+			if (part instanceof ComposedBordered
+					&& !((ComposedBordered) part).hasTransform())
+				((ComposedBordered) part).collectLeaves(leaves);
+			else
+				leaves.add(part);
+		}
+	}
+
+	/**
+	 * A run of consecutive parts drawn with the same style
+	 */
+	private static final class Batch {
+		private final Style style;
+		private final PathBuffer bodyBuffer = new PathBuffer();
+		private final PathBuffer edgeBuffer = new PathBuffer();
+		// Built when first drawn by a renderer which uses them
+		private Path body;
+		private Path edges;
+		private final ArrayList<AbstractBorderedDrawable> parts = new ArrayList<AbstractBorderedDrawable>();
+		// A drawable which is not batched
+		private final IBorderedDrawable single;
+		// Simplified bodies only : no edges and no text
+		private final boolean isSimplified;
+		private final float tolerance;
+		// Union of the draw bounds of the parts
+		private final RectF bounds = new RectF();
+		private final RectF partBounds = new RectF();
+		private final float[] coords = new float[4];
+
+		Batch(Style style, boolean isSimplified, float tolerance) {
+			this.style = style;
+			this.single = null;
+			this.isSimplified = isSimplified;
+			this.tolerance = tolerance;
+		}
+
+		Batch(IBorderedDrawable single) {
+			this.style = null;
+			this.single = single;
+			this.isSimplified = false;
+			this.tolerance = 0;
+		}
+
+		boolean accepts(AbstractBorderedDrawable part) {
+			// The styles being interned, the same paints are the same style
+			return single == null
+					&& (isSimplified ? style.hasSameBody(part.getStyle())
+							: style == part.getStyle());
+		}
+
+		void add(AbstractBorderedDrawable part) {
+			if (isSimplified) {
+				PathBuffer simplified = part.getSimplifiedBodyBuffer(tolerance);
+				bodyBuffer.append(simplified);
+				coords[0] = coords[1] = Float.POSITIVE_INFINITY;
+				coords[2] = coords[3] = Float.NEGATIVE_INFINITY;
+				simplified.computeBounds(coords);
+				if (coords[0] > coords[2])
+					partBounds.set(part.getLeft(), part.getTop(),
+							part.getRight(), part.getBottom());
+				else
+					partBounds.set(coords[0], coords[1], coords[2], coords[3]);
+			} else {
+				bodyBuffer.append(part.getBodyBuffer());
+				edgeBuffer.append(part.getEdgeBuffer());
+				part.getDrawBounds(partBounds);
+			}
+			if (parts.isEmpty())
+				bounds.set(partBounds);
+			else
+				bounds.set(Math.min(bounds.left, partBounds.left),
+						Math.min(bounds.top, partBounds.top),
+						Math.max(bounds.right, partBounds.right),
+						Math.max(bounds.bottom, partBounds.bottom));
+			parts.add(part);
+		}
+
+		/**
+		 * @return the number of parts drawn by the batch (the parts skipped
+		 *         for their size are not counted)
+		 */
+		int getPartCount() {
+			return single != null ? 1 : parts.size();
+		}
+
+		/**
+		 * @param listener
+		 *            told about the draw calls, if not null
+		 */
+		void draw(IRenderer renderer, Instrumentation.Listener listener) {
+			if (single != null) {
+				single.draw(renderer);
+				return;
+			}
+			boolean usesPaths = renderer.usesPaths();
+			if (usesPaths && body == null) {
+				body = PathBufferAdapter.replay(bodyBuffer, new Path());
+				edges = PathBufferAdapter.replay(edgeBuffer, new Path());
+			}
+			int drawCalls = 0;
+			if (!bodyBuffer.isEmpty()) {
+				renderer.drawPath(bodyBuffer, body, style.getBodyPaint());
+				drawCalls++;
+			}
+			if (!isSimplified) {
+				renderer.drawPath(edgeBuffer, edges, style.getEdgePaint());
+				drawCalls++;
+				for (AbstractBorderedDrawable part : parts) {
+					part.drawText(renderer);
+					if (part.getText() != null)
+						drawCalls++;
+				}
+			}
+			if (listener != null)
+				listener.onDrawCalls(drawCalls);
 		}
 	}
 
@@ -0,0 +1,156 @@
+package com.crocoware.infographix;
+
+import java.util.List;
+
+/**
+ * A value computed from parameters. Expressions may be given to the
+ * directives of a Pipeline instead of plain values : the shapes are then
+ * updated each time one of the parameters changes.
+ * 
+ * @see Parameter
+ * @author Benoit
+ * 
+ */
+public abstract class Expression {
+
+	/**
+	 * @return the current value of the expression
+	 */
+	public abstract float evaluate();
+
+	/**
+	 * Appends to the list all the parameters this expression depends on
+	 */
+	protected abstract void collectParameters(List<Parameter> parameters);
+
+	/**
+	 * @return true if the value of this expression depends on the given
+	 *         parameter
+	 */
+	public abstract boolean dependsOn(Parameter parameter);
+
+	/**
+	 * @return a new expression, equal to a * this + b
+	 */
+	public Expression linear(float a, float b) {
+		return linear(this, a, b);
+	}
+
+	/**
+	 * @return a new expression, equal to this * f
+	 */
+	public Expression times(float f) {
+		return linear(this, f, 0);
+	}
+
+	/**
+	 * @return a new expression, equal to this + f
+	 */
+	public Expression plus(float f) {
+		return linear(this, 1, f);
+	}
+
+	/**
+	 * @return a new expression, equal to -this
+	 */
+	public Expression negate() {
+		return linear(this, -1, 0);
+	}
+
+	/**
+	 * @return an expression which never changes
+	 */
+	public static Expression constant(final float value) {
+		return new Expression() {
+			@Override
+			public float evaluate() {
+				return value;
+			}
+
+			@Override
+			protected void collectParameters(List<Parameter> parameters) {
+			}
+
+			@Override
+			public boolean dependsOn(Parameter parameter) {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return a new expression, equal to a * e + b
+	 */
+	public static Expression linear(final Expression e, final float a,
+			final float b) {
+		return new Expression() {
+			@Override
+			public float evaluate() {
+				return a * e.evaluate() + b;
+			}
+
+			@Override
+			protected void collectParameters(List<Parameter> parameters) {
+				e.collectParameters(parameters);
+			}
+
+			@Override
+			public boolean dependsOn(Parameter parameter) {
+				return e.dependsOn(parameter);
+			}
+		};
+	}
+
+	/**
+	 * @return a new expression, equal to the sum of the given ones
+	 */
+	public static Expression sum(final Expression... terms) {
+		return new Expression() {
+			@Override
+			public float evaluate() {
+				float sum = 0;
+				for (Expression term : terms)
+					sum += term.evaluate();
+				return sum;
+			}
+
+			@Override
+			protected void collectParameters(List<Parameter> parameters) {
+				for (Expression term : terms)
+					term.collectParameters(parameters);
+			}
+
+			@Override
+			public boolean dependsOn(Parameter parameter) {
+				for (Expression term : terms)
+					if (term.dependsOn(parameter))
+						return true;
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return a new expression, equal to a / b (or 0 when b is 0)
+	 */
+	public static Expression ratio(final Expression a, final Expression b) {
+		return new Expression() {
+			@Override
+			public float evaluate() {
+				float divisor = b.evaluate();
+				return divisor == 0 ? 0 : a.evaluate() / divisor;
+			}
+
+			@Override
+			protected void collectParameters(List<Parameter> parameters) {
+				a.collectParameters(parameters);
+				b.collectParameters(parameters);
+			}
+
+			@Override
+			public boolean dependsOn(Parameter parameter) {
+				return a.dependsOn(parameter) || b.dependsOn(parameter);
+			}
+		};
+	}
+}
@@ -5,6 +5,8 @@ import android.graphics.Path;
 import android.graphics.PathEffect;
 import android.graphics.Shader;
 
+import com.crocoware.infographix.utils.PathBuffer;
+
 /**
  * Represents a drawable item which has border. Thus, the drawing is made with
  * two successive calls : drawShape() and drawEdge()
@@ -16,6 +18,11 @@ public interface IBorderedDrawable {
 
 	public void draw(Canvas canvas);
 
+	/**
+	 * Draws the shape on any surface (see IRenderer)
+	 */
+	public void draw(IRenderer renderer);
+
 	public float getWidth();
 
 	public float getHeight();
@@ -62,6 +69,16 @@ public interface IBorderedDrawable {
 
 	public Path getEdgePath();
 
+	/**
+	 * @return the platform-independent geometry of the body
+	 */
+	public PathBuffer getBodyBuffer();
+
+	/**
+	 * @return the platform-independent geometry of the edges
+	 */
+	public PathBuffer getEdgeBuffer();
+
 	public abstract void setOutputClosed(boolean isOutputClosed);
 
 	public abstract boolean isOutputClosed();
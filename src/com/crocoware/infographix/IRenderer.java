@@ -0,0 +1,72 @@
+package com.crocoware.infographix;
+
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.crocoware.infographix.utils.PathBuffer;
+
+/**
+ * What the shapes draw on : an Android canvas (see CanvasRenderer), or any
+ * other surface.
+ * 
+ * The paths are given both as a PathBuffer and, for the renderers which use
+ * them, as the Android path holding the same commands, so that the shapes can
+ * keep their paths from one frame to the next.
+ * 
+ * @author Benoit
+ * 
+ */
+public interface IRenderer {
+
+	/**
+	 * @return true if drawPath() must be given Android paths
+	 */
+	public boolean usesPaths();
+
+	/**
+	 * Draws a path
+	 * 
+	 * @param buffer
+	 *            the commands of the path
+	 * @param path
+	 *            the same commands, as an Android path : null if the renderer
+	 *            does not use them (see usesPaths())
+	 */
+	public void drawPath(PathBuffer buffer, Path path, Paint paint);
+
+	public void drawText(String text, float x, float y, Paint paint);
+
+	/**
+	 * Saves the current matrix and clip, until restore() is called
+	 */
+	public void save();
+
+	public void restore();
+
+	/**
+	 * Applies the matrix before the current one
+	 */
+	public void concat(Matrix matrix);
+
+	/**
+	 * Gives the current matrix (from the coordinates of the shapes to the
+	 * pixels)
+	 */
+	public void getMatrix(Matrix out);
+
+	/**
+	 * Gives the bounds of the clip, in the coordinates of the shapes
+	 * 
+	 * @return false if the clip is empty
+	 */
+	public boolean getClipBounds(Rect out);
+
+	/**
+	 * @return true if the rectangle, once anti-aliased, is entirely out of
+	 *         the clip
+	 */
+	public boolean quickReject(RectF rect);
+}
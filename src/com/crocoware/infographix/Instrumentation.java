@@ -0,0 +1,300 @@
+package com.crocoware.infographix;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports what the library does while building and drawing the diagrams : the
+ * paths built, the draw calls, the parts drawn or culled, the shaders created
+ * and the updates of the pipelines.
+ * 
+ * No listener is set by default : the library then only reads a field at each
+ * report point, and does not measure anything. The listener is shared by all
+ * the diagrams, and is called from the thread building or drawing each of
+ * them (see BatchRenderer), so it must be thread-safe.
+ * 
+ * Counters is a listener keeping the totals in memory, to be dumped from a
+ * debug screen or a log :
+ * 
+ * // Counters counters = new Instrumentation.Counters();
+ * // Instrumentation.setListener(counters);
+ * // ... after each frame : counters.endFrame();
+ * // Log.d(TAG, counters.dump());
+ * 
+ * @author Benoit
+ * 
+ */
+public final class Instrumentation {
+
+	/**
+	 * Receives the reports of the library
+	 */
+	public interface Listener {
+		/**
+		 * The geometry of a shape has been built
+		 * 
+		 * @param isBody
+		 *            true for the body, false for the edges
+		 * @param isRebuild
+		 *            true if it had already been built, and has changed since
+		 * @param nanos
+		 *            the time taken
+		 */
+		void onPathBuilt(AbstractBorderedDrawable shape, boolean isBody,
+				boolean isRebuild, long nanos);
+
+		/**
+		 * Paths have been given to a renderer
+		 */
+		void onDrawCalls(int count);
+
+		/**
+		 * A composed shape has been drawn
+		 * 
+		 * @param visited
+		 *            the number of its parts drawn (when batched, nested
+		 *            composed shapes are counted part by part)
+		 * @param culled
+		 *            the number of its parts skipped for being out of the
+		 *            clip, or smaller than a pixel
+		 */
+		void onPartsDrawn(ComposedBordered shape, int visited, int culled);
+
+		/**
+		 * A shader has been asked to a ShaderCache
+		 * 
+		 * @param isCreated
+		 *            true if a new shader has been created, false if the
+		 *            previous one has been reused
+		 */
+		void onShaderRequested(boolean isCreated);
+
+		/**
+		 * The shapes of a pipeline have been moved after parameters changed
+		 * 
+		 * @param steps
+		 *            the number of shapes moved
+		 * @param nanos
+		 *            the time taken
+		 */
+		void onPipelineUpdated(Pipeline pipeline, int steps, long nanos);
+	}
+
+	/**
+	 * A listener ignoring all the reports, to be extended by the listeners
+	 * interested in a few of them
+	 */
+	public static class Adapter implements Listener {
+		public void onPathBuilt(AbstractBorderedDrawable shape,
+				boolean isBody, boolean isRebuild, long nanos) {
+		}
+
+		public void onDrawCalls(int count) {
+		}
+
+		public void onPartsDrawn(ComposedBordered shape, int visited,
+				int culled) {
+		}
+
+		public void onShaderRequested(boolean isCreated) {
+		}
+
+		public void onPipelineUpdated(Pipeline pipeline, int steps, long nanos) {
+		}
+	}
+
+	/**
+	 * Adds up the reports, from any number of threads. The totals may be read
+	 * at any time, per frame if endFrame() is called after each one.
+	 */
+	public static class Counters implements Listener {
+		private final AtomicLong builds = new AtomicLong();
+		private final AtomicLong buildNanos = new AtomicLong();
+		private final AtomicLong rebuilds = new AtomicLong();
+		private final AtomicLong rebuildNanos = new AtomicLong();
+		private final AtomicLong drawCalls = new AtomicLong();
+		private final AtomicLong partsVisited = new AtomicLong();
+		private final AtomicLong partsCulled = new AtomicLong();
+		private final AtomicLong shadersCreated = new AtomicLong();
+		private final AtomicLong shadersReused = new AtomicLong();
+		private final AtomicLong updates = new AtomicLong();
+		private final AtomicLong stepsUpdated = new AtomicLong();
+		private final AtomicLong updateNanos = new AtomicLong();
+		private final AtomicLong frames = new AtomicLong();
+
+		public void onPathBuilt(AbstractBorderedDrawable shape,
+				boolean isBody, boolean isRebuild, long nanos) {
+			if (isRebuild) {
+				rebuilds.incrementAndGet();
+				rebuildNanos.addAndGet(nanos);
+			} else {
+				builds.incrementAndGet();
+				buildNanos.addAndGet(nanos);
+			}
+		}
+
+		public void onDrawCalls(int count) {
+			drawCalls.addAndGet(count);
+		}
+
+		public void onPartsDrawn(ComposedBordered shape, int visited,
+				int culled) {
+			partsVisited.addAndGet(visited);
+			partsCulled.addAndGet(culled);
+		}
+
+		public void onShaderRequested(boolean isCreated) {
+			(isCreated ? shadersCreated : shadersReused).incrementAndGet();
+		}
+
+		public void onPipelineUpdated(Pipeline pipeline, int steps, long nanos) {
+			updates.incrementAndGet();
+			stepsUpdated.addAndGet(steps);
+			updateNanos.addAndGet(nanos);
+		}
+
+		/**
+		 * Counts a frame, so that the totals can be given per frame
+		 */
+		public void endFrame() {
+			frames.incrementAndGet();
+		}
+
+		public long getFrameCount() {
+			return frames.get();
+		}
+
+		/**
+		 * @return the number of paths built for the first time
+		 */
+		public long getBuildCount() {
+			return builds.get();
+		}
+
+		public long getBuildNanos() {
+			return buildNanos.get();
+		}
+
+		/**
+		 * @return the number of paths built again, their shape having changed
+		 */
+		public long getRebuildCount() {
+			return rebuilds.get();
+		}
+
+		public long getRebuildNanos() {
+			return rebuildNanos.get();
+		}
+
+		public long getDrawCallCount() {
+			return drawCalls.get();
+		}
+
+		public long getPartsVisited() {
+			return partsVisited.get();
+		}
+
+		public long getPartsCulled() {
+			return partsCulled.get();
+		}
+
+		public long getShadersCreated() {
+			return shadersCreated.get();
+		}
+
+		public long getShadersReused() {
+			return shadersReused.get();
+		}
+
+		/**
+		 * @return the part of the shaders asked which have been reused, from 0
+		 *         to 1 (1 if none has been asked)
+		 */
+		public float getShaderHitRate() {
+			long reused = shadersReused.get();
+			long total = reused + shadersCreated.get();
+			return total == 0 ? 1 : (float) reused / total;
+		}
+
+		public long getUpdateCount() {
+			return updates.get();
+		}
+
+		public long getStepsUpdated() {
+			return stepsUpdated.get();
+		}
+
+		public long getUpdateNanos() {
+			return updateNanos.get();
+		}
+
+		/**
+		 * Sets all the totals back to 0
+		 */
+		public void reset() {
+			AtomicLong[] counters = { builds, buildNanos, rebuilds,
+					rebuildNanos, drawCalls, partsVisited, partsCulled,
+					shadersCreated, shadersReused, updates, stepsUpdated,
+					updateNanos, frames };
+			for (AtomicLong counter : counters)
+				counter.set(0);
+		}
+
+		/**
+		 * @return the totals, and their averages per frame, one per line
+		 */
+		public String dump() {
+			long frames = Math.max(1, this.frames.get());
+			StringBuilder out = new StringBuilder();
+			out.append("frames ").append(this.frames.get()).append('\n');
+			append(out, "builds", builds.get(), buildNanos.get(), frames);
+			append(out, "rebuilds", rebuilds.get(), rebuildNanos.get(), frames);
+			append(out, "drawCalls", drawCalls.get(), -1, frames);
+			append(out, "partsVisited", partsVisited.get(), -1, frames);
+			append(out, "partsCulled", partsCulled.get(), -1, frames);
+			append(out, "shadersCreated", shadersCreated.get(), -1, frames);
+			append(out, "shadersReused", shadersReused.get(), -1, frames);
+			out.append("shaderHitRate ")
+					.append(Math.round(getShaderHitRate() * 100)).append("%\n");
+			append(out, "updates", updates.get(), updateNanos.get(), frames);
+			append(out, "stepsUpdated", stepsUpdated.get(), -1, frames);
+			return out.toString();
+		}
+
+		private static void append(StringBuilder out, String name,
+				long count, long nanos, long frames) {
+			out.append(name).append(' ').append(count).append(" (")
+					.append(count / frames).append("/frame)");
+			if (nanos >= 0)
+				out.append(' ').append(nanos / 1000).append(" us (")
+						.append(nanos / 1000 / frames).append(" us/frame)");
+			out.append('\n');
+		}
+
+		@Override
+		public String toString() {
+			return dump();
+		}
+	}
+
+	// null when disabled
+	private static volatile Listener listener;
+
+	private Instrumentation() {
+	}
+
+	/**
+	 * @param listener
+	 *            receives the reports of all the diagrams, null to stop
+	 */
+	public static void setListener(Listener listener) {
+		Instrumentation.listener = listener;
+	}
+
+	/**
+	 * @return the listener, or null if none is set : the report points must
+	 *         not measure anything then
+	 */
+	public static Listener getListener() {
+		return listener;
+	}
+}
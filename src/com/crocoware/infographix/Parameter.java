@@ -0,0 +1,71 @@
+package com.crocoware.infographix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A value which may change over time (animation time, data value...).
+ * 
+ * Pipelines using a parameter in their directives register themselves as
+ * listeners, and update the shapes which depend on it (and only those) each
+ * time set() is called.
+ * 
+ * @author Benoit
+ * 
+ */
+public class Parameter extends Expression {
+
+	public interface Listener {
+		void onParameterChanged(Parameter parameter);
+	}
+
+	private float value;
+	private final ArrayList<Listener> listeners = new ArrayList<Listener>(1);
+
+	public Parameter(float value) {
+		this.value = value;
+	}
+
+	public float get() {
+		return value;
+	}
+
+	/**
+	 * Changes the value of the parameter, and notifies the listeners
+	 * 
+	 * @param value
+	 */
+	public void set(float value) {
+		if (this.value == value)
+			return;
+		this.value = value;
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).onParameterChanged(this);
+		}
+	}
+
+	public void addListener(Listener listener) {
+		if (!listeners.contains(listener))
+			listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public float evaluate() {
+		return value;
+	}
+
+	@Override
+	protected void collectParameters(List<Parameter> parameters) {
+		if (!parameters.contains(this))
+			parameters.add(this);
+	}
+
+	@Override
+	public boolean dependsOn(Parameter parameter) {
+		return parameter == this;
+	}
+}
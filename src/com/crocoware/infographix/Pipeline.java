@@ -1,8 +1,17 @@
 package com.crocoware.infographix;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import android.graphics.Color;
+import android.graphics.PointF;
+import android.graphics.RectF;
 
 import com.crocoware.infographix.shapes.ArcShape;
 import com.crocoware.infographix.shapes.IMultipleOutputShape;
@@ -42,17 +51,51 @@ import com.crocoware.infographix.utils.Vector;
  * allows to reference a shape which can be later retrieved by
  * pipe.findByTag(tag)
  * 
+ * Lengths, widths, angles and colors may be given as Expressions built from
+ * Parameters instead of plain values. The directives are then recorded, and
+ * each time a parameter changes, only the shapes which depend on it (and the
+ * shapes downstream of them) are moved : the drawable, its paints and its
+ * shaders are kept, so the pipeline does not need to be rebuilt for each frame
+ * of an animation.
+ * 
+ * After a split, each output may be built by its own pipeline (see branch()),
+ * possibly in parallel.
+ * 
+ * A pipeline, and the shapes it builds, must be used by one thread at a time.
+ * The library has no other shared state than immutable constants and
+ * synchronized registries, so different pipelines may be built on as many
+ * threads at once (see BatchRenderer).
+ * 
  * @author Benoit
  * 
  */
 public class Pipeline {
 
+	/**
+	 * Builds the pipeline following one output of a split
+	 */
+	public interface Branch {
+		/**
+		 * @param pipe
+		 *            a new pipeline, starting at the output, whose current
+		 *            shape is the part of the split ending at the output.
+		 *            The changes of that part are applied once all the
+		 *            branches are built
+		 * @param n
+		 *            the index of the output
+		 */
+		void build(Pipeline pipe, int n);
+	}
+
 	// STATE variables : used while the pipe is being built.
 	private ComposedBordered composed = new ComposedBordered();
 	private boolean mustCloseNextInput;
 
 	private Segment currentInput;
 	private IPipelinePart currentShape;
+	// Holds the current input when it is changed by setWidth() or reverse()
+	// (the outputs of the shapes must not be modified)
+	private final Segment inputBuffer = new Segment(0, 0, 0, 0);
 
 	private HashMap<String, IPipelinePart> shapesByTag = new HashMap<String, IPipelinePart>();
 	private HashMap<String, ShapeProperties> propsByTag = new HashMap<String, ShapeProperties>();
@@ -60,6 +103,26 @@ public class Pipeline {
 	// Current properties
 	ShapeProperties currentProperties = new ShapeProperties();
 
+	// PARAMETRIC mode : once an Expression has been given to a directive, all
+	// the following directives are recorded as steps (in creation order, so
+	// that a step always comes after the steps it depends on)
+	private ArrayList<Step> steps;
+	private Step currentStep;
+	private HashMap<String, Step> stepsByTag;
+	// The steps depending on each parameter followed
+	private HashMap<Parameter, ArrayList<Step>> dependents;
+	private Parameter.Listener parameterListener;
+	// Nested calls to beginChanges(), and the parameters changed meanwhile
+	private int changeDepth = 0;
+	private HashSet<Parameter> changedParameters;
+	// The latest width change, waiting for the shape it opens or closes
+	private WidthStep nextWidthStep;
+	// In a branch (see branch()), the shape it starts from : being shared
+	// with the other branches, its changes are kept, and applied by the
+	// branching pipeline once all the branches are built
+	private IPipelinePart sharedShape;
+	private ArrayList<Runnable> sharedChanges;
+
 	public Pipeline(Segment input) {
 		currentInput = input;
 		mustCloseNextInput = true;
@@ -75,6 +138,8 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline forward(float length) {
+		if (isRecording())
+			return forward(Expression.constant(length));
 		ensureInputAvailable();
 		push(new PipeShape(currentInput, length));
 		return this;
@@ -89,11 +154,39 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline forward(float length, float width) {
+		if (isRecording())
+			return forward(Expression.constant(length),
+					Expression.constant(width));
 		ensureInputAvailable();
 		push(new PipeShape(currentInput, length, width));
 		return this;
 	}
 
+	/**
+	 * Appends a shape to the pipe, going forward, whose length follows the
+	 * given expression.
+	 */
+	public Pipeline forward(Expression length) {
+		startRecording();
+		ensureInputAvailable();
+		PipeShape shape = new PipeShape(currentInput, length.evaluate());
+		push(shape, new ForwardStep(shape, length, null));
+		return this;
+	}
+
+	/**
+	 * Appends a shape to the pipe, going forward, whose length and output
+	 * width follow the given expressions.
+	 */
+	public Pipeline forward(Expression length, Expression width) {
+		startRecording();
+		ensureInputAvailable();
+		PipeShape shape = new PipeShape(currentInput, length.evaluate(),
+				width.evaluate());
+		push(shape, new ForwardStep(shape, length, width));
+		return this;
+	}
+
 	/**
 	 * Appends a shape to the pipe, turning at the given angle.
 	 * 
@@ -104,11 +197,26 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline turn(float angle, float length) {
+		if (isRecording())
+			return turn(Expression.constant(angle), Expression.constant(length));
 		ensureInputAvailable();
 		push(new ArcShape(currentInput, angle, length));
 		return this;
 	}
 
+	/**
+	 * Appends a shape to the pipe, whose angle and length follow the given
+	 * expressions.
+	 */
+	public Pipeline turn(Expression angle, Expression length) {
+		startRecording();
+		ensureInputAvailable();
+		ArcShape shape = new ArcShape(currentInput, angle.evaluate(),
+				length.evaluate());
+		push(shape, new TurnStep(shape, null, angle, length));
+		return this;
+	}
+
 	/**
 	 * Appends a shape to the pipe, turning around a given center point
 	 * @param center
@@ -116,11 +224,26 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline turnAround(Position center, float angle) {
+		if (isRecording())
+			return turnAround(center, Expression.constant(angle));
 		ensureInputAvailable();
 		push(new ArcShape(currentInput, center, angle));
 		return this;
 	}
 
+	/**
+	 * Appends a shape to the pipe, turning around a given center point, whose
+	 * angle follows the given expression.
+	 */
+	public Pipeline turnAround(Position center, Expression angle) {
+		startRecording();
+		ensureInputAvailable();
+		ArcShape shape = new ArcShape(currentInput, center, angle.evaluate());
+		push(shape, new TurnStep(shape, new PointF(center.x, center.y), angle,
+				null));
+		return this;
+	}
+
 	/**
 	 * Appends a shape to the pipe, turning at the given angle. The inner radius
 	 * equals the width of the input segment.
@@ -130,11 +253,25 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline turn(float angle) {
+		if (isRecording())
+			return turn(Expression.constant(angle));
 		ensureInputAvailable();
 		push(new ArcShape(currentInput, angle));
 		return this;
 	}
 
+	/**
+	 * Appends a shape to the pipe, whose angle follows the given expression.
+	 * The inner radius equals the width of the input segment.
+	 */
+	public Pipeline turn(Expression angle) {
+		startRecording();
+		ensureInputAvailable();
+		ArcShape shape = new ArcShape(currentInput, angle.evaluate());
+		push(shape, new TurnStep(shape, null, angle, null));
+		return this;
+	}
+
 	// Shortcuts for turning left/right
 	public Pipeline turnLeft() {
 		return turnLeft(90);
@@ -160,6 +297,22 @@ public class Pipeline {
 		return turn(angle, length);
 	}
 
+	public Pipeline turnLeft(Expression angle) {
+		return turn(angle.negate());
+	}
+
+	public Pipeline turnLeft(Expression angle, Expression length) {
+		return turn(angle.negate(), length);
+	}
+
+	public Pipeline turnRight(Expression angle) {
+		return turn(angle);
+	}
+
+	public Pipeline turnRight(Expression angle, Expression length) {
+		return turn(angle, length);
+	}
+
 	/**
 	 * Appends a shape splitting the pipe into 2 outputs
 	 * 
@@ -167,6 +320,8 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline split(float width, float ratio) {
+		if (isRecording())
+			return split(Expression.constant(width), Expression.constant(ratio));
 		ensureInputAvailable();
 		push(new SplitShape(currentInput, width, ratio,
 				currentInput.length() / 2));
@@ -180,12 +335,47 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline split(float width, float... ratios) {
+		if (isRecording()) {
+			Expression[] expressions = new Expression[ratios.length];
+			for (int i = 0; i < ratios.length; i++)
+				expressions[i] = Expression.constant(ratios[i]);
+			return split(Expression.constant(width), expressions);
+		}
 		ensureInputAvailable();
 		push(new SplitShape(currentInput, width, ratios, currentInput.length()
 				/ ratios.length));
 		return this;
 	}
 
+	/**
+	 * Appends a shape splitting the pipe into 2 outputs, whose width and ratio
+	 * follow the given expressions
+	 */
+	public Pipeline split(Expression width, Expression ratio) {
+		startRecording();
+		ensureInputAvailable();
+		SplitShape shape = new SplitShape(currentInput, width.evaluate(),
+				ratio.evaluate(), currentInput.length() / 2);
+		push(shape, new SplitStep(shape, width, true, ratio));
+		return this;
+	}
+
+	/**
+	 * Appends a shape splitting the pipe into N outputs, whose width and
+	 * ratios follow the given expressions (the ratios should add up to 1)
+	 */
+	public Pipeline split(Expression width, Expression... ratios) {
+		startRecording();
+		ensureInputAvailable();
+		float values[] = new float[ratios.length];
+		for (int i = 0; i < ratios.length; i++)
+			values[i] = ratios[i].evaluate();
+		SplitShape shape = new SplitShape(currentInput, width.evaluate(),
+				values, currentInput.length() / ratios.length);
+		push(shape, new SplitStep(shape, width, false, ratios));
+		return this;
+	}
+
 	/**
 	 * Appends a shape splitting the pipe into N outputs
 	 * 
@@ -203,48 +393,58 @@ public class Pipeline {
 	public Pipeline joinAfter(Pipeline pipe, float width) {
 		ensureInputAvailable();
 		Segment output1 = ((IOutputShape) pipe.getCurrentPart()).getOutput();
-		JoinShape joint = new JoinShape(output1, currentInput, width);
-		push(joint);
-		return this;
+		return join(output1, pipe.getCurrentStep(this), currentInput,
+				currentStep, width);
 	}
 
 	public Pipeline joinBefore(Pipeline pipe, float width) {
 		ensureInputAvailable();
 		Segment output1 = ((IOutputShape) pipe.getCurrentPart()).getOutput();
-		JoinShape joint = new JoinShape(currentInput, output1, width);
-		push(joint);
-		return this;
+		return join(currentInput, currentStep, output1,
+				pipe.getCurrentStep(this), width);
 	}
 
 	public Pipeline joinAfter(Pipeline pipe, String tag, float width) {
 		ensureInputAvailable();
 		Segment output1 = ((IOutputShape) pipe.getPartByTag(tag)).getOutput();
-		JoinShape joint = new JoinShape(output1, currentInput, width);
-		push(joint);
-		return this;
+		return join(output1, pipe.getStepByTag(this, tag), currentInput,
+				currentStep, width);
 	}
 
 	public Pipeline joinBefore(Pipeline pipe, String tag, float width) {
 		ensureInputAvailable();
 		Segment output1 = ((IOutputShape) pipe.getPartByTag(tag)).getOutput();
-		JoinShape joint = new JoinShape(currentInput, output1, width);
-		push(joint);
-		return this;
+		return join(currentInput, currentStep, output1,
+				pipe.getStepByTag(this, tag), width);
 	}
 
 	public Pipeline joinAfter(String tag, float width) {
 		ensureInputAvailable();
 		Segment output1 = ((IOutputShape) getPartByTag(tag)).getOutput();
-		JoinShape joint = new JoinShape(output1, currentInput, width);
-		push(joint);
-		return this;
+		return join(output1, getStepByTag(this, tag), currentInput,
+				currentStep, width);
 	}
 
 	public Pipeline joinBefore(String tag, float width) {
 		ensureInputAvailable();
 		Segment output1 = ((IOutputShape) shapesByTag.get(tag)).getOutput();
-		JoinShape joint = new JoinShape(currentInput, output1, width);
-		push(joint);
+		return join(currentInput, currentStep, output1,
+				getStepByTag(this, tag), width);
+	}
+
+	/**
+	 * Note : when joining another pipeline, the join follows the moves of its
+	 * output (the segment is shared), but is only updated when a parameter of
+	 * this pipeline changes.
+	 */
+	private Pipeline join(Segment entry1, Step source1, Segment entry2,
+			Step source2, float width) {
+		JoinShape joint = new JoinShape(entry1, entry2, width);
+		if (isRecording())
+			push(joint, new JoinStep(joint, entry1, source1, entry2, source2,
+					width));
+		else
+			push(joint);
 		return this;
 	}
 
@@ -255,13 +455,41 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline setWidth(float width) {
+		if (isRecording())
+			return setWidth(Expression.constant(width));
 		ensureInputAvailable();
 		if (width < currentInput.length())
 			close();
 		if (width > currentInput.length())
 			mustCloseNextInput = true;
-		currentInput = currentInput.scaleFromCenter(width
-				/ currentInput.length());
+		currentInput = currentInput.scaleFromCenter(
+				width / currentInput.length(), inputBuffer);
+		return this;
+	}
+
+	/**
+	 * Changes the width of the pipeline, following the given expression. The
+	 * shape before is closed while the pipeline gets thinner, and the next
+	 * one while it gets wider.
+	 */
+	public Pipeline setWidth(Expression width) {
+		startRecording();
+		ensureInputAvailable();
+		boolean isShared = isCurrentShared();
+		final WidthStep step = new WidthStep(width, isShared ? null
+				: currentShape, mustCloseNextInput, nextWidthStep);
+		mustCloseNextInput = false;
+		record(step);
+		step.update();
+		nextWidthStep = step;
+		if (isShared) {
+			final IPipelinePart shape = currentShape;
+			changeShared(new Runnable() {
+				public void run() {
+					step.setPrevious(shape);
+				}
+			});
+		}
 		return this;
 	}
 
@@ -293,6 +521,106 @@ public class Pipeline {
 		return this;
 	}
 
+	/**
+	 * Builds each output of the latest shape (a split) with its own pipeline,
+	 * one after another
+	 * 
+	 * @see #branch(ExecutorService, Branch)
+	 */
+	public Pipeline branch(Branch branch) {
+		return branch(null, branch);
+	}
+
+	/**
+	 * Builds each output of the latest shape (a split) with its own pipeline.
+	 * The branches are built in parallel by the executor, then their shapes
+	 * are appended to this pipeline in the order of the outputs, so the result
+	 * does not depend on the order they are built in. Their tags are added to
+	 * the tags of this pipeline (for a tag used by several branches, the last
+	 * output wins).
+	 * 
+	 * The branches must not share any shape nor parameter while being built.
+	 * Like joins with other pipelines, they are static for this pipeline :
+	 * when a parameter moves the split, they are not moved.
+	 * 
+	 * Each branch starts from the part of the split ending at its output. The
+	 * parts are shared by the branches : the changes a branch makes to its
+	 * part (color, gradient, closing, arrow) are applied from the calling
+	 * thread once all the branches are built, in the order of the outputs.
+	 * 
+	 * The current shape of this pipeline does not change, so that select() is
+	 * still available.
+	 * 
+	 * @param executor
+	 *            runs the branches (null to build them from this thread)
+	 */
+	public Pipeline branch(ExecutorService executor, final Branch branch) {
+		if (!(currentShape instanceof IMultipleOutputShape))
+			throw new IllegalStateException("Cannot branch on last shape '"
+					+ (currentShape == null ? null : currentShape.getClass()
+							.getSimpleName()) + "'");
+		IMultipleOutputShape shape = (IMultipleOutputShape) currentShape;
+		Segment[] outputs = shape.getOutputs();
+		IOutputShape[] parts = shape.getShapes();
+		final Pipeline[] pipes = new Pipeline[outputs.length];
+		for (int i = 0; i < pipes.length; i++) {
+			Pipeline pipe = new Pipeline(outputs[i]);
+			pipe.mustCloseNextInput = false;
+			pipe.currentShape = parts != null ? parts[i] : currentShape;
+			pipe.sharedShape = pipe.currentShape;
+			pipe.sharedChanges = new ArrayList<Runnable>();
+			pipe.currentProperties = (ShapeProperties) currentProperties
+					.clone();
+			pipes[i] = pipe;
+		}
+		if (executor == null) {
+			for (int i = 0; i < pipes.length; i++)
+				branch.build(pipes[i], i);
+		} else {
+			buildInParallel(executor, branch, pipes);
+		}
+		for (Pipeline pipe : pipes) {
+			// Applied from this thread, in the order of the outputs
+			for (Runnable change : pipe.sharedChanges)
+				change.run();
+			pipe.sharedChanges = null;
+			pipe.sharedShape = null;
+			composed.pushAll(pipe.composed);
+			shapesByTag.putAll(pipe.shapesByTag);
+			propsByTag.putAll(pipe.propsByTag);
+		}
+		return this;
+	}
+
+	private static void buildInParallel(ExecutorService executor,
+			final Branch branch, final Pipeline[] pipes) {
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(
+				pipes.length);
+		for (int i = 0; i < pipes.length; i++) {
+			final int n = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					branch.build(pipes[n], n);
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while branching", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
 	private IPipelinePart getPartByTag(String tag) {
 		return shapesByTag.get(tag);
 	}
@@ -301,6 +629,17 @@ public class Pipeline {
 		return currentShape;
 	}
 
+	// The steps of another pipeline are updated by that pipeline only : for
+	// this one, a join with it is static
+	private Step getCurrentStep(Pipeline caller) {
+		return caller == this ? currentStep : null;
+	}
+
+	private Step getStepByTag(Pipeline caller, String tag) {
+		return caller == this && stepsByTag != null ? stepsByTag.get(tag)
+				: null;
+	}
+
 	/**
 	 * Saves the last shape into a new tag name. The state of the pipeline may
 	 * be latter recalled with back()
@@ -312,6 +651,8 @@ public class Pipeline {
 		shapesByTag.put(tag, currentShape);
 		propsByTag.put(tag, currentProperties);
 		currentProperties = (ShapeProperties) currentProperties.clone();
+		if (isRecording())
+			stepsByTag.put(tag, currentStep);
 		return this;
 	}
 
@@ -327,11 +668,24 @@ public class Pipeline {
 		currentProperties = (ShapeProperties) currentProperties.clone();
 		currentInput = currentShape instanceof IOutputShape ? ((IOutputShape) currentShape)
 				.getOutput() : null;
+		if (isRecording())
+			currentStep = stepsByTag.get(tag);
 		return this;
 	}
 
 	// utility methods
 
+	/**
+	 * @return true if the latest shape is the part a branch starts from
+	 */
+	private boolean isCurrentShared() {
+		return sharedShape != null && currentShape == sharedShape;
+	}
+
+	private void changeShared(Runnable change) {
+		sharedChanges.add(change);
+	}
+
 	private void ensureInputAvailable() {
 		if (currentInput == null)
 			throw new IllegalStateException("Cannot add to Pipe : last shape '"
@@ -340,6 +694,15 @@ public class Pipeline {
 	}
 
 	public void push(IPipelinePart shape) {
+		push(shape, null);
+	}
+
+	private void push(IPipelinePart shape, Step step) {
+		if (step != null)
+			record(step);
+		else if (isRecording())
+			// A shape pushed from outside never moves
+			currentStep = null;
 		currentShape = shape;
 		currentInput = shape instanceof IOutputShape ? ((IOutputShape) shape)
 				.getOutput() : null;
@@ -347,6 +710,10 @@ public class Pipeline {
 		if (mustCloseNextInput)
 			shape.setInputClosed(true);
 		mustCloseNextInput = false;
+		if (nextWidthStep != null) {
+			nextWidthStep.setNextShape(shape);
+			nextWidthStep = null;
+		}
 		composed.push(shape);
 		// Set persisting attributes
 		currentProperties.applyTo(shape);
@@ -356,8 +723,15 @@ public class Pipeline {
 
 	// Customization methods
 
-	public Pipeline setBodyGradient(int color1, int color2) {
-		if (currentShape != null)
+	public Pipeline setBodyGradient(final int color1, final int color2) {
+		if (isCurrentShared()) {
+			final IPipelinePart shape = currentShape;
+			changeShared(new Runnable() {
+				public void run() {
+					shape.setBodyGradient(color1, color2);
+				}
+			});
+		} else if (currentShape != null)
 			currentShape.setBodyGradient(color1, color2);
 		currentProperties.setBodyColor(color2);
 		return this;
@@ -367,13 +741,44 @@ public class Pipeline {
 		return setBodyGradient(currentProperties.bodyColor, color2);
 	}
 
-	public Pipeline setBodyColor(int color) {
-		if (currentShape != null)
+	public Pipeline setBodyColor(final int color) {
+		if (isCurrentShared()) {
+			final IPipelinePart shape = currentShape;
+			changeShared(new Runnable() {
+				public void run() {
+					shape.setBodyColor(color);
+				}
+			});
+		} else if (currentShape != null)
 			currentShape.setBodyColor(color);
 		currentProperties.setBodyColor(color);
 		return this;
 	}
 
+	/**
+	 * Sets the color of the latest shape inserted, between color1 (ratio=0)
+	 * and color2 (ratio=1)
+	 */
+	public Pipeline setBodyColor(Expression ratio, int color1, int color2) {
+		startRecording();
+		final ColorStep step = new ColorStep(currentShape, ratio, color1,
+				color2);
+		// The color of a shape does not move the next ones
+		Step previous = currentStep;
+		record(step);
+		if (isCurrentShared()) {
+			changeShared(new Runnable() {
+				public void run() {
+					step.update();
+				}
+			});
+		} else
+			step.update();
+		currentStep = previous;
+		currentProperties.setBodyColor(step.getColor());
+		return this;
+	}
+
 	/**
 	 * Closes the latest shape inserted (does nothing if an arrow is defined
 	 * too)
@@ -381,7 +786,15 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline close() {
-		currentShape.setOutputClosed(true);
+		if (isCurrentShared()) {
+			final IPipelinePart shape = currentShape;
+			changeShared(new Runnable() {
+				public void run() {
+					shape.setOutputClosed(true);
+				}
+			});
+		} else
+			currentShape.setOutputClosed(true);
 		return this;
 	}
 
@@ -391,7 +804,12 @@ public class Pipeline {
 	 * @return
 	 */
 	public Pipeline reverse() {
-		currentInput = currentInput.reverse();
+		if (isRecording()) {
+			ReverseStep step = new ReverseStep();
+			record(step);
+			step.update();
+		} else
+			currentInput = currentInput.reverse(inputBuffer);
 		return this;
 	}
 
@@ -402,8 +820,16 @@ public class Pipeline {
 	 *            the arrow shape. Use constants of Arrow class
 	 * @return
 	 */
-	public Pipeline setArrow(Arrow arrow) {
-		currentShape.setOutputArrow(arrow);
+	public Pipeline setArrow(final Arrow arrow) {
+		if (isCurrentShared()) {
+			final IPipelinePart shape = currentShape;
+			changeShared(new Runnable() {
+				public void run() {
+					shape.setOutputArrow(arrow);
+				}
+			});
+		} else
+			currentShape.setOutputArrow(arrow);
 		return this;
 	}
 
@@ -411,6 +837,35 @@ public class Pipeline {
 		return composed;
 	}
 
+	/**
+	 * Finds the shapes drawn at the given point (a touch event, for instance)
+	 * 
+	 * @return the shapes, the one drawn on top first
+	 */
+	public List<IPipelinePart> findPartsAt(float x, float y) {
+		return toPipelineParts(composed.findPartsAt(x, y));
+	}
+
+	/**
+	 * Finds the shapes which intersect the given rectangle
+	 * 
+	 * @return the shapes, the one drawn on top first
+	 */
+	public List<IPipelinePart> findPartsIn(RectF rect) {
+		return toPipelineParts(composed.findPartsIn(rect));
+	}
+
+	// All the parts of the pipeline have been pushed as IPipelinePart
+	private static List<IPipelinePart> toPipelineParts(
+			List<IBorderedDrawable> parts) {
+		ArrayList<IPipelinePart> result = new ArrayList<IPipelinePart>(
+				parts.size());
+		for (IBorderedDrawable part : parts) {
+			result.add((IPipelinePart) part);
+		}
+		return result;
+	}
+
 	/**
 	 * @return the output segment at this position
 	 */
@@ -435,6 +890,429 @@ public class Pipeline {
 		return currentInput.getNormal();
 	}
 
+	// Parametric mode
+
+	private boolean isRecording() {
+		return steps != null;
+	}
+
+	private void startRecording() {
+		if (isRecording())
+			return;
+		steps = new ArrayList<Step>();
+		stepsByTag = new HashMap<String, Step>();
+		dependents = new HashMap<Parameter, ArrayList<Step>>();
+		changedParameters = new HashSet<Parameter>();
+		parameterListener = new Parameter.Listener() {
+			public void onParameterChanged(Parameter parameter) {
+				update(parameter);
+			}
+		};
+		// The input may be the inputBuffer, which is not owned by any step
+		if (currentInput != null)
+			currentInput = new Segment(currentInput);
+	}
+
+	/**
+	 * Adds a step which depends on the current input, and makes its output
+	 * the new current input
+	 */
+	private void record(Step step) {
+		if (step.input == null) {
+			step.input = currentInput;
+			step.source = currentStep;
+		}
+		step.index = steps.size();
+		steps.add(step);
+		currentStep = step;
+		if (step.output != null)
+			currentInput = step.output;
+
+		ArrayList<Parameter> parameters = new ArrayList<Parameter>(2);
+		step.collectParameters(parameters);
+		for (int i = 0; i < parameters.size(); i++) {
+			Parameter parameter = parameters.get(i);
+			ArrayList<Step> list = dependents.get(parameter);
+			if (list == null) {
+				list = new ArrayList<Step>(1);
+				dependents.put(parameter, list);
+				parameter.addListener(parameterListener);
+			}
+			list.add(step);
+		}
+	}
+
+	/**
+	 * Delays the moves of the shapes until endChanges() : when many
+	 * parameters change at once, the shapes downstream of several of them are
+	 * moved only once. The calls may be nested.
+	 */
+	public void beginChanges() {
+		changeDepth++;
+	}
+
+	/**
+	 * Moves the shapes depending on the parameters changed since
+	 * beginChanges()
+	 */
+	public void endChanges() {
+		if (changeDepth == 0)
+			throw new IllegalStateException("endChanges() without beginChanges()");
+		if (--changeDepth > 0 || changedParameters == null
+				|| changedParameters.isEmpty())
+			return;
+		int first = steps.size();
+		for (Parameter parameter : changedParameters)
+			first = Math.min(first, markDependents(parameter));
+		changedParameters.clear();
+		updateFrom(first);
+	}
+
+	/**
+	 * Moves the shapes depending on the parameter, and the shapes downstream
+	 * of them.
+	 */
+	private void update(Parameter parameter) {
+		if (changeDepth > 0)
+			changedParameters.add(parameter);
+		else
+			updateFrom(markDependents(parameter));
+	}
+
+	/**
+	 * Marks the steps depending on the parameter as dirty
+	 * 
+	 * @return the index of the first one (the number of steps if none)
+	 */
+	private int markDependents(Parameter parameter) {
+		ArrayList<Step> list = dependents.get(parameter);
+		if (list == null)
+			return steps.size();
+		for (int i = 0; i < list.size(); i++)
+			list.get(i).isDirty = true;
+		// The steps are listed in creation order
+		return list.get(0).index;
+	}
+
+	/**
+	 * Updates the dirty steps from the given one, and the steps downstream of
+	 * them, then clears all the marks
+	 */
+	private void updateFrom(int first) {
+		Instrumentation.Listener listener = Instrumentation.getListener();
+		long start = listener != null ? System.nanoTime() : 0;
+		int size = steps.size();
+		int updated = 0;
+		for (int i = first; i < size; i++) {
+			Step step = steps.get(i);
+			if (step.isDirty || step.isSourceDirty()) {
+				step.isDirty = true;
+				step.update();
+				updated++;
+			}
+		}
+		for (int i = first; i < size; i++)
+			steps.get(i).isDirty = false;
+		if (listener != null)
+			listener.onPipelineUpdated(this, updated, System.nanoTime()
+					- start);
+	}
+
+	/**
+	 * Stops following the parameters : the shapes will not move anymore when
+	 * they change.
+	 */
+	public void unbind() {
+		if (!isRecording())
+			return;
+		for (Parameter parameter : dependents.keySet())
+			parameter.removeListener(parameterListener);
+		dependents.clear();
+	}
+
+	/**
+	 * A recorded directive. Its input is either the output of its source step,
+	 * or a segment which never moves (source is null).
+	 */
+	private abstract static class Step {
+		// Position in the list of steps
+		int index;
+		Segment input;
+		Step source;
+		// New current input given by the step, or null if the step does not
+		// change it (or if the output is given by a shape)
+		Segment output;
+		boolean isDirty;
+
+		boolean isSourceDirty() {
+			return source != null && source.isDirty;
+		}
+
+		abstract void collectParameters(List<Parameter> parameters);
+
+		/**
+		 * Moves the shape according to the input and the current values of
+		 * the parameters
+		 */
+		abstract void update();
+	}
+
+	private final static class ForwardStep extends Step {
+		private final PipeShape shape;
+		private final Expression length;
+		private final Expression width;
+
+		ForwardStep(PipeShape shape, Expression length, Expression width) {
+			this.shape = shape;
+			this.length = length;
+			this.width = width;
+		}
+
+		@Override
+		void collectParameters(List<Parameter> parameters) {
+			length.collectParameters(parameters);
+			if (width != null)
+				width.collectParameters(parameters);
+		}
+
+		@Override
+		void update() {
+			if (width == null)
+				shape.reshape(input, length.evaluate());
+			else
+				shape.reshape(input, length.evaluate(), width.evaluate());
+		}
+	}
+
+	private final static class TurnStep extends Step {
+		private final ArcShape shape;
+		// Either the center of the turn, or its length, or none of them
+		private final PointF center;
+		private final Expression angle;
+		private final Expression length;
+
+		TurnStep(ArcShape shape, PointF center, Expression angle,
+				Expression length) {
+			this.shape = shape;
+			this.center = center;
+			this.angle = angle;
+			this.length = length;
+		}
+
+		@Override
+		void collectParameters(List<Parameter> parameters) {
+			angle.collectParameters(parameters);
+			if (length != null)
+				length.collectParameters(parameters);
+		}
+
+		@Override
+		void update() {
+			if (center != null)
+				shape.reshape(input, center, angle.evaluate());
+			else if (length != null)
+				shape.reshape(input, angle.evaluate(), length.evaluate());
+			else
+				shape.reshape(input, angle.evaluate());
+		}
+	}
+
+	private final static class SplitStep extends Step {
+		private final SplitShape shape;
+		private final Expression width;
+		// A split with 2 outputs is given a single ratio
+		private final boolean isPair;
+		private final Expression[] ratios;
+		private final float[] values;
+
+		SplitStep(SplitShape shape, Expression width, boolean isPair,
+				Expression... ratios) {
+			this.shape = shape;
+			this.width = width;
+			this.isPair = isPair;
+			this.ratios = ratios;
+			this.values = new float[ratios.length];
+		}
+
+		@Override
+		void collectParameters(List<Parameter> parameters) {
+			width.collectParameters(parameters);
+			for (Expression ratio : ratios)
+				ratio.collectParameters(parameters);
+		}
+
+		@Override
+		void update() {
+			if (isPair) {
+				shape.reshape(input, width.evaluate(), ratios[0].evaluate(),
+						input.length() / 2);
+			} else {
+				for (int i = 0; i < ratios.length; i++)
+					values[i] = ratios[i].evaluate();
+				shape.reshape(input, width.evaluate(), values, input.length()
+						/ ratios.length);
+			}
+		}
+	}
+
+	private final static class JoinStep extends Step {
+		private final JoinShape shape;
+		private final Segment input2;
+		private final Step source2;
+		private final float width;
+
+		JoinStep(JoinShape shape, Segment input1, Step source1,
+				Segment input2, Step source2, float width) {
+			this.shape = shape;
+			this.input = input1;
+			this.source = source1;
+			this.input2 = input2;
+			this.source2 = source2;
+			this.width = width;
+		}
+
+		@Override
+		boolean isSourceDirty() {
+			return super.isSourceDirty() || source2 != null && source2.isDirty;
+		}
+
+		@Override
+		void collectParameters(List<Parameter> parameters) {
+		}
+
+		@Override
+		void update() {
+			shape.reshape(input, input2, width);
+		}
+	}
+
+	private final static class WidthStep extends Step {
+		private final Expression width;
+		// The shapes before and after the change (null if none), and whether
+		// they were closed anyway
+		private IPipelinePart previous;
+		private boolean isPreviousClosed;
+		private IPipelinePart next;
+		private final boolean isNextClosed;
+		// A change just before this one, sharing the next shape
+		private final WidthStep pending;
+
+		WidthStep(Expression width, IPipelinePart previous,
+				boolean isNextClosed, WidthStep pending) {
+			this.width = width;
+			this.previous = previous;
+			this.isPreviousClosed = previous != null
+					&& previous.isOutputClosed();
+			this.isNextClosed = isNextClosed;
+			this.pending = pending;
+			this.output = new Segment(0, 0, 0, 0);
+		}
+
+		/**
+		 * Gives the shape before the change, when it was not known yet
+		 */
+		void setPrevious(IPipelinePart previous) {
+			this.previous = previous;
+			isPreviousClosed = previous.isOutputClosed();
+			close(width.evaluate() - input.length());
+		}
+
+		void setNextShape(IPipelinePart next) {
+			this.next = next;
+			close(width.evaluate() - input.length());
+			if (pending != null)
+				pending.setNextShape(next);
+		}
+
+		@Override
+		void collectParameters(List<Parameter> parameters) {
+			width.collectParameters(parameters);
+		}
+
+		@Override
+		void update() {
+			float value = width.evaluate();
+			close(value - input.length());
+			input.scaleFromCenter(value / input.length(), output);
+		}
+
+		/**
+		 * Closes the side of the pipeline which is the widest
+		 */
+		private void close(float growth) {
+			if (previous != null) {
+				boolean isClosed = isPreviousClosed || growth < 0;
+				if (previous.isOutputClosed() != isClosed)
+					previous.setOutputClosed(isClosed);
+			}
+			if (next != null) {
+				boolean isClosed = isNextClosed || growth > 0;
+				if (next.isInputClosed() != isClosed)
+					next.setInputClosed(isClosed);
+			}
+		}
+	}
+
+	private final static class ReverseStep extends Step {
+
+		ReverseStep() {
+			this.output = new Segment(0, 0, 0, 0);
+		}
+
+		@Override
+		void collectParameters(List<Parameter> parameters) {
+		}
+
+		@Override
+		void update() {
+			input.reverse(output);
+		}
+	}
+
+	private final static class ColorStep extends Step {
+		private final IPipelinePart shape;
+		private final Expression ratio;
+		private final int color1;
+		private final int color2;
+
+		ColorStep(IPipelinePart shape, Expression ratio, int color1,
+				int color2) {
+			this.shape = shape;
+			this.ratio = ratio;
+			this.color1 = color1;
+			this.color2 = color2;
+		}
+
+		int getColor() {
+			float r = Math.max(0, Math.min(1, ratio.evaluate()));
+			return Color.argb(
+					mix(Color.alpha(color1), Color.alpha(color2), r),
+					mix(Color.red(color1), Color.red(color2), r),
+					mix(Color.green(color1), Color.green(color2), r),
+					mix(Color.blue(color1), Color.blue(color2), r));
+		}
+
+		@Override
+		boolean isSourceDirty() {
+			return false;
+		}
+
+		private static int mix(int c1, int c2, float ratio) {
+			return Math.round(c1 + (c2 - c1) * ratio);
+		}
+
+		@Override
+		void collectParameters(List<Parameter> parameters) {
+			ratio.collectParameters(parameters);
+		}
+
+		@Override
+		void update() {
+			if (shape != null)
+				shape.setBodyColor(getColor());
+		}
+	}
+
 	private final static class ShapeProperties implements Cloneable {
 		// Default properties
 		int bodyColor = Color.WHITE;
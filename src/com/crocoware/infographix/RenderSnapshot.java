@@ -0,0 +1,219 @@
+package com.crocoware.infographix;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import android.graphics.Canvas;
+import android.graphics.Canvas.EdgeType;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import com.crocoware.infographix.utils.PathBufferAdapter;
+import com.crocoware.infographix.utils.ShaderCache;
+
+/**
+ * An immutable copy of what a drawable draws : the paths, paints and texts of
+ * its elementary parts, in drawing order, and the transforms of its composed
+ * shapes.
+ * 
+ * A snapshot does not refer to the shapes it has been taken from : once
+ * taken, the shapes may be changed, or dropped, while the snapshot is drawn
+ * from another thread. The snapshot has its own copies of the paints, and of
+ * the gradients created by a ShaderCache, whose placement changes with the
+ * shapes. Other shaders cannot be copied, and are shared.
+ * 
+ * A snapshot is drawn as the shapes would be (culled, not batched, and never
+ * simplified).
+ * 
+ * A snapshot can also be loaded from a file (see SnapshotFormat).
+ * 
+ * @author Benoit
+ * 
+ */
+public final class RenderSnapshot {
+
+	/**
+	 * An elementary part, or the start or end of a transformed composed shape
+	 */
+	static final class Entry {
+		// Start of a transformed group (null otherwise)
+		final Matrix transform;
+		final boolean isGroupEnd;
+		final Path body;
+		final Paint bodyPaint;
+		final Path edges;
+		final Paint edgePaint;
+		final String text;
+		final float textX, textY;
+		final Paint textPaint;
+		// Area covered when drawn (null : always drawn)
+		final RectF bounds;
+
+		Entry(Matrix transform, boolean isGroupEnd) {
+			this.transform = transform;
+			this.isGroupEnd = isGroupEnd;
+			body = edges = null;
+			bodyPaint = edgePaint = textPaint = null;
+			text = null;
+			textX = textY = 0;
+			bounds = null;
+		}
+
+		Entry(Path body, Paint bodyPaint, Path edges, Paint edgePaint,
+				String text, float textX, float textY, Paint textPaint,
+				RectF bounds) {
+			transform = null;
+			isGroupEnd = false;
+			this.body = body;
+			this.bodyPaint = bodyPaint;
+			this.edges = edges;
+			this.edgePaint = edgePaint;
+			this.text = text;
+			this.textX = textX;
+			this.textY = textY;
+			this.textPaint = textPaint;
+			this.bounds = bounds;
+		}
+
+		Entry(AbstractBorderedDrawable part,
+				IdentityHashMap<Paint, Paint> copies) {
+			transform = null;
+			isGroupEnd = false;
+			body = PathBufferAdapter.replay(part.getBodyBuffer(), new Path());
+			bodyPaint = copy(part.getBodyPaint(), copies);
+			edges = PathBufferAdapter.replay(part.getEdgeBuffer(), new Path());
+			edgePaint = copy(part.getEdgePaint(), copies);
+			text = part.getText();
+			if (text != null) {
+				textX = part.getTextX();
+				textY = part.getTextY();
+				textPaint = copy(part.getTextPaint(), copies);
+				// The text is not part of the draw bounds
+				bounds = null;
+			} else {
+				textX = textY = 0;
+				textPaint = null;
+				bounds = new RectF();
+				part.getDrawBounds(bounds);
+			}
+		}
+	}
+
+	/**
+	 * @param copies
+	 *            the copies already made for this snapshot : the parts
+	 *            sharing a style share the same copies
+	 */
+	private static Paint copy(Paint paint,
+			IdentityHashMap<Paint, Paint> copies) {
+		Paint copy = copies.get(paint);
+		if (copy != null)
+			return copy;
+		copy = new Paint(paint);
+		Shader shader = paint.getShader();
+		ShaderCache.Gradient gradient = shader == null ? null : ShaderCache
+				.find(shader);
+		if (gradient != null) {
+			Matrix localMatrix = new Matrix();
+			shader.getLocalMatrix(localMatrix);
+			copy.setShader(ShaderCache.create(gradient.isSweep(),
+					gradient.getColors(), gradient.getPositions(), localMatrix));
+		}
+		copies.put(paint, copy);
+		return copy;
+	}
+
+	private final Entry[] entries;
+	private final int partCount;
+
+	RenderSnapshot(Entry[] entries, int partCount) {
+		this.entries = entries;
+		this.partCount = partCount;
+	}
+
+	/**
+	 * Copies what the drawable draws. This must be called from the thread
+	 * which changes the drawable.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the drawable, or one of its parts, is not a known kind
+	 *             of shape
+	 */
+	public static RenderSnapshot of(IBorderedDrawable drawable) {
+		ArrayList<Entry> entries = new ArrayList<Entry>();
+		int partCount = record(drawable, entries,
+				new IdentityHashMap<Paint, Paint>());
+		return new RenderSnapshot(entries.toArray(new Entry[entries.size()]),
+				partCount);
+	}
+
+	/**
+	 * @return the number of elementary parts recorded
+	 */
+	private static int record(IBorderedDrawable drawable,
+			ArrayList<Entry> entries, IdentityHashMap<Paint, Paint> copies) {
+		if (drawable instanceof ComposedBordered) {
+			ComposedBordered composed = (ComposedBordered) drawable;
+			Matrix transform = composed.getTransform();
+			if (transform != null)
+				entries.add(new Entry(new Matrix(transform), false));
+			int partCount = 0;
+			// Same order as ComposedBordered.draw()
+			int size = composed.parts.size();
+			for (int i = 0; i < size; i++)
+				partCount += record(composed.parts.get(size - i - 1),
+						entries, copies);
+			if (transform != null)
+				entries.add(new Entry(null, true));
+			return partCount;
+		}
+		if (drawable instanceof AbstractBorderedDrawable) {
+			entries.add(new Entry((AbstractBorderedDrawable) drawable, copies));
+			return 1;
+		}
+		throw new IllegalArgumentException("Cannot take a snapshot of "
+				+ drawable.getClass().getName());
+	}
+
+	/**
+	 * @return the number of elementary parts in the snapshot
+	 */
+	public int getPartCount() {
+		return partCount;
+	}
+
+	/**
+	 * Draws the snapshot. It may be called from any thread, and by several
+	 * threads at once.
+	 */
+	public void draw(Canvas canvas) {
+		int drawCalls = 0;
+		for (Entry entry : entries) {
+			if (entry.transform != null) {
+				canvas.save();
+				canvas.concat(entry.transform);
+			} else if (entry.isGroupEnd) {
+				canvas.restore();
+			} else if (entry.bounds == null
+					|| !canvas.quickReject(entry.bounds, EdgeType.AA)) {
+				if (!entry.body.isEmpty()) {
+					canvas.drawPath(entry.body, entry.bodyPaint);
+					drawCalls++;
+				}
+				canvas.drawPath(entry.edges, entry.edgePaint);
+				drawCalls++;
+				if (entry.text != null) {
+					canvas.drawText(entry.text, entry.textX, entry.textY,
+							entry.textPaint);
+					drawCalls++;
+				}
+			}
+		}
+		Instrumentation.Listener listener = Instrumentation.getListener();
+		if (listener != null)
+			listener.onDrawCalls(drawCalls);
+	}
+}
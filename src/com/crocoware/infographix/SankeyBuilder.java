@@ -0,0 +1,307 @@
+package com.crocoware.infographix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * Builds a Sankey diagram from the values of its flows.
+ * 
+ * The flows form a tree : the root flow is split into its child flows, each
+ * of them split into its own children, and so on. The values are given to the
+ * leaves only, the value of a flow being the sum of the values of its
+ * children. Each flow is drawn as a pipe whose width is its value times the
+ * scale, followed by a split into its children (see Pipeline.split()).
+ * 
+ * The values remain bound to the diagram once built : when the value of a
+ * leaf changes, only the splits of its ancestors are reshaped, and the shapes
+ * downstream of them moved. Many values may be changed at once between
+ * beginChanges() and endChanges().
+ * 
+ * Each flow pipe is tagged with the name of its flow, so that it can be
+ * styled or found in the pipeline. The split following it is tagged with its
+ * name followed by SPLIT_SUFFIX.
+ * 
+ * @author Benoit
+ * 
+ */
+public class SankeyBuilder {
+
+	public static final String SPLIT_SUFFIX = "#split";
+
+	/**
+	 * A flow of the diagram, and its children
+	 */
+	public final class Flow {
+		private final String name;
+		private final Flow parent;
+		private final ArrayList<Flow> children = new ArrayList<Flow>(2);
+		// Kept in double so that many updates do not drift
+		private double total;
+		private final Parameter value;
+		private int color;
+		private boolean hasColor = false;
+
+		private Flow(String name, Flow parent, float value) {
+			this.name = name;
+			this.parent = parent;
+			this.total = value;
+			this.value = new Parameter(value);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Flow getParent() {
+			return parent;
+		}
+
+		public List<Flow> getChildren() {
+			return Collections.unmodifiableList(children);
+		}
+
+		public float getValue() {
+			return value.get();
+		}
+
+		/**
+		 * Adds a child flow. The value of this flow becomes the sum of its
+		 * children.
+		 * 
+		 * @param name
+		 *            unique in the diagram
+		 * @param value
+		 *            the initial value of the new flow (0 or more)
+		 * @throws IllegalStateException
+		 *             if the diagram has been built
+		 */
+		public Flow addFlow(String name, float value) {
+			if (pipeline != null)
+				throw new IllegalStateException("Already built");
+			if (value < 0)
+				throw new IllegalArgumentException("value<0");
+			if (flowsByName.containsKey(name))
+				throw new IllegalArgumentException("Duplicate flow " + name);
+			Flow flow = new Flow(name, this, value);
+			flowsByName.put(name, flow);
+			// The value of a leaf is replaced by those of its children
+			double delta = children.isEmpty() ? value - total : value;
+			children.add(flow);
+			addToTotal(delta);
+			return flow;
+		}
+
+		/**
+		 * Changes the value of a leaf. Once the diagram is built, its shapes
+		 * are updated (see beginChanges()).
+		 * 
+		 * @param value
+		 *            0 or more
+		 * @throws IllegalStateException
+		 *             if the flow has children
+		 */
+		public void setValue(float value) {
+			if (!children.isEmpty())
+				throw new IllegalStateException("Not a leaf : " + name);
+			if (value < 0)
+				throw new IllegalArgumentException("value<0");
+			addToTotal(value - total);
+		}
+
+		private void addToTotal(double delta) {
+			if (delta == 0)
+				return;
+			for (Flow flow = this; flow != null; flow = flow.parent) {
+				flow.total += delta;
+				flow.value.set((float) flow.total);
+			}
+		}
+
+		/**
+		 * Sets the color of the body of the flow, and of the flows after it
+		 * (until they are given their own color)
+		 */
+		public void setColor(int color) {
+			this.color = color;
+			hasColor = true;
+		}
+	}
+
+	private final float scale;
+	private final float length;
+	private final float splitLength;
+	private final HashMap<String, Flow> flowsByName = new HashMap<String, Flow>();
+	private final Flow root;
+	private Pipeline pipeline;
+
+	/**
+	 * @param rootName
+	 *            the name of the root flow
+	 * @param scale
+	 *            the width of the pipe for a value of 1
+	 * @param length
+	 *            the length of the pipe of each flow
+	 * @param splitLength
+	 *            the length of each split
+	 */
+	public SankeyBuilder(String rootName, float scale, float length,
+			float splitLength) {
+		if (scale <= 0)
+			throw new IllegalArgumentException("scale<=0");
+		if (length <= 0)
+			throw new IllegalArgumentException("length<=0");
+		if (splitLength <= 0)
+			throw new IllegalArgumentException("splitLength<=0");
+		this.scale = scale;
+		this.length = length;
+		this.splitLength = splitLength;
+		root = new Flow(rootName, null, 0);
+		flowsByName.put(rootName, root);
+	}
+
+	public Flow getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return the flow with the given name, or null
+	 */
+	public Flow getFlow(String name) {
+		return flowsByName.get(name);
+	}
+
+	/**
+	 * Builds the diagram. The flows cannot be added anymore, but their values
+	 * can still change.
+	 * 
+	 * @param input
+	 *            where the root flow starts : only its center and its
+	 *            direction are used, its width follows the value of the root
+	 *            (the segment must be facing down if the diagram goes right)
+	 */
+	public Pipeline build(Segment input) {
+		if (pipeline != null)
+			throw new IllegalStateException("Already built");
+		pipeline = new Pipeline(input);
+		pipeline.setWidth(width(root));
+		build(root);
+		return pipeline;
+	}
+
+	/**
+	 * @return the pipeline built, or null if not built yet
+	 */
+	public Pipeline getPipeline() {
+		return pipeline;
+	}
+
+	private void build(Flow flow) {
+		// The width of the pipe follows the split, or the width given to the
+		// root
+		pipeline.forward(length);
+		if (flow.hasColor)
+			pipeline.setBodyColor(flow.color);
+		pipeline.tag(flow.name);
+		int count = flow.children.size();
+		if (count == 0)
+			return;
+		if (count == 1) {
+			build(flow.children.get(0));
+			return;
+		}
+		Expression width = Expression.constant(splitLength);
+		if (count == 2) {
+			pipeline.split(width, share(flow.children.get(0)));
+		} else {
+			Expression[] shares = new Expression[count];
+			for (int i = 0; i < count; i++)
+				shares[i] = share(flow.children.get(i));
+			pipeline.split(width, shares);
+		}
+		String tag = flow.name + SPLIT_SUFFIX;
+		pipeline.tag(tag);
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				pipeline.back(tag);
+			pipeline.select(i);
+			build(flow.children.get(i));
+		}
+	}
+
+	/**
+	 * Delays the updates of the shapes until endChanges() (see
+	 * Pipeline.beginChanges())
+	 */
+	public void beginChanges() {
+		ensureBuilt();
+		pipeline.beginChanges();
+	}
+
+	public void endChanges() {
+		ensureBuilt();
+		pipeline.endChanges();
+	}
+
+	private void ensureBuilt() {
+		if (pipeline == null)
+			throw new IllegalStateException("Not built");
+	}
+
+	/**
+	 * @return the width of the flow, never 0 so that its pipe keeps a
+	 *         direction
+	 */
+	private Expression width(final Flow flow) {
+		return new Expression() {
+			@Override
+			public float evaluate() {
+				return Math.max(flow.value.get() * scale, MIN_WIDTH);
+			}
+
+			@Override
+			protected void collectParameters(List<Parameter> parameters) {
+				flow.value.collectParameters(parameters);
+			}
+
+			@Override
+			public boolean dependsOn(Parameter parameter) {
+				return parameter == flow.value;
+			}
+		};
+	}
+
+	// Width given to the flows of value 0
+	private static final float MIN_WIDTH = 0.01f;
+
+	/**
+	 * @return the part of its parent taken by the flow (the parts are even
+	 *         when the parent is 0)
+	 */
+	private static Expression share(final Flow flow) {
+		return new Expression() {
+			@Override
+			public float evaluate() {
+				float total = flow.parent.value.get();
+				if (total <= 0)
+					return 1f / flow.parent.children.size();
+				return Math.min(1, flow.value.get() / total);
+			}
+
+			@Override
+			protected void collectParameters(List<Parameter> parameters) {
+				flow.value.collectParameters(parameters);
+				flow.parent.value.collectParameters(parameters);
+			}
+
+			@Override
+			public boolean dependsOn(Parameter parameter) {
+				return parameter == flow.value
+						|| parameter == flow.parent.value;
+			}
+		};
+	}
+}
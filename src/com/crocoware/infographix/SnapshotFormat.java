@@ -0,0 +1,391 @@
+package com.crocoware.infographix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+import android.graphics.Paint.Style;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import com.crocoware.infographix.RenderSnapshot.Entry;
+import com.crocoware.infographix.utils.PathBuffer;
+import com.crocoware.infographix.utils.PathBufferAdapter;
+import com.crocoware.infographix.utils.ShaderCache;
+
+/**
+ * Saves a built diagram into a compact binary file, and loads it back as a
+ * snapshot ready to be drawn (see RenderSnapshot).
+ * 
+ * The file holds what the diagram draws, not how it has been built : the
+ * commands of the paths (arcs, arrows and closings already included), the
+ * paints and the gradients. Loading it only reads arrays in bulk and replays
+ * them, nothing is computed again. It is meant to be built at compile time,
+ * and loaded at startup instead of the diagram.
+ * 
+ * Only the gradients created by a ShaderCache are saved, and the path effects
+ * are not : the shapes are then drawn with their plain color and lines.
+ * 
+ * The file is, in big endian order :
+ * 
+ * <pre>
+ * magic, version             int, short
+ * entries                    (see below), up to an END byte
+ * 
+ * GROUP_START                9 floats (the matrix)
+ * GROUP_END
+ * PART                       body, paint, edges, paint, text, bounds
+ * path                       opCount, coordCount, opcodes, coordinates
+ * paint                      color, style, stroke width, antialias,
+ *                            text size, align, gradient
+ * gradient                   NONE, or LINEAR/SWEEP, colors, positions
+ *                            (count -1 when none), 9 floats (local matrix)
+ * text                       UTF-8 length (-1 when none), bytes, x, y, paint
+ * bounds                     0, or 1 and left, top, right, bottom
+ * </pre>
+ * 
+ * @author Benoit
+ * 
+ */
+public final class SnapshotFormat {
+
+	public static final int MAGIC = 0x49475844; // "IGXD"
+	public static final short VERSION = 1;
+
+	private static final byte END = 0;
+	private static final byte PART = 1;
+	private static final byte GROUP_START = 2;
+	private static final byte GROUP_END = 3;
+
+	private static final byte NONE = 0;
+	private static final byte LINEAR = 1;
+	private static final byte SWEEP = 2;
+
+	private static final String CHARSET = "UTF-8";
+
+	private SnapshotFormat() {
+	}
+
+	/**
+	 * Saves what the drawable draws. This must be called from the thread which
+	 * changes the drawable.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the drawable, or one of its parts, is not a known kind
+	 *             of shape
+	 */
+	public static void write(IBorderedDrawable drawable, OutputStream out)
+			throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		writeDrawable(drawable, data, new float[9]);
+		data.writeByte(END);
+		data.flush();
+	}
+
+	/**
+	 * @return the drawable, saved in memory
+	 */
+	public static byte[] toBytes(IBorderedDrawable drawable) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			write(drawable, out);
+		} catch (IOException e) {
+			// Not thrown by a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+
+	// Same order as RenderSnapshot.record()
+	private static void writeDrawable(IBorderedDrawable drawable,
+			DataOutputStream data, float[] values) throws IOException {
+		if (drawable instanceof ComposedBordered) {
+			ComposedBordered composed = (ComposedBordered) drawable;
+			Matrix transform = composed.getTransform();
+			if (transform != null) {
+				data.writeByte(GROUP_START);
+				transform.getValues(values);
+				writeFloats(data, values, values.length);
+			}
+			int size = composed.parts.size();
+			for (int i = 0; i < size; i++)
+				writeDrawable(composed.parts.get(size - i - 1), data, values);
+			if (transform != null)
+				data.writeByte(GROUP_END);
+			return;
+		}
+		if (drawable instanceof AbstractBorderedDrawable) {
+			writePart((AbstractBorderedDrawable) drawable, data, values);
+			return;
+		}
+		throw new IllegalArgumentException("Cannot save "
+				+ drawable.getClass().getName());
+	}
+
+	private static void writePart(AbstractBorderedDrawable part,
+			DataOutputStream data, float[] values) throws IOException {
+		data.writeByte(PART);
+		writePath(data, part.getBodyBuffer());
+		writePaint(data, part.getBodyPaint(), values);
+		writePath(data, part.getEdgeBuffer());
+		writePaint(data, part.getEdgePaint(), values);
+		String text = part.getText();
+		if (text == null) {
+			data.writeInt(-1);
+			// The text is not part of the draw bounds
+			RectF bounds = new RectF();
+			part.getDrawBounds(bounds);
+			data.writeByte(1);
+			data.writeFloat(bounds.left);
+			data.writeFloat(bounds.top);
+			data.writeFloat(bounds.right);
+			data.writeFloat(bounds.bottom);
+		} else {
+			byte[] bytes = text.getBytes(CHARSET);
+			data.writeInt(bytes.length);
+			data.write(bytes);
+			data.writeFloat(part.getTextX());
+			data.writeFloat(part.getTextY());
+			writePaint(data, part.getTextPaint(), values);
+			data.writeByte(0);
+		}
+	}
+
+	private static void writePath(DataOutputStream data, PathBuffer buffer)
+			throws IOException {
+		int opCount = buffer.getOpCount();
+		int coordCount = buffer.getCoordCount();
+		data.writeInt(opCount);
+		data.writeInt(coordCount);
+		for (int i = 0; i < opCount; i++)
+			data.writeByte(buffer.getOp(i));
+		writeFloats(data, buffer.getCoords(), coordCount);
+	}
+
+	private static void writePaint(DataOutputStream data, Paint paint,
+			float[] values) throws IOException {
+		data.writeInt(paint.getColor());
+		data.writeByte(paint.getStyle().ordinal());
+		data.writeFloat(paint.getStrokeWidth());
+		data.writeBoolean(paint.isAntiAlias());
+		data.writeFloat(paint.getTextSize());
+		data.writeByte(paint.getTextAlign().ordinal());
+		Shader shader = paint.getShader();
+		ShaderCache.Gradient gradient = shader == null ? null : ShaderCache
+				.find(shader);
+		if (gradient == null) {
+			data.writeByte(NONE);
+			return;
+		}
+		data.writeByte(gradient.isSweep() ? SWEEP : LINEAR);
+		int[] colors = gradient.getColors();
+		data.writeShort(colors.length);
+		for (int color : colors)
+			data.writeInt(color);
+		float[] positions = gradient.getPositions();
+		if (positions == null) {
+			data.writeShort(-1);
+		} else {
+			data.writeShort(positions.length);
+			writeFloats(data, positions, positions.length);
+		}
+		Matrix matrix = new Matrix();
+		shader.getLocalMatrix(matrix);
+		matrix.getValues(values);
+		writeFloats(data, values, values.length);
+	}
+
+	private static void writeFloats(DataOutputStream data, float[] values,
+			int count) throws IOException {
+		for (int i = 0; i < count; i++)
+			data.writeFloat(values[i]);
+	}
+
+	/**
+	 * Loads a file by mapping it in memory
+	 */
+	public static RenderSnapshot read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Loads a whole stream (which is not closed)
+	 */
+	public static RenderSnapshot read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int n;
+		while ((n = in.read(chunk)) > 0)
+			out.write(chunk, 0, n);
+		return read(ByteBuffer.wrap(out.toByteArray()));
+	}
+
+	/**
+	 * Loads a snapshot from the remaining bytes of the buffer (its position is
+	 * not changed)
+	 */
+	public static RenderSnapshot read(ByteBuffer buffer) throws IOException {
+		ByteBuffer in = buffer.duplicate();
+		in.order(ByteOrder.BIG_ENDIAN);
+		try {
+			if (in.getInt() != MAGIC)
+				throw new IOException("Not a diagram snapshot");
+			short version = in.getShort();
+			if (version != VERSION)
+				throw new IOException("Unknown snapshot version " + version);
+			ArrayList<Entry> entries = new ArrayList<Entry>();
+			float[] values = new float[9];
+			int partCount = 0;
+			int depth = 0;
+			byte kind;
+			while ((kind = in.get()) != END) {
+				switch (kind) {
+				case GROUP_START:
+					readFloats(in, values);
+					Matrix transform = new Matrix();
+					transform.setValues(values);
+					entries.add(new Entry(transform, false));
+					depth++;
+					break;
+				case GROUP_END:
+					if (depth-- == 0)
+						throw new IOException("Unbalanced group");
+					entries.add(new Entry(null, true));
+					break;
+				case PART:
+					entries.add(readPart(in, values));
+					partCount++;
+					break;
+				default:
+					throw new IOException("Unknown entry " + kind);
+				}
+			}
+			if (depth != 0)
+				throw new IOException("Unbalanced group");
+			return new RenderSnapshot(
+					entries.toArray(new Entry[entries.size()]), partCount);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated snapshot");
+		}
+	}
+
+	private static Entry readPart(ByteBuffer in, float[] values)
+			throws IOException {
+		Path body = readPath(in);
+		Paint bodyPaint = readPaint(in, values);
+		Path edges = readPath(in);
+		Paint edgePaint = readPaint(in, values);
+		String text = null;
+		float textX = 0, textY = 0;
+		Paint textPaint = null;
+		int length = in.getInt();
+		if (length > in.remaining())
+			throw new IOException("Bad text size");
+		if (length >= 0) {
+			byte[] bytes = new byte[length];
+			in.get(bytes);
+			text = new String(bytes, CHARSET);
+			textX = in.getFloat();
+			textY = in.getFloat();
+			textPaint = readPaint(in, values);
+		}
+		RectF bounds = null;
+		if (in.get() != 0)
+			bounds = new RectF(in.getFloat(), in.getFloat(), in.getFloat(),
+					in.getFloat());
+		return new Entry(body, bodyPaint, edges, edgePaint, text, textX,
+				textY, textPaint, bounds);
+	}
+
+	private static Path readPath(ByteBuffer in) throws IOException {
+		int opCount = in.getInt();
+		int coordCount = in.getInt();
+		// Checked before allocating anything, the sizes may be corrupted
+		if (opCount < 0 || coordCount < 0
+				|| opCount + 4L * coordCount > in.remaining())
+			throw new IOException("Bad path size");
+		byte[] ops = new byte[opCount];
+		in.get(ops);
+		int used = 0;
+		for (byte op : ops) {
+			if (op < PathBuffer.MOVE_TO || op > PathBuffer.ARC_TO)
+				throw new IOException("Unknown path command " + op);
+			used += PathBuffer.getCoordCount(op);
+		}
+		if (used != coordCount)
+			throw new IOException("Bad path size");
+		float[] coords = new float[coordCount];
+		readFloats(in, coords);
+		return PathBufferAdapter.replay(new PathBuffer(ops, coords),
+				new Path());
+	}
+
+	private static Paint readPaint(ByteBuffer in, float[] values)
+			throws IOException {
+		Paint paint = new Paint();
+		paint.setColor(in.getInt());
+		paint.setStyle(readEnum(Style.values(), in.get()));
+		paint.setStrokeWidth(in.getFloat());
+		paint.setAntiAlias(in.get() != 0);
+		paint.setTextSize(in.getFloat());
+		paint.setTextAlign(readEnum(Align.values(), in.get()));
+		byte kind = in.get();
+		if (kind == NONE)
+			return paint;
+		if (kind != LINEAR && kind != SWEEP)
+			throw new IOException("Unknown gradient " + kind);
+		int count = in.getShort();
+		if (count < 2)
+			throw new IOException("Bad gradient");
+		int[] colors = new int[count];
+		in.asIntBuffer().get(colors);
+		in.position(in.position() + count * 4);
+		float[] positions = null;
+		count = in.getShort();
+		if (count >= 0) {
+			if (count != colors.length)
+				throw new IOException("Bad gradient");
+			positions = new float[count];
+			readFloats(in, positions);
+		}
+		readFloats(in, values);
+		Matrix matrix = new Matrix();
+		matrix.setValues(values);
+		paint.setShader(ShaderCache.create(kind == SWEEP, colors, positions,
+				matrix));
+		return paint;
+	}
+
+	private static <T> T readEnum(T[] values, byte ordinal) throws IOException {
+		if (ordinal < 0 || ordinal >= values.length)
+			throw new IOException("Bad paint");
+		return values[ordinal];
+	}
+
+	private static void readFloats(ByteBuffer in, float[] values) {
+		in.asFloatBuffer().get(values);
+		in.position(in.position() + values.length * 4);
+	}
+}
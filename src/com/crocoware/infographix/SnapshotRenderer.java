@@ -0,0 +1,122 @@
+package com.crocoware.infographix;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.graphics.Canvas;
+
+/**
+ * Builds diagrams on a worker thread, and draws them from the UI thread.
+ * 
+ * Each call to rebuild() runs the given builder on the executor, which
+ * creates a new diagram and takes a snapshot of it (see RenderSnapshot). The
+ * snapshot is then published at once : draw() always draws the latest
+ * complete snapshot, without any lock, while the next one is being built.
+ * 
+ * The requests are coalesced : if several rebuilds are asked while the
+ * executor is busy, only the latest one is built.
+ * 
+ * @author Benoit
+ * 
+ */
+public class SnapshotRenderer {
+
+	public interface Builder {
+		/**
+		 * Creates the diagram (called from the worker thread)
+		 */
+		IBorderedDrawable build();
+	}
+
+	public interface Listener {
+		/**
+		 * Called from the worker thread each time a snapshot is published
+		 */
+		void onSnapshotPublished(SnapshotRenderer renderer);
+	}
+
+	private static final class Published {
+		final RenderSnapshot snapshot;
+		// Number of the request it has been built for
+		final long request;
+
+		Published(RenderSnapshot snapshot, long request) {
+			this.snapshot = snapshot;
+			this.request = request;
+		}
+	}
+
+	private final Executor executor;
+	private final AtomicReference<Published> current = new AtomicReference<Published>();
+	// Number of the latest request
+	private final AtomicLong lastRequest = new AtomicLong();
+	private volatile Listener listener;
+
+	/**
+	 * @param executor
+	 *            runs the builders, usually a single background thread
+	 */
+	public SnapshotRenderer(Executor executor) {
+		this.executor = executor;
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Asks the executor to build a new diagram, then to publish it
+	 */
+	public void rebuild(final Builder builder) {
+		final long request = lastRequest.incrementAndGet();
+		executor.execute(new Runnable() {
+			public void run() {
+				// A later request will be built anyway
+				if (lastRequest.get() != request)
+					return;
+				publish(RenderSnapshot.of(builder.build()), request);
+			}
+		});
+	}
+
+	/**
+	 * Takes a snapshot of the diagram, and publishes it. This must be called
+	 * from the thread which changes the diagram.
+	 */
+	public void publish(IBorderedDrawable diagram) {
+		publish(RenderSnapshot.of(diagram), lastRequest.incrementAndGet());
+	}
+
+	private void publish(RenderSnapshot snapshot, long request) {
+		Published published = new Published(snapshot, request);
+		while (true) {
+			Published previous = current.get();
+			// Never replace a snapshot asked later
+			if (previous != null && previous.request > request)
+				return;
+			if (current.compareAndSet(previous, published))
+				break;
+		}
+		Listener listener = this.listener;
+		if (listener != null)
+			listener.onSnapshotPublished(this);
+	}
+
+	/**
+	 * @return the latest published snapshot, or null if none yet
+	 */
+	public RenderSnapshot getSnapshot() {
+		Published published = current.get();
+		return published == null ? null : published.snapshot;
+	}
+
+	/**
+	 * Draws the latest published snapshot, if any
+	 */
+	public void draw(Canvas canvas) {
+		RenderSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			snapshot.draw(canvas);
+	}
+}
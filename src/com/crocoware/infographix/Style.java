@@ -0,0 +1,309 @@
+package com.crocoware.infographix;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+import android.graphics.PathEffect;
+import android.graphics.Shader;
+
+/**
+ * The paints of a shape : the attributes of its body, of its edges and of its
+ * text.
+ * 
+ * A style is immutable, and interned : all the equal styles are the same
+ * instance, so that the shapes drawn the same way share their style and its
+ * paints (see AbstractBorderedDrawable.setStyle()). Changing an attribute gives
+ * another style (see the with...() methods), the shapes using the previous one
+ * being unchanged.
+ * 
+ * The shaders and the path effects are compared by identity. A shader may
+ * still be moved (see ShaderCache) : the shapes using the style move with it.
+ * 
+ * The paints of a style are read-only : modifying one would change every shape
+ * using the style, Style.DEFAULT included. Its attributes are read through the
+ * getters of the style.
+ * 
+ * @author Benoit
+ * 
+ */
+public final class Style {
+
+	// The styles in use, each one being its own key
+	private static final Map<Style, WeakReference<Style>> STYLES = new WeakHashMap<Style, WeakReference<Style>>();
+
+	/**
+	 * White body, black edges 4 wide, black text centered
+	 */
+	public static final Style DEFAULT = intern(new Style(Color.WHITE, null,
+			false, Color.BLACK, 4, null, true, Color.BLACK,
+			new Paint().getTextSize()));
+
+	private final int bodyColor;
+	private final Shader bodyShader;
+	private final boolean isBodyAntiAlias;
+	private final int edgeColor;
+	private final float edgeWidth;
+	private final PathEffect edgePathEffect;
+	private final boolean isEdgeAntiAlias;
+	private final int textColor;
+	private final float textSize;
+	private final int hashCode;
+
+	// Created once interned
+	private Paint bodyPaint, edgePaint, textPaint;
+
+	private Style(int bodyColor, Shader bodyShader, boolean isBodyAntiAlias,
+			int edgeColor, float edgeWidth, PathEffect edgePathEffect,
+			boolean isEdgeAntiAlias, int textColor, float textSize) {
+		this.bodyColor = bodyColor;
+		this.bodyShader = bodyShader;
+		this.isBodyAntiAlias = isBodyAntiAlias;
+		this.edgeColor = edgeColor;
+		this.edgeWidth = edgeWidth;
+		this.edgePathEffect = edgePathEffect;
+		this.isEdgeAntiAlias = isEdgeAntiAlias;
+		this.textColor = textColor;
+		this.textSize = textSize;
+		int hash = bodyColor;
+		hash = 31 * hash + System.identityHashCode(bodyShader);
+		hash = 31 * hash + (isBodyAntiAlias ? 1 : 0);
+		hash = 31 * hash + edgeColor;
+		hash = 31 * hash + Float.floatToIntBits(edgeWidth);
+		hash = 31 * hash + System.identityHashCode(edgePathEffect);
+		hash = 31 * hash + (isEdgeAntiAlias ? 1 : 0);
+		hash = 31 * hash + textColor;
+		hash = 31 * hash + Float.floatToIntBits(textSize);
+		hashCode = hash;
+	}
+
+	/**
+	 * @return the instance equal to the given style, which becomes it if
+	 *         there is none
+	 */
+	private static Style intern(Style style) {
+		synchronized (STYLES) {
+			WeakReference<Style> reference = STYLES.get(style);
+			Style interned = reference == null ? null : reference.get();
+			if (interned != null)
+				return interned;
+			style.createPaints();
+			STYLES.put(style, new WeakReference<Style>(style));
+			return style;
+		}
+	}
+
+	/**
+	 * @return the number of different styles in use
+	 */
+	public static int getStyleCount() {
+		synchronized (STYLES) {
+			return STYLES.size();
+		}
+	}
+
+	private void createPaints() {
+		bodyPaint = new Paint();
+		bodyPaint.setColor(bodyColor);
+		bodyPaint.setShader(bodyShader);
+		bodyPaint.setAntiAlias(isBodyAntiAlias);
+		bodyPaint.setStyle(Paint.Style.FILL);
+
+		edgePaint = new Paint();
+		edgePaint.setColor(edgeColor);
+		edgePaint.setAntiAlias(isEdgeAntiAlias);
+		edgePaint.setStrokeWidth(edgeWidth);
+		edgePaint.setPathEffect(edgePathEffect);
+		edgePaint.setStyle(Paint.Style.STROKE);
+
+		textPaint = new Paint();
+		textPaint.setColor(textColor);
+		textPaint.setTextSize(textSize);
+		textPaint.setAntiAlias(true);
+		textPaint.setTextAlign(Align.CENTER);
+	}
+
+	/**
+	 * @return the paint of the bodies, which must not be modified
+	 */
+	public Paint getBodyPaint() {
+		return bodyPaint;
+	}
+
+	/**
+	 * @return the paint of the edges, which must not be modified
+	 */
+	public Paint getEdgePaint() {
+		return edgePaint;
+	}
+
+	/**
+	 * @return the paint of the texts, which must not be modified
+	 */
+	public Paint getTextPaint() {
+		return textPaint;
+	}
+
+	public int getBodyColor() {
+		return bodyColor;
+	}
+
+	public Shader getBodyShader() {
+		return bodyShader;
+	}
+
+	public boolean isBodyAntiAlias() {
+		return isBodyAntiAlias;
+	}
+
+	public int getEdgeColor() {
+		return edgeColor;
+	}
+
+	public float getEdgeWidth() {
+		return edgeWidth;
+	}
+
+	public PathEffect getEdgePathEffect() {
+		return edgePathEffect;
+	}
+
+	public boolean isEdgeAntiAlias() {
+		return isEdgeAntiAlias;
+	}
+
+	public int getTextColor() {
+		return textColor;
+	}
+
+	public float getTextSize() {
+		return textSize;
+	}
+
+	public Style withBodyColor(int color) {
+		if (color == bodyColor)
+			return this;
+		return intern(new Style(color, bodyShader, isBodyAntiAlias,
+				edgeColor, edgeWidth, edgePathEffect, isEdgeAntiAlias,
+				textColor, textSize));
+	}
+
+	/**
+	 * @return the style with the alpha of the body changed (like
+	 *         Paint.setAlpha())
+	 */
+	public Style withBodyAlpha(int alpha) {
+		return withBodyColor(withAlpha(bodyColor, alpha));
+	}
+
+	public Style withBodyShader(Shader shader) {
+		if (shader == bodyShader)
+			return this;
+		return intern(new Style(bodyColor, shader, isBodyAntiAlias,
+				edgeColor, edgeWidth, edgePathEffect, isEdgeAntiAlias,
+				textColor, textSize));
+	}
+
+	public Style withBodyAntiAlias(boolean isAntiAlias) {
+		if (isAntiAlias == isBodyAntiAlias)
+			return this;
+		return intern(new Style(bodyColor, bodyShader, isAntiAlias,
+				edgeColor, edgeWidth, edgePathEffect, isEdgeAntiAlias,
+				textColor, textSize));
+	}
+
+	public Style withEdgeColor(int color) {
+		if (color == edgeColor)
+			return this;
+		return intern(new Style(bodyColor, bodyShader, isBodyAntiAlias,
+				color, edgeWidth, edgePathEffect, isEdgeAntiAlias, textColor,
+				textSize));
+	}
+
+	/**
+	 * @return the style with the alpha of the edges changed (like
+	 *         Paint.setAlpha())
+	 */
+	public Style withEdgeAlpha(int alpha) {
+		return withEdgeColor(withAlpha(edgeColor, alpha));
+	}
+
+	public Style withEdgeWidth(float width) {
+		if (width == edgeWidth)
+			return this;
+		return intern(new Style(bodyColor, bodyShader, isBodyAntiAlias,
+				edgeColor, width, edgePathEffect, isEdgeAntiAlias, textColor,
+				textSize));
+	}
+
+	public Style withEdgePathEffect(PathEffect effect) {
+		if (effect == edgePathEffect)
+			return this;
+		return intern(new Style(bodyColor, bodyShader, isBodyAntiAlias,
+				edgeColor, edgeWidth, effect, isEdgeAntiAlias, textColor,
+				textSize));
+	}
+
+	public Style withEdgeAntiAlias(boolean isAntiAlias) {
+		if (isAntiAlias == isEdgeAntiAlias)
+			return this;
+		return intern(new Style(bodyColor, bodyShader, isBodyAntiAlias,
+				edgeColor, edgeWidth, edgePathEffect, isAntiAlias, textColor,
+				textSize));
+	}
+
+	public Style withTextColor(int color) {
+		if (color == textColor)
+			return this;
+		return intern(new Style(bodyColor, bodyShader, isBodyAntiAlias,
+				edgeColor, edgeWidth, edgePathEffect, isEdgeAntiAlias, color,
+				textSize));
+	}
+
+	public Style withTextSize(float size) {
+		if (size == textSize)
+			return this;
+		return intern(new Style(bodyColor, bodyShader, isBodyAntiAlias,
+				edgeColor, edgeWidth, edgePathEffect, isEdgeAntiAlias,
+				textColor, size));
+	}
+
+	private static int withAlpha(int color, int alpha) {
+		return (color & 0x00ffffff) | ((alpha & 0xff) << 24);
+	}
+
+	/**
+	 * @return true if the bodies of both styles are drawn the same way
+	 */
+	public boolean hasSameBody(Style other) {
+		return other == this
+				|| (bodyColor == other.bodyColor
+						&& bodyShader == other.bodyShader && isBodyAntiAlias == other.isBodyAntiAlias);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this)
+			return true;
+		if (!(o instanceof Style))
+			return false;
+		Style other = (Style) o;
+		return hashCode == other.hashCode && hasSameBody(other)
+				&& edgeColor == other.edgeColor
+				&& Float.floatToIntBits(edgeWidth) == Float
+						.floatToIntBits(other.edgeWidth)
+				&& edgePathEffect == other.edgePathEffect
+				&& isEdgeAntiAlias == other.isEdgeAntiAlias
+				&& textColor == other.textColor
+				&& Float.floatToIntBits(textSize) == Float
+						.floatToIntBits(other.textSize);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+}
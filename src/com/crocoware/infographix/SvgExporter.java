@@ -0,0 +1,391 @@
+package com.crocoware.infographix;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+import android.graphics.Paint.Style;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+import com.crocoware.infographix.utils.Dash;
+import com.crocoware.infographix.utils.PathBuffer;
+import com.crocoware.infographix.utils.ShaderCache;
+
+/**
+ * Writes a diagram as an SVG document.
+ * 
+ * The parts are written one after the other, as they are drawn, straight to
+ * the stream : the memory used does not depend on the size of the diagram.
+ * Only the platform independent parts of the library are used, so that it
+ * also runs on a plain JVM (with the android.graphics stand-ins).
+ * 
+ * The gradients created by a ShaderCache and the dashes created by Dash are
+ * exported; the other shaders and path effects cannot be inspected, and are
+ * exported as plain colors and lines. SVG has no sweep gradient : it is
+ * approximated by filling the body with thin wedges of the colors.
+ * 
+ * @author Benoit
+ * 
+ */
+public final class SvgExporter {
+
+	// Steps of the sweep gradients
+	private static final int WEDGE_COUNT = 120;
+
+	private final Writer out;
+	// Last id given to a gradient or a clip path
+	private int lastId = 0;
+	private final float[] values = new float[9];
+
+	private SvgExporter(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes the drawable as an SVG document in UTF-8. This must be called
+	 * from the thread which changes the drawable. The stream is flushed, but
+	 * not closed.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the drawable, or one of its parts, is not a known kind
+	 *             of shape, or if its bounds, one of its transforms or one
+	 *             of its texts are not finite. The paths which are not finite
+	 *             are skipped, as a canvas does.
+	 */
+	public static void export(IBorderedDrawable drawable, OutputStream out)
+			throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+		export(drawable, writer);
+	}
+
+	/**
+	 * Writes the drawable as an SVG document. The writer is flushed, but not
+	 * closed.
+	 */
+	public static void export(IBorderedDrawable drawable, Writer out)
+			throws IOException {
+		RectF bounds = new RectF();
+		if (drawable instanceof ComposedBordered)
+			((ComposedBordered) drawable).getDrawBounds(bounds);
+		else if (drawable instanceof AbstractBorderedDrawable)
+			((AbstractBorderedDrawable) drawable).getDrawBounds(bounds);
+		else
+			bounds.set(drawable.getLeft(), drawable.getTop(),
+					drawable.getRight(), drawable.getBottom());
+		SvgExporter exporter = new SvgExporter(out);
+		float width = bounds.right - bounds.left;
+		float height = bounds.bottom - bounds.top;
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\"");
+		exporter.attribute("width", width);
+		exporter.attribute("height", height);
+		out.write(" viewBox=\"" + number(bounds.left) + " "
+				+ number(bounds.top) + " " + number(width) + " "
+				+ number(height) + "\">\n");
+		exporter.writeDrawable(drawable);
+		out.write("</svg>\n");
+		out.flush();
+	}
+
+	// Same order as RenderSnapshot.record()
+	private void writeDrawable(IBorderedDrawable drawable) throws IOException {
+		if (drawable instanceof ComposedBordered) {
+			ComposedBordered composed = (ComposedBordered) drawable;
+			Matrix transform = composed.getTransform();
+			if (transform != null)
+				out.write("<g transform=\"" + matrix(transform) + "\">\n");
+			int size = composed.parts.size();
+			for (int i = 0; i < size; i++)
+				writeDrawable(composed.parts.get(size - i - 1));
+			if (transform != null)
+				out.write("</g>\n");
+			return;
+		}
+		if (drawable instanceof AbstractBorderedDrawable) {
+			writePart((AbstractBorderedDrawable) drawable);
+			return;
+		}
+		throw new IllegalArgumentException("Cannot export "
+				+ drawable.getClass().getName());
+	}
+
+	private void writePart(AbstractBorderedDrawable part) throws IOException {
+		// Like a canvas, skips the paths which are not finite (the parts of
+		// no width, for instance)
+		PathBuffer body = part.getBodyBuffer();
+		if (!body.isEmpty() && isFinite(body))
+			writePath(part, body, part.getBodyPaint());
+		PathBuffer edges = part.getEdgeBuffer();
+		if (!edges.isEmpty() && isFinite(edges))
+			writePath(part, edges, part.getEdgePaint());
+		String text = part.getText();
+		if (text != null)
+			writeText(text, part.getTextX(), part.getTextY(),
+					part.getTextPaint());
+	}
+
+	private void writePath(AbstractBorderedDrawable part, PathBuffer buffer,
+			Paint paint) throws IOException {
+		Style style = paint.getStyle();
+		boolean isFilled = style != Style.STROKE;
+		boolean isStroked = style != Style.FILL;
+		Shader shader = paint.getShader();
+		ShaderCache.Gradient gradient = shader == null ? null : ShaderCache
+				.find(shader);
+		String fill = null;
+		if (gradient != null && gradient.isSweep()) {
+			if (isFilled)
+				writeSweep(part, buffer, gradient, shader, paint);
+			isFilled = false;
+			// Strokes are exported with the plain color
+			gradient = null;
+		} else if (gradient != null) {
+			fill = "url(#" + writeLinear(gradient, shader) + ")";
+		}
+		if (!isFilled && !isStroked)
+			return;
+		out.write("<path d=\"");
+		writePathData(buffer);
+		out.write('"');
+		int color = paint.getColor();
+		if (isFilled) {
+			out.write(" fill=\"" + (fill != null ? fill : color(color)) + '"');
+			writeOpacity("fill-opacity", color);
+		} else {
+			out.write(" fill=\"none\"");
+		}
+		if (isStroked)
+			writeStroke(paint, fill);
+		if (!paint.isAntiAlias())
+			out.write(" shape-rendering=\"crispEdges\"");
+		out.write("/>\n");
+	}
+
+	private void writeStroke(Paint paint, String gradient) throws IOException {
+		int color = paint.getColor();
+		out.write(" stroke=\"" + (gradient != null ? gradient : color(color))
+				+ '"');
+		writeOpacity("stroke-opacity", color);
+		// A width of 0 is a hairline for Android
+		attribute("stroke-width", Math.max(paint.getStrokeWidth(), 1));
+		Dash dash = paint.getPathEffect() == null ? null : Dash.find(paint
+				.getPathEffect());
+		if (dash != null) {
+			out.write(" stroke-dasharray=\"");
+			float[] intervals = dash.getIntervals();
+			for (int i = 0; i < intervals.length; i++) {
+				if (i > 0)
+					out.write(' ');
+				out.write(number(intervals[i]));
+			}
+			out.write('"');
+			if (dash.getPhase() != 0)
+				attribute("stroke-dashoffset", dash.getPhase());
+		}
+	}
+
+	/**
+	 * @return the id of the gradient written
+	 */
+	private String writeLinear(ShaderCache.Gradient gradient, Shader shader)
+			throws IOException {
+		String id = "g" + (++lastId);
+		int[] colors = gradient.getColors();
+		Matrix matrix = new Matrix();
+		shader.getLocalMatrix(matrix);
+		// The shader goes from (0,0) to (1,0), placed by its local matrix
+		out.write("<linearGradient id=\"" + id
+				+ "\" gradientUnits=\"userSpaceOnUse\" x1=\"0\" y1=\"0\""
+				+ " x2=\"1\" y2=\"0\" gradientTransform=\"" + matrix(matrix)
+				+ "\">\n");
+		for (int i = 0; i < colors.length; i++) {
+			out.write("<stop offset=\""
+					+ number(colors.length == 1 ? 0 : (float) i
+							/ (colors.length - 1)) + "\" stop-color=\""
+					+ color(colors[i]) + '"');
+			writeOpacity("stop-opacity", colors[i]);
+			out.write("/>\n");
+		}
+		out.write("</linearGradient>\n");
+		return id;
+	}
+
+	/**
+	 * Fills the body with wedges around the center of the gradient, clipped
+	 * by the body
+	 */
+	private void writeSweep(AbstractBorderedDrawable part, PathBuffer buffer,
+			ShaderCache.Gradient gradient, Shader shader, Paint paint)
+			throws IOException {
+		String id = "c" + (++lastId);
+		out.write("<clipPath id=\"" + id + "\"><path d=\"");
+		writePathData(buffer);
+		out.write("\"/></clipPath>\n");
+
+		// The wedges are in the space of the shader, they must reach the
+		// farthest corner of the part
+		Matrix matrix = new Matrix();
+		shader.getLocalMatrix(matrix);
+		Matrix inverse = new Matrix();
+		if (!matrix.invert(inverse))
+			return;
+		RectF bounds = new RectF();
+		part.getDrawBounds(bounds);
+		float[] corners = { bounds.left, bounds.top, bounds.right, bounds.top,
+				bounds.right, bounds.bottom, bounds.left, bounds.bottom };
+		inverse.mapPoints(corners);
+		double radius = 0;
+		for (int i = 0; i < corners.length; i += 2)
+			radius = Math.max(radius, Math.hypot(corners[i], corners[i + 1]));
+		// The chord of a wedge is a bit closer than its corners
+		radius = radius * 1.01 + 1;
+
+		out.write("<g clip-path=\"url(#" + id + ")\"");
+		writeOpacity("opacity", paint.getColor());
+		out.write("><g transform=\"" + matrix(matrix) + "\">\n");
+		for (int i = 0; i < WEDGE_COUNT; i++) {
+			double a0 = 2 * Math.PI * i / WEDGE_COUNT;
+			double a1 = 2 * Math.PI * (i + 1) / WEDGE_COUNT;
+			int color = gradient.getColorAt((i + 0.5f) / WEDGE_COUNT);
+			out.write("<path d=\"M0 0L" + number(radius * Math.cos(a0)) + " "
+					+ number(radius * Math.sin(a0)) + "L"
+					+ number(radius * Math.cos(a1)) + " "
+					+ number(radius * Math.sin(a1)) + "Z\" fill=\""
+					+ color(color) + '"');
+			writeOpacity("fill-opacity", color);
+			out.write("/>\n");
+		}
+		out.write("</g></g>\n");
+	}
+
+	private static boolean isFinite(PathBuffer buffer) {
+		float[] coords = buffer.getCoords();
+		int count = buffer.getCoordCount();
+		for (int i = 0; i < count; i++) {
+			// NaN included
+			if (!(Math.abs(coords[i]) <= Float.MAX_VALUE))
+				return false;
+		}
+		return true;
+	}
+
+	private void writePathData(PathBuffer buffer) throws IOException {
+		float[] c = buffer.getCoords();
+		int n = 0;
+		int count = buffer.getOpCount();
+		for (int i = 0; i < count; i++) {
+			byte op = buffer.getOp(i);
+			switch (op) {
+			case PathBuffer.MOVE_TO:
+				out.write("M" + number(c[n]) + " " + number(c[n + 1]));
+				break;
+			case PathBuffer.LINE_TO:
+				out.write("L" + number(c[n]) + " " + number(c[n + 1]));
+				break;
+			case PathBuffer.CUBIC_TO:
+				out.write("C" + number(c[n]) + " " + number(c[n + 1]) + " "
+						+ number(c[n + 2]) + " " + number(c[n + 3]) + " "
+						+ number(c[n + 4]) + " " + number(c[n + 5]));
+				break;
+			case PathBuffer.ARC_TO:
+				writeArc(c, n, i == 0);
+				break;
+			}
+			n += PathBuffer.getCoordCount(op);
+		}
+	}
+
+	/**
+	 * Writes an arc of oval as a line to its start, then SVG arcs of at most
+	 * 90 degrees (so that their flags are never ambiguous)
+	 */
+	private void writeArc(float[] c, int n, boolean isFirst)
+			throws IOException {
+		double rx = (c[n + 2] - c[n]) / 2;
+		double ry = (c[n + 3] - c[n + 1]) / 2;
+		double cx = c[n] + rx;
+		double cy = c[n + 1] + ry;
+		double start = Math.toRadians(c[n + 4]);
+		double sweep = Math.toRadians(c[n + 5]);
+		out.write((isFirst ? "M" : "L") + number(cx + rx * Math.cos(start))
+				+ " " + number(cy + ry * Math.sin(start)));
+		int steps = (int) Math.ceil(Math.abs(sweep) / (Math.PI / 2));
+		String radii = "A" + number(rx) + " " + number(ry) + " 0 0 "
+				+ (sweep > 0 ? "1 " : "0 ");
+		for (int s = 1; s <= steps; s++) {
+			double angle = start + sweep * s / steps;
+			out.write(radii + number(cx + rx * Math.cos(angle)) + " "
+					+ number(cy + ry * Math.sin(angle)));
+		}
+	}
+
+	private void writeText(String text, float x, float y, Paint paint)
+			throws IOException {
+		out.write("<text");
+		attribute("x", x);
+		attribute("y", y);
+		attribute("font-size", paint.getTextSize());
+		Align align = paint.getTextAlign();
+		if (align == Align.CENTER)
+			out.write(" text-anchor=\"middle\"");
+		else if (align == Align.RIGHT)
+			out.write(" text-anchor=\"end\"");
+		int color = paint.getColor();
+		out.write(" fill=\"" + color(color) + '"');
+		writeOpacity("fill-opacity", color);
+		out.write('>');
+		for (int i = 0; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (ch == '<')
+				out.write("&lt;");
+			else if (ch == '>')
+				out.write("&gt;");
+			else if (ch == '&')
+				out.write("&amp;");
+			else
+				out.write(ch);
+		}
+		out.write("</text>\n");
+	}
+
+	private void writeOpacity(String name, int color) throws IOException {
+		int alpha = color >>> 24;
+		if (alpha != 0xff)
+			attribute(name, alpha / 255f);
+	}
+
+	private void attribute(String name, float value) throws IOException {
+		out.write(" " + name + "=\"" + number(value) + '"');
+	}
+
+	private String matrix(Matrix matrix) {
+		matrix.getValues(values);
+		return "matrix(" + number(values[Matrix.MSCALE_X]) + " "
+				+ number(values[Matrix.MSKEW_Y]) + " "
+				+ number(values[Matrix.MSKEW_X]) + " "
+				+ number(values[Matrix.MSCALE_Y]) + " "
+				+ number(values[Matrix.MTRANS_X]) + " "
+				+ number(values[Matrix.MTRANS_Y]) + ")";
+	}
+
+	private static String color(int color) {
+		String hex = Integer.toHexString(color & 0xffffff);
+		return "#000000".substring(0, 7 - hex.length()) + hex;
+	}
+
+	private static String number(double value) {
+		float f = (float) value;
+		// SVG has no notation for them
+		if (Float.isNaN(f) || Float.isInfinite(f))
+			throw new IllegalArgumentException("Not a finite number : " + f);
+		if (f == (int) f)
+			return Integer.toString((int) f);
+		return Float.toString(f);
+	}
+}
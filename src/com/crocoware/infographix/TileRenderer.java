@@ -0,0 +1,427 @@
+package com.crocoware.infographix;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Draws a scene far larger than the screen, for panning and zooming.
+ * 
+ * The scene is split into square tiles, whose size in pixels is fixed : at
+ * zoom level L (a scale of 2^L), a tile covers tileSize / 2^L units of the
+ * scene. The tiles are drawn into bitmaps by background threads, and kept in
+ * a cache (least recently used tiles are dropped first) whose size is bounded
+ * by a memory budget. Drawing the scene then only draws the bitmaps of the
+ * visible tiles, scaled from the nearest zoom level above the asked zoom.
+ * 
+ * While a tile is not ready, the matching area of a tile of a lower zoom level
+ * is drawn instead, if there is one in the cache. Once a tile is ready, the
+ * listener is called (from the background thread) so that the view can be
+ * drawn again.
+ * 
+ * When a part of the scene changes, only the tiles over the area it covers
+ * must be drawn again : see invalidate(). They keep being drawn with their
+ * old content until they are ready again.
+ * 
+ * The scene is drawn by the background threads while holding its lock : it
+ * must only be changed while holding the same lock (synchronized (scene) {
+ * ... }).
+ * 
+ * @author Benoit
+ * 
+ */
+public class TileRenderer {
+
+	public interface Listener {
+		/**
+		 * Called from a background thread each time a tile has been drawn
+		 */
+		void onTileReady(TileRenderer renderer);
+	}
+
+	private static final class Tile {
+		final int level, x, y;
+		// Last drawn content (null until first drawn)
+		Bitmap bitmap;
+		// The content is missing or out of date
+		boolean isDirty = true;
+		// A background thread has been asked to draw the tile
+		boolean isPending;
+		// Last frame this tile has been visible in
+		int frame;
+
+		Tile(int level, int x, int y) {
+			this.level = level;
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	// Number of lower zoom levels looked for while a tile is not ready
+	private static final int MAX_FALLBACK_LEVELS = 3;
+	// Bitmaps kept for later tiles
+	private static final int MAX_SPARE_BITMAPS = 4;
+
+	private final IBorderedDrawable scene;
+	private final int tileSize;
+	private final long memoryBudget;
+	private final Executor executor;
+	// Executor created by this renderer (shut down by release())
+	private final ExecutorService ownExecutor;
+	private volatile Listener listener;
+
+	// Guards the tiles, the spare bitmaps and the used memory
+	private final Object lock = new Object();
+	// The tiles, the least recently drawn first
+	private final LinkedHashMap<Long, Tile> tiles = new LinkedHashMap<Long, Tile>(
+			64, 0.75f, true);
+	private final ArrayList<Bitmap> spareBitmaps = new ArrayList<Bitmap>();
+	private long usedMemory;
+	private int frame;
+	private boolean isReleased;
+
+	// Buffers used while drawing
+	private final Rect src = new Rect();
+	private final RectF dst = new RectF();
+
+	/**
+	 * Creates a renderer drawing its tiles with a single background thread
+	 * 
+	 * @param scene
+	 *            the drawable to show
+	 * @param tileSize
+	 *            width and height of the tiles, in pixels
+	 * @param memoryBudget
+	 *            maximal size of the bitmaps kept, in bytes
+	 */
+	public TileRenderer(IBorderedDrawable scene, int tileSize, long memoryBudget) {
+		this(scene, tileSize, memoryBudget, null);
+	}
+
+	/**
+	 * @param executor
+	 *            runs the drawing of the tiles. If null, a single background
+	 *            thread is created
+	 */
+	public TileRenderer(IBorderedDrawable scene, int tileSize,
+			long memoryBudget, Executor executor) {
+		if (tileSize <= 0)
+			throw new IllegalArgumentException("tileSize<=0");
+		if (memoryBudget < (long) tileSize * tileSize * 4)
+			throw new IllegalArgumentException("memoryBudget<one tile");
+		this.scene = scene;
+		this.tileSize = tileSize;
+		this.memoryBudget = memoryBudget;
+		if (executor == null) {
+			ownExecutor = Executors.newSingleThreadExecutor();
+			this.executor = ownExecutor;
+		} else {
+			ownExecutor = null;
+			this.executor = executor;
+		}
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * @return the size of the bitmaps currently kept, in bytes
+	 */
+	public long getUsedMemory() {
+		synchronized (lock) {
+			return usedMemory;
+		}
+	}
+
+	/**
+	 * @return the zoom level used to draw the given zoom : the bitmaps are
+	 *         never scaled up
+	 */
+	public static int getLevel(float zoom) {
+		if (!(zoom > 0))
+			throw new IllegalArgumentException("zoom<=0");
+		return (int) Math.ceil(Math.log(zoom) / Math.log(2) - 1e-6);
+	}
+
+	/**
+	 * Draws the visible area of the scene
+	 * 
+	 * @param canvas
+	 *            the canvas, whose origin is the top left corner of the
+	 *            viewport
+	 * @param viewport
+	 *            the visible area, in the coordinates of the scene
+	 * @param zoom
+	 *            the size of a unit of the scene on the canvas
+	 */
+	public void draw(Canvas canvas, RectF viewport, float zoom) {
+		int level = getLevel(zoom);
+		float tileWorldSize = getTileWorldSize(level);
+		int left = (int) Math.floor(viewport.left / tileWorldSize);
+		int top = (int) Math.floor(viewport.top / tileWorldSize);
+		int right = (int) Math.ceil(viewport.right / tileWorldSize);
+		int bottom = (int) Math.ceil(viewport.bottom / tileWorldSize);
+		synchronized (lock) {
+			if (isReleased)
+				throw new IllegalStateException("Released");
+			frame++;
+			for (int y = top; y < bottom; y++) {
+				for (int x = left; x < right; x++) {
+					Tile tile = getTile(level, x, y);
+					tile.frame = frame;
+					if (tile.bitmap != null)
+						drawTile(canvas, tile, null, viewport, zoom);
+					else
+						drawFallback(canvas, tile, viewport, zoom);
+					if (tile.isDirty && !tile.isPending)
+						schedule(tile);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws again the tiles over an area of the scene. When a part moves, both
+	 * its old and its new areas must be given. The tiles are drawn again when
+	 * they are next visible, so the view must be drawn again.
+	 * 
+	 * @param area
+	 *            in the coordinates of the scene
+	 */
+	public void invalidate(RectF area) {
+		synchronized (lock) {
+			for (Tile tile : tiles.values()) {
+				if (getTileArea(tile, dst).intersects(area.left, area.top,
+						area.right, area.bottom))
+					tile.isDirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Draws again the tiles over the area covered by the part (see
+	 * invalidate(RectF))
+	 */
+	public void invalidate(IBorderedDrawable part) {
+		RectF area = new RectF();
+		synchronized (scene) {
+			if (part instanceof AbstractBorderedDrawable)
+				((AbstractBorderedDrawable) part).getDrawBounds(area);
+			else
+				area.set(part.getLeft(), part.getTop(), part.getRight(),
+						part.getBottom());
+		}
+		invalidate(area);
+	}
+
+	/**
+	 * Draws again all the tiles
+	 */
+	public void invalidateAll() {
+		synchronized (lock) {
+			for (Tile tile : tiles.values())
+				tile.isDirty = true;
+		}
+	}
+
+	/**
+	 * Drops all the bitmaps. The renderer cannot be used anymore
+	 */
+	public void release() {
+		synchronized (lock) {
+			isReleased = true;
+			for (Tile tile : tiles.values()) {
+				if (tile.bitmap != null && !tile.isPending)
+					tile.bitmap.recycle();
+			}
+			tiles.clear();
+			for (Bitmap bitmap : spareBitmaps)
+				bitmap.recycle();
+			spareBitmaps.clear();
+			usedMemory = 0;
+		}
+		if (ownExecutor != null)
+			ownExecutor.shutdown();
+	}
+
+	private float getTileWorldSize(int level) {
+		return (float) (tileSize / Math.pow(2, level));
+	}
+
+	private RectF getTileArea(Tile tile, RectF out) {
+		float size = getTileWorldSize(tile.level);
+		out.set(tile.x * size, tile.y * size, (tile.x + 1) * size,
+				(tile.y + 1) * size);
+		return out;
+	}
+
+	private static Long key(int level, int x, int y) {
+		// 8 bits for the level, 28 bits for each coordinate
+		return Long.valueOf(((long) (level & 0xFF) << 56)
+				| ((long) (x & 0xFFFFFFF) << 28) | (y & 0xFFFFFFF));
+	}
+
+	private Tile getTile(int level, int x, int y) {
+		Long key = key(level, x, y);
+		Tile tile = tiles.get(key);
+		if (tile == null) {
+			tile = new Tile(level, x, y);
+			tiles.put(key, tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * Draws the bitmap of a tile (or the part of it given by src) where its
+	 * area is shown
+	 */
+	private void drawTile(Canvas canvas, Tile tile, Rect src, RectF viewport,
+			float zoom) {
+		getTileArea(tile, dst);
+		if (src != null) {
+			float unit = getTileWorldSize(tile.level) / tileSize;
+			dst.set(dst.left + src.left * unit, dst.top + src.top * unit,
+					dst.left + src.right * unit, dst.top + src.bottom * unit);
+		}
+		dst.set((dst.left - viewport.left) * zoom, (dst.top - viewport.top)
+				* zoom, (dst.right - viewport.left) * zoom,
+				(dst.bottom - viewport.top) * zoom);
+		canvas.drawBitmap(tile.bitmap, src, dst, null);
+	}
+
+	/**
+	 * Draws the area of a missing tile from a tile of a lower level
+	 */
+	private void drawFallback(Canvas canvas, Tile tile, RectF viewport,
+			float zoom) {
+		for (int i = 1; i <= MAX_FALLBACK_LEVELS; i++) {
+			Tile parent = tiles.get(key(tile.level - i, tile.x >> i,
+					tile.y >> i));
+			if (parent != null && parent.bitmap != null) {
+				// Part of the parent covered by the tile, in its pixels
+				int size = tileSize >> i;
+				if (size == 0)
+					return;
+				int left = (tile.x - (parent.x << i)) * size;
+				int top = (tile.y - (parent.y << i)) * size;
+				src.set(left, top, left + size, top + size);
+				drawTile(canvas, parent, src, viewport, zoom);
+				return;
+			}
+		}
+	}
+
+	private void schedule(final Tile tile) {
+		tile.isPending = true;
+		executor.execute(new Runnable() {
+			public void run() {
+				render(tile);
+			}
+		});
+	}
+
+	/**
+	 * Draws a tile (background thread)
+	 */
+	private void render(Tile tile) {
+		Bitmap bitmap;
+		synchronized (lock) {
+			// The tile may have been dropped, or scrolled out, since
+			if (isReleased || tile.frame != frame
+					|| tiles.get(key(tile.level, tile.x, tile.y)) != tile) {
+				tile.isPending = false;
+				return;
+			}
+			tile.isDirty = false;
+			bitmap = obtainBitmap();
+		}
+		RectF area = getTileArea(tile, new RectF());
+		float scale = tileSize / area.width();
+		Canvas canvas = new Canvas(bitmap);
+		bitmap.eraseColor(0);
+		canvas.scale(scale, scale);
+		canvas.translate(-area.left, -area.top);
+		synchronized (scene) {
+			scene.draw(canvas);
+		}
+		synchronized (lock) {
+			tile.isPending = false;
+			if (isReleased) {
+				bitmap.recycle();
+				return;
+			}
+			if (tiles.get(key(tile.level, tile.x, tile.y)) != tile) {
+				// Dropped while being drawn
+				recycleBitmap(bitmap);
+				return;
+			}
+			if (tile.bitmap != null)
+				recycleBitmap(tile.bitmap);
+			tile.bitmap = bitmap;
+			trim();
+		}
+		Listener listener = this.listener;
+		if (listener != null)
+			listener.onTileReady(this);
+	}
+
+	/**
+	 * @return a bitmap for a tile, counted in the used memory
+	 */
+	private Bitmap obtainBitmap() {
+		if (!spareBitmaps.isEmpty())
+			return spareBitmaps.remove(spareBitmaps.size() - 1);
+		Bitmap bitmap = Bitmap.createBitmap(tileSize, tileSize,
+				Config.ARGB_8888);
+		usedMemory += bitmap.getByteCount();
+		trim();
+		return bitmap;
+	}
+
+	private void recycleBitmap(Bitmap bitmap) {
+		if (spareBitmaps.size() < MAX_SPARE_BITMAPS) {
+			spareBitmaps.add(bitmap);
+		} else {
+			usedMemory -= bitmap.getByteCount();
+			bitmap.recycle();
+		}
+	}
+
+	/**
+	 * Drops the spare bitmaps, then the least recently drawn tiles, until the
+	 * used memory fits the budget. The tiles of the current frame are kept.
+	 */
+	private void trim() {
+		while (usedMemory > memoryBudget && !spareBitmaps.isEmpty()) {
+			Bitmap bitmap = spareBitmaps.remove(spareBitmaps.size() - 1);
+			usedMemory -= bitmap.getByteCount();
+			bitmap.recycle();
+		}
+		Iterator<Tile> it = tiles.values().iterator();
+		while (usedMemory > memoryBudget && it.hasNext()) {
+			Tile tile = it.next();
+			if (tile.frame == frame)
+				break; // The next ones are visible too
+			it.remove();
+			if (tile.bitmap != null) {
+				usedMemory -= tile.bitmap.getByteCount();
+				tile.bitmap.recycle();
+				tile.bitmap = null;
+			}
+		}
+	}
+}
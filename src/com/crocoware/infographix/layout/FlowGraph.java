@@ -0,0 +1,180 @@
+package com.crocoware.infographix.layout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A graph of flows between nodes, to be placed by FlowLayout.
+ * 
+ * Each flow goes from a node to another one, with a given width. The flows
+ * entering a node are joined, and the flows leaving it are split from it :
+ * the graph must not have any cycle.
+ * 
+ * @author Benoit
+ * 
+ */
+public class FlowGraph {
+
+	/**
+	 * A node of the graph. Its place is known once the graph has been laid
+	 * out.
+	 */
+	public static final class Node {
+		final String name;
+		final ArrayList<Flow> inputs = new ArrayList<Flow>(2);
+		final ArrayList<Flow> outputs = new ArrayList<Flow>(2);
+		int color;
+		boolean hasColor = false;
+
+		// Set by FlowLayout
+		int layer = -1;
+		float top, height;
+
+		private Node(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public List<Flow> getInputs() {
+			return Collections.unmodifiableList(inputs);
+		}
+
+		public List<Flow> getOutputs() {
+			return Collections.unmodifiableList(outputs);
+		}
+
+		/**
+		 * Sets the color of the node, and of the flows leaving it
+		 */
+		public void setColor(int color) {
+			this.color = color;
+			hasColor = true;
+		}
+
+		/**
+		 * @return the column of the node (0 for the first one), or -1 if the
+		 *         graph has not been laid out (or if the node has no flow)
+		 */
+		public int getLayer() {
+			return layer;
+		}
+
+		/**
+		 * @return the top of the node, once the graph has been laid out
+		 */
+		public float getTop() {
+			return top;
+		}
+
+		/**
+		 * @return the height of the node (the total width of its inputs, or
+		 *         of its outputs if larger), once the graph has been laid out
+		 */
+		public float getHeight() {
+			return height;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * A flow from a node to another one
+	 */
+	public static final class Flow {
+		final Node from, to;
+		final float width;
+
+		private Flow(Node from, Node to, float width) {
+			this.from = from;
+			this.to = to;
+			this.width = width;
+		}
+
+		public Node getFrom() {
+			return from;
+		}
+
+		public Node getTo() {
+			return to;
+		}
+
+		public float getWidth() {
+			return width;
+		}
+	}
+
+	private final ArrayList<Node> nodes = new ArrayList<Node>();
+	private final HashMap<String, Node> nodesByName = new HashMap<String, Node>();
+	private int flowCount = 0;
+
+	/**
+	 * @param name
+	 *            unique in the graph (it is the tag of the node in the
+	 *            pipeline)
+	 */
+	public Node addNode(String name) {
+		if (nodesByName.containsKey(name))
+			throw new IllegalArgumentException("Duplicate node " + name);
+		Node node = new Node(name);
+		nodes.add(node);
+		nodesByName.put(name, node);
+		return node;
+	}
+
+	/**
+	 * @return the node with the given name, or null
+	 */
+	public Node getNode(String name) {
+		return nodesByName.get(name);
+	}
+
+	public List<Node> getNodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+
+	public int getFlowCount() {
+		return flowCount;
+	}
+
+	/**
+	 * Adds a flow between two nodes of the graph
+	 * 
+	 * @param width
+	 *            more than 0
+	 */
+	public Flow addFlow(Node from, Node to, float width) {
+		if (!(width > 0))
+			throw new IllegalArgumentException("width<=0");
+		if (from == to)
+			throw new IllegalArgumentException("Loop on " + from.name);
+		if (nodesByName.get(from.name) != from
+				|| nodesByName.get(to.name) != to)
+			throw new IllegalArgumentException("Unknown node");
+		Flow flow = new Flow(from, to, width);
+		from.outputs.add(flow);
+		to.inputs.add(flow);
+		flowCount++;
+		return flow;
+	}
+
+	/**
+	 * Adds a flow between two nodes, adding the nodes which do not exist yet
+	 */
+	public Flow addFlow(String from, String to, float width) {
+		Node fromNode = getNode(from);
+		if (fromNode == null)
+			fromNode = addNode(from);
+		Node toNode = getNode(to);
+		if (toNode == null)
+			toNode = addNode(to);
+		return addFlow(fromNode, toNode, width);
+	}
+}
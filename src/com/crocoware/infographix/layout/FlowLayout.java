@@ -0,0 +1,576 @@
+package com.crocoware.infographix.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.shapes.IPipelinePart;
+import com.crocoware.infographix.shapes.JoinShape;
+import com.crocoware.infographix.shapes.PipeShape;
+import com.crocoware.infographix.shapes.SplitShape;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * Places the nodes of a flow graph, and builds the pipeline drawing it.
+ * 
+ * The diagram goes right : the nodes are placed in columns, each node after
+ * the nodes it receives flows from. A flow crossing several columns goes
+ * straight through them, between their nodes. The nodes of each column are
+ * ordered so that the flows cross as little as possible (the crossings of
+ * thick flows count more), then moved up or down towards the nodes they are
+ * linked to, so that the flows are as straight as possible.
+ * 
+ * Each node is drawn as a pipe, as high as its flows : the joins of its
+ * inputs, its body (tagged with the name of the node), then the split into
+ * its outputs. The inputs of a node arrive side by side, so that they are
+ * joined by straight pipes. The flows between the columns are curved pipes.
+ * 
+ * The time taken is about proportional to the number of flows, times the
+ * number of columns they cross.
+ * 
+ * @author Benoit
+ * 
+ */
+public class FlowLayout {
+
+	// A node, or a flow crossing a column
+	private static final class Vertex {
+		// null for a flow crossing a column
+		final FlowGraph.Node node;
+		final ArrayList<Edge> inputs = new ArrayList<Edge>(2);
+		final ArrayList<Edge> outputs = new ArrayList<Edge>(2);
+		int layer;
+		float height;
+		// Position in the column
+		int order;
+		double key;
+		float top;
+		// Inputs whose vertex has not been given a layer yet
+		int pending;
+
+		Vertex(FlowGraph.Node node) {
+			this.node = node;
+		}
+	}
+
+	// A flow, or the part of a flow between two columns
+	private static final class Edge {
+		final Vertex from, to;
+		final FlowGraph.Flow flow;
+		final float width;
+		// Positions of the edge among the outputs of 'from', and among the
+		// inputs of 'to'
+		float fromOffset, toOffset;
+		// The end of the pipe drawn for the edge
+		Segment end;
+
+		Edge(Vertex from, Vertex to, FlowGraph.Flow flow) {
+			this.from = from;
+			this.to = to;
+			this.flow = flow;
+			width = flow.width;
+			from.outputs.add(this);
+			to.inputs.add(this);
+		}
+	}
+
+	private static final Comparator<Vertex> BY_KEY = new Comparator<Vertex>() {
+		public int compare(Vertex v1, Vertex v2) {
+			return Double.compare(v1.key, v2.key);
+		}
+	};
+
+	private static final Comparator<Edge> BY_SOURCE = new Comparator<Edge>() {
+		public int compare(Edge e1, Edge e2) {
+			return e1.from.order - e2.from.order;
+		}
+	};
+
+	private static final Comparator<Edge> BY_TARGET = new Comparator<Edge>() {
+		public int compare(Edge e1, Edge e2) {
+			return e1.to.order - e2.to.order;
+		}
+	};
+
+	private final float nodeLength;
+	private final float linkLength;
+	private final float nodeGap;
+	private int sweeps = 8;
+	private int iterations = 8;
+
+	/**
+	 * @param nodeLength
+	 *            the length of the pipe of each node
+	 * @param linkLength
+	 *            the distance between two columns of nodes
+	 * @param nodeGap
+	 *            the vertical space between two nodes of a column
+	 */
+	public FlowLayout(float nodeLength, float linkLength, float nodeGap) {
+		if (nodeLength <= 0)
+			throw new IllegalArgumentException("nodeLength<=0");
+		if (linkLength <= 0)
+			throw new IllegalArgumentException("linkLength<=0");
+		if (nodeGap < 0)
+			throw new IllegalArgumentException("nodeGap<0");
+		this.nodeLength = nodeLength;
+		this.linkLength = linkLength;
+		this.nodeGap = nodeGap;
+	}
+
+	/**
+	 * @param sweeps
+	 *            the number of times the nodes of all the columns are
+	 *            reordered to remove crossings (8 by default)
+	 */
+	public void setSweeps(int sweeps) {
+		if (sweeps < 0)
+			throw new IllegalArgumentException("sweeps<0");
+		this.sweeps = sweeps;
+	}
+
+	/**
+	 * @param iterations
+	 *            the number of times the nodes are moved towards their
+	 *            neighbours (8 by default)
+	 */
+	public void setIterations(int iterations) {
+		if (iterations < 0)
+			throw new IllegalArgumentException("iterations<0");
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @return the left of the nodes of the given column
+	 */
+	public float getLayerLeft(float left, int layer) {
+		return left + layer * (nodeLength + linkLength);
+	}
+
+	/**
+	 * Places the nodes of the graph (see FlowGraph.Node.getLayer() and
+	 * getTop()), then builds the pipeline drawing it. The nodes without any
+	 * flow are left out.
+	 * 
+	 * @param left
+	 *            the left of the first column
+	 * @param top
+	 *            the top of the highest column
+	 * @throws IllegalArgumentException
+	 *             if the graph has a cycle, or no flow
+	 */
+	public Pipeline layout(FlowGraph graph, float left, float top) {
+		List<FlowGraph.Node> nodes = graph.getNodes();
+		if (graph.getFlowCount() == 0)
+			throw new IllegalArgumentException("No flow");
+		ArrayList<ArrayList<Vertex>> layers = createLayers(nodes);
+		orderLayers(layers);
+		for (ArrayList<Vertex> layer : layers)
+			for (Vertex vertex : layer)
+				sortPorts(vertex);
+		placeVertices(layers, top);
+		for (ArrayList<Vertex> layer : layers) {
+			for (Vertex vertex : layer) {
+				if (vertex.node != null) {
+					vertex.node.top = vertex.top;
+					vertex.node.height = vertex.height;
+				}
+			}
+		}
+		return build(layers, left);
+	}
+
+	/**
+	 * Puts each node in the column following the latest of its inputs, and
+	 * the flows crossing columns in each of them
+	 */
+	private static ArrayList<ArrayList<Vertex>> createLayers(
+			List<FlowGraph.Node> nodes) {
+		HashMap<FlowGraph.Node, Vertex> vertices = new HashMap<FlowGraph.Node, Vertex>(
+				nodes.size() * 2);
+		ArrayList<Vertex> sorted = new ArrayList<Vertex>(nodes.size());
+		int nodeCount = 0;
+		for (FlowGraph.Node node : nodes) {
+			node.layer = -1;
+			// Nothing to draw
+			if (node.inputs.isEmpty() && node.outputs.isEmpty())
+				continue;
+			nodeCount++;
+			Vertex vertex = new Vertex(node);
+			vertex.pending = node.inputs.size();
+			vertex.height = Math.max(sum(node.inputs), sum(node.outputs));
+			vertices.put(node, vertex);
+			if (vertex.pending == 0)
+				sorted.add(vertex);
+		}
+
+		// Topological order : each vertex comes after its inputs
+		int layerCount = 0;
+		for (int i = 0; i < sorted.size(); i++) {
+			Vertex vertex = sorted.get(i);
+			layerCount = Math.max(layerCount, vertex.layer + 1);
+			for (FlowGraph.Flow flow : vertex.node.outputs) {
+				Vertex to = vertices.get(flow.to);
+				to.layer = Math.max(to.layer, vertex.layer + 1);
+				if (--to.pending == 0)
+					sorted.add(to);
+			}
+		}
+		if (sorted.size() < nodeCount) {
+			for (FlowGraph.Node node : nodes)
+				if (vertices.containsKey(node)
+						&& vertices.get(node).pending > 0)
+					throw new IllegalArgumentException("Cycle through "
+							+ node.name);
+		}
+
+		ArrayList<ArrayList<Vertex>> layers = new ArrayList<ArrayList<Vertex>>(
+				layerCount);
+		for (int i = 0; i < layerCount; i++)
+			layers.add(new ArrayList<Vertex>());
+		for (Vertex vertex : sorted) {
+			vertex.node.layer = vertex.layer;
+			layers.get(vertex.layer).add(vertex);
+		}
+		for (Vertex vertex : sorted) {
+			for (FlowGraph.Flow flow : vertex.node.outputs) {
+				Vertex from = vertex;
+				Vertex to = vertices.get(flow.to);
+				for (int layer = vertex.layer + 1; layer < to.layer; layer++) {
+					Vertex crossing = new Vertex(null);
+					crossing.layer = layer;
+					crossing.height = flow.width;
+					layers.get(layer).add(crossing);
+					new Edge(from, crossing, flow);
+					from = crossing;
+				}
+				new Edge(from, to, flow);
+			}
+		}
+		for (ArrayList<Vertex> layer : layers)
+			renumber(layer);
+		return layers;
+	}
+
+	private static float sum(List<FlowGraph.Flow> flows) {
+		float sum = 0;
+		for (int i = 0; i < flows.size(); i++)
+			sum += flows.get(i).width;
+		return sum;
+	}
+
+	private static void renumber(ArrayList<Vertex> layer) {
+		for (int i = 0; i < layer.size(); i++)
+			layer.get(i).order = i;
+	}
+
+	// Crossing reduction
+
+	/**
+	 * Sorts the vertices of each column by the mean position of their
+	 * neighbours in the previous column, then in the next one, and so on.
+	 * The order with the fewest crossings is kept.
+	 */
+	private void orderLayers(ArrayList<ArrayList<Vertex>> layers) {
+		double bestCrossings = countCrossings(layers);
+		Vertex[][] best = saveOrder(layers);
+		for (int i = 0; i < sweeps && bestCrossings > 0; i++) {
+			if (i % 2 == 0) {
+				for (int l = 1; l < layers.size(); l++)
+					sortLayer(layers.get(l), true);
+			} else {
+				for (int l = layers.size() - 2; l >= 0; l--)
+					sortLayer(layers.get(l), false);
+			}
+			double crossings = countCrossings(layers);
+			if (crossings < bestCrossings) {
+				bestCrossings = crossings;
+				best = saveOrder(layers);
+			}
+		}
+		for (int l = 0; l < layers.size(); l++) {
+			ArrayList<Vertex> layer = layers.get(l);
+			layer.clear();
+			layer.addAll(Arrays.asList(best[l]));
+			renumber(layer);
+		}
+	}
+
+	private static Vertex[][] saveOrder(ArrayList<ArrayList<Vertex>> layers) {
+		Vertex[][] order = new Vertex[layers.size()][];
+		for (int l = 0; l < order.length; l++)
+			order[l] = layers.get(l).toArray(new Vertex[layers.get(l).size()]);
+		return order;
+	}
+
+	/**
+	 * @param byInputs
+	 *            true to sort by the positions of the inputs, false by the
+	 *            positions of the outputs
+	 */
+	private static void sortLayer(ArrayList<Vertex> layer, boolean byInputs) {
+		for (int i = 0; i < layer.size(); i++) {
+			Vertex vertex = layer.get(i);
+			ArrayList<Edge> edges = byInputs ? vertex.inputs : vertex.outputs;
+			if (edges.isEmpty()) {
+				// Stays in place
+				vertex.key = vertex.order;
+				continue;
+			}
+			double sum = 0, weight = 0;
+			for (int j = 0; j < edges.size(); j++) {
+				Edge edge = edges.get(j);
+				sum += edge.width
+						* (byInputs ? edge.from.order : edge.to.order);
+				weight += edge.width;
+			}
+			vertex.key = sum / weight;
+		}
+		// Stable, so that the ties keep their order
+		Collections.sort(layer, BY_KEY);
+		renumber(layer);
+	}
+
+	/**
+	 * @return the sum of the products of the widths of the edges crossing
+	 *         each other
+	 */
+	private static double countCrossings(ArrayList<ArrayList<Vertex>> layers) {
+		double crossings = 0;
+		for (int l = 0; l + 1 < layers.size(); l++) {
+			// The widths of the edges seen, by the position of their ends (a
+			// Fenwick tree)
+			double[] tree = new double[layers.get(l + 1).size() + 1];
+			double total = 0;
+			for (Vertex vertex : layers.get(l)) {
+				// The edges of a vertex do not cross each other : they are
+				// sorted when drawn
+				for (Edge edge : vertex.outputs)
+					crossings += edge.width
+							* (total - prefixSum(tree, edge.to.order + 1));
+				for (Edge edge : vertex.outputs) {
+					add(tree, edge.to.order + 1, edge.width);
+					total += edge.width;
+				}
+			}
+		}
+		return crossings;
+	}
+
+	private static double prefixSum(double[] tree, int i) {
+		double sum = 0;
+		for (; i > 0; i -= i & -i)
+			sum += tree[i];
+		return sum;
+	}
+
+	private static void add(double[] tree, int i, double value) {
+		for (; i < tree.length; i += i & -i)
+			tree[i] += value;
+	}
+
+	/**
+	 * Sorts the edges of the vertex by the position of their other end, so
+	 * that they do not cross each other, and stacks them from the top of the
+	 * vertex
+	 */
+	private static void sortPorts(Vertex vertex) {
+		Collections.sort(vertex.inputs, BY_SOURCE);
+		Collections.sort(vertex.outputs, BY_TARGET);
+		float offset = 0;
+		for (Edge edge : vertex.inputs) {
+			edge.toOffset = offset;
+			offset += edge.width;
+		}
+		offset = 0;
+		for (Edge edge : vertex.outputs) {
+			edge.fromOffset = offset;
+			offset += edge.width;
+		}
+	}
+
+	// Vertical placement
+
+	/**
+	 * Centers the columns, then moves each vertex towards its inputs, then
+	 * towards its outputs, and so on, without changing the order of the
+	 * columns
+	 */
+	private void placeVertices(ArrayList<ArrayList<Vertex>> layers, float top) {
+		float height = 0;
+		for (ArrayList<Vertex> layer : layers)
+			height = Math.max(height, getHeight(layer));
+		for (ArrayList<Vertex> layer : layers) {
+			float y = top + (height - getHeight(layer)) / 2;
+			for (Vertex vertex : layer) {
+				vertex.top = y;
+				y += vertex.height + nodeGap;
+			}
+		}
+		for (int i = 0; i < iterations; i++) {
+			for (int l = 1; l < layers.size(); l++)
+				relax(layers.get(l), true, top, height);
+			for (int l = layers.size() - 2; l >= 0; l--)
+				relax(layers.get(l), false, top, height);
+		}
+	}
+
+	private float getHeight(ArrayList<Vertex> layer) {
+		float height = nodeGap * (layer.size() - 1);
+		for (Vertex vertex : layer)
+			height += vertex.height;
+		return height;
+	}
+
+	/**
+	 * Moves each vertex of the column where its edges would be straight (on
+	 * average, weighted by their widths), then moves them apart
+	 */
+	private void relax(ArrayList<Vertex> layer, boolean byInputs, float top,
+			float height) {
+		for (Vertex vertex : layer) {
+			ArrayList<Edge> edges = byInputs ? vertex.inputs : vertex.outputs;
+			if (edges.isEmpty())
+				continue;
+			float sum = 0, weight = 0;
+			for (int j = 0; j < edges.size(); j++) {
+				Edge edge = edges.get(j);
+				float y = byInputs ? edge.from.top + edge.fromOffset
+						- edge.toOffset : edge.to.top + edge.toOffset
+						- edge.fromOffset;
+				sum += edge.width * y;
+				weight += edge.width;
+			}
+			vertex.top = sum / weight;
+		}
+		// Pushes the overlapping vertices down, then up from the bottom
+		float y = top;
+		for (int i = 0; i < layer.size(); i++) {
+			Vertex vertex = layer.get(i);
+			if (vertex.top < y)
+				vertex.top = y;
+			y = vertex.top + vertex.height + nodeGap;
+		}
+		y = top + height;
+		for (int i = layer.size() - 1; i >= 0; i--) {
+			Vertex vertex = layer.get(i);
+			if (vertex.top + vertex.height > y)
+				vertex.top = y - vertex.height;
+			y = vertex.top - nodeGap;
+		}
+	}
+
+	// Pipeline
+
+	private Pipeline build(ArrayList<ArrayList<Vertex>> layers, float left) {
+		Pipeline pipeline = null;
+		for (int l = 0; l < layers.size(); l++) {
+			float x = getLayerLeft(left, l);
+			for (Vertex vertex : layers.get(l)) {
+				if (vertex.node == null) {
+					// A flow crossing the column
+					Edge input = vertex.inputs.get(0);
+					PipeShape pipe = new PipeShape(input.end, nodeLength);
+					push(pipeline, pipe, input.flow.from);
+					link(pipeline, pipe.getOutput(), vertex.outputs.get(0), x
+							+ nodeLength);
+					continue;
+				}
+				if (pipeline == null)
+					// The columns are built from the left : the first vertex
+					// has no input
+					pipeline = new Pipeline(new Segment(x, vertex.top, x,
+							vertex.top + vertex.height));
+				buildNode(pipeline, vertex, x);
+			}
+		}
+		return pipeline;
+	}
+
+	private void buildNode(Pipeline pipeline, Vertex vertex, float x) {
+		FlowGraph.Node node = vertex.node;
+		int inputCount = vertex.inputs.size();
+		int outputCount = vertex.outputs.size();
+		float joinLength = inputCount > 1 ? nodeLength / 3 : 0;
+		float splitLength = outputCount > 1 ? nodeLength / 3 : 0;
+
+		// Joins the inputs one after another : the inputs after the second
+		// one go forward to the output of the previous join
+		Segment input;
+		if (inputCount == 0) {
+			input = new Segment(x, vertex.top, x, vertex.top
+					+ sum(node.outputs));
+		} else {
+			input = vertex.inputs.get(0).end;
+			float step = joinLength / Math.max(1, inputCount - 1);
+			for (int i = 1; i < inputCount; i++) {
+				Edge edge = vertex.inputs.get(i);
+				Segment entry = edge.end;
+				if (i > 1) {
+					PipeShape pipe = new PipeShape(entry, step * (i - 1));
+					push(pipeline, pipe, edge.flow.from);
+					entry = pipe.getOutput();
+				}
+				// Weighted, so that the inputs arriving side by side go
+				// straight
+				JoinShape join = new JoinShape(input, entry, step, true);
+				push(pipeline, join, node);
+				input = join.getOutput();
+			}
+		}
+
+		// The body goes from the width of the inputs to the width of the
+		// outputs
+		float bodyRight = x + nodeLength - splitLength;
+		float outputWidth = outputCount == 0 ? sum(node.inputs)
+				: sum(node.outputs);
+		PipeShape body = new PipeShape(input, new Segment(bodyRight,
+				vertex.top, bodyRight, vertex.top + outputWidth));
+		if (inputCount == 0)
+			body.setInputClosed(true);
+		if (outputCount == 0)
+			body.setOutputClosed(true);
+		push(pipeline, body, node);
+		pipeline.tag(node.name);
+
+		if (outputCount == 1) {
+			link(pipeline, body.getOutput(), vertex.outputs.get(0), x
+					+ nodeLength);
+		} else if (outputCount > 1) {
+			float[] ratios = new float[outputCount];
+			for (int i = 0; i < outputCount; i++)
+				ratios[i] = vertex.outputs.get(i).width / outputWidth;
+			// Without gap, so that the outputs are straight
+			SplitShape split = new SplitShape(body.getOutput(), splitLength,
+					ratios, 0);
+			push(pipeline, split, node);
+			Segment[] outputs = split.getOutputs();
+			for (int i = 0; i < outputCount; i++)
+				link(pipeline, outputs[i], vertex.outputs.get(i), x
+						+ nodeLength);
+		}
+	}
+
+	/**
+	 * Draws the edge from the given output to the next column
+	 */
+	private void link(Pipeline pipeline, Segment output, Edge edge, float x) {
+		float right = x + linkLength;
+		float y = edge.to.top + edge.toOffset;
+		PipeShape pipe = new PipeShape(output, new Segment(right, y, right, y
+				+ edge.width));
+		push(pipeline, pipe, edge.flow.from);
+		edge.end = pipe.getOutput();
+	}
+
+	private static void push(Pipeline pipeline, IPipelinePart shape,
+			FlowGraph.Node owner) {
+		pipeline.push(shape);
+		if (owner.hasColor)
+			shape.setBodyColor(owner.color);
+	}
+}
@@ -1,14 +1,12 @@
 package com.crocoware.infographix.shapes;
 
-import android.graphics.Matrix;
-import android.graphics.Path;
 import android.graphics.PointF;
-import android.graphics.RectF;
-import android.graphics.SweepGradient;
+import android.graphics.Shader;
 
 import com.crocoware.infographix.AbstractBorderedDrawable;
+import com.crocoware.infographix.utils.PathBuffer;
 import com.crocoware.infographix.utils.Segment;
-import com.crocoware.infographix.utils.Vector;
+import com.crocoware.infographix.utils.ShaderCache;
 
 public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 		IPipelinePart {
@@ -33,14 +31,8 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 	 */
 	public ArcShape(Segment start, PointF center, float sweepAngle) {
 		super();
-		this.start = new Segment(start);
 		this.center = new PointF(center.x, center.y);
-		startAngle = this.start.angle();
-		if (sweepAngle>0) startAngle+=180;
-		this.sweepAngle = sweepAngle;
-		computeRadius(start, center);
-		computeOutput();
-		rebuild();
+		init(start, sweepAngle);
 	}
 
 	/**
@@ -53,7 +45,10 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 	 *            the total length of the arc
 	 */
 	public ArcShape(Segment start, float angle, float length) {
-		this(start, computeCenterFor(start, angle, length), angle);
+		super();
+		this.center = new PointF();
+		computeCenterFor(start, angle, length, center);
+		init(start, angle);
 	}
 
 	/**
@@ -66,7 +61,61 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 	 *            the total length of the arc
 	 */
 	public ArcShape(Segment start, float angle) {
-		this(start, computeCenterFor(start, angle), angle);
+		super();
+		this.center = new PointF();
+		computeCenterFor(start, angle, center);
+		init(start, angle);
+	}
+
+	/**
+	 * Gives the arc a new start and center (like the constructor with the same
+	 * arguments)
+	 */
+	public void reshape(Segment start, PointF center, float sweepAngle) {
+		this.center.set(center.x, center.y);
+		reshaped(start, sweepAngle);
+	}
+
+	/**
+	 * Gives the arc a new start, angle and length (like the constructor with
+	 * the same arguments)
+	 */
+	public void reshape(Segment start, float angle, float length) {
+		computeCenterFor(start, angle, length, center);
+		reshaped(start, angle);
+	}
+
+	/**
+	 * Gives the arc a new start and angle (like the constructor with the same
+	 * arguments)
+	 */
+	public void reshape(Segment start, float angle) {
+		computeCenterFor(start, angle, center);
+		reshaped(start, angle);
+	}
+
+	private void reshaped(Segment start, float sweepAngle) {
+		init(start, sweepAngle);
+		restoreSweepShader();
+		invalidateBounds();
+	}
+
+	/**
+	 * Common part of the constructors, once the center is known
+	 */
+	private void init(Segment start, float sweepAngle) {
+		if (this.start == null) {
+			this.start = new Segment(start);
+			this.output = new Segment(0, 0, 0, 0);
+		} else {
+			this.start.set(start);
+		}
+		startAngle = this.start.angle();
+		if (sweepAngle>0) startAngle+=180;
+		this.sweepAngle = sweepAngle;
+		computeRadius(start, center);
+		computeOutput();
+		rebuild();
 	}
 
 	private void computeRadius(Segment start, PointF center) {
@@ -85,7 +134,7 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 	}
 
 	private void computeOutput() {
-		output = start.getRotation(center, sweepAngle);
+		start.getRotation(center, sweepAngle, output);
 	}
 
 	/**
@@ -93,10 +142,10 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 	 * @param start
 	 * @param angle
 	 * @param length
-	 * @return
+	 * @param out the center
 	 */
-	private static PointF computeCenterFor(Segment start, float angle,
-			float length) {
+	private static void computeCenterFor(Segment start, float angle,
+			float length, PointF out) {
 		// Compute innerRadius from length
 		// Radius = innerRadius + width/2
 		// length = Radius * angle (rad)
@@ -104,17 +153,18 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 		float innerRadius = length / Math.abs(angleRad) - start.length() / 2;
 		if (innerRadius < 0)
 			innerRadius = 0;
-		return getCenterAtRadius(start, angle, innerRadius);
+		getCenterAtRadius(start, angle, innerRadius, out);
 	}
 
 	/**
 	 * The default inner radius for a turn is its width
 	 * @param start
 	 * @param angle
-	 * @return
+	 * @param out the center
 	 */
-	private static PointF computeCenterFor(Segment start, float angle) {
-		return getCenterAtRadius(start, angle, start.length());
+	private static void computeCenterFor(Segment start, float angle,
+			PointF out) {
+		getCenterAtRadius(start, angle, start.length(), out);
 	}
 
 	/**
@@ -122,19 +172,25 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 	 * @param start
 	 * @param angle
 	 * @param innerRadius
-	 * @return
+	 * @param out the center
 	 */
-	private static PointF getCenterAtRadius(Segment start, float angle,
-			float innerRadius) {
-		Vector dir = start.getVector().normalize();
+	private static void getCenterAtRadius(Segment start, float angle,
+			float innerRadius, PointF out) {
+		float length = start.length();
+		float dirX = (start.x2 - start.x1) / length;
+		float dirY = (start.y2 - start.y1) / length;
 		if (angle < 0)
-			return new PointF(start.x1 - dir.dx * innerRadius, start.y1
-					- dir.dy * innerRadius);
+			out.set(start.x1 - dirX * innerRadius, start.y1 - dirY
+					* innerRadius);
 		else
-			return new PointF(start.x2 + dir.dx * innerRadius, start.y2
-					+ dir.dy * innerRadius);
+			out.set(start.x2 + dirX * innerRadius, start.y2 + dirY
+					* innerRadius);
 	}
 
+	/**
+	 * @return the output segment. It belongs to the shape and follows its
+	 *         moves, so it must not be modified
+	 */
 	public Segment getOutput() {
 		return output;
 	}
@@ -159,7 +215,12 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 		return center.y + outerRadiusY;
 	}
 
-	private int[] sweepShader = null;
+	// The sweep shader, if any, follows the moves of the shape
+	private ShaderCache sweepShader = null;
+	private int sweepColor1, sweepColor2;
+	// Color stops of the sweep shader
+	private int[] sweepColors;
+	private float[] sweepPositions;
 
 	/**
 	 * Defines a shader which will cover the sweep of the arc.
@@ -168,11 +229,27 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 	 * @param color2
 	 */
 	public void setSweepShader(int color1, int color2) {
-		// The sweepshader must be saved if when translate the shape
-		sweepShader = new int[] { color1, color2 };
+		if (sweepShader == null) {
+			sweepShader = new ShaderCache();
+			sweepColors = new int[3];
+			sweepPositions = new float[3];
+		}
+		sweepColor1 = color1;
+		sweepColor2 = color2;
+		restoreSweepShader();
+	}
 
-		int[] colors = new int[3];
-		float[] pos = new float[3];
+	/**
+	 * Places the sweep shader on the shape. It is only created again when the
+	 * sweep angle has changed.
+	 */
+	private void restoreSweepShader() {
+		if (sweepShader == null)
+			return;
+		int color1 = sweepColor1;
+		int color2 = sweepColor2;
+		int[] colors = sweepColors;
+		float[] pos = sweepPositions;
 		float sweep = this.sweepAngle;
 		if (sweep < 0) {
 			pos[0] = 0;
@@ -189,27 +266,21 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 			colors[1] = color1;
 			colors[2] = color2;
 		}
-		SweepGradient shader = new SweepGradient(center.x, center.y, colors,
-				pos);
-		Matrix localM = new Matrix();
-		shader.getLocalMatrix(localM);
-		localM.postRotate(start.angle(), center.x, center.y);
-		shader.setLocalMatrix(localM);
-		this.setBodyShader(shader);
+		Shader shader = sweepShader.getSweepGradient(center.x, center.y,
+				start.angle(), colors, pos);
+		if (shader != getStyle().getBodyShader())
+			this.setBodyShader(shader);
 	}
 
 	@Override
 	public void translate(float dx, float dy) {
 		start.translate(dx, dy);
 		center.offset(dx, dy);
-		restoreSweepShader();
-		rebuild();
-	}
-
-	private void restoreSweepShader() {
-		if (sweepShader != null) {
-			setSweepShader(sweepShader[0], sweepShader[1]);
-		}
+		output.translate(dx, dy);
+		offsetGeometry(dx, dy);
+		if (sweepShader != null)
+			sweepShader.offset(dx, dy);
+		invalidateBounds();
 	}
 
 	@Override
@@ -229,29 +300,38 @@ public class ArcShape extends AbstractBorderedDrawable implements IOutputShape,
 		start.y1 = center.y + ry1 * outerRadiusY;
 		start.y2 = center.y + ry2 * outerRadiusY;
 		computeRadius(start, center);
+		computeOutput();
 		restoreSweepShader();
 		rebuild();
+		invalidateBounds();
 	}
 
 	@Override
-	protected void build(Path path, boolean isBody) {
-		// if (!isBody)path.addRect(getBounds(), Direction.CW);
+	protected void build(PathBuffer path, boolean isBody) {
 		path.moveTo(start.x1, start.y1);
 
 		// Outer arc
-		RectF firstArc = sweepAngle>0?getBounds():getInnerBounds();
-		RectF secondArc = sweepAngle>0?getInnerBounds():getBounds();
-		
-		path.arcTo(firstArc, startAngle , sweepAngle);
-		drawOutput(path, output, isBody); 
-		path.arcTo(secondArc, startAngle+ sweepAngle, -sweepAngle);
+		if (sweepAngle > 0)
+			arcToOuter(path, startAngle, sweepAngle);
+		else
+			arcToInner(path, startAngle, sweepAngle);
+		drawOutput(path, output, isBody);
+		if (sweepAngle > 0)
+			arcToInner(path, startAngle + sweepAngle, -sweepAngle);
+		else
+			arcToOuter(path, startAngle + sweepAngle, -sweepAngle);
 
 		drawInput(path, start, isBody);
 	}
 
-	private RectF getInnerBounds() {
-		return new RectF(center.x - innerRadiusX, center.y - innerRadiusY,
-				center.x + innerRadiusX, center.y + innerRadiusY);
+	private void arcToOuter(PathBuffer path, float start, float sweep) {
+		path.arcTo(center.x - outerRadiusX, center.y - outerRadiusY, center.x
+				+ outerRadiusX, center.y + outerRadiusY, start, sweep);
+	}
+
+	private void arcToInner(PathBuffer path, float start, float sweep) {
+		path.arcTo(center.x - innerRadiusX, center.y - innerRadiusY, center.x
+				+ innerRadiusX, center.y + innerRadiusY, start, sweep);
 	}
 
 	@Override
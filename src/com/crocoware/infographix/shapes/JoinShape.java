@@ -1,28 +1,33 @@
 package com.crocoware.infographix.shapes;
 
-import android.graphics.LinearGradient;
-import android.graphics.Shader.TileMode;
-
 import com.crocoware.infographix.ComposedBordered;
-import com.crocoware.infographix.utils.Position;
 import com.crocoware.infographix.utils.Segment;
-import com.crocoware.infographix.utils.Vector;
+import com.crocoware.infographix.utils.ShaderCache;
 
 /**
  * This shape joins two "entry" segments into an unique output
  * 
  * Once created, this shape can give its output with getOutputSegment() method
  * 
+ * The output is centered halfway between the centers of the entries (pushed
+ * forward by the length), in their mean direction. A weighted join centers it
+ * on the center of the entries weighted by their widths instead : adjacent
+ * entries facing the same way are then joined by straight pipes (see
+ * FlowLayout, which places them so).
+ * 
  * @author Benoit
  * 
  */
 public class JoinShape extends ComposedBordered implements IPipelinePart,
 		IOutputShape {
 
-	private Segment output; // TODO : translate output
+	private Segment output;
+	// The output is centered on the weighted center of the entries
+	private final boolean isWeighted;
 
 	/**
-	 * Creates a join shape.
+	 * Creates a join shape, whose output is centered halfway between the
+	 * entries.
 	 * 
 	 * @param entry
 	 *            the entry segment
@@ -34,47 +39,127 @@ public class JoinShape extends ComposedBordered implements IPipelinePart,
 	 * @param gap
 	 */
 	public JoinShape(Segment entry1, Segment entry2, float length) {
+		this(entry1, entry2, length, false);
+	}
+
+	/**
+	 * @param isWeighted
+	 *            true to center the output on the center of the entries
+	 *            weighted by their widths, false to center it halfway
+	 *            between them
+	 */
+	public JoinShape(Segment entry1, Segment entry2, float length,
+			boolean isWeighted) {
 		super();
+		this.isWeighted = isWeighted;
+		layout(entry1, entry2, length);
+	}
+
+	/**
+	 * Moves the parts of the shape (the arguments are the same as for the
+	 * constructor)
+	 */
+	public void reshape(Segment entry1, Segment entry2, float length) {
+		layout(entry1, entry2, length);
+		restoreGradient();
+	}
+
+	private void layout(Segment entry1, Segment entry2, float length) {
 		if (length == 0)
 			throw new IllegalArgumentException("width==0");
 
-		Vector right1 = entry1.getNormal().scale(length);
-		Vector right2 = entry2.getNormal().scale(length);
-		Position outputCenter1 = entry1.getCenter().translate(right1);
-		Position outputCenter2 = entry2.getCenter().translate(right2);
-
 		float width1 = entry1.length();
 		float width2 = entry2.length();
 		float width = width1 + width2;
 		float angle = (entry1.angle() + entry2.angle()) / 2;
 
-		Position outputCenter = Position.getCenterOf(outputCenter1, outputCenter2);
-		Vector dir = Vector.createFromAngle(width, angle);
-		output = Segment.createFromCenter(outputCenter, dir);
-		dir.normalize().scale(width1);
-		Segment output1 = new Segment(output.getA(), dir);
-		dir.normalize().scale(width2);
-		Segment output2 = new Segment(output1.getB(), dir);
+		// Centers of both entries, pushed forward by length (along their
+		// normals)
+		float center1X = (entry1.x1 + entry1.x2) / 2 + (entry1.y2 - entry1.y1)
+				/ width1 * length;
+		float center1Y = (entry1.y1 + entry1.y2) / 2 - (entry1.x2 - entry1.x1)
+				/ width1 * length;
+		float center2X = (entry2.x1 + entry2.x2) / 2 + (entry2.y2 - entry2.y1)
+				/ width2 * length;
+		float center2Y = (entry2.y1 + entry2.y2) / 2 - (entry2.x2 - entry2.x1)
+				/ width2 * length;
 
-		setParts(new PipeShape(entry1, output1), new PipeShape(entry2, output2));
+		// The output is centered between them, in the mean direction
+		float outputCenterX, outputCenterY;
+		if (isWeighted) {
+			// Adjacent entries are not moved
+			outputCenterX = (center1X * width1 + center2X * width2) / width;
+			outputCenterY = (center1Y * width1 + center2Y * width2) / width;
+		} else {
+			outputCenterX = (center1X + center2X) / 2;
+			outputCenterY = (center1Y + center2Y) / 2;
+		}
+		double rad = angle * Math.PI / 180;
+		float dirX = (float) Math.cos(rad);
+		float dirY = (float) Math.sin(rad);
+		float outX = outputCenterX - dirX * width / 2;
+		float outY = outputCenterY - dirY * width / 2;
+		float middleX = outX + dirX * width1;
+		float middleY = outY + dirY * width1;
+
+		if (output == null) {
+			output = new Segment(outX, outY, outX + dirX * width, outY + dirY
+					* width);
+			setParts(new PipeShape(entry1.x1, entry1.y1, entry1.x2,
+					entry1.y2, outX, outY, middleX, middleY), new PipeShape(
+					entry2.x1, entry2.y1, entry2.x2, entry2.y2, middleX,
+					middleY, middleX + dirX * width2, middleY + dirY * width2));
+		} else {
+			output.set(outX, outY, outX + dirX * width, outY + dirY * width);
+			((PipeShape) parts.get(0)).reshape(entry1.x1, entry1.y1,
+					entry1.x2, entry1.y2, outX, outY, middleX, middleY);
+			((PipeShape) parts.get(1)).reshape(entry2.x1, entry2.y1,
+					entry2.x2, entry2.y2, middleX, middleY, middleX + dirX
+							* width2, middleY + dirY * width2);
+		}
 	}
 
 	public Segment getOutput() {
 		return output;
 	}
 
+	// The output is given to the next shapes : the parts must be moved, unlike
+	// the parts of other composed shapes
 	@Override
 	public void translate(float dx, float dy) {
 		output.translate(dx, dy);
-		super.translate(dx, dy);
+		translateParts(dx, dy);
+		if (gradient != null)
+			gradient.offset(dx, dy);
+	}
+
+	@Override
+	public void resize(float left, float top, float width, float height) {
+		resizeParts(left, top, width, height);
+		restoreGradient();
 	}
 
+	// The gradient, if any, follows the moves of the shape
+	private ShaderCache gradient = null;
+
 	@Override
 	public void setBodyGradient(int color1, int color2) {
+		if (gradient == null)
+			gradient = new ShaderCache();
 		PipeShape pipe1 = (PipeShape) parts.get(0);
 		Segment input1 = pipe1.getInput();
 		Segment output1 = pipe1.getOutput();
-		this.setBodyShader(new LinearGradient(input1.x1, input1.y1, output1.x1,
-				output1.y1, color1, color2, TileMode.CLAMP));
+		this.setBodyShader(gradient.getLinearGradient(input1.x1, input1.y1,
+				output1.x1, output1.y1, color1, color2));
+	}
+
+	private void restoreGradient() {
+		if (gradient != null) {
+			PipeShape pipe1 = (PipeShape) parts.get(0);
+			Segment input1 = pipe1.getInput();
+			Segment output1 = pipe1.getOutput();
+			gradient.placeLinearGradient(input1.x1, input1.y1, output1.x1,
+					output1.y1);
+		}
 	}
 }
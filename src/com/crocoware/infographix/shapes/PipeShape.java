@@ -1,14 +1,12 @@
 package com.crocoware.infographix.shapes;
 
-import android.graphics.LinearGradient;
-import android.graphics.Path;
 import android.graphics.PointF;
-import android.graphics.Shader.TileMode;
 
 import com.crocoware.infographix.AbstractBorderedDrawable;
 import com.crocoware.infographix.IBorderedDrawable;
+import com.crocoware.infographix.utils.PathBuffer;
 import com.crocoware.infographix.utils.Segment;
-import com.crocoware.infographix.utils.Vector;
+import com.crocoware.infographix.utils.ShaderCache;
 
 /**
  * This shape is defined by an input (any segment) and an output.
@@ -38,57 +36,138 @@ public class PipeShape extends AbstractBorderedDrawable implements
 	private boolean isStraight = false;
 	private float curveStrength = 0.5f;
 
+	// Input and output, kept up to date with the points above
+	private final Segment input = new Segment(0, 0, 0, 0);
+	private final Segment output = new Segment(0, 0, 0, 0);
+
 	public PipeShape(Segment input, Segment output) {
+		this(input.x1, input.y1, input.x2, input.y2, output.x1, output.y1,
+				output.x2, output.y2);
+	}
+
+	/**
+	 * Creates a pipe from the coordinates of its input (x1,y1 to x2,y2) and
+	 * output segments
+	 */
+	public PipeShape(float inX1, float inY1, float inX2, float inY2,
+			float outX1, float outY1, float outX2, float outY2) {
+		setPoints(inX1, inY1, inX2, inY2, outX1, outY1, outX2, outY2);
+	}
+
+	public PipeShape(Segment input, float length) {
+		setForward(input, length);
+		isStraight = true;
+	}
+
+	public PipeShape(Segment input, float length, float width) {
+		setForward(input, length, width);
+	}
+
+	/**
+	 * Moves the input and output of the pipe to the given coordinates
+	 */
+	public void reshape(float inX1, float inY1, float inX2, float inY2,
+			float outX1, float outY1, float outX2, float outY2) {
+		setPoints(inX1, inY1, inX2, inY2, outX1, outY1, outX2, outY2);
+		reshaped();
+	}
+
+	/**
+	 * Gives the pipe a new input, the output being straight in front of it
+	 * (like the constructor with the same arguments)
+	 */
+	public void reshape(Segment input, float length) {
+		setForward(input, length);
+		reshaped();
+	}
+
+	/**
+	 * Gives the pipe a new input, the output being centered in front of it
+	 * (like the constructor with the same arguments)
+	 */
+	public void reshape(Segment input, float length, float width) {
+		setForward(input, length, width);
+		reshaped();
+	}
+
+	private void reshaped() {
+		restoreGradient();
+		rebuild();
+		invalidateBounds();
+	}
+
+	private void setPoints(float inX1, float inY1, float inX2, float inY2,
+			float outX1, float outY1, float outX2, float outY2) {
+		// A-B
+		xa = inX1;
+		ya = inY1;
+		xc = inX2;
+		yc = inY2;
+		xb = outX1;
+		yb = outY1;
+		xd = outX2;
+		yd = outY2;
+		updateSegments();
+	}
+
+	private void setForward(Segment input, float length) {
 		// A-B
 		xa = input.x1;
 		ya = input.y1;
 		xc = input.x2;
 		yc = input.y2;
-		xb = output.x1;
-		yb = output.y1;
-		xd = output.x2;
-		yd = output.y2;
+		// Normal of the input
+		float inputLength = input.length();
+		float nx = (yc - ya) / inputLength;
+		float ny = (xa - xc) / inputLength;
+		xb = xa + nx * length;
+		yb = ya + ny * length;
+		xd = xc + nx * length;
+		yd = yc + ny * length;
+		updateSegments();
 	}
 
-	public PipeShape(Segment input, float length) {
-		// A-B
+	private void setForward(Segment input, float length, float width) {
 		xa = input.x1;
 		ya = input.y1;
 		xc = input.x2;
 		yc = input.y2;
-		Vector normal = input.getNormal();
-		xb = xa + normal.dx * length;
-		yb = ya + normal.dy * length;
-		xd = xc + normal.dx * length;
-		yd = yc + normal.dy * length;
-		isStraight = true;
+		// The output is centered in front of the input, at the given distance
+		float inputLength = input.length();
+		float ux = (xc - xa) / inputLength;
+		float uy = (yc - ya) / inputLength;
+		float cx = (xa + xc) / 2 + uy * length;
+		float cy = (ya + yc) / 2 - ux * length;
+		xb = cx - ux * width / 2;
+		yb = cy - uy * width / 2;
+		xd = cx + ux * width / 2;
+		yd = cy + uy * width / 2;
+		updateSegments();
 	}
 
-	public PipeShape(Segment input, float length, float width) {
-		// Vector forward = input.getNormal().scale(length);
-		// Position outputCenter = input.getCenter().translate(forward);
-		// Vector dir = input.getVector().normalize().scale(width);
-		// Segment output = Segment.createFromCenter(outputCenter, dir);
-		// this(input, output);
-		this(input, Segment.createFromCenter(
-				input.getCenter().translate(input.getNormal().scale(length)),
-				input.getVector().normalize().scale(width)));
+	private void updateSegments() {
+		input.set(xa, ya, xc, yc);
+		output.set(xb, yb, xd, yd);
 	}
 
 	@Override
 	public void resize(float left, float top, float width, float height) {
 		float ratioX = width / getWidth();
 		float ratioY = height / getHeight();
-		translate(-getLeft(), -getTop());
-		xa *= ratioX;
-		xb *= ratioX;
-		xc *= ratioX;
-		xd *= ratioX;
-		ya *= ratioY;
-		yb *= ratioY;
-		yc *= ratioY;
-		yd *= ratioY;
-		translate(left, top);
+		float left1 = getLeft();
+		float top1 = getTop();
+		xa = (xa - left1) * ratioX + left;
+		xb = (xb - left1) * ratioX + left;
+		xc = (xc - left1) * ratioX + left;
+		xd = (xd - left1) * ratioX + left;
+		ya = (ya - top1) * ratioY + top;
+		yb = (yb - top1) * ratioY + top;
+		yc = (yc - top1) * ratioY + top;
+		yd = (yd - top1) * ratioY + top;
+		updateSegments();
+		restoreGradient();
+		rebuild();
+		invalidateBounds();
 	}
 
 	@Override
@@ -101,7 +180,11 @@ public class PipeShape extends AbstractBorderedDrawable implements
 		yb += dy;
 		yc += dy;
 		yd += dy;
-		rebuild();
+		updateSegments();
+		offsetGeometry(dx, dy);
+		if (gradient != null)
+			gradient.offset(dx, dy);
+		invalidateBounds();
 	}
 
 	@Override
@@ -111,7 +194,7 @@ public class PipeShape extends AbstractBorderedDrawable implements
 
 	@Override
 	public float getTop() {
-		return Math.min(Math.min(ya, yb), Math.min(xc, xd));
+		return Math.min(Math.min(ya, yb), Math.min(yc, yd));
 	}
 
 	@Override
@@ -121,45 +204,45 @@ public class PipeShape extends AbstractBorderedDrawable implements
 
 	@Override
 	public float getBottom() {
-		return Math.max(Math.max(ya, yb), Math.max(xc, xd));
+		return Math.max(Math.max(ya, yb), Math.max(yc, yd));
 	}
 
-	protected void build(Path path, boolean isBody) {
+	protected void build(PathBuffer path, boolean isBody) {
 		if (isStraight())
 			drawStraight(path, isBody);
 		else
 			drawCurved(path, isBody);
 	}
 
-	private void drawStraight(Path path, boolean isBody) {
+	private void drawStraight(PathBuffer path, boolean isBody) {
 		path.moveTo(xa, ya);
 		path.lineTo(xb, yb);
-		drawOutput(path, getOutput(), isBody);
+		drawOutput(path, output, isBody);
 		path.lineTo(xc, yc);
-		drawInput(path, getInput(), isBody);
+		drawInput(path, input, isBody);
 	}
 
-	private void drawCurved(Path path, boolean isBody) {
-		Vector inputNormal = getInput().getNormal();
-		Vector outputNormal = getOutput().getNormal();
+	private void drawCurved(PathBuffer path, boolean isBody) {
 		// Distance between the center of input and output (pre-* strength)
 		float distance = curveStrength
 				* PointF.length(xa + xc - xb - xd, ya + yc - yb - yd) / 2;
-		// Input/output slopes (tangents)
-		float idx = inputNormal.dx * distance;
-		float idy = inputNormal.dy * distance;
-		float odx = outputNormal.dx * distance;
-		float ody = outputNormal.dy * distance;
+		// Input/output slopes (tangents) : normals of the input and output
+		float inputLength = PointF.length(xc - xa, yc - ya);
+		float outputLength = PointF.length(xd - xb, yd - yb);
+		float idx = (yc - ya) / inputLength * distance;
+		float idy = (xa - xc) / inputLength * distance;
+		float odx = (yd - yb) / outputLength * distance;
+		float ody = (xb - xd) / outputLength * distance;
 
 		path.moveTo(xa, ya);
 
 		path.cubicTo(xa + idx, ya + idy, xb - odx, yb - ody, xb, yb);
 
-		drawOutput(path, getOutput(), isBody);
+		drawOutput(path, output, isBody);
 
 		path.cubicTo(xd - odx, yd - ody, xc + idx, yc + idy, xc, yc);
 
-		drawInput(path, getInput(), isBody);
+		drawInput(path, input, isBody);
 	}
 
 	public boolean isStraight() {
@@ -168,21 +251,38 @@ public class PipeShape extends AbstractBorderedDrawable implements
 
 	public void setStraight(boolean isStraight) {
 		this.isStraight = isStraight;
+		rebuild();
 	}
 
+	/**
+	 * @return the input segment. It belongs to the shape and follows its
+	 *         moves, so it must not be modified
+	 */
 	public Segment getInput() {
-		// TODO : Cache this
-		return new Segment(xa, ya, xc, yc);
+		return input;
 	}
 
+	/**
+	 * @return the output segment. It belongs to the shape and follows its
+	 *         moves, so it must not be modified
+	 */
 	public Segment getOutput() {
-		// TODO : cache this too
-		return new Segment(xb, yb, xd, yd);
+		return output;
 	}
 
+	// The gradient, if any, follows the moves of the shape
+	private ShaderCache gradient = null;
+
 	@Override
 	public void setBodyGradient(int color1, int color2) {
-		this.setBodyShader(new LinearGradient(xa, ya, xb, yb, color1, color2,
-				TileMode.CLAMP));
+		if (gradient == null)
+			gradient = new ShaderCache();
+		this.setBodyShader(gradient.getLinearGradient(xa, ya, xb, yb, color1,
+				color2));
+	}
+
+	private void restoreGradient() {
+		if (gradient != null)
+			gradient.placeLinearGradient(xa, ya, xb, yb);
 	}
 }
@@ -1,11 +1,8 @@
 package com.crocoware.infographix.shapes;
 
-import android.graphics.LinearGradient;
-import android.graphics.Shader.TileMode;
-
 import com.crocoware.infographix.ComposedBordered;
 import com.crocoware.infographix.utils.Segment;
-import com.crocoware.infographix.utils.Vector;
+import com.crocoware.infographix.utils.ShaderCache;
 
 /**
  * This shape splits an "entry" segment into two subdivisions (given by ratio)
@@ -18,7 +15,8 @@ import com.crocoware.infographix.utils.Vector;
 public class SplitShape extends ComposedBordered implements IPipelinePart,
 		IMultipleOutputShape {
 
-	private Segment outputs[]; // TODO : translate outputs
+	// Outputs of the parts (they follow the moves of the shape)
+	private Segment outputs[];
 
 	/**
 	 * Creates a split shape with 2 outputs
@@ -34,6 +32,22 @@ public class SplitShape extends ComposedBordered implements IPipelinePart,
 	 */
 	public SplitShape(Segment entry, float length, float ratio, float gap) {
 		super();
+		layout(entry, length, ratio, gap);
+	}
+
+	/**
+	 * Moves the parts of a split shape with 2 outputs (the arguments are the
+	 * same as for the constructor)
+	 */
+	public void reshape(Segment entry, float length, float ratio, float gap) {
+		if (parts.size() != 2)
+			throw new IllegalArgumentException("This shape has "
+					+ parts.size() + " outputs");
+		layout(entry, length, ratio, gap);
+		restoreGradient();
+	}
+
+	private void layout(Segment entry, float length, float ratio, float gap) {
 		if (length <= 0)
 			throw new IllegalArgumentException("length<=0");
 		if (ratio < 0)
@@ -51,26 +65,37 @@ public class SplitShape extends ComposedBordered implements IPipelinePart,
 		float gap1 = (1 - ratio) * gap;
 		float gap2 = ratio * gap;
 
-		Vector down = entry.getVector().normalize();
-
-		Vector toOutput1 = entry.getNormal().scale(length);
-		Vector toOutput2 = (Vector) toOutput1.clone();
-
-		Segment input1 = new Segment(entry.getA(), down.getScaled(height1));
-		Segment input2 = new Segment(entry.getB().translate(-height2, down),
-				down.getScaled(height2));
-
-		toOutput1.translate(-gap1, down);
-		toOutput2.translate(gap2 - height2, down);
-
-		Segment output1 = new Segment(entry.getA().translate(toOutput1),
-				down.getScaled(height1));
-		Segment output2 = new Segment(entry.getB().translate(toOutput2),
-				down.getScaled(height2));
-
-		setParts(new PipeShape(input1, output1), new PipeShape(input2, output2));
-
-		outputs = new Segment[] { output1, output2 };
+		// Unit vectors along the entry (down) and towards the outputs
+		float downX = (entry.x2 - entry.x1) / height;
+		float downY = (entry.y2 - entry.y1) / height;
+		float toOutputX = downY * length;
+		float toOutputY = -downX * length;
+
+		// Origin of the second input, and of both outputs
+		float in2X = entry.x2 - height2 * downX;
+		float in2Y = entry.y2 - height2 * downY;
+		float out1X = entry.x1 + toOutputX - gap1 * downX;
+		float out1Y = entry.y1 + toOutputY - gap1 * downY;
+		float out2X = entry.x2 + toOutputX + (gap2 - height2) * downX;
+		float out2Y = entry.y2 + toOutputY + (gap2 - height2) * downY;
+
+		if (outputs == null) {
+			PipeShape pipe1 = new PipeShape(entry.x1, entry.y1, entry.x1
+					+ height1 * downX, entry.y1 + height1 * downY, out1X,
+					out1Y, out1X + height1 * downX, out1Y + height1 * downY);
+			PipeShape pipe2 = new PipeShape(in2X, in2Y, in2X + height2
+					* downX, in2Y + height2 * downY, out2X, out2Y, out2X
+					+ height2 * downX, out2Y + height2 * downY);
+			setParts(pipe1, pipe2);
+			outputs = new Segment[] { pipe1.getOutput(), pipe2.getOutput() };
+		} else {
+			((PipeShape) parts.get(0)).reshape(entry.x1, entry.y1, entry.x1
+					+ height1 * downX, entry.y1 + height1 * downY, out1X,
+					out1Y, out1X + height1 * downX, out1Y + height1 * downY);
+			((PipeShape) parts.get(1)).reshape(in2X, in2Y, in2X + height2
+					* downX, in2Y + height2 * downY, out2X, out2Y, out2X
+					+ height2 * downX, out2Y + height2 * downY);
+		}
 	}
 
 	/**
@@ -88,6 +113,22 @@ public class SplitShape extends ComposedBordered implements IPipelinePart,
 	 */
 	public SplitShape(Segment entry, float length, float[] ratio, float gap) {
 		super();
+		layout(entry, length, ratio, gap);
+	}
+
+	/**
+	 * Moves the parts of a split shape with N outputs (the arguments are the
+	 * same as for the constructor, and N cannot change)
+	 */
+	public void reshape(Segment entry, float length, float[] ratio, float gap) {
+		if (parts.size() != ratio.length)
+			throw new IllegalArgumentException("This shape has "
+					+ parts.size() + " outputs");
+		layout(entry, length, ratio, gap);
+		restoreGradient();
+	}
+
+	private void layout(Segment entry, float length, float[] ratio, float gap) {
 		int N = ratio.length;
 		if (length <= 0)
 			throw new IllegalArgumentException("length<=0");
@@ -98,48 +139,44 @@ public class SplitShape extends ComposedBordered implements IPipelinePart,
 
 		float height = entry.length();
 
-		// Height of the parts
-		float[] heights = new float[N];
-		for (int i = 0; i < N; i++)
-			heights[i] = ratio[i] * height;
-
-		float[] gaps = new float[N];
-		for (int i = 0; i < N; i++)
-			gaps[i] = 0;// (1 - ratio) * gap;
-
-		Vector down = entry.getVector().normalize();
-
-		Vector[] toOutputs = new Vector[N];
-		toOutputs[0] = entry.getNormal().scale(length);
-		for (int i = 1; i < N; i++)
-			toOutputs[i] = (Vector) toOutputs[0].clone();
-
-		Segment[] inputs = new Segment[N];
-		float inputPosition = 0;
-		for (int i = 0; i < N; i++) {
-			inputs[i] = new Segment(
-					entry.getA().translate(inputPosition, down),
-					down.getScaled(heights[i]));
-			inputPosition += heights[i];
+		// Unit vectors along the entry (down) and towards the outputs
+		float downX = (entry.x2 - entry.x1) / height;
+		float downY = (entry.y2 - entry.y1) / height;
+		float toOutputX = downY * length;
+		float toOutputY = -downX * length;
+
+		boolean isNew = outputs == null;
+		PipeShape[] pipes = null;
+		if (isNew) {
+			pipes = new PipeShape[N];
+			outputs = new Segment[N];
 		}
-
-		// toOutput1.translate(-gap1, down);
-		// toOutput2.translate(gap2 - height2, down);
+		// Position of each input along the entry, and of each output along
+		// the output line (the outputs are centered)
+		float inputPosition = 0;
 		float outputOffset = -gap * (N - 1) / 2;
 		for (int i = 0; i < N; i++) {
-			toOutputs[i].translate(outputOffset, down);
-			outputOffset += heights[i] + gap;
+			float partHeight = ratio[i] * height;
+			float inX = entry.x1 + inputPosition * downX;
+			float inY = entry.y1 + inputPosition * downY;
+			float outX = entry.x1 + toOutputX + outputOffset * downX;
+			float outY = entry.y1 + toOutputY + outputOffset * downY;
+			if (isNew) {
+				pipes[i] = new PipeShape(inX, inY, inX + partHeight * downX,
+						inY + partHeight * downY, outX, outY, outX
+								+ partHeight * downX, outY + partHeight
+								* downY);
+				outputs[i] = pipes[i].getOutput();
+			} else {
+				((PipeShape) parts.get(i)).reshape(inX, inY, inX + partHeight
+						* downX, inY + partHeight * downY, outX, outY, outX
+						+ partHeight * downX, outY + partHeight * downY);
+			}
+			inputPosition += partHeight;
+			outputOffset += partHeight + gap;
 		}
-
-		outputs = new Segment[N];
-		for (int i = 0; i < N; i++)
-			outputs[i] = new Segment(entry.getA().translate(toOutputs[i]),
-					down.getScaled(heights[i]));
-
-		PipeShape[] parts = new PipeShape[N];
-		for (int i = 0; i < N; i++)
-			parts[i] = new PipeShape(inputs[i], outputs[i]);
-		setParts(parts);
+		if (isNew)
+			setParts(pipes);
 	}
 
 	public Segment[] getOutputs() {
@@ -159,12 +196,42 @@ public class SplitShape extends ComposedBordered implements IPipelinePart,
 		return shapes;
 	}
 
+	// The outputs are given by the parts : they must be moved, unlike the
+	// parts of other composed shapes
+	@Override
+	public void translate(float dx, float dy) {
+		translateParts(dx, dy);
+		if (gradient != null)
+			gradient.offset(dx, dy);
+	}
+
+	@Override
+	public void resize(float left, float top, float width, float height) {
+		resizeParts(left, top, width, height);
+		restoreGradient();
+	}
+
+	// The gradient, if any, follows the moves of the shape
+	private ShaderCache gradient = null;
+
 	@Override
 	public void setBodyGradient(int color1, int color2) {
+		if (gradient == null)
+			gradient = new ShaderCache();
 		PipeShape pipe1 = (PipeShape) parts.get(0);
 		Segment input1 = pipe1.getInput();
 		Segment output1 = pipe1.getOutput();
-		this.setBodyShader(new LinearGradient(input1.x1, input1.y1, output1.x1,
-				output1.y1, color1, color2, TileMode.CLAMP));
+		this.setBodyShader(gradient.getLinearGradient(input1.x1, input1.y1,
+				output1.x1, output1.y1, color1, color2));
+	}
+
+	private void restoreGradient() {
+		if (gradient != null) {
+			PipeShape pipe1 = (PipeShape) parts.get(0);
+			Segment input1 = pipe1.getInput();
+			Segment output1 = pipe1.getOutput();
+			gradient.placeLinearGradient(input1.x1, input1.y1, output1.x1,
+					output1.y1);
+		}
 	}
 }
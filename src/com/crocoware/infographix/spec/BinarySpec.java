@@ -0,0 +1,151 @@
+package com.crocoware.infographix.spec;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The binary form of a diagram spec, more compact and faster to parse than
+ * the text form (see BinarySpecWriter to write it).
+ * 
+ * It starts with the MAGIC number, followed by the directives : each one is
+ * an opcode (a byte) followed by its values, as written by a
+ * DataOutputStream. The document ends with the END opcode.
+ * 
+ * @author Benoit
+ * 
+ */
+public final class BinarySpec {
+
+	/** "IGX1" */
+	public static final int MAGIC = 0x49475831;
+
+	static final byte END = 0;
+	/** x1, y1, x2, y2 (floats) */
+	static final byte INPUT = 1;
+	/** length, width (floats, width may be NaN) */
+	static final byte FORWARD = 2;
+	/** angle, length (floats, length may be NaN) */
+	static final byte TURN = 3;
+	/** width (float), ratio count (unsigned short), ratios (floats) */
+	static final byte SPLIT = 4;
+	/** output (unsigned short) */
+	static final byte SELECT = 5;
+	/** tag (UTF) */
+	static final byte TAG = 6;
+	/** tag (UTF) */
+	static final byte BACK = 7;
+	/** tag (UTF), width (float) */
+	static final byte JOIN_AFTER = 8;
+	/** tag (UTF), width (float) */
+	static final byte JOIN_BEFORE = 9;
+	/** width (float) */
+	static final byte WIDTH = 10;
+	/** color (int) */
+	static final byte COLOR = 11;
+	/** color1, color2 (ints) */
+	static final byte GRADIENT = 12;
+	/** color2 (int) */
+	static final byte GRADIENT_TO = 13;
+	static final byte CLOSE = 14;
+	static final byte REVERSE = 15;
+	/** arrow name (UTF) */
+	static final byte ARROW = 16;
+
+	private BinarySpec() {
+	}
+
+	/**
+	 * Reads the whole spec, giving each directive to the handler
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the spec is not valid
+	 */
+	public static void parse(InputStream stream, SpecHandler handler)
+			throws IOException {
+		DataInputStream in = stream instanceof DataInputStream ? (DataInputStream) stream
+				: new DataInputStream(stream);
+		if (in.readInt() != MAGIC)
+			throw new IllegalArgumentException("Not a binary spec");
+		int count = 0;
+		while (true) {
+			byte op = in.readByte();
+			count++;
+			try {
+				if (!directive(op, in, handler))
+					break;
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("directive " + count
+						+ " : " + e.getMessage(), e);
+			}
+		}
+		handler.end();
+	}
+
+	/**
+	 * @return false at the end of the spec
+	 */
+	private static boolean directive(byte op, DataInputStream in,
+			SpecHandler handler) throws IOException {
+		switch (op) {
+		case END:
+			return false;
+		case INPUT:
+			handler.input(in.readFloat(), in.readFloat(), in.readFloat(),
+					in.readFloat());
+			break;
+		case FORWARD:
+			handler.forward(in.readFloat(), in.readFloat());
+			break;
+		case TURN:
+			handler.turn(in.readFloat(), in.readFloat());
+			break;
+		case SPLIT:
+			float width = in.readFloat();
+			float[] ratios = new float[in.readUnsignedShort()];
+			for (int i = 0; i < ratios.length; i++)
+				ratios[i] = in.readFloat();
+			handler.split(width, ratios);
+			break;
+		case SELECT:
+			handler.select(in.readUnsignedShort());
+			break;
+		case TAG:
+			handler.tag(in.readUTF());
+			break;
+		case BACK:
+			handler.back(in.readUTF());
+			break;
+		case JOIN_AFTER:
+			handler.join(in.readUTF(), in.readFloat(), true);
+			break;
+		case JOIN_BEFORE:
+			handler.join(in.readUTF(), in.readFloat(), false);
+			break;
+		case WIDTH:
+			handler.setWidth(in.readFloat());
+			break;
+		case COLOR:
+			handler.setBodyColor(in.readInt());
+			break;
+		case GRADIENT:
+			handler.setBodyGradient(in.readInt(), in.readInt());
+			break;
+		case GRADIENT_TO:
+			handler.setBodyGradient(in.readInt());
+			break;
+		case CLOSE:
+			handler.close();
+			break;
+		case REVERSE:
+			handler.reverse();
+			break;
+		case ARROW:
+			handler.setArrow(in.readUTF());
+			break;
+		default:
+			throw new IllegalArgumentException("unknown opcode " + op);
+		}
+		return true;
+	}
+}
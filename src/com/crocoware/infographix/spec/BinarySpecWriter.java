@@ -0,0 +1,161 @@
+package com.crocoware.infographix.spec;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the directives it receives in the binary form (see BinarySpec). A
+ * text spec is converted by giving this writer to TextSpecParser.
+ * 
+ * The errors of the stream are thrown as IllegalStateException, since the
+ * handler methods cannot throw IOException.
+ * 
+ * @author Benoit
+ * 
+ */
+public class BinarySpecWriter implements SpecHandler {
+
+	private final DataOutputStream out;
+
+	public BinarySpecWriter(OutputStream stream) {
+		out = new DataOutputStream(stream);
+		try {
+			out.writeInt(BinarySpec.MAGIC);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void op(byte op) {
+		try {
+			out.writeByte(op);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void floats(float... values) {
+		try {
+			for (float value : values)
+				out.writeFloat(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void ints(int... values) {
+		try {
+			for (int value : values)
+				out.writeInt(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void unsignedShort(int value) {
+		if (value < 0 || value > 0xFFFF)
+			throw new IllegalArgumentException("Value out of range : " + value);
+		try {
+			out.writeShort(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void string(String value) {
+		try {
+			out.writeUTF(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void input(float x1, float y1, float x2, float y2) {
+		op(BinarySpec.INPUT);
+		floats(x1, y1, x2, y2);
+	}
+
+	public void forward(float length, float width) {
+		op(BinarySpec.FORWARD);
+		floats(length, width);
+	}
+
+	public void turn(float angle, float length) {
+		op(BinarySpec.TURN);
+		floats(angle, length);
+	}
+
+	public void split(float width, float[] ratios) {
+		op(BinarySpec.SPLIT);
+		floats(width);
+		unsignedShort(ratios.length);
+		floats(ratios);
+	}
+
+	public void select(int n) {
+		op(BinarySpec.SELECT);
+		unsignedShort(n);
+	}
+
+	public void tag(String tag) {
+		op(BinarySpec.TAG);
+		string(tag);
+	}
+
+	public void back(String tag) {
+		op(BinarySpec.BACK);
+		string(tag);
+	}
+
+	public void join(String tag, float width, boolean isAfter) {
+		op(isAfter ? BinarySpec.JOIN_AFTER : BinarySpec.JOIN_BEFORE);
+		string(tag);
+		floats(width);
+	}
+
+	public void setWidth(float width) {
+		op(BinarySpec.WIDTH);
+		floats(width);
+	}
+
+	public void setBodyColor(int color) {
+		op(BinarySpec.COLOR);
+		ints(color);
+	}
+
+	public void setBodyGradient(int color1, int color2) {
+		op(BinarySpec.GRADIENT);
+		ints(color1, color2);
+	}
+
+	public void setBodyGradient(int color2) {
+		op(BinarySpec.GRADIENT_TO);
+		ints(color2);
+	}
+
+	public void close() {
+		op(BinarySpec.CLOSE);
+	}
+
+	public void reverse() {
+		op(BinarySpec.REVERSE);
+	}
+
+	public void setArrow(String arrow) {
+		op(BinarySpec.ARROW);
+		string(arrow);
+	}
+
+	/**
+	 * Writes the end of the spec, and flushes the stream
+	 */
+	public void end() {
+		op(BinarySpec.END);
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
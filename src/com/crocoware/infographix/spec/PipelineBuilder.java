@@ -0,0 +1,127 @@
+package com.crocoware.infographix.spec;
+
+import java.util.HashMap;
+
+import com.crocoware.infographix.Arrow;
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.utils.Segment;
+
+/**
+ * Builds a Pipeline from the directives of a spec
+ * 
+ * @author Benoit
+ * 
+ */
+public class PipelineBuilder implements SpecHandler {
+
+	private static final HashMap<String, Arrow> ARROWS = new HashMap<String, Arrow>();
+	static {
+		ARROWS.put("STANDARD", Arrow.STANDARD);
+		ARROWS.put("WIDE", Arrow.WIDE);
+		ARROWS.put("NARROW", Arrow.NARROW);
+		ARROWS.put("INNER", Arrow.INNER);
+		ARROWS.put("SIMPLE", Arrow.SIMPLE);
+	}
+
+	private Pipeline pipeline;
+	private boolean isEnded;
+
+	/**
+	 * @return the pipeline built
+	 * @throws IllegalStateException
+	 *             if the spec has not been entirely parsed
+	 */
+	public Pipeline getPipeline() {
+		if (!isEnded)
+			throw new IllegalStateException("The spec has not been parsed");
+		return pipeline;
+	}
+
+	private Pipeline pipeline() {
+		if (pipeline == null)
+			throw new IllegalStateException("The spec must start with input");
+		return pipeline;
+	}
+
+	public void input(float x1, float y1, float x2, float y2) {
+		if (pipeline != null)
+			throw new IllegalStateException("The input is already defined");
+		pipeline = new Pipeline(new Segment(x1, y1, x2, y2));
+	}
+
+	public void forward(float length, float width) {
+		if (Float.isNaN(width))
+			pipeline().forward(length);
+		else
+			pipeline().forward(length, width);
+	}
+
+	public void turn(float angle, float length) {
+		if (Float.isNaN(length))
+			pipeline().turn(angle);
+		else
+			pipeline().turn(angle, length);
+	}
+
+	public void split(float width, float[] ratios) {
+		if (ratios.length == 1)
+			pipeline().split(width, ratios[0]);
+		else
+			pipeline().split(width, ratios);
+	}
+
+	public void select(int n) {
+		pipeline().select(n);
+	}
+
+	public void tag(String tag) {
+		pipeline().tag(tag);
+	}
+
+	public void back(String tag) {
+		pipeline().back(tag);
+	}
+
+	public void join(String tag, float width, boolean isAfter) {
+		if (isAfter)
+			pipeline().joinAfter(tag, width);
+		else
+			pipeline().joinBefore(tag, width);
+	}
+
+	public void setWidth(float width) {
+		pipeline().setWidth(width);
+	}
+
+	public void setBodyColor(int color) {
+		pipeline().setBodyColor(color);
+	}
+
+	public void setBodyGradient(int color1, int color2) {
+		pipeline().setBodyGradient(color1, color2);
+	}
+
+	public void setBodyGradient(int color2) {
+		pipeline().setBodyGradient(color2);
+	}
+
+	public void close() {
+		pipeline().close();
+	}
+
+	public void reverse() {
+		pipeline().reverse();
+	}
+
+	public void setArrow(String arrow) {
+		Arrow value = ARROWS.get(arrow);
+		if (value == null)
+			throw new IllegalArgumentException("Unknown arrow '" + arrow + "'");
+		pipeline().setArrow(value);
+	}
+
+	public void end() {
+		pipeline();
+		isEnded = true;
+	}
+}
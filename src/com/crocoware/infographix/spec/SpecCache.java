@@ -0,0 +1,156 @@
+package com.crocoware.infographix.spec;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.crocoware.infographix.Pipeline;
+import com.crocoware.infographix.RenderSnapshot;
+
+/**
+ * Compiles diagram specs, and keeps the results keyed by the hash of their
+ * content, so that a spec received again is not parsed again.
+ * 
+ * A compiled diagram is a RenderSnapshot : unlike a Pipeline, it is immutable
+ * and may be drawn by several views at once. The least recently used ones are
+ * dropped once the capacity is reached.
+ * 
+ * The specs may be given in the text or the binary form (the binary form is
+ * recognized by its magic number).
+ * 
+ * @author Benoit
+ * 
+ */
+public class SpecCache {
+
+	private final LinkedHashMap<String, RenderSnapshot> snapshots;
+	private int hitCount, missCount;
+
+	/**
+	 * @param capacity
+	 *            the number of compiled diagrams kept
+	 */
+	public SpecCache(final int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity<=0");
+		snapshots = new LinkedHashMap<String, RenderSnapshot>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, RenderSnapshot> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the compiled diagram of the spec, from the cache if the same
+	 *         content has already been compiled
+	 * @throws IllegalArgumentException
+	 *             if the spec is not valid
+	 */
+	public RenderSnapshot compile(byte[] spec) {
+		String key = hash(spec);
+		synchronized (this) {
+			RenderSnapshot snapshot = snapshots.get(key);
+			if (snapshot != null) {
+				hitCount++;
+				return snapshot;
+			}
+			missCount++;
+		}
+		// Compiled outside of the lock : a spec asked twice at once may be
+		// compiled twice, but other specs are not delayed
+		RenderSnapshot snapshot = RenderSnapshot.of(build(spec).getDrawable());
+		synchronized (this) {
+			snapshots.put(key, snapshot);
+		}
+		return snapshot;
+	}
+
+	public synchronized int getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized int getMissCount() {
+		return missCount;
+	}
+
+	public synchronized void clear() {
+		snapshots.clear();
+	}
+
+	/**
+	 * Builds a new pipeline from a spec
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the spec is not valid
+	 */
+	public static Pipeline build(byte[] spec) {
+		try {
+			return build(new ByteArrayInputStream(spec));
+		} catch (IOException e) {
+			// Not thrown by an array
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Builds a new pipeline from a spec, read as a stream
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the spec is not valid
+	 */
+	public static Pipeline build(InputStream stream) throws IOException {
+		PipelineBuilder builder = new PipelineBuilder();
+		parse(stream, builder);
+		return builder.getPipeline();
+	}
+
+	/**
+	 * Parses a text or binary spec
+	 */
+	public static void parse(InputStream stream, SpecHandler handler)
+			throws IOException {
+		if (!stream.markSupported())
+			stream = new BufferedInputStream(stream);
+		stream.mark(4);
+		int magic = 0;
+		for (int i = 0; i < 4; i++) {
+			int b = stream.read();
+			if (b < 0) {
+				magic = 0;
+				break;
+			}
+			magic = (magic << 8) | b;
+		}
+		stream.reset();
+		if (magic == BinarySpec.MAGIC)
+			BinarySpec.parse(stream, handler);
+		else
+			TextSpecParser.parse(new InputStreamReader(stream, "UTF-8"),
+					handler);
+	}
+
+	private static String hash(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+			StringBuilder key = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				key.append(Character.forDigit((b >> 4) & 0xF, 16));
+				key.append(Character.forDigit(b & 0xF, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every platform has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.crocoware.infographix.spec;
+
+/**
+ * Receives the directives of a diagram spec, in document order, as they are
+ * parsed (see TextSpecParser and BinarySpec). The directives are those of
+ * Pipeline, which PipelineBuilder calls.
+ * 
+ * The optional values which are not given are NaN.
+ * 
+ * @author Benoit
+ * 
+ */
+public interface SpecHandler {
+
+	/**
+	 * Starts the pipeline : this is the first directive of a spec
+	 */
+	void input(float x1, float y1, float x2, float y2);
+
+	/**
+	 * @param width
+	 *            output width, or NaN to keep the width
+	 */
+	void forward(float length, float width);
+
+	/**
+	 * @param angle
+	 *            clockwise angle
+	 * @param length
+	 *            length of the turn, or NaN for the default
+	 */
+	void turn(float angle, float length);
+
+	/**
+	 * @param ratios
+	 *            one ratio for a split into 2 outputs, or the ratio of each
+	 *            output
+	 */
+	void split(float width, float[] ratios);
+
+	void select(int n);
+
+	void tag(String tag);
+
+	void back(String tag);
+
+	/**
+	 * @param isAfter
+	 *            true to join the tagged shape after the current one
+	 *            (Pipeline.joinAfter()), false for Pipeline.joinBefore()
+	 */
+	void join(String tag, float width, boolean isAfter);
+
+	void setWidth(float width);
+
+	void setBodyColor(int color);
+
+	void setBodyGradient(int color1, int color2);
+
+	/**
+	 * A gradient from the current color
+	 */
+	void setBodyGradient(int color2);
+
+	void close();
+
+	void reverse();
+
+	/**
+	 * @param arrow
+	 *            the name of one of the Arrow constants
+	 */
+	void setArrow(String arrow);
+
+	/**
+	 * Called once the whole spec has been parsed
+	 */
+	void end();
+}
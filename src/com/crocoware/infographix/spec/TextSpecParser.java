@@ -0,0 +1,249 @@
+package com.crocoware.infographix.spec;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+
+/**
+ * Parses the text form of a diagram spec : one directive per line, made of a
+ * keyword followed by its values, separated by spaces. For instance :
+ * 
+ * <pre>
+ * // A pipe split into two outputs, joined again
+ * input 0 0 0 30
+ * color #2060C0
+ * forward 100
+ * split 20 0.3
+ * tag split
+ * select 0
+ * forward 50
+ * tag up
+ * back split
+ * select 1
+ * forward 50
+ * joinAfter up 20
+ * arrow STANDARD
+ * </pre>
+ * 
+ * The keywords are those of Pipeline : input x1 y1 x2 y2, forward length
+ * [width], turn angle [length], turnLeft [angle [length]], turnRight [angle
+ * [length]], split width ratio..., select n, tag name, back name, joinAfter
+ * tag width, joinBefore tag width, width w, color c, gradient [c1] c2, close,
+ * reverse and arrow name. The colors are given as #RRGGBB or #AARRGGBB. The
+ * text following // is ignored.
+ * 
+ * The document is read line by line, and each directive is given to the
+ * handler as soon as it is read.
+ * 
+ * @author Benoit
+ * 
+ */
+public final class TextSpecParser {
+
+	private static final int INPUT = 0, FORWARD = 1, TURN = 2, TURN_LEFT = 3,
+			TURN_RIGHT = 4, SPLIT = 5, SELECT = 6, TAG = 7, BACK = 8,
+			JOIN_AFTER = 9, JOIN_BEFORE = 10, WIDTH = 11, COLOR = 12,
+			GRADIENT = 13, CLOSE = 14, REVERSE = 15, ARROW = 16;
+
+	private static final HashMap<String, Integer> KEYWORDS = new HashMap<String, Integer>();
+	static {
+		String[] keywords = { "input", "forward", "turn", "turnLeft",
+				"turnRight", "split", "select", "tag", "back", "joinAfter",
+				"joinBefore", "width", "color", "gradient", "close", "reverse",
+				"arrow" };
+		for (int i = 0; i < keywords.length; i++)
+			KEYWORDS.put(keywords[i], Integer.valueOf(i));
+	}
+
+	private final SpecHandler handler;
+	// Tokens of the current line
+	private String[] tokens = new String[8];
+	private int tokenCount;
+	private int lineNumber;
+
+	private TextSpecParser(SpecHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Reads the whole spec, giving each directive to the handler
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the spec is not valid (the message gives the line)
+	 */
+	public static void parse(Reader reader, SpecHandler handler)
+			throws IOException {
+		new TextSpecParser(handler).parse(reader);
+	}
+
+	private void parse(Reader reader) throws IOException {
+		BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader
+				: new BufferedReader(reader);
+		String line;
+		while ((line = lines.readLine()) != null) {
+			lineNumber++;
+			tokenize(line);
+			if (tokenCount == 0)
+				continue;
+			try {
+				directive();
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("line " + lineNumber
+						+ " : " + e.getMessage(), e);
+			}
+		}
+		handler.end();
+	}
+
+	private void tokenize(String line) {
+		tokenCount = 0;
+		int length = line.length();
+		int i = 0;
+		while (i < length) {
+			while (i < length && Character.isWhitespace(line.charAt(i)))
+				i++;
+			if (i == length || line.startsWith("//", i))
+				return;
+			int start = i;
+			while (i < length && !Character.isWhitespace(line.charAt(i)))
+				i++;
+			if (tokenCount == tokens.length) {
+				String[] newTokens = new String[tokens.length * 2];
+				System.arraycopy(tokens, 0, newTokens, 0, tokenCount);
+				tokens = newTokens;
+			}
+			tokens[tokenCount++] = line.substring(start, i);
+		}
+	}
+
+	private void directive() {
+		Integer keyword = KEYWORDS.get(tokens[0]);
+		if (keyword == null)
+			throw new IllegalArgumentException("unknown directive '"
+					+ tokens[0] + "'");
+		switch (keyword.intValue()) {
+		case INPUT:
+			checkCount(4, 4);
+			handler.input(number(1), number(2), number(3), number(4));
+			break;
+		case FORWARD:
+			checkCount(1, 2);
+			handler.forward(number(1), optionalNumber(2));
+			break;
+		case TURN:
+			checkCount(1, 2);
+			handler.turn(number(1), optionalNumber(2));
+			break;
+		case TURN_LEFT:
+		case TURN_RIGHT:
+			checkCount(0, 2);
+			float angle = tokenCount > 1 ? number(1) : 90;
+			handler.turn(keyword.intValue() == TURN_LEFT ? -angle : angle,
+					optionalNumber(2));
+			break;
+		case SPLIT:
+			checkCount(2, Integer.MAX_VALUE);
+			float[] ratios = new float[tokenCount - 2];
+			for (int i = 0; i < ratios.length; i++)
+				ratios[i] = number(i + 2);
+			handler.split(number(1), ratios);
+			break;
+		case SELECT:
+			checkCount(1, 1);
+			handler.select(integer(1));
+			break;
+		case TAG:
+			checkCount(1, 1);
+			handler.tag(tokens[1]);
+			break;
+		case BACK:
+			checkCount(1, 1);
+			handler.back(tokens[1]);
+			break;
+		case JOIN_AFTER:
+		case JOIN_BEFORE:
+			checkCount(2, 2);
+			handler.join(tokens[1], number(2),
+					keyword.intValue() == JOIN_AFTER);
+			break;
+		case WIDTH:
+			checkCount(1, 1);
+			handler.setWidth(number(1));
+			break;
+		case COLOR:
+			checkCount(1, 1);
+			handler.setBodyColor(color(1));
+			break;
+		case GRADIENT:
+			checkCount(1, 2);
+			if (tokenCount == 2)
+				handler.setBodyGradient(color(1));
+			else
+				handler.setBodyGradient(color(1), color(2));
+			break;
+		case CLOSE:
+			checkCount(0, 0);
+			handler.close();
+			break;
+		case REVERSE:
+			checkCount(0, 0);
+			handler.reverse();
+			break;
+		case ARROW:
+			checkCount(1, 1);
+			handler.setArrow(tokens[1]);
+			break;
+		}
+	}
+
+	private void checkCount(int min, int max) {
+		int count = tokenCount - 1;
+		if (count < min || count > max)
+			throw new IllegalArgumentException("wrong number of values for '"
+					+ tokens[0] + "'");
+	}
+
+	private float number(int n) {
+		try {
+			return Float.parseFloat(tokens[n]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("wrong number '" + tokens[n]
+					+ "'");
+		}
+	}
+
+	private int integer(int n) {
+		try {
+			return Integer.parseInt(tokens[n]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("wrong integer '" + tokens[n]
+					+ "'");
+		}
+	}
+
+	private float optionalNumber(int n) {
+		return n < tokenCount ? number(n) : Float.NaN;
+	}
+
+	/**
+	 * Reads #RRGGBB (opaque) or #AARRGGBB
+	 */
+	private int color(int n) {
+		String token = tokens[n];
+		int length = token.length();
+		if ((length != 7 && length != 9) || token.charAt(0) != '#')
+			throw new IllegalArgumentException("wrong color '" + token + "'");
+		int color = 0;
+		for (int i = 1; i < length; i++) {
+			// Only ASCII digits : no signs, nor other scripts
+			char c = token.charAt(i);
+			int digit = c < 128 ? Character.digit(c, 16) : -1;
+			if (digit < 0)
+				throw new IllegalArgumentException("wrong color '" + token
+						+ "'");
+			color = color << 4 | digit;
+		}
+		return length == 7 ? 0xFF000000 | color : color;
+	}
+}
@@ -0,0 +1,71 @@
+package com.crocoware.infographix.utils;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.graphics.DashPathEffect;
+import android.graphics.PathEffect;
+
+/**
+ * Creates dash path effects which can tell their intervals.
+ * 
+ * The platform path effects cannot be inspected : the effects created here
+ * are remembered, so that they can be exported (see SvgExporter). The
+ * effects created directly are drawn, but exported as plain lines.
+ * 
+ * @author Benoit
+ * 
+ */
+public final class Dash {
+
+	// The dash of each effect created
+	private static final Map<PathEffect, Dash> DASHES = new WeakHashMap<PathEffect, Dash>();
+
+	private final float[] intervals;
+	private final float phase;
+
+	private Dash(float[] intervals, float phase) {
+		this.intervals = intervals;
+		this.phase = phase;
+	}
+
+	/**
+	 * Creates a DashPathEffect
+	 * 
+	 * @param intervals
+	 *            the lengths of the dashes and of the gaps, alternately (an
+	 *            even number of values, at least 2)
+	 * @param phase
+	 *            the offset of the start of the dashes
+	 */
+	public static PathEffect create(float[] intervals, float phase) {
+		if (intervals.length < 2 || intervals.length % 2 != 0)
+			throw new IllegalArgumentException("intervals.length");
+		PathEffect effect = new DashPathEffect(intervals, phase);
+		synchronized (DASHES) {
+			DASHES.put(effect, new Dash(intervals.clone(), phase));
+		}
+		return effect;
+	}
+
+	/**
+	 * @return the dash of the effect, or null if it has not been created by
+	 *         create()
+	 */
+	public static Dash find(PathEffect effect) {
+		synchronized (DASHES) {
+			return DASHES.get(effect);
+		}
+	}
+
+	/**
+	 * @return the lengths of the dashes and of the gaps (not to be modified)
+	 */
+	public float[] getIntervals() {
+		return intervals;
+	}
+
+	public float getPhase() {
+		return phase;
+	}
+}
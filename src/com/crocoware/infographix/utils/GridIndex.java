@@ -0,0 +1,408 @@
+package com.crocoware.infographix.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A spatial index over the bounds of items, based on a uniform grid : each
+ * item is registered in all the cells its bounds overlap, so that finding the
+ * items in an area only visits the cells of that area.
+ * 
+ * The bounds are given by a BoundsProvider. When an item moves, invalidate()
+ * only marks it : its cells are updated on next query, so that many moves
+ * between two queries cost one update each.
+ * 
+ * The items are identified by reference, and each one is given a key when
+ * added : the queries give their results ordered by key.
+ * 
+ * @author Benoit
+ * 
+ */
+public class GridIndex<T> {
+
+	public interface BoundsProvider<T> {
+		/**
+		 * Writes the bounds of the item into out, as { left, top, right,
+		 * bottom }
+		 */
+		void getBounds(T item, float[] out);
+	}
+
+	private static final class Entry<T> {
+		final T item;
+		final int key;
+		float left, top, right, bottom;
+		// First and last cells covered (inclusive)
+		int cellLeft, cellTop, cellRight, cellBottom;
+		// Not registered in the cells (see place())
+		boolean isOversized;
+		boolean isDirty;
+		// Last query which has visited this entry
+		int stamp;
+		// Position in the list of all the entries
+		int position;
+
+		Entry(T item, int key) {
+			this.item = item;
+			this.key = key;
+		}
+
+		boolean intersects(float l, float t, float r, float b) {
+			return left <= r && l <= right && top <= b && t <= bottom;
+		}
+	}
+
+	private final float cellSize;
+	private final BoundsProvider<T> provider;
+	private final CellMap<ArrayList<Entry<T>>> cells = new CellMap<ArrayList<Entry<T>>>();
+	private final IdentityHashMap<T, Entry<T>> entries = new IdentityHashMap<T, Entry<T>>();
+	// Same entries, listed to be visited without allocating an iterator
+	private final ArrayList<Entry<T>> all = new ArrayList<Entry<T>>();
+	private final ArrayList<Entry<T>> dirty = new ArrayList<Entry<T>>();
+	// Items covering too many cells are tested by each query
+	private final ArrayList<Entry<T>> oversized = new ArrayList<Entry<T>>();
+	private static final int MAX_CELLS_PER_ITEM = 64;
+	// Beyond it, the cells are not counted : the bounds are too far, or not
+	// finite
+	private static final float MAX_CELL = 1 << 30;
+	private int stamp;
+
+	// Buffers of the queries : the entries found, and the buffer used to
+	// sort them
+	private final float[] bounds = new float[4];
+	private Entry<?>[] found = new Entry<?>[16];
+	private Entry<?>[] sorted = new Entry<?>[16];
+	private int foundCount;
+
+	/**
+	 * @param cellSize
+	 *            width and height of the cells. About twice the size of the
+	 *            items is a good choice
+	 * @param provider
+	 *            gives the bounds of the items
+	 */
+	public GridIndex(float cellSize, BoundsProvider<T> provider) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("cellSize<=0");
+		this.cellSize = cellSize;
+		this.provider = provider;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Adds an item to the index (its bounds are read immediately)
+	 */
+	public void add(T item, int key) {
+		Entry<T> entry = new Entry<T>(item, key);
+		Entry<T> previous = entries.put(item, entry);
+		if (previous != null)
+			forget(previous);
+		entry.position = all.size();
+		all.add(entry);
+		place(entry);
+	}
+
+	public void remove(T item) {
+		Entry<T> entry = entries.remove(item);
+		if (entry != null)
+			forget(entry);
+	}
+
+	private void forget(Entry<T> entry) {
+		if (!entry.isDirty)
+			unplace(entry);
+		// A dirty entry has no cells : it is skipped when cleaning
+		Entry<T> last = all.remove(all.size() - 1);
+		if (last != entry) {
+			all.set(entry.position, last);
+			last.position = entry.position;
+		}
+	}
+
+	/**
+	 * Tells that the bounds of the item have changed
+	 */
+	public void invalidate(T item) {
+		Entry<T> entry = entries.get(item);
+		if (entry == null || entry.isDirty)
+			return;
+		unplace(entry);
+		entry.isDirty = true;
+		dirty.add(entry);
+	}
+
+	/**
+	 * Finds the items whose bounds intersect the given area
+	 * 
+	 * @param out
+	 *            receives the items, ordered by key
+	 */
+	@SuppressWarnings("unchecked")
+	public void query(float left, float top, float right, float bottom,
+			List<T> out) {
+		clean();
+		foundCount = 0;
+		stamp++;
+		int cellLeft = cell(left);
+		int cellRight = cell(right);
+		int cellTop = cell(top);
+		int cellBottom = cell(bottom);
+		if (!isInRange(left, top, right, bottom)
+				|| cellCount(cellLeft, cellTop, cellRight, cellBottom) > entries
+						.size()) {
+			// The area is large : it is faster to test every item
+			for (int i = 0; i < all.size(); i++) {
+				Entry<T> entry = all.get(i);
+				if (entry.intersects(left, top, right, bottom))
+					addFound(entry);
+			}
+		} else {
+			for (int i = 0; i < oversized.size(); i++) {
+				Entry<T> entry = oversized.get(i);
+				if (entry.intersects(left, top, right, bottom))
+					addFound(entry);
+			}
+			for (int cx = cellLeft; cx <= cellRight; cx++) {
+				for (int cy = cellTop; cy <= cellBottom; cy++) {
+					ArrayList<Entry<T>> list = cells.get(cellKey(cx, cy));
+					if (list == null)
+						continue;
+					for (int i = 0; i < list.size(); i++) {
+						Entry<T> entry = list.get(i);
+						if (entry.stamp != stamp
+								&& entry.intersects(left, top, right, bottom)) {
+							entry.stamp = stamp;
+							addFound(entry);
+						}
+					}
+				}
+			}
+		}
+		sortFound();
+		for (int i = 0; i < foundCount; i++) {
+			out.add((T) found[i].item);
+			// The items are not kept by the buffers
+			found[i] = sorted[i] = null;
+		}
+		foundCount = 0;
+	}
+
+	private void addFound(Entry<T> entry) {
+		if (foundCount == found.length)
+			found = Arrays.copyOf(found, 2 * foundCount);
+		found[foundCount++] = entry;
+	}
+
+	/**
+	 * Sorts the entries found by key : a merge sort, which does not allocate
+	 * once the buffers are large enough
+	 */
+	private void sortFound() {
+		if (sorted.length < foundCount)
+			sorted = new Entry<?>[found.length];
+		Entry<?>[] from = found, to = sorted;
+		for (int width = 1; width < foundCount; width *= 2) {
+			for (int low = 0; low < foundCount; low += 2 * width) {
+				int middle = Math.min(low + width, foundCount);
+				int high = Math.min(low + 2 * width, foundCount);
+				int i = low, j = middle, k = low;
+				while (i < middle && j < high)
+					to[k++] = from[j].key < from[i].key ? from[j++] : from[i++];
+				while (i < middle)
+					to[k++] = from[i++];
+				while (j < high)
+					to[k++] = from[j++];
+			}
+			Entry<?>[] swap = from;
+			from = to;
+			to = swap;
+		}
+		// The result may be in either buffer
+		found = from;
+		sorted = to;
+	}
+
+	/**
+	 * Finds the items whose bounds contain the given point
+	 * 
+	 * @param out
+	 *            receives the items, ordered by key
+	 */
+	public void query(float x, float y, List<T> out) {
+		query(x, y, x, y, out);
+	}
+
+	/**
+	 * Places again the items which have moved
+	 */
+	private void clean() {
+		for (int i = 0; i < dirty.size(); i++) {
+			Entry<T> entry = dirty.get(i);
+			if (entries.get(entry.item) == entry)
+				place(entry);
+		}
+		dirty.clear();
+	}
+
+	private void place(Entry<T> entry) {
+		provider.getBounds(entry.item, bounds);
+		entry.left = bounds[0];
+		entry.top = bounds[1];
+		entry.right = bounds[2];
+		entry.bottom = bounds[3];
+		entry.isDirty = false;
+		entry.cellLeft = cell(entry.left);
+		entry.cellTop = cell(entry.top);
+		entry.cellRight = cell(entry.right);
+		entry.cellBottom = cell(entry.bottom);
+		entry.isOversized = !isInRange(entry.left, entry.top, entry.right,
+				entry.bottom)
+				|| cellCount(entry.cellLeft, entry.cellTop, entry.cellRight,
+						entry.cellBottom) > MAX_CELLS_PER_ITEM;
+		if (entry.isOversized) {
+			oversized.add(entry);
+			return;
+		}
+		for (int cx = entry.cellLeft; cx <= entry.cellRight; cx++) {
+			for (int cy = entry.cellTop; cy <= entry.cellBottom; cy++) {
+				long key = cellKey(cx, cy);
+				ArrayList<Entry<T>> list = cells.get(key);
+				if (list == null) {
+					list = new ArrayList<Entry<T>>(4);
+					cells.put(key, list);
+				}
+				list.add(entry);
+			}
+		}
+	}
+
+	private void unplace(Entry<T> entry) {
+		if (entry.isOversized) {
+			oversized.remove(entry);
+			return;
+		}
+		for (int cx = entry.cellLeft; cx <= entry.cellRight; cx++) {
+			for (int cy = entry.cellTop; cy <= entry.cellBottom; cy++) {
+				long key = cellKey(cx, cy);
+				ArrayList<Entry<T>> list = cells.get(key);
+				if (list == null)
+					continue;
+				list.remove(entry);
+				if (list.isEmpty())
+					cells.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * @return false if the cells of the bounds cannot be enumerated
+	 */
+	private boolean isInRange(float left, float top, float right,
+			float bottom) {
+		// Written so that NaN and the infinites are out of range
+		return left / cellSize >= -MAX_CELL && top / cellSize >= -MAX_CELL
+				&& right / cellSize <= MAX_CELL && bottom / cellSize <= MAX_CELL;
+	}
+
+	/**
+	 * @return the number of cells, Long.MAX_VALUE if it does not fit
+	 */
+	private static long cellCount(int cellLeft, int cellTop, int cellRight,
+			int cellBottom) {
+		long width = (long) cellRight - cellLeft + 1;
+		long height = (long) cellBottom - cellTop + 1;
+		if (width <= 0 || height <= 0)
+			return 0;
+		return width > Long.MAX_VALUE / height ? Long.MAX_VALUE : width
+				* height;
+	}
+
+	private int cell(float coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+
+	private static long cellKey(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * The lists of the cells, by key. An open-addressing map of primitive
+	 * keys (linear probing), so that the queries do not allocate.
+	 */
+	private static final class CellMap<V> {
+		private long[] keys = new long[16];
+		// null for the free slots
+		private Object[] values = new Object[16];
+		private int size;
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+
+		/**
+		 * @return the slot of the key, or the free slot where it would go
+		 */
+		private int slot(long key) {
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (values[i] != null && keys[i] != key)
+				i = (i + 1) & mask;
+			return i;
+		}
+
+		@SuppressWarnings("unchecked")
+		V get(long key) {
+			return (V) values[slot(key)];
+		}
+
+		void put(long key, V value) {
+			if (2 * (size + 1) > keys.length)
+				resize(2 * keys.length);
+			int i = slot(key);
+			if (values[i] == null)
+				size++;
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		void remove(long key) {
+			int mask = keys.length - 1;
+			int i = slot(key);
+			if (values[i] == null)
+				return;
+			values[i] = null;
+			size--;
+			// Moves back the next keys of the run, which could not be found
+			// past the hole otherwise
+			for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+				int home = hash(keys[j]) & mask;
+				if (((j - home) & mask) >= ((j - i) & mask)) {
+					keys[i] = keys[j];
+					values[i] = values[j];
+					values[j] = null;
+					i = j;
+				}
+			}
+		}
+
+		private void resize(int capacity) {
+			long[] oldKeys = keys;
+			Object[] oldValues = values;
+			keys = new long[capacity];
+			values = new Object[capacity];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldValues[i] != null) {
+					int slot = slot(oldKeys[i]);
+					keys[slot] = oldKeys[i];
+					values[slot] = oldValues[i];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package com.crocoware.infographix.utils;
+
+/**
+ * A compact, platform-independent list of path commands.
+ * 
+ * The commands are stored as opcodes, and their coordinates are stored in a
+ * single primitive array, so that a path is made of two arrays whatever its
+ * size. The buffer may be reset and filled again without allocation.
+ * 
+ * The commands have the same meaning as those of android.graphics.Path (see
+ * PathBufferAdapter to replay a buffer into an Android path).
+ * 
+ * @author Benoit
+ * 
+ */
+public class PathBuffer {
+	/** x, y */
+	public static final byte MOVE_TO = 0;
+	/** x, y */
+	public static final byte LINE_TO = 1;
+	/** x1, y1, x2, y2, x3, y3 */
+	public static final byte CUBIC_TO = 2;
+	/**
+	 * left, top, right, bottom, startAngle, sweepAngle : an arc of the oval
+	 * given by its bounds. A line is drawn from the current point to the start
+	 * of the arc.
+	 */
+	public static final byte ARC_TO = 3;
+
+	private static final int[] COORD_COUNTS = { 2, 2, 6, 6 };
+
+	private byte[] ops;
+	private int opCount;
+	private float[] coords;
+	private int coordCount;
+
+	public PathBuffer() {
+		this(8);
+	}
+
+	/**
+	 * @param capacity
+	 *            the initial number of commands the buffer can hold
+	 */
+	public PathBuffer(int capacity) {
+		ops = new byte[capacity];
+		coords = new float[capacity * 2];
+	}
+
+	/**
+	 * Creates a buffer holding the given commands, without copying them : the
+	 * arrays become the internal arrays of the buffer.
+	 * 
+	 * @param ops
+	 *            the opcodes, all used
+	 * @param coords
+	 *            their coordinates, all used
+	 */
+	public PathBuffer(byte[] ops, float[] coords) {
+		this.ops = ops;
+		this.coords = coords;
+		opCount = ops.length;
+		coordCount = coords.length;
+	}
+
+	/**
+	 * @return the number of coordinates used by the given opcode
+	 */
+	public static int getCoordCount(byte op) {
+		return COORD_COUNTS[op];
+	}
+
+	/**
+	 * Removes all the commands (the memory is kept for later use)
+	 */
+	public void reset() {
+		opCount = 0;
+		coordCount = 0;
+	}
+
+	public boolean isEmpty() {
+		return opCount == 0;
+	}
+
+	public int getOpCount() {
+		return opCount;
+	}
+
+	public byte getOp(int n) {
+		return ops[n];
+	}
+
+	/**
+	 * @return the number of coordinates used in getCoords()
+	 */
+	public int getCoordCount() {
+		return coordCount;
+	}
+
+	/**
+	 * @return the coordinates of all the commands, in order. This is the
+	 *         internal array of the buffer (it must not be modified), only the
+	 *         first getCoordCount() values are meaningful.
+	 */
+	public float[] getCoords() {
+		return coords;
+	}
+
+	public void moveTo(float x, float y) {
+		ensureCapacity(2);
+		ops[opCount++] = MOVE_TO;
+		coords[coordCount++] = x;
+		coords[coordCount++] = y;
+	}
+
+	public void lineTo(float x, float y) {
+		ensureCapacity(2);
+		ops[opCount++] = LINE_TO;
+		coords[coordCount++] = x;
+		coords[coordCount++] = y;
+	}
+
+	public void cubicTo(float x1, float y1, float x2, float y2, float x3,
+			float y3) {
+		ensureCapacity(6);
+		ops[opCount++] = CUBIC_TO;
+		coords[coordCount++] = x1;
+		coords[coordCount++] = y1;
+		coords[coordCount++] = x2;
+		coords[coordCount++] = y2;
+		coords[coordCount++] = x3;
+		coords[coordCount++] = y3;
+	}
+
+	public void arcTo(float left, float top, float right, float bottom,
+			float startAngle, float sweepAngle) {
+		ensureCapacity(6);
+		ops[opCount++] = ARC_TO;
+		coords[coordCount++] = left;
+		coords[coordCount++] = top;
+		coords[coordCount++] = right;
+		coords[coordCount++] = bottom;
+		coords[coordCount++] = startAngle;
+		coords[coordCount++] = sweepAngle;
+	}
+
+	/**
+	 * Appends all the commands of another buffer to this one
+	 * 
+	 * @param other
+	 */
+	public void append(PathBuffer other) {
+		if (opCount + other.opCount > ops.length) {
+			byte[] newOps = new byte[Math.max(ops.length * 2, opCount
+					+ other.opCount)];
+			System.arraycopy(ops, 0, newOps, 0, opCount);
+			ops = newOps;
+		}
+		if (coordCount + other.coordCount > coords.length) {
+			float[] newCoords = new float[Math.max(coords.length * 2,
+					coordCount + other.coordCount)];
+			System.arraycopy(coords, 0, newCoords, 0, coordCount);
+			coords = newCoords;
+		}
+		System.arraycopy(other.ops, 0, ops, opCount, other.opCount);
+		System.arraycopy(other.coords, 0, coords, coordCount,
+				other.coordCount);
+		opCount += other.opCount;
+		coordCount += other.coordCount;
+	}
+
+	/**
+	 * Translates all the commands of the buffer
+	 * 
+	 * @param dx
+	 * @param dy
+	 */
+	public void offset(float dx, float dy) {
+		int c = 0;
+		for (int i = 0; i < opCount; i++) {
+			byte op = ops[i];
+			int pointCount = op == ARC_TO ? 2 : COORD_COUNTS[op] / 2;
+			for (int p = 0; p < pointCount; p++) {
+				coords[c + 2 * p] += dx;
+				coords[c + 2 * p + 1] += dy;
+			}
+			c += COORD_COUNTS[op];
+		}
+	}
+
+	/**
+	 * Extends the bounds so that they contain all the points of the path (the
+	 * control points of the curves, and the whole ovals of the arcs)
+	 * 
+	 * @param bounds
+	 *            { left, top, right, bottom }
+	 */
+	public void computeBounds(float[] bounds) {
+		int c = 0;
+		for (int i = 0; i < opCount; i++) {
+			byte op = ops[i];
+			int pointCount = op == ARC_TO ? 2 : COORD_COUNTS[op] / 2;
+			for (int p = 0; p < pointCount; p++) {
+				float x = coords[c + 2 * p];
+				float y = coords[c + 2 * p + 1];
+				if (bounds[0] > x)
+					bounds[0] = x;
+				if (bounds[1] > y)
+					bounds[1] = y;
+				if (bounds[2] < x)
+					bounds[2] = x;
+				if (bounds[3] < y)
+					bounds[3] = y;
+			}
+			c += COORD_COUNTS[op];
+		}
+	}
+
+	/**
+	 * Scales then translates all the points of the path : (x, y) becomes (x *
+	 * scaleX + dx, y * scaleY + dy). The arcs are mapped to the scaled ovals
+	 * (their angles are mirrored when a scale is negative).
+	 */
+	public void transform(float scaleX, float scaleY, float dx, float dy) {
+		int c = 0;
+		for (int i = 0; i < opCount; i++) {
+			byte op = ops[i];
+			int pointCount = op == ARC_TO ? 2 : COORD_COUNTS[op] / 2;
+			for (int p = 0; p < pointCount; p++) {
+				coords[c + 2 * p] = coords[c + 2 * p] * scaleX + dx;
+				coords[c + 2 * p + 1] = coords[c + 2 * p + 1] * scaleY + dy;
+			}
+			if (op == ARC_TO) {
+				if (scaleX < 0) {
+					swap(c, c + 2);
+					coords[c + 4] = 180 - coords[c + 4];
+					coords[c + 5] = -coords[c + 5];
+				}
+				if (scaleY < 0) {
+					swap(c + 1, c + 3);
+					coords[c + 4] = -coords[c + 4];
+					coords[c + 5] = -coords[c + 5];
+				}
+			}
+			c += COORD_COUNTS[op];
+		}
+	}
+
+	private void swap(int i, int j) {
+		float tmp = coords[i];
+		coords[i] = coords[j];
+		coords[j] = tmp;
+	}
+
+	/**
+	 * @return true if the point is inside the area filled by the path
+	 *         (non-zero winding rule, as Android paths by default). The curves
+	 *         are approximated by lines (see Polyline).
+	 */
+	public boolean contains(float x, float y) {
+		return flatten().contains(x, y);
+	}
+
+	/**
+	 * @return true if the area filled by the path (see contains()) intersects
+	 *         the rectangle
+	 */
+	public boolean intersects(float left, float top, float right, float bottom) {
+		return flatten().intersects(left, top, right, bottom);
+	}
+
+	private Polyline flatten() {
+		Polyline outline = new Polyline();
+		outline.flatten(this, Polyline.DEFAULT_TOLERANCE);
+		return outline;
+	}
+
+	private void ensureCapacity(int newCoords) {
+		if (opCount == ops.length) {
+			byte[] newOps = new byte[ops.length * 2 + 1];
+			System.arraycopy(ops, 0, newOps, 0, opCount);
+			ops = newOps;
+		}
+		if (coordCount + newCoords > coords.length) {
+			float[] newCoords2 = new float[coords.length * 2 + newCoords];
+			System.arraycopy(coords, 0, newCoords2, 0, coordCount);
+			coords = newCoords2;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.crocoware.infographix.utils;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Replays the commands of a PathBuffer into an Android path
+ * 
+ * @author Benoit
+ * 
+ */
+public class PathBufferAdapter {
+
+	private PathBufferAdapter() {
+	}
+
+	/**
+	 * Appends all the commands of the buffer to the path
+	 * 
+	 * @param buffer
+	 * @param path
+	 * @return the path itself
+	 */
+	public static Path replay(PathBuffer buffer, Path path) {
+		float[] c = buffer.getCoords();
+		int n = 0;
+		RectF oval = null;
+		int count = buffer.getOpCount();
+		for (int i = 0; i < count; i++) {
+			byte op = buffer.getOp(i);
+			switch (op) {
+			case PathBuffer.MOVE_TO:
+				path.moveTo(c[n], c[n + 1]);
+				break;
+			case PathBuffer.LINE_TO:
+				path.lineTo(c[n], c[n + 1]);
+				break;
+			case PathBuffer.CUBIC_TO:
+				path.cubicTo(c[n], c[n + 1], c[n + 2], c[n + 3], c[n + 4],
+						c[n + 5]);
+				break;
+			case PathBuffer.ARC_TO:
+				if (oval == null)
+					oval = new RectF();
+				oval.set(c[n], c[n + 1], c[n + 2], c[n + 3]);
+				path.arcTo(oval, c[n + 4], c[n + 5]);
+				break;
+			}
+			n += PathBuffer.getCoordCount(op);
+		}
+		return path;
+	}
+}
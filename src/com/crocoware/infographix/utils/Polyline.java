@@ -0,0 +1,419 @@
+package com.crocoware.infographix.utils;
+
+import java.util.Arrays;
+
+/**
+ * The outline of a path, made of straight lines only.
+ * 
+ * A polyline is built from a PathBuffer by flatten(), which replaces each
+ * curve by as few lines as possible while keeping them within a tolerance of
+ * the curve. It is made of contours (one for each moveTo of the path), and
+ * keeps the length of the outline at each of its points, so that a point can
+ * be found from its distance along the outline (see getPosition()).
+ * 
+ * As for PathBuffer, the points are stored in primitive arrays, which are
+ * kept when the polyline is flattened again.
+ * 
+ * @author Benoit
+ * 
+ */
+public class Polyline {
+
+	// x, y of each point
+	private float[] points = new float[32];
+	// Length of the outline from the first point to each point (the moves
+	// between contours are not counted)
+	private float[] lengths = new float[16];
+	private int pointCount;
+	// Index of the first point of each contour
+	private int[] contours = new int[4];
+	private int contourCount;
+
+	// Tolerance the polyline has been flattened with
+	private float tolerance;
+
+	/**
+	 * A quarter of a unit, which is below a pixel when the shape is drawn
+	 * unscaled
+	 */
+	public static final float DEFAULT_TOLERANCE = 0.25f;
+
+	// The curves are never split into more lines than this
+	private static final int MAX_STEPS = 256;
+
+	/**
+	 * Replaces the content of the polyline with the outline of the path
+	 * 
+	 * @param path
+	 *            the path to flatten
+	 * @param tolerance
+	 *            the maximal distance between a curve and the lines replacing
+	 *            it
+	 */
+	public void flatten(PathBuffer path, float tolerance) {
+		if (tolerance <= 0)
+			throw new IllegalArgumentException("tolerance<=0");
+		reset();
+		this.tolerance = tolerance;
+		float[] c = path.getCoords();
+		int n = 0;
+		for (int i = 0; i < path.getOpCount(); i++) {
+			byte op = path.getOp(i);
+			switch (op) {
+			case PathBuffer.MOVE_TO:
+				moveTo(c[n], c[n + 1]);
+				break;
+			case PathBuffer.LINE_TO:
+				lineTo(c[n], c[n + 1]);
+				break;
+			case PathBuffer.CUBIC_TO:
+				flattenCubic(c[n], c[n + 1], c[n + 2], c[n + 3], c[n + 4],
+						c[n + 5], tolerance);
+				break;
+			case PathBuffer.ARC_TO:
+				flattenArc(c[n], c[n + 1], c[n + 2], c[n + 3], c[n + 4],
+						c[n + 5], tolerance);
+				break;
+			}
+			n += PathBuffer.getCoordCount(op);
+		}
+	}
+
+	/**
+	 * The number of lines is given by Wang's formula, from the second
+	 * differences of the control points
+	 */
+	private void flattenCubic(float x1, float y1, float x2, float y2,
+			float x3, float y3, float tolerance) {
+		if (pointCount == 0)
+			moveTo(0, 0);
+		float x0 = getX(pointCount - 1);
+		float y0 = getY(pointCount - 1);
+		float ddx = Math.max(Math.abs(x0 - 2 * x1 + x2), Math.abs(x1 - 2 * x2
+				+ x3));
+		float ddy = Math.max(Math.abs(y0 - 2 * y1 + y2), Math.abs(y1 - 2 * y2
+				+ y3));
+		int steps = steps(Math.sqrt(0.75 * Math.sqrt(ddx * ddx + ddy * ddy)
+				/ tolerance));
+		for (int step = 1; step <= steps; step++) {
+			float t = (float) step / steps;
+			float u = 1 - t;
+			lineTo(u * u * u * x0 + 3 * u * u * t * x1 + 3 * u * t * t * x2 + t
+					* t * t * x3, u * u * u * y0 + 3 * u * u * t * y1 + 3 * u * t
+					* t * y2 + t * t * t * y3);
+		}
+	}
+
+	/**
+	 * The angle of each line is such that the distance between its middle and
+	 * the arc stays below the tolerance. As with Android paths, a line joins
+	 * the current point to the start of the arc.
+	 */
+	private void flattenArc(float left, float top, float right, float bottom,
+			float startAngle, float sweepAngle, float tolerance) {
+		float cx = (left + right) / 2;
+		float cy = (top + bottom) / 2;
+		float rx = (right - left) / 2;
+		float ry = (bottom - top) / 2;
+		float radius = Math.max(Math.abs(rx), Math.abs(ry));
+		double stepAngle = radius <= tolerance ? Math.PI : 2 * Math
+				.acos(1 - tolerance / radius);
+		int steps = steps(Math.toRadians(Math.abs(sweepAngle)) / stepAngle);
+		for (int step = 0; step <= steps; step++) {
+			double angle = Math.toRadians(startAngle + sweepAngle * step
+					/ steps);
+			float x = cx + rx * (float) Math.cos(angle);
+			float y = cy + ry * (float) Math.sin(angle);
+			if (pointCount == 0)
+				moveTo(x, y);
+			else
+				lineTo(x, y);
+		}
+	}
+
+	private static int steps(double count) {
+		if (!(count > 1))
+			return 1; // NaN included
+		return (int) Math.min(MAX_STEPS, Math.ceil(count));
+	}
+
+	public void reset() {
+		pointCount = 0;
+		contourCount = 0;
+	}
+
+	/**
+	 * Starts a new contour
+	 */
+	public void moveTo(float x, float y) {
+		// A contour made of a single point is replaced
+		if (contourCount > 0 && contours[contourCount - 1] == pointCount - 1) {
+			pointCount--;
+			contourCount--;
+		}
+		if (contourCount == contours.length) {
+			int[] newContours = new int[contours.length * 2];
+			System.arraycopy(contours, 0, newContours, 0, contourCount);
+			contours = newContours;
+		}
+		contours[contourCount++] = pointCount;
+		addPoint(x, y, pointCount == 0 ? 0 : lengths[pointCount - 1]);
+	}
+
+	public void lineTo(float x, float y) {
+		if (pointCount == 0) {
+			moveTo(x, y);
+			return;
+		}
+		float dx = x - points[2 * pointCount - 2];
+		float dy = y - points[2 * pointCount - 1];
+		addPoint(x, y, lengths[pointCount - 1]
+				+ (float) Math.sqrt(dx * dx + dy * dy));
+	}
+
+	private void addPoint(float x, float y, float length) {
+		if (pointCount == lengths.length) {
+			float[] newPoints = new float[points.length * 2];
+			System.arraycopy(points, 0, newPoints, 0, pointCount * 2);
+			points = newPoints;
+			float[] newLengths = new float[lengths.length * 2];
+			System.arraycopy(lengths, 0, newLengths, 0, pointCount);
+			lengths = newLengths;
+		}
+		points[2 * pointCount] = x;
+		points[2 * pointCount + 1] = y;
+		lengths[pointCount] = length;
+		pointCount++;
+	}
+
+	/**
+	 * @return the tolerance given to the last call to flatten()
+	 */
+	public float getTolerance() {
+		return tolerance;
+	}
+
+	public boolean isEmpty() {
+		return pointCount == 0;
+	}
+
+	public int getPointCount() {
+		return pointCount;
+	}
+
+	public float getX(int n) {
+		return points[2 * n];
+	}
+
+	public float getY(int n) {
+		return points[2 * n + 1];
+	}
+
+	public int getContourCount() {
+		return contourCount;
+	}
+
+	/**
+	 * @return the index of the first point of the nth contour
+	 */
+	public int getContourStart(int n) {
+		return contours[n];
+	}
+
+	/**
+	 * @return the index following the last point of the nth contour
+	 */
+	public int getContourEnd(int n) {
+		return n + 1 < contourCount ? contours[n + 1] : pointCount;
+	}
+
+	/**
+	 * @return the length of the outline (the contours are not closed)
+	 */
+	public float getLength() {
+		return pointCount == 0 ? 0 : lengths[pointCount - 1];
+	}
+
+	/**
+	 * @return the length of the outline from its first point to the nth one
+	 */
+	public float getLength(int n) {
+		return lengths[n];
+	}
+
+	/**
+	 * Finds the point at the given distance along the outline
+	 * 
+	 * @param distance
+	 *            from the first point (clamped to the length of the outline)
+	 * @param out
+	 *            receives { x, y, tangent x, tangent y }, the tangent being a
+	 *            unit vector
+	 * @return false if the polyline is empty
+	 */
+	public boolean getPosition(float distance, float[] out) {
+		if (pointCount == 0)
+			return false;
+		// First point whose length is at least the distance
+		int low = 0, high = pointCount - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (lengths[mid] < distance)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		int end = Math.max(low, 1);
+		// Skip the moves between contours, which have no length
+		while (end < pointCount - 1 && isContourStart(end))
+			end++;
+		if (pointCount == 1 || isContourStart(end)) {
+			out[0] = getX(low);
+			out[1] = getY(low);
+			out[2] = 1;
+			out[3] = 0;
+			return true;
+		}
+		float x0 = getX(end - 1), y0 = getY(end - 1);
+		float dx = getX(end) - x0, dy = getY(end) - y0;
+		float segment = lengths[end] - lengths[end - 1];
+		float t = segment == 0 ? 0 : Math.max(0,
+				Math.min(1, (distance - lengths[end - 1]) / segment));
+		out[0] = x0 + t * dx;
+		out[1] = y0 + t * dy;
+		if (segment == 0) {
+			out[2] = 1;
+			out[3] = 0;
+		} else {
+			out[2] = dx / segment;
+			out[3] = dy / segment;
+		}
+		return true;
+	}
+
+	private boolean isContourStart(int point) {
+		return Arrays.binarySearch(contours, 0, contourCount, point) >= 0;
+	}
+
+	/**
+	 * Translates all the points
+	 */
+	public void offset(float dx, float dy) {
+		for (int i = 0; i < pointCount * 2; i += 2) {
+			points[i] += dx;
+			points[i + 1] += dy;
+		}
+	}
+
+	/**
+	 * Extends the bounds so that they contain all the points
+	 * 
+	 * @param bounds
+	 *            { left, top, right, bottom }
+	 */
+	public void computeBounds(float[] bounds) {
+		for (int i = 0; i < pointCount * 2; i += 2) {
+			float x = points[i];
+			float y = points[i + 1];
+			if (bounds[0] > x)
+				bounds[0] = x;
+			if (bounds[1] > y)
+				bounds[1] = y;
+			if (bounds[2] < x)
+				bounds[2] = x;
+			if (bounds[3] < y)
+				bounds[3] = y;
+		}
+	}
+
+	/**
+	 * Writes the polyline as lines into the buffer
+	 */
+	public void appendTo(PathBuffer path) {
+		for (int n = 0; n < contourCount; n++) {
+			int start = getContourStart(n);
+			path.moveTo(getX(start), getY(start));
+			for (int i = start + 1; i < getContourEnd(n); i++)
+				path.lineTo(getX(i), getY(i));
+		}
+	}
+
+	/**
+	 * @return true if the point is inside the area filled by the outline
+	 *         (non-zero winding rule, as Android paths by default). Each
+	 *         contour is closed.
+	 */
+	public boolean contains(float x, float y) {
+		int winding = 0;
+		for (int n = 0; n < contourCount; n++) {
+			int start = getContourStart(n);
+			int end = getContourEnd(n);
+			for (int i = start; i < end; i++) {
+				int next = i + 1 < end ? i + 1 : start;
+				float x0 = getX(i), y0 = getY(i);
+				float x1 = getX(next), y1 = getY(next);
+				// Signed area : positive if the point is left of the line
+				float side = (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0);
+				if (y0 <= y) {
+					if (y1 > y && side > 0)
+						winding++;
+				} else if (y1 <= y && side < 0) {
+					winding--;
+				}
+			}
+		}
+		return winding != 0;
+	}
+
+	/**
+	 * @return true if the area filled by the outline (see contains())
+	 *         intersects the rectangle
+	 */
+	public boolean intersects(float left, float top, float right, float bottom) {
+		for (int n = 0; n < contourCount; n++) {
+			int start = getContourStart(n);
+			int end = getContourEnd(n);
+			for (int i = start; i < end; i++) {
+				int next = i + 1 < end ? i + 1 : start;
+				if (lineIntersects(getX(i), getY(i), getX(next), getY(next),
+						left, top, right, bottom))
+					return true;
+			}
+		}
+		// If no outline crosses the rectangle, it is either entirely inside
+		// the area or entirely outside
+		return contains(left, top);
+	}
+
+	/**
+	 * Clips the line (x0,y0)-(x1,y1) with the rectangle (Liang-Barsky)
+	 */
+	private static boolean lineIntersects(float x0, float y0, float x1,
+			float y1, float left, float top, float right, float bottom) {
+		float dx = x1 - x0;
+		float dy = y1 - y0;
+		float[] p = { -dx, dx, -dy, dy };
+		float[] q = { x0 - left, right - x0, y0 - top, bottom - y0 };
+		float t0 = 0, t1 = 1;
+		for (int i = 0; i < 4; i++) {
+			if (p[i] == 0) {
+				if (q[i] < 0)
+					return false;
+			} else {
+				float t = q[i] / p[i];
+				if (p[i] < 0) {
+					if (t > t1)
+						return false;
+					if (t > t0)
+						t0 = t;
+				} else {
+					if (t < t0)
+						return false;
+					if (t < t1)
+						t1 = t;
+				}
+			}
+		}
+		return true;
+	}
+}
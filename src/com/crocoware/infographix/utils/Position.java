@@ -44,4 +44,9 @@ public class Position extends PointF implements Cloneable {
 		return new Position((a.x + b.x) / 2, (a.y + b.y) / 2);
 	}
 
+	public static Position getCenterOf(Position a, Position b, Position out) {
+		out.set((a.x + b.x) / 2, (a.y + b.y) / 2);
+		return out;
+	}
+
 }
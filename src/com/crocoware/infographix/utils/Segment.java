@@ -11,6 +11,9 @@ import android.graphics.PointF;
  * only containing a verb (offset, translate...) change the values of this
  * object (and return the object itself for commodity)
  * 
+ * Methods taking an "out" parameter write their result into it and return it,
+ * instead of allocating a new object. The out parameter may be this object.
+ * 
  * @author Benoit
  * 
  */
@@ -39,18 +42,59 @@ public class Segment {
 		this(origin.x, origin.y, origin.x + dir.dx, origin.y + dir.dy);
 	}
 
+	/**
+	 * Changes the coordinates of the segment
+	 * 
+	 * @return the segment itself
+	 */
+	public Segment set(float x1, float y1, float x2, float y2) {
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+		return this;
+	}
+
+	/**
+	 * Copies the coordinates of another segment
+	 * 
+	 * @return the segment itself
+	 */
+	public Segment set(Segment other) {
+		return set(other.x1, other.y1, other.x2, other.y2);
+	}
+
 	/**
 	 * @return the normal of the segment (left-hand oriented). The returned
 	 *         vector is normalized (length==1)
 	 */
 	public Vector getNormal() {
-		float dy = -(x2 - x1);
-		float dx = y2 - y1;
-		return new Vector(dx, dy).normalize();
+		return getNormal(new Vector(0, 0));
+	}
+
+	/**
+	 * Computes the normal of the segment (left-hand oriented, normalized)
+	 * 
+	 * @param out
+	 * @return out
+	 */
+	public Vector getNormal(Vector out) {
+		float length = length();
+		return out.set((y2 - y1) / length, -(x2 - x1) / length);
 	}
 
 	public Segment reverse() {
-		return new Segment(x2, y2, x1, y1);
+		return reverse(new Segment(0, 0, 0, 0));
+	}
+
+	/**
+	 * Writes the reversed segment into out
+	 * 
+	 * @param out
+	 * @return out
+	 */
+	public Segment reverse(Segment out) {
+		return out.set(x2, y2, x1, y1);
 	}
 
 	public void translate(float dx, float dy) {
@@ -115,6 +159,14 @@ public class Segment {
 		return new Vector(x2 - x1, y2 - y1);
 	}
 
+	/**
+	 * @param out
+	 * @return out, set to the vector going from the origin to the end point
+	 */
+	public Vector getVector(Vector out) {
+		return out.set(x2 - x1, y2 - y1);
+	}
+
 	/**
 	 * Computes a rotation of this position around a given center
 	 * 
@@ -123,19 +175,27 @@ public class Segment {
 	 * @return the new position of the given point
 	 */
 	public Segment getRotation(PointF center, float angle) {
-		float cos = (float) Math.cos(angle * Math.PI / 180);
-		float sin = (float) Math.sin(angle * Math.PI / 180);
-		PointF A = rotatePoint(x1, y1, center, cos, sin);
-		PointF B = rotatePoint(x2, y2, center, cos, sin);
-		return new Segment(A, B);
+		return getRotation(center, angle, new Segment(0, 0, 0, 0));
 	}
 
-	private PointF rotatePoint(float x, float y, PointF center, float cos,
-			float sin) {
-		float dx = x - center.x;
-		float dy = y - center.y;
-		return new PointF(center.x + cos * dx - sin * dy, center.y + sin * dx
-				+ cos * dy);
+	/**
+	 * Computes a rotation of this position around a given center
+	 * 
+	 * @param center
+	 * @param angle
+	 * @param out
+	 * @return out, set to the rotated segment
+	 */
+	public Segment getRotation(PointF center, float angle, Segment out) {
+		float cos = (float) Math.cos(angle * Math.PI / 180);
+		float sin = (float) Math.sin(angle * Math.PI / 180);
+		float dx1 = x1 - center.x;
+		float dy1 = y1 - center.y;
+		float dx2 = x2 - center.x;
+		float dy2 = y2 - center.y;
+		return out.set(center.x + cos * dx1 - sin * dy1, center.y + sin * dx1
+				+ cos * dy1, center.x + cos * dx2 - sin * dy2, center.y + sin
+				* dx2 + cos * dy2);
 	}
 
 	/**
@@ -145,6 +205,11 @@ public class Segment {
 		return new Position(x1, y1);
 	}
 
+	public Position getA(Position out) {
+		out.set(x1, y1);
+		return out;
+	}
+
 	/**
 	 * @return the position of the end point of this segment
 	 */
@@ -152,16 +217,41 @@ public class Segment {
 		return new Position(x2, y2);
 	}
 
+	public Position getB(Position out) {
+		out.set(x2, y2);
+		return out;
+	}
+
 	public Position getCenter() {
 		return new Position((x1 + x2) / 2, (y1 + y2) / 2);
 	}
 
+	public Position getCenter(Position out) {
+		out.set((x1 + x2) / 2, (y1 + y2) / 2);
+		return out;
+	}
+
 	public static Segment createFromCenter(Position c, Vector dir) {
 		return new Segment(c.x - dir.dx / 2, c.y - dir.dy / 2,
 				c.x + dir.dx / 2, c.y + dir.dy / 2);
 	}
 
 	public Segment scaleFromCenter(float r) {
-		return createFromCenter(getCenter(), getVector().scale(r));
+		return scaleFromCenter(r, new Segment(0, 0, 0, 0));
+	}
+
+	/**
+	 * Writes into out this segment scaled by r around its center
+	 * 
+	 * @param r
+	 * @param out
+	 * @return out
+	 */
+	public Segment scaleFromCenter(float r, Segment out) {
+		float cx = (x1 + x2) / 2;
+		float cy = (y1 + y2) / 2;
+		float hdx = (x2 - x1) * r / 2;
+		float hdy = (y2 - y1) * r / 2;
+		return out.set(cx - hdx, cy - hdy, cx + hdx, cy + hdy);
 	}
 }
@@ -0,0 +1,284 @@
+package com.crocoware.infographix.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.graphics.LinearGradient;
+import android.graphics.Matrix;
+import android.graphics.Shader;
+import android.graphics.Shader.TileMode;
+import android.graphics.SweepGradient;
+
+import com.crocoware.infographix.Instrumentation;
+
+/**
+ * Keeps the gradient shader of a shape.
+ * 
+ * The shader is created once for a set of color stops, with a normalised
+ * geometry : from (0,0) to (1,0) for a linear gradient, around (0,0) and
+ * starting at angle 0 for a sweep gradient. It is then placed with its local
+ * matrix, so that moving the shape, or changing its geometry, does not create
+ * a new shader. A new one is only created when the color stops change.
+ * 
+ * A shader has a single local matrix, so each shape needs its own cache.
+ * 
+ * The platform shaders cannot tell their colors : find() gives the color
+ * stops of a shader created by a cache, so that it can be saved (see
+ * SnapshotFormat). Its placement is its local matrix.
+ * 
+ * @author Benoit
+ * 
+ */
+public class ShaderCache {
+
+	/**
+	 * The color stops of a shader created by a cache. It does not refer to
+	 * the shader, so that the shader can be collected once unused.
+	 */
+	public static final class Gradient {
+		private final boolean isSweep;
+		private final int[] colors;
+		private final float[] positions;
+
+		private Gradient(boolean isSweep, int[] colors, float[] positions) {
+			this.isSweep = isSweep;
+			this.colors = colors;
+			this.positions = positions;
+		}
+
+		/**
+		 * @return true for a sweep gradient, false for a linear one
+		 */
+		public boolean isSweep() {
+			return isSweep;
+		}
+
+		/**
+		 * @return the colors of the shader (not to be modified)
+		 */
+		public int[] getColors() {
+			return colors;
+		}
+
+		/**
+		 * @return the positions of the colors of a sweep gradient (not to be
+		 *         modified), or null if they are evenly spread
+		 */
+		public float[] getPositions() {
+			return positions;
+		}
+
+		/**
+		 * @return the color of the shader at the given ratio, from 0 (the
+		 *         start of a linear gradient, or the start angle of a sweep
+		 *         gradient) to 1
+		 */
+		public int getColorAt(float ratio) {
+			int last = colors.length - 1;
+			for (int i = 0; i < last; i++) {
+				float p0 = positions == null ? (float) i / last : positions[i];
+				float p1 = positions == null ? (float) (i + 1) / last
+						: positions[i + 1];
+				if (ratio <= p1) {
+					float t = p1 > p0 ? Math.max(0, (ratio - p0) / (p1 - p0))
+							: 0;
+					return mix(colors[i], colors[i + 1], t);
+				}
+			}
+			return colors[last];
+		}
+	}
+
+	private Shader shader;
+	// Color stops of the shader
+	private Gradient gradient;
+
+	private final Matrix matrix = new Matrix();
+
+	// The color stops of each shader created by a cache. The values must not
+	// refer to their keys, or the shaders would never be collected.
+	private static final Map<Shader, Gradient> GRADIENTS = new WeakHashMap<Shader, Gradient>();
+
+	/**
+	 * @return the color stops of the shader, or null if it has not been
+	 *         created by a cache
+	 */
+	public static Gradient find(Shader shader) {
+		synchronized (GRADIENTS) {
+			return GRADIENTS.get(shader);
+		}
+	}
+
+	/**
+	 * @return the number of shaders created by caches which are still in use
+	 */
+	public static int getShaderCount() {
+		synchronized (GRADIENTS) {
+			return GRADIENTS.size();
+		}
+	}
+
+	/**
+	 * Creates a shader from the values given by a cache (see find() and
+	 * getLocalMatrix())
+	 */
+	public static Shader create(boolean isSweep, int[] colors,
+			float[] positions, Matrix localMatrix) {
+		ShaderCache cache = new ShaderCache();
+		cache.setShader(
+				isSweep ? new SweepGradient(0, 0, colors, positions)
+						: new LinearGradient(0, 0, 1, 0, colors[0], colors[1],
+								TileMode.CLAMP), isSweep, colors, positions);
+		cache.matrix.set(localMatrix);
+		cache.shader.setLocalMatrix(cache.matrix);
+		return cache.shader;
+	}
+
+	private void setShader(Shader shader, boolean isSweep, int[] colors,
+			float[] positions) {
+		this.shader = shader;
+		gradient = new Gradient(isSweep, colors, positions);
+		synchronized (GRADIENTS) {
+			GRADIENTS.put(shader, gradient);
+		}
+	}
+
+	/**
+	 * @return the current shader (null if none has been asked yet)
+	 */
+	public Shader getShader() {
+		return shader;
+	}
+
+	/**
+	 * @return true for a sweep gradient, false for a linear one
+	 */
+	public boolean isSweep() {
+		return gradient.isSweep;
+	}
+
+	/**
+	 * @return the colors of the current shader (not to be modified)
+	 */
+	public int[] getColors() {
+		return gradient.colors;
+	}
+
+	/**
+	 * @return the positions of the colors of a sweep gradient (not to be
+	 *         modified), or null if they are evenly spread
+	 */
+	public float[] getPositions() {
+		return gradient.positions;
+	}
+
+	/**
+	 * @return the color of the current shader at the given ratio, from 0 (the
+	 *         start of a linear gradient, or the start angle of a sweep
+	 *         gradient) to 1
+	 */
+	public int getColorAt(float ratio) {
+		return gradient.getColorAt(ratio);
+	}
+
+	private static int mix(int color1, int color2, float t) {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			int c1 = (color1 >>> shift) & 0xff;
+			int c2 = (color2 >>> shift) & 0xff;
+			result |= Math.round(c1 + (c2 - c1) * t) << shift;
+		}
+		return result;
+	}
+
+	/**
+	 * Gives the matrix placing the normalised shader on the shape
+	 */
+	public void getLocalMatrix(Matrix out) {
+		out.set(matrix);
+	}
+
+	/**
+	 * Gives a linear gradient from (x0,y0) to (x1,y1)
+	 * 
+	 * @return the shader, which is the same instance as the previous call if
+	 *         the colors are the same
+	 */
+	public Shader getLinearGradient(float x0, float y0, float x1, float y1,
+			int color1, int color2) {
+		boolean isCreated = shader == null || gradient.isSweep
+				|| gradient.colors[0] != color1
+				|| gradient.colors[1] != color2;
+		if (isCreated) {
+			setShader(new LinearGradient(0, 0, 1, 0, color1, color2,
+					TileMode.CLAMP), false, new int[] { color1, color2 }, null);
+		}
+		reportRequest(isCreated);
+		placeLinearGradient(x0, y0, x1, y1);
+		return shader;
+	}
+
+	/**
+	 * Moves the current linear gradient, so that it goes from (x0,y0) to
+	 * (x1,y1)
+	 */
+	public void placeLinearGradient(float x0, float y0, float x1, float y1) {
+		float dx = x1 - x0;
+		float dy = y1 - y0;
+		float length = (float) Math.sqrt(dx * dx + dy * dy);
+		// A degenerated gradient keeps a valid matrix
+		if (length == 0)
+			length = 1;
+		matrix.setScale(length, length);
+		matrix.postRotate((float) (Math.atan2(dy, dx) * 180 / Math.PI));
+		matrix.postTranslate(x0, y0);
+		shader.setLocalMatrix(matrix);
+	}
+
+	/**
+	 * Gives a sweep gradient around (cx,cy), whose angle 0 is rotated to
+	 * startAngle
+	 * 
+	 * @return the shader, which is the same instance as the previous call if
+	 *         the color stops are the same
+	 */
+	public Shader getSweepGradient(float cx, float cy, float startAngle,
+			int[] colors, float[] positions) {
+		boolean isCreated = shader == null || !gradient.isSweep
+				|| !Arrays.equals(gradient.colors, colors)
+				|| !Arrays.equals(gradient.positions, positions);
+		if (isCreated) {
+			setShader(new SweepGradient(0, 0, colors, positions), true,
+					colors.clone(), positions == null ? null : positions.clone());
+		}
+		reportRequest(isCreated);
+		placeSweepGradient(cx, cy, startAngle);
+		return shader;
+	}
+
+	private static void reportRequest(boolean isCreated) {
+		Instrumentation.Listener listener = Instrumentation.getListener();
+		if (listener != null)
+			listener.onShaderRequested(isCreated);
+	}
+
+	/**
+	 * Moves the current sweep gradient
+	 */
+	public void placeSweepGradient(float cx, float cy, float startAngle) {
+		matrix.setRotate(startAngle);
+		matrix.postTranslate(cx, cy);
+		shader.setLocalMatrix(matrix);
+	}
+
+	/**
+	 * Translates the current shader, if any
+	 */
+	public void offset(float dx, float dy) {
+		if (shader == null)
+			return;
+		matrix.postTranslate(dx, dy);
+		shader.setLocalMatrix(matrix);
+	}
+}
@@ -15,6 +15,17 @@ public class Vector implements Cloneable {
 		return new Vector(dx, dy);
 	}
 
+	/**
+	 * Changes the coordinates of the vector
+	 * 
+	 * @return the vector itself
+	 */
+	public Vector set(float x, float y) {
+		dx = x;
+		dy = y;
+		return this;
+	}
+
 	public float getX() {
 		return dx;
 	}
@@ -115,6 +126,17 @@ public class Vector implements Cloneable {
 		return new Vector(dx * f, dy * f);
 	}
 
+	/**
+	 * Writes into out a multiple of this vector
+	 * 
+	 * @param f
+	 * @param out
+	 * @return out
+	 */
+	public Vector getScaled(float f, Vector out) {
+		return out.set(dx * f, dy * f);
+	}
+
 	/**
 	 * Creates a new vector given a length and a direction (angle)
 	 * 